@@ -15,11 +15,63 @@ repositories {
 
 dependencies {
     api("org.eclipse.paho:org.eclipse.paho.client.mqttv3:1.2.5")
+    api("org.eclipse.paho:org.eclipse.paho.mqttv5.client:1.2.5")
     api("com.github.spullara.mustache.java:compiler:0.9.10")
     api("ch.qos.logback:logback-classic:1.4.14")
     api("com.google.code.gson:gson:2.10")
     api("io.github.wldt:wldt-core:0.4.0")
     testImplementation("junit:junit:4.13.2")
+    testImplementation("io.moquette:moquette-broker:0.17") {
+        exclude(group = "org.slf4j", module = "slf4j-reload4j")
+    }
+}
+
+val jmhVersion = "1.37"
+
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.implementation.get())
+configurations["jmhRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+sourceSets {
+    create("load") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["loadImplementation"].extendsFrom(configurations.implementation.get())
+configurations["loadRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "loadImplementation"("io.moquette:moquette-broker:0.17") {
+        exclude(group = "org.slf4j", module = "slf4j-reload4j")
+    }
+}
+
+// Runs the JMH benchmarks, e.g. gradle jmh -Pjmh.includes=TopicDispatch -Pjmh.args="-f 1 -wi 3 -i 5"
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks of the adapter hot paths."
+    dependsOn("jmhClasses")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val includes = (project.findProperty("jmh.includes") as String?) ?: "it.wldt.adapter.mqtt.physical.benchmark"
+    val extraArgs = (project.findProperty("jmh.args") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    args = listOf(includes, "-rf", "json", "-rff", layout.buildDirectory.file("reports/jmh/results.json").get().asFile.path) + extraArgs
+    doFirst {
+        layout.buildDirectory.dir("reports/jmh").get().asFile.mkdirs()
+    }
 }
 
 java {
@@ -101,3 +153,26 @@ publishing {
 signing {
     sign(publishing.publications["WLDTRelease"])
 }
+
+// Runs the load and soak harness against an in-process broker, e.g. gradle loadTest -Pload.args="--duration 600 --fleet sensors:500:2:256"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the load and soak harness against an in-process MQTT broker."
+    dependsOn("loadClasses")
+    classpath = sourceSets["load"].runtimeClasspath
+    mainClass.set("it.wldt.adapter.mqtt.physical.load.LoadHarness")
+    val loadArgs = (project.findProperty("load.args") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    args = listOf("--report", layout.buildDirectory.file("reports/load/summary.properties").get().asFile.path) + loadArgs
+    jvmArgs = listOf("-Xmx512m", "-Dlogback.configurationFile=" + file("src/load/resources/logback-load.xml").path)
+}
+
+// Checks the shared-subscription mode against a broker supporting $share, e.g. gradle sharedSubscriptionCheck -Pcheck.args="--port 1883"
+tasks.register<JavaExec>("sharedSubscriptionCheck") {
+    group = "verification"
+    description = "Checks that two adapters in one shared-subscription group split the incoming messages."
+    dependsOn("loadClasses")
+    classpath = sourceSets["load"].runtimeClasspath
+    mainClass.set("it.wldt.adapter.mqtt.physical.load.SharedSubscriptionCheck")
+    args = (project.findProperty("check.args") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    jvmArgs = listOf("-Dlogback.configurationFile=" + file("src/load/resources/logback-load.xml").path)
+}
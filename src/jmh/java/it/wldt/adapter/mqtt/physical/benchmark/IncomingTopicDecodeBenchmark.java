@@ -0,0 +1,83 @@
+package it.wldt.adapter.mqtt.physical.benchmark;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.EventIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.MqttIncomingMessage;
+import it.wldt.adapter.mqtt.physical.topic.incoming.PropertyIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.WldtEventEmitter;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+import it.wldt.exception.EventBusException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of an incoming message through the subscribe function of property, event and multi-event incoming topics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IncomingTopicDecodeBenchmark {
+
+    @Param({"1", "10"})
+    public int eventsPerMessage;
+
+    private PropertyIncomingTopic<Double> propertyTopic;
+
+    private EventIncomingTopic<String> eventTopic;
+
+    private DigitalTwinIncomingTopic multiEventTopic;
+
+    private MqttMessage scalarMessage;
+
+    private MqttMessage csvMessage;
+
+    private WldtEventEmitter emitter;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        propertyTopic = new PropertyIncomingTopic<>("sensor/temperature", "temperature", Double::parseDouble);
+        eventTopic = new EventIncomingTopic<>("sensor/overheating", "overheating", body -> body);
+        multiEventTopic = new DigitalTwinIncomingTopic("sensor/batch", payload -> {
+            String[] values = payload.split(",");
+            List<WldtEvent<?>> events = new ArrayList<>(values.length);
+            try {
+                for(int i = 0; i < values.length; i++)
+                    events.add(new PhysicalAssetPropertyWldtEvent<>("value-" + i, Double.parseDouble(values[i])));
+            } catch (EventBusException e) {
+                throw new IllegalStateException(e);
+            }
+            return events;
+        });
+        scalarMessage = new MqttMessage("21.5".getBytes(StandardCharsets.UTF_8));
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < eventsPerMessage; i++)
+            csv.append(i > 0 ? "," : "").append(20.0 + i);
+        csvMessage = new MqttMessage(csv.toString().getBytes(StandardCharsets.UTF_8));
+        emitter = blackhole::consume;
+    }
+
+    @Benchmark
+    public void propertyTopic() throws EventBusException {
+        propertyTopic.applySubscribeFunction(new MqttIncomingMessage("sensor/temperature", scalarMessage, StandardCharsets.UTF_8), emitter);
+    }
+
+    @Benchmark
+    public void eventTopic() throws EventBusException {
+        eventTopic.applySubscribeFunction(new MqttIncomingMessage("sensor/overheating", scalarMessage, StandardCharsets.UTF_8), emitter);
+    }
+
+    @Benchmark
+    public void multiEventTopic() throws EventBusException {
+        multiEventTopic.applySubscribeFunction(new MqttIncomingMessage("sensor/batch", csvMessage, StandardCharsets.UTF_8), emitter);
+    }
+}
@@ -0,0 +1,100 @@
+package it.wldt.adapter.mqtt.physical.benchmark;
+
+import it.wldt.adapter.mqtt.physical.ingress.IncomingTopicIndex;
+import it.wldt.adapter.mqtt.physical.ingress.IngressMessage;
+import it.wldt.adapter.mqtt.physical.ingress.MqttIngressPipeline;
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.PropertyIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.WldtEventEmitter;
+import it.wldt.exception.EventBusException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full ingress path from the MQTT client callback to a stub event bus: topic dispatch, submission to the ingress
+ * pipeline, decoding on the workers and emission of the resulting events. A batch of messages is submitted for each
+ * operation, which completes when all of them have been delivered.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(IngressPipelineBenchmark.BATCH_SIZE)
+public class IngressPipelineBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final int TOPIC_COUNT = 100;
+
+    @Param({"0", "1", "4"})
+    public int workerCount;
+
+    private IncomingTopicIndex index;
+
+    private MqttIngressPipeline pipeline;
+
+    private String[] receivedTopics;
+
+    private MqttMessage message;
+
+    /** Stub event bus counting the delivered events. */
+    private final AtomicLong deliveredEvents = new AtomicLong();
+
+    private final WldtEventEmitter eventBus = event -> deliveredEvents.incrementAndGet();
+
+    @Setup
+    public void setup() {
+        List<DigitalTwinIncomingTopic> topics = new ArrayList<>(TOPIC_COUNT);
+        receivedTopics = new String[TOPIC_COUNT];
+        for(int i = 0; i < TOPIC_COUNT; i++){
+            receivedTopics[i] = "plant/device-" + i + "/temperature";
+            topics.add(new PropertyIncomingTopic<>(receivedTopics[i], "temperature-" + i, Double::parseDouble));
+        }
+        index = new IncomingTopicIndex(topics);
+        message = new MqttMessage("21.5".getBytes(StandardCharsets.UTF_8));
+        if(workerCount > 0){
+            pipeline = new MqttIngressPipeline("benchmark", workerCount, 1024, this::decode);
+            pipeline.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(pipeline != null)
+            pipeline.stop();
+    }
+
+    @Benchmark
+    public long ingest() throws InterruptedException {
+        long target = deliveredEvents.get() + BATCH_SIZE;
+        for(int i = 0; i < BATCH_SIZE; i++){
+            String receivedTopic = receivedTopics[i % TOPIC_COUNT];
+            for(DigitalTwinIncomingTopic topic : index.match(receivedTopic)){
+                IngressMessage ingressMessage = new IngressMessage(topic, receivedTopic, message);
+                if(pipeline != null)
+                    pipeline.submit(ingressMessage);
+                else
+                    decode(ingressMessage);
+            }
+        }
+        while(deliveredEvents.get() < target)
+            Thread.yield();
+        return deliveredEvents.get();
+    }
+
+    private void decode(IngressMessage ingressMessage) {
+        try {
+            ingressMessage.getIncomingTopic().applySubscribeFunction(ingressMessage, eventBus);
+        } catch (EventBusException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
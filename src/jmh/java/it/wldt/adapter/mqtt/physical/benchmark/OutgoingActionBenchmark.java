@@ -0,0 +1,77 @@
+package it.wldt.adapter.mqtt.physical.benchmark;
+
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfiguration;
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfigurationBuilder;
+import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.topic.outgoing.DigitalTwinOutgoingTopic;
+import it.wldt.adapter.mqtt.physical.topic.outgoing.MqttPayloadBuffer;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+import it.wldt.exception.EventBusException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Action path up to the MQTT payload: outgoing topic lookup by action key, publish function and payload encoding,
+ * comparing the String publish function with the binary one writing into the reused payload buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutgoingActionBenchmark {
+
+    private static final byte[] VALUE_PREFIX = "{\"value\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] VALUE_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10", "1000"})
+    public int actionCount;
+
+    private MqttPhysicalAdapterConfiguration configuration;
+
+    private PhysicalAssetActionWldtEvent<String> actionEvent;
+
+    private DigitalTwinOutgoingTopic binaryTopic;
+
+    @Setup
+    public void setup() throws MqttPhysicalAdapterConfigurationException, EventBusException {
+        MqttPhysicalAdapterConfigurationBuilder builder = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883, "benchmark");
+        for(int i = 0; i < actionCount; i++)
+            builder.<String>addPhysicalAssetActionAndTopic("action-" + i, "benchmark.action", "text/plain", "actuator/" + i + "/set",
+                    body -> "{\"value\":\"" + body + "\"}");
+        configuration = builder.build();
+        actionEvent = new PhysicalAssetActionWldtEvent<>("action-" + (actionCount / 2), "on");
+        binaryTopic = DigitalTwinOutgoingTopic.binary("actuator/binary/set", (action, buffer) -> writeJson(buffer, (String) action.getBody()));
+    }
+
+    private static void writeJson(MqttPayloadBuffer buffer, String value) {
+        buffer.write(VALUE_PREFIX, 0, VALUE_PREFIX.length);
+        buffer.write(value, StandardCharsets.UTF_8);
+        buffer.write(VALUE_SUFFIX, 0, VALUE_SUFFIX.length);
+    }
+
+    @Benchmark
+    public DigitalTwinOutgoingTopic lookup() {
+        return configuration.getOutgoingTopicByActionKey(actionEvent.getActionKey()).orElse(null);
+    }
+
+    @Benchmark
+    public Object routeLookup() {
+        return configuration.getActionRouter().getRoutes(actionEvent.getActionKey());
+    }
+
+    @Benchmark
+    public byte[] lookupPublishFunctionAndEncoding() {
+        DigitalTwinOutgoingTopic topic = configuration.getOutgoingTopicByActionKey(actionEvent.getActionKey()).orElse(null);
+        return topic.encodePayload(actionEvent);
+    }
+
+    @Benchmark
+    public byte[] binaryPublishFunction() {
+        return binaryTopic.encodePayload(actionEvent);
+    }
+}
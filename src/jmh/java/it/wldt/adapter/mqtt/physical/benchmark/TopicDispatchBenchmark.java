@@ -0,0 +1,55 @@
+package it.wldt.adapter.mqtt.physical.benchmark;
+
+import it.wldt.adapter.mqtt.physical.ingress.IncomingTopicIndex;
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.PropertyIncomingTopic;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a received topic to the matching incoming topics with an increasing number of subscriptions,
+ * a tenth of which are single-level wildcard filters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TopicDispatchBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int topicCount;
+
+    private IncomingTopicIndex index;
+
+    private String[] receivedTopics;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        List<DigitalTwinIncomingTopic> topics = new ArrayList<>(topicCount);
+        int wildcards = Math.max(1, topicCount / 10);
+        for(int i = 0; i < topicCount - wildcards; i++)
+            topics.add(new PropertyIncomingTopic<>("plant/line-" + (i % 100) + "/device-" + i + "/temperature", "t" + i, Double::parseDouble));
+        for(int i = 0; i < wildcards; i++)
+            topics.add(new PropertyIncomingTopic<>("plant/line-" + i + "/+/status", "s" + i, s -> s));
+        index = new IncomingTopicIndex(topics);
+        receivedTopics = new String[1024];
+        for(int i = 0; i < receivedTopics.length; i++)
+            receivedTopics[i] = i % 2 == 0 ?
+                    "plant/line-" + (i % 100) + "/device-" + (i % (topicCount - wildcards)) + "/temperature" :
+                    "plant/line-" + (i % wildcards) + "/device-" + i + "/status";
+    }
+
+    @Benchmark
+    public List<DigitalTwinIncomingTopic> match() {
+        String topic = receivedTopics[next];
+        next = (next + 1) & (receivedTopics.length - 1);
+        return index.match(topic);
+    }
+}
@@ -0,0 +1,113 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulated fleet of devices publishing telemetry at a constant aggregate rate through a dedicated MQTT connection.
+ * Each payload starts with its send time ({@link System#nanoTime()}) followed by a comma and padding up to the
+ * configured size, so the harness can measure the latency within the same JVM.
+ */
+public class DeviceFleet {
+
+    private static final long TICK_MICROS = 5_000;
+
+    private static final int MAX_IN_FLIGHT = 65535;
+
+    private final FleetSpec spec;
+
+    private final MqttAsyncClient client;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private long startNanos;
+
+    private long scheduled;
+
+    private int nextDevice;
+
+    private boolean stopped;
+
+    public DeviceFleet(FleetSpec spec, String brokerConnectionString) throws MqttException {
+        this.spec = spec;
+        this.client = new MqttAsyncClient(brokerConnectionString, "load-fleet-" + spec.getName(), new MemoryPersistence());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "load-fleet-" + spec.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws MqttException {
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(MAX_IN_FLIGHT);
+        client.connect(options).waitForCompletion();
+        startNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::publishDueMessages, 0, TICK_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    public synchronized void stop() {
+        if(stopped)
+            return;
+        stopped = true;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            client.disconnect().waitForCompletion(5000);
+            client.close();
+        } catch (MqttException e) {
+            System.err.printf("Fleet %s - error disconnecting: %s%n", spec.getName(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public FleetSpec getSpec() {
+        return spec;
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    private void publishDueMessages() {
+        long due = (long) ((System.nanoTime() - startNanos) / 1e9 * spec.getMessagesPerSecond());
+        for(; scheduled < due; scheduled++){
+            MqttMessage message = new MqttMessage(payload(System.nanoTime()));
+            message.setQos(spec.getQos());
+            try {
+                client.publish(spec.getDeviceTopic(nextDevice), message);
+                sent.increment();
+            } catch (MqttException e) {
+                failed.increment();
+            }
+            nextDevice = (nextDevice + 1) % spec.getDeviceCount();
+        }
+    }
+
+    private byte[] payload(long sentNanos) {
+        byte[] prefix = (sentNanos + ",").getBytes(StandardCharsets.US_ASCII);
+        byte[] payload = Arrays.copyOf(prefix, Math.max(prefix.length, spec.getPayloadBytes()));
+        Arrays.fill(payload, prefix.length, payload.length, (byte) 'x');
+        return payload;
+    }
+}
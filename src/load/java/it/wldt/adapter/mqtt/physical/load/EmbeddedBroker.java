@@ -0,0 +1,48 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.FluentConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * In-process MQTT broker bound to a local port, without persistence, used by the load harness
+ * instead of an external broker.
+ */
+public class EmbeddedBroker {
+
+    private final String host;
+
+    private final int port;
+
+    private Server server;
+
+    public EmbeddedBroker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        server = new Server();
+        server.startServer(new FluentConfig()
+                .host(host)
+                .port(port)
+                .allowAnonymous()
+                .disablePersistence()
+                .disableTelemetry()
+                .dataPath(Files.createTempDirectory("moquette"))
+                .build());
+    }
+
+    public void stop() {
+        if(server != null){
+            server.stopServer();
+            server = null;
+        }
+    }
+
+    public String getConnectionString() {
+        return String.format("tcp://%s:%d", host, port);
+    }
+}
@@ -0,0 +1,79 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+/**
+ * Description of a fleet of simulated devices, parsed from {@code name:devices:messagesPerSecondPerDevice:payloadBytes[:qos]}.
+ */
+public class FleetSpec {
+
+    private final String name;
+
+    private final int deviceCount;
+
+    private final double messagesPerSecondPerDevice;
+
+    private final int payloadBytes;
+
+    private final int qos;
+
+    public FleetSpec(String name, int deviceCount, double messagesPerSecondPerDevice, int payloadBytes, int qos) {
+        if(name.isEmpty() || name.contains("/") || deviceCount <= 0 || messagesPerSecondPerDevice <= 0 || payloadBytes <= 0 || qos < 0 || qos > 2)
+            throw new IllegalArgumentException("Invalid fleet: " + name);
+        this.name = name;
+        this.deviceCount = deviceCount;
+        this.messagesPerSecondPerDevice = messagesPerSecondPerDevice;
+        this.payloadBytes = payloadBytes;
+        this.qos = qos;
+    }
+
+    public static FleetSpec parse(String spec) {
+        String[] fields = spec.split(":");
+        if(fields.length < 4 || fields.length > 5)
+            throw new IllegalArgumentException("Fleet must be name:devices:messagesPerSecondPerDevice:payloadBytes[:qos], got " + spec);
+        return new FleetSpec(fields[0],
+                Integer.parseInt(fields[1]),
+                Double.parseDouble(fields[2]),
+                Integer.parseInt(fields[3]),
+                fields.length == 5 ? Integer.parseInt(fields[4]) : 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public double getMessagesPerSecondPerDevice() {
+        return messagesPerSecondPerDevice;
+    }
+
+    public double getMessagesPerSecond() {
+        return deviceCount * messagesPerSecondPerDevice;
+    }
+
+    public int getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public int getQos() {
+        return qos;
+    }
+
+    public String getTopicFilter() {
+        return "load/" + name + "/+/telemetry";
+    }
+
+    public String getDeviceTopic(int device) {
+        return "load/" + name + "/device-" + device + "/telemetry";
+    }
+
+    public String getPropertyKey() {
+        return name + ".sentNanos";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d:%s:%d:%d", name, deviceCount, messagesPerSecondPerDevice, payloadBytes, qos);
+    }
+}
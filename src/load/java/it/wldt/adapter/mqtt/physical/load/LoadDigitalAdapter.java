@@ -0,0 +1,66 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+import it.wldt.adapter.digital.DigitalAdapter;
+import it.wldt.core.state.DigitalTwinState;
+import it.wldt.core.state.DigitalTwinStateChange;
+import it.wldt.core.state.DigitalTwinStateEventNotification;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Digital adapter of the load harness, counting the Digital Twin state updates without further processing.
+ */
+public class LoadDigitalAdapter extends DigitalAdapter<Void> {
+
+    private final LongAdder stateUpdates = new LongAdder();
+
+    public LoadDigitalAdapter() {
+        super("load-DA");
+    }
+
+    public long getStateUpdateCount() {
+        return stateUpdates.sum();
+    }
+
+    @Override
+    protected void onStateUpdate(DigitalTwinState newDigitalTwinState, DigitalTwinState previousDigitalTwinState, ArrayList<DigitalTwinStateChange> digitalTwinStateChangeList) {
+        stateUpdates.increment();
+    }
+
+    @Override
+    protected void onEventNotificationReceived(DigitalTwinStateEventNotification<?> digitalTwinStateEventNotification) {
+    }
+
+    @Override
+    public void onAdapterStart() {
+    }
+
+    @Override
+    public void onAdapterStop() {
+    }
+
+    @Override
+    public void onDigitalTwinSync(DigitalTwinState digitalTwinState) {
+    }
+
+    @Override
+    public void onDigitalTwinUnSync(DigitalTwinState digitalTwinState) {
+    }
+
+    @Override
+    public void onDigitalTwinCreate() {
+    }
+
+    @Override
+    public void onDigitalTwinStart() {
+    }
+
+    @Override
+    public void onDigitalTwinStop() {
+    }
+
+    @Override
+    public void onDigitalTwinDestroy() {
+    }
+}
@@ -0,0 +1,293 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapter;
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfiguration;
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfigurationBuilder;
+import it.wldt.adapter.mqtt.physical.metrics.LatencyHistogram;
+import it.wldt.core.engine.DigitalTwin;
+import it.wldt.core.engine.DigitalTwinEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Self-contained load and soak harness: starts an in-process broker, drives a real MqttPhysicalAdapter into a
+ * DigitalTwin with the configured simulated device fleets and reports throughput, latency percentiles, GC activity
+ * and heap usage for each interval and for the whole run.
+ *
+ * The summary is written as a properties file and the process exits with status 1 when the received throughput is below
+ * {@code --min-throughput} or the heap retained after GC grows more than {@code --max-heap-growth-mb}, so that nightly
+ * soak runs can detect throughput regressions and leaks.
+ *
+ * <pre>
+ * --host 127.0.0.1 --port 18830 --duration 60 --warmup 10 --interval 5
+ * --fleet sensors:100:10:128[:qos] (repeatable) --ingress-workers 0 --connections 1 --no-state-update
+ * --min-throughput 0 --max-heap-growth-mb 0 --report build/reports/load/summary.properties
+ * </pre>
+ */
+public class LoadHarness {
+
+    private String host = "127.0.0.1";
+
+    private int port = 18830;
+
+    private int durationSeconds = 60;
+
+    private int warmupSeconds = 10;
+
+    private int intervalSeconds = 5;
+
+    private final List<FleetSpec> fleetSpecs = new ArrayList<>();
+
+    private int ingressWorkers = 0;
+
+    private int connections = 1;
+
+    private boolean updateState = true;
+
+    private double minThroughput = 0;
+
+    private double maxHeapGrowthMb = 0;
+
+    private File report;
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness();
+        harness.parse(args);
+        System.exit(harness.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++){
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--duration": durationSeconds = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmupSeconds = Integer.parseInt(args[++i]); break;
+                case "--interval": intervalSeconds = Integer.parseInt(args[++i]); break;
+                case "--fleet": fleetSpecs.add(FleetSpec.parse(args[++i])); break;
+                case "--ingress-workers": ingressWorkers = Integer.parseInt(args[++i]); break;
+                case "--connections": connections = Integer.parseInt(args[++i]); break;
+                case "--no-state-update": updateState = false; break;
+                case "--min-throughput": minThroughput = Double.parseDouble(args[++i]); break;
+                case "--max-heap-growth-mb": maxHeapGrowthMb = Double.parseDouble(args[++i]); break;
+                case "--report": report = new File(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if(fleetSpecs.isEmpty())
+            fleetSpecs.add(FleetSpec.parse("sensors:100:10:128"));
+        if(durationSeconds <= warmupSeconds || intervalSeconds <= 0)
+            throw new IllegalArgumentException("Duration must be longer than the warm-up and the interval must be positive");
+    }
+
+    private boolean run() throws Exception {
+        EmbeddedBroker broker = new EmbeddedBroker(host, port);
+        broker.start();
+        DigitalTwinEngine engine = new DigitalTwinEngine();
+        List<DeviceFleet> fleets = new ArrayList<>();
+        try {
+            LoadShadowingFunction shadowingFunction = new LoadShadowingFunction(updateState);
+            MqttPhysicalAdapter adapter = new MqttPhysicalAdapter("load-mqtt-pa", buildConfiguration());
+            DigitalTwin digitalTwin = new DigitalTwin("load-digital-twin", shadowingFunction);
+            LoadDigitalAdapter digitalAdapter = new LoadDigitalAdapter();
+            digitalTwin.addPhysicalAdapter(adapter);
+            digitalTwin.addDigitalAdapter(digitalAdapter);
+            engine.addDigitalTwin(digitalTwin);
+            engine.startAll();
+            if(!shadowingFunction.getBound().await(30, TimeUnit.SECONDS))
+                throw new IllegalStateException("Digital Twin not bound within 30 seconds");
+
+            for(FleetSpec spec : fleetSpecs){
+                DeviceFleet fleet = new DeviceFleet(spec, broker.getConnectionString());
+                fleet.start();
+                fleets.add(fleet);
+            }
+            System.out.printf("Load harness - fleets: %s, duration: %ds, warm-up: %ds, ingress workers: %d, connections: %d%n",
+                    fleetSpecs, durationSeconds, warmupSeconds, ingressWorkers, connections);
+            System.out.println("   time    sent/s    recv/s   p50 ms   p99 ms p99.9 ms  heap MB  old MB  gc/s  gc ms");
+
+            RunStats stats = new RunStats();
+            long startNanos = System.nanoTime();
+            long previousSent = 0, previousReceived = 0, previousGcCount = gcCount(), previousGcTime = gcTimeMs();
+            for(int elapsed = intervalSeconds; elapsed <= durationSeconds; elapsed += intervalSeconds){
+                TimeUnit.NANOSECONDS.sleep(startNanos + TimeUnit.SECONDS.toNanos(elapsed) - System.nanoTime());
+                boolean measured = elapsed > warmupSeconds;
+                if(elapsed + intervalSeconds > warmupSeconds)
+                    shadowingFunction.setRecording(true);
+                long sent = fleets.stream().mapToLong(DeviceFleet::getSentCount).sum();
+                long received = shadowingFunction.getReceivedCount();
+                long gcCount = gcCount(), gcTime = gcTimeMs();
+                LatencyHistogram latency = shadowingFunction.rotateIntervalLatency();
+                double receivedPerSecond = (received - previousReceived) / (double) intervalSeconds;
+                long retainedHeap = retainedHeapBytes();
+                System.out.printf("%6ds %9.0f %9.0f %8.2f %8.2f %8.2f %8.1f %7.1f %5.1f %6d%s%n", elapsed,
+                        (sent - previousSent) / (double) intervalSeconds, receivedPerSecond,
+                        millis(latency.getPercentileNanos(0.5)), millis(latency.getPercentileNanos(0.99)), millis(latency.getPercentileNanos(0.999)),
+                        usedHeapBytes() / 1048576.0, retainedHeap / 1048576.0,
+                        (gcCount - previousGcCount) / (double) intervalSeconds, gcTime - previousGcTime,
+                        measured ? "" : "  (warm-up)");
+                if(measured)
+                    stats.onInterval(received - previousReceived, retainedHeap, gcCount - previousGcCount, gcTime - previousGcTime);
+                previousSent = sent;
+                previousReceived = received;
+                previousGcCount = gcCount;
+                previousGcTime = gcTime;
+            }
+
+            fleets.forEach(DeviceFleet::stop);
+            long sent = fleets.stream().mapToLong(DeviceFleet::getSentCount).sum();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(shadowingFunction.getReceivedCount() < sent && System.nanoTime() < deadline)
+                Thread.sleep(50);
+            return summarize(stats, adapter, shadowingFunction, digitalAdapter, sent, fleets.stream().mapToLong(DeviceFleet::getFailedCount).sum());
+        } finally {
+            fleets.forEach(DeviceFleet::stop);
+            engine.stopAll();
+            broker.stop();
+        }
+    }
+
+    private MqttPhysicalAdapterConfiguration buildConfiguration() throws Exception {
+        MqttPhysicalAdapterConfigurationBuilder builder = MqttPhysicalAdapterConfiguration.builder(host, port, "load-mqtt-pa")
+                .setConnectionCount(connections);
+        if(ingressWorkers > 0)
+            builder.setIngressWorkerCount(ingressWorkers);
+        for(FleetSpec spec : fleetSpecs)
+            builder.addPhysicalAssetPropertyAndTopic(spec.getPropertyKey(), 0L, spec.getTopicFilter(),
+                    payload -> Long.parseLong(payload.substring(0, payload.indexOf(','))));
+        return builder.build();
+    }
+
+    private boolean summarize(RunStats stats, MqttPhysicalAdapter adapter, LoadShadowingFunction shadowingFunction,
+                              LoadDigitalAdapter digitalAdapter, long sent, long failed) throws IOException {
+        LatencyHistogram latency = shadowingFunction.getTotalLatency();
+        double throughput = stats.getThroughput(intervalSeconds);
+        double heapGrowthMb = stats.getRetainedHeapGrowth() / 1048576.0;
+        Properties summary = new Properties();
+        summary.setProperty("fleets", fleetSpecs.toString());
+        summary.setProperty("duration.seconds", String.valueOf(durationSeconds));
+        summary.setProperty("warmup.seconds", String.valueOf(warmupSeconds));
+        summary.setProperty("messages.sent", String.valueOf(sent));
+        summary.setProperty("messages.publishFailed", String.valueOf(failed));
+        summary.setProperty("messages.received", String.valueOf(shadowingFunction.getReceivedCount()));
+        summary.setProperty("messages.lost", String.valueOf(Math.max(0, sent - shadowingFunction.getReceivedCount())));
+        summary.setProperty("throughput.perSecond", String.format("%.1f", throughput));
+        summary.setProperty("latency.p50.ms", String.format("%.3f", millis(latency.getPercentileNanos(0.5))));
+        summary.setProperty("latency.p99.ms", String.format("%.3f", millis(latency.getPercentileNanos(0.99))));
+        summary.setProperty("latency.p999.ms", String.format("%.3f", millis(latency.getPercentileNanos(0.999))));
+        summary.setProperty("latency.mean.ms", String.format("%.3f", latency.getCount() > 0 ? millis(latency.getSumNanos() / latency.getCount()) : 0));
+        summary.setProperty("gc.count", String.valueOf(stats.gcCount));
+        summary.setProperty("gc.timeMs", String.valueOf(stats.gcTimeMs));
+        summary.setProperty("heap.retainedGrowth.mb", String.format("%.1f", heapGrowthMb));
+        summary.setProperty("dt.stateUpdates", String.valueOf(digitalAdapter.getStateUpdateCount()));
+        summary.setProperty("adapter.ingressShed", String.valueOf(adapter.getIngressShedCounts().values().stream().mapToLong(Long::longValue).sum()));
+
+        boolean passed = true;
+        if(minThroughput > 0 && throughput < minThroughput){
+            System.out.printf("FAILED - throughput %.1f/s below %.1f/s%n", throughput, minThroughput);
+            passed = false;
+        }
+        if(maxHeapGrowthMb > 0 && heapGrowthMb > maxHeapGrowthMb){
+            System.out.printf("FAILED - retained heap grew %.1f MB, more than %.1f MB%n", heapGrowthMb, maxHeapGrowthMb);
+            passed = false;
+        }
+        summary.setProperty("result", passed ? "PASSED" : "FAILED");
+        System.out.println();
+        summary.stringPropertyNames().stream().sorted().forEach(k -> System.out.printf("%s=%s%n", k, summary.getProperty(k)));
+        if(report != null){
+            if(report.getParentFile() != null)
+                report.getParentFile().mkdirs();
+            try (OutputStream os = new FileOutputStream(report)) {
+                summary.store(os, "MQTT Physical Adapter load run");
+            }
+        }
+        return passed;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTimeMs() {
+        long time = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+
+    private static long usedHeapBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Heap used after the last collection of each pool, the indicator of retained memory used to detect leaks.
+     */
+    private static long retainedHeapBytes() {
+        long used = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if(usage != null)
+                used += usage.getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Aggregates the measured intervals of a run.
+     */
+    private static class RunStats {
+
+        private final List<Long> retainedHeap = new ArrayList<>();
+
+        private long received;
+
+        private int intervals;
+
+        private long gcCount;
+
+        private long gcTimeMs;
+
+        private void onInterval(long received, long retainedHeapBytes, long gcCount, long gcTimeMs) {
+            this.received += received;
+            this.intervals++;
+            this.retainedHeap.add(retainedHeapBytes);
+            this.gcCount += gcCount;
+            this.gcTimeMs += gcTimeMs;
+        }
+
+        private double getThroughput(int intervalSeconds) {
+            return intervals > 0 ? received / (double) (intervals * intervalSeconds) : 0;
+        }
+
+        /**
+         * Growth of the minimum retained heap between the first and the last third of the measured intervals.
+         */
+        private long getRetainedHeapGrowth() {
+            int third = retainedHeap.size() / 3;
+            if(third == 0)
+                return 0;
+            long first = retainedHeap.subList(0, third).stream().mapToLong(Long::longValue).min().orElse(0);
+            long last = retainedHeap.subList(retainedHeap.size() - third, retainedHeap.size()).stream().mapToLong(Long::longValue).min().orElse(0);
+            return last - first;
+        }
+    }
+}
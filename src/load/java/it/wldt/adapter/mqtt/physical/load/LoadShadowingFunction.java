@@ -0,0 +1,140 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+import it.wldt.adapter.digital.event.DigitalActionWldtEvent;
+import it.wldt.adapter.mqtt.physical.metrics.LatencyHistogram;
+import it.wldt.adapter.physical.PhysicalAssetDescription;
+import it.wldt.adapter.physical.event.PhysicalAssetEventWldtEvent;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.adapter.physical.event.PhysicalAssetRelationshipInstanceCreatedWldtEvent;
+import it.wldt.adapter.physical.event.PhysicalAssetRelationshipInstanceDeletedWldtEvent;
+import it.wldt.core.model.ShadowingFunction;
+import it.wldt.core.state.DigitalTwinStateProperty;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Shadowing function of the load harness: it observes all the properties, records the latency from the
+ * device send time carried by each property value and, if enabled, updates the Digital Twin state.
+ */
+public class LoadShadowingFunction extends ShadowingFunction {
+
+    private final boolean updateState;
+
+    private final CountDownLatch bound = new CountDownLatch(1);
+
+    private final LongAdder received = new LongAdder();
+
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    private final AtomicReference<LatencyHistogram> intervalLatency = new AtomicReference<>(new LatencyHistogram());
+
+    private volatile boolean recording;
+
+    public LoadShadowingFunction(boolean updateState) {
+        super("load-shadowing-function");
+        this.updateState = updateState;
+    }
+
+    public CountDownLatch getBound() {
+        return bound;
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Starts or stops recording the latency in the total histogram, e.g. to exclude the warm-up.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Returns the latency histogram of the interval elapsed since the previous call and starts a new one.
+     */
+    public LatencyHistogram rotateIntervalLatency() {
+        return intervalLatency.getAndSet(new LatencyHistogram());
+    }
+
+    @Override
+    protected void onCreate() {
+    }
+
+    @Override
+    protected void onStart() {
+    }
+
+    @Override
+    protected void onStop() {
+    }
+
+    @Override
+    protected void onDigitalTwinBound(Map<String, PhysicalAssetDescription> adaptersPhysicalAssetDescriptionMap) {
+        try {
+            this.digitalTwinStateManager.startStateTransaction();
+            for(PhysicalAssetDescription pad : adaptersPhysicalAssetDescriptionMap.values())
+                for(it.wldt.adapter.physical.PhysicalAssetProperty<?> property : pad.getProperties())
+                    this.digitalTwinStateManager.createProperty(new DigitalTwinStateProperty<>(property.getKey(), property.getInitialValue()));
+            this.digitalTwinStateManager.commitStateTransaction();
+            this.observePhysicalAssetProperties(adaptersPhysicalAssetDescriptionMap.values().stream()
+                    .flatMap(pad -> pad.getProperties().stream())
+                    .collect(Collectors.toList()));
+            notifyShadowingSync();
+            bound.countDown();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void onDigitalTwinUnBound(Map<String, PhysicalAssetDescription> adaptersPhysicalAssetDescriptionMap, String errorMessage) {
+    }
+
+    @Override
+    protected void onPhysicalAdapterBidingUpdate(String adapterId, PhysicalAssetDescription adapterPhysicalAssetDescription) {
+    }
+
+    @Override
+    protected void onPhysicalAssetPropertyVariation(PhysicalAssetPropertyWldtEvent<?> physicalPropertyEventMessage) {
+        long latency = System.nanoTime() - (Long) physicalPropertyEventMessage.getBody();
+        received.increment();
+        intervalLatency.get().record(latency);
+        if(recording)
+            totalLatency.record(latency);
+        if(!updateState)
+            return;
+        try {
+            this.digitalTwinStateManager.startStateTransaction();
+            this.digitalTwinStateManager.updateProperty(new DigitalTwinStateProperty<>(
+                    physicalPropertyEventMessage.getPhysicalPropertyId(), physicalPropertyEventMessage.getBody()));
+            this.digitalTwinStateManager.commitStateTransaction();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void onPhysicalAssetEventNotification(PhysicalAssetEventWldtEvent<?> physicalAssetEventWldtEvent) {
+    }
+
+    @Override
+    protected void onPhysicalAssetRelationshipEstablished(PhysicalAssetRelationshipInstanceCreatedWldtEvent<?> physicalAssetRelationshipWldtEvent) {
+    }
+
+    @Override
+    protected void onPhysicalAssetRelationshipDeleted(PhysicalAssetRelationshipInstanceDeletedWldtEvent<?> physicalAssetRelationshipWldtEvent) {
+    }
+
+    @Override
+    protected void onDigitalActionEvent(DigitalActionWldtEvent<?> digitalActionWldtEvent) {
+    }
+}
@@ -0,0 +1,138 @@
+package it.wldt.adapter.mqtt.physical.load;
+
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapter;
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfiguration;
+import it.wldt.core.engine.DigitalTwin;
+import it.wldt.core.engine.DigitalTwinEngine;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end check of the shared-subscription mode: two MqttPhysicalAdapters, each bound to its own DigitalTwin,
+ * subscribe the same incoming topic in one {@code $share} group, a plain client publishes a sequence of numbered
+ * messages, and the check verifies that both adapters received part of them, that no message was delivered twice
+ * and that together they received all of them.
+ *
+ * The broker must implement MQTT 5 shared subscriptions (e.g. Mosquitto 2, EMQX, HiveMQ): the embedded Moquette 0.17
+ * used by the load harness does not, and treats {@code $share/...} as a plain topic. The process exits with status 1
+ * when the check fails.
+ *
+ * <pre>
+ * --host 127.0.0.1 --port 1883 --messages 1000 --group wldt-check
+ * </pre>
+ */
+public class SharedSubscriptionCheck {
+
+    private static final String TOPIC_PREFIX = "wldt/shared-check/";
+
+    private static final int TOPIC_COUNT = 4;
+
+    private String host = "127.0.0.1";
+
+    private int port = 1883;
+
+    private int messages = 1000;
+
+    private String group = "wldt-check";
+
+    public static void main(String[] args) throws Exception {
+        SharedSubscriptionCheck check = new SharedSubscriptionCheck();
+        check.parse(args);
+        System.exit(check.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++){
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--messages": messages = Integer.parseInt(args[++i]); break;
+                case "--group": group = args[++i]; break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if(messages < 2)
+            throw new IllegalArgumentException("At least 2 messages are needed to observe a split");
+    }
+
+    private boolean run() throws Exception {
+        DigitalTwinEngine engine = new DigitalTwinEngine();
+        Set<Long> first = ConcurrentHashMap.newKeySet();
+        Set<Long> second = ConcurrentHashMap.newKeySet();
+        LoadShadowingFunction firstShadowing = new LoadShadowingFunction(false);
+        LoadShadowingFunction secondShadowing = new LoadShadowingFunction(false);
+        engine.addDigitalTwin(digitalTwin("shared-check-1", firstShadowing, first));
+        engine.addDigitalTwin(digitalTwin("shared-check-2", secondShadowing, second));
+        String serverUri = String.format("tcp://%s:%d", host, port);
+        MqttClient publisher = new MqttClient(serverUri, "shared-check-publisher", new MemoryPersistence());
+        try {
+            engine.startAll();
+            if(!firstShadowing.getBound().await(30, TimeUnit.SECONDS) || !secondShadowing.getBound().await(30, TimeUnit.SECONDS))
+                throw new IllegalStateException("Digital Twins not bound within 30 seconds");
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setCleanSession(true);
+            publisher.connect(options);
+            for(long sequence = 0; sequence < messages; sequence++)
+                publisher.publish(TOPIC_PREFIX + (sequence % TOPIC_COUNT), String.valueOf(sequence).getBytes(StandardCharsets.UTF_8), 1, false);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(first.size() + second.size() < messages && System.nanoTime() < deadline)
+                Thread.sleep(50);
+            // Late duplicates, if any, would arrive shortly after the last expected message
+            Thread.sleep(500);
+            return verify(first, second);
+        } finally {
+            if(publisher.isConnected())
+                publisher.disconnect();
+            publisher.close();
+            engine.stopAll();
+        }
+    }
+
+    private DigitalTwin digitalTwin(String id, LoadShadowingFunction shadowingFunction, Set<Long> received) throws Exception {
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder(host, port, id + "-pa")
+                .setSharedSubscriptionGroup(group)
+                .addPhysicalAssetPropertyAndTopic("sequence", 0L, TOPIC_PREFIX + "+", payload -> {
+                    long sequence = Long.parseLong(payload);
+                    received.add(sequence);
+                    return sequence;
+                })
+                .build();
+        DigitalTwin digitalTwin = new DigitalTwin(id, shadowingFunction);
+        digitalTwin.addPhysicalAdapter(new MqttPhysicalAdapter(id + "-pa", configuration));
+        digitalTwin.addDigitalAdapter(new LoadDigitalAdapter());
+        return digitalTwin;
+    }
+
+    private boolean verify(Set<Long> first, Set<Long> second) {
+        Set<Long> duplicates = new HashSet<>(first);
+        duplicates.retainAll(second);
+        Set<Long> union = new HashSet<>(first);
+        union.addAll(second);
+        boolean passed = true;
+        System.out.printf("Shared subscription check - group: %s, sent: %d, adapter 1: %d, adapter 2: %d, delivered to both: %d, missing: %d%n",
+                group, messages, first.size(), second.size(), duplicates.size(), messages - union.size());
+        if(first.isEmpty() || second.isEmpty()){
+            System.out.println("FAILED: the messages were not split between the adapters");
+            passed = false;
+        }
+        if(!duplicates.isEmpty()){
+            System.out.println("FAILED: messages were delivered to both adapters");
+            passed = false;
+        }
+        if(union.size() != messages){
+            System.out.println("FAILED: the adapters did not receive all the messages");
+            passed = false;
+        }
+        if(passed)
+            System.out.println("PASSED");
+        return passed;
+    }
+}
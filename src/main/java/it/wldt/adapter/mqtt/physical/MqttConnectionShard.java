@@ -0,0 +1,296 @@
+package it.wldt.adapter.mqtt.physical;
+
+import it.wldt.adapter.mqtt.physical.connection.MqttTransport;
+import it.wldt.adapter.mqtt.physical.egress.OutgoingWindow;
+import it.wldt.adapter.mqtt.physical.ingress.IncomingTopicIndex;
+import it.wldt.adapter.mqtt.physical.ingress.ManualAckController;
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One of the MQTT connections opened by a MqttPhysicalAdapter, together with the incoming topics
+ * subscribed through it and its throughput counters.
+ *
+ * Each connection has its own client id, derived from the configured one, and its own incoming topic index,
+ * so messages delivered on a connection are only routed to the incoming topics assigned to it.
+ */
+public class MqttConnectionShard {
+
+    /** The index of the connection. */
+    private final int index;
+
+    /** The transport of the connection. */
+    private final MqttTransport transport;
+
+    /** The incoming topics subscribed through the connection. */
+    private final List<DigitalTwinIncomingTopic> incomingTopics;
+
+    /** The index routing the messages received on the connection to its incoming topics. */
+    private final IncomingTopicIndex incomingTopicIndex;
+
+    /** Whether all the subscriptions of the connection carry their subscription identifier. */
+    private final boolean subscriptionIdsEnabled;
+
+    /** Number of messages received on the connection. */
+    private final LongAdder receivedMessageCount = new LongAdder();
+
+    /** Number of messages published on the connection. */
+    private final LongAdder publishedMessageCount = new LongAdder();
+
+    /** The incoming topics whose last subscription failed. */
+    private final Set<String> failedSubscriptions = ConcurrentHashMap.newKeySet();
+
+    /** Number of publications of the connection whose outcome is not yet known, tracked while the outbox is enabled. */
+    private final AtomicInteger pendingPublishCount = new AtomicInteger();
+
+    /** Monitor notified when no publication of the connection is pending anymore. */
+    private final Object pendingPublishMonitor = new Object();
+
+    /** The controller of the manual acknowledgements of the connection, null if disabled. */
+    private volatile ManualAckController manualAckController;
+
+    /** The window bounding the in-flight publications of the connection, null if disabled. */
+    private volatile OutgoingWindow outgoingWindow;
+
+    /**
+     * Constructs a MqttConnectionShard.
+     *
+     * @param index          The index of the connection.
+     * @param transport      The transport of the connection.
+     * @param incomingTopics The incoming topics subscribed through the connection.
+     * @param subscriptionIdsEnabled Whether all the subscriptions of the connection carry their subscription identifier,
+     *                               i.e. the position of the incoming topic starting from 1.
+     */
+    MqttConnectionShard(int index, MqttTransport transport, List<DigitalTwinIncomingTopic> incomingTopics, boolean subscriptionIdsEnabled) {
+        this.index = index;
+        this.transport = transport;
+        this.incomingTopics = Collections.unmodifiableList(incomingTopics);
+        this.incomingTopicIndex = new IncomingTopicIndex(incomingTopics);
+        this.subscriptionIdsEnabled = subscriptionIdsEnabled;
+    }
+
+    /**
+     * Gets the index of the connection.
+     *
+     * @return The connection index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the client id of the connection.
+     *
+     * @return The client id.
+     */
+    public String getClientId() {
+        return transport.getClientId();
+    }
+
+    /**
+     * Checks whether the connection is established.
+     *
+     * @return true if connected, false otherwise.
+     */
+    public boolean isConnected() {
+        return transport.isConnected();
+    }
+
+    /**
+     * Gets the incoming topics subscribed through the connection.
+     *
+     * @return The list of incoming topics.
+     */
+    public List<DigitalTwinIncomingTopic> getIncomingTopics() {
+        return incomingTopics;
+    }
+
+    /**
+     * Gets the number of messages received on the connection.
+     *
+     * @return The number of received messages.
+     */
+    public long getReceivedMessageCount() {
+        return receivedMessageCount.sum();
+    }
+
+    /**
+     * Gets the number of messages published on the connection.
+     *
+     * @return The number of published messages.
+     */
+    public long getPublishedMessageCount() {
+        return publishedMessageCount.sum();
+    }
+
+    /**
+     * Gets the number of messages received on the connection and not yet acknowledged to the broker.
+     *
+     * @return The number of in-flight messages, 0 if manual acknowledgements are disabled.
+     */
+    public int getInFlightMessageCount() {
+        ManualAckController controller = this.manualAckController;
+        return controller != null ? controller.getInFlightCount() : 0;
+    }
+
+    /**
+     * Gets the number of publications of the connection started and not yet completed by the broker.
+     *
+     * @return The number of in-flight publications, 0 if the outgoing window is disabled.
+     */
+    public int getInFlightPublishCount() {
+        OutgoingWindow window = this.outgoingWindow;
+        return window != null ? window.getInFlightCount() : 0;
+    }
+
+    /**
+     * Gets the incoming topics of the connection whose last subscription has been rejected by the broker or has failed.
+     *
+     * @return The set of incoming topics.
+     */
+    public Set<String> getFailedSubscriptions() {
+        return Collections.unmodifiableSet(failedSubscriptions);
+    }
+
+    /**
+     * Gets the transport of the connection.
+     *
+     * @return The transport.
+     */
+    MqttTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Gets the incoming topics matched by a received message, through its subscription identifiers when all the
+     * subscriptions of the connection carry one, otherwise through the incoming topic index of the connection, since
+     * the identifiers of a message would not report the subscriptions without identifier it matches.
+     *
+     * @param receivedTopic   The topic on which the message has been received.
+     * @param subscriptionIds The subscription identifiers carried by the message.
+     * @return The list of matching incoming topics.
+     */
+    List<DigitalTwinIncomingTopic> matchIncomingTopics(String receivedTopic, List<Integer> subscriptionIds) {
+        if(!subscriptionIdsEnabled || subscriptionIds.isEmpty())
+            return incomingTopicIndex.match(receivedTopic);
+        if(subscriptionIds.size() == 1){
+            int id = subscriptionIds.get(0);
+            if(id > 0 && id <= incomingTopics.size())
+                return Collections.singletonList(incomingTopics.get(id - 1));
+            return incomingTopicIndex.match(receivedTopic);
+        }
+        List<DigitalTwinIncomingTopic> topics = new ArrayList<>(subscriptionIds.size());
+        for(int id : subscriptionIds)
+            if(id > 0 && id <= incomingTopics.size())
+                topics.add(incomingTopics.get(id - 1));
+        return topics;
+    }
+
+    /**
+     * Gets the controller of the manual acknowledgements of the connection.
+     *
+     * @return The controller, null if manual acknowledgements are disabled.
+     */
+    ManualAckController getManualAckController() {
+        return manualAckController;
+    }
+
+    /**
+     * Sets the controller of the manual acknowledgements of the connection.
+     *
+     * @param manualAckController The controller, null to disable manual acknowledgements.
+     */
+    void setManualAckController(ManualAckController manualAckController) {
+        this.manualAckController = manualAckController;
+    }
+
+    /**
+     * Gets the window bounding the in-flight publications of the connection.
+     *
+     * @return The window, null if disabled.
+     */
+    OutgoingWindow getOutgoingWindow() {
+        return outgoingWindow;
+    }
+
+    /**
+     * Sets the window bounding the in-flight publications of the connection.
+     *
+     * @param outgoingWindow The window, null to disable it.
+     */
+    void setOutgoingWindow(OutgoingWindow outgoingWindow) {
+        this.outgoingWindow = outgoingWindow;
+    }
+
+    /**
+     * Records the outcome of the subscription to an incoming topic.
+     *
+     * @param topic      The incoming topic.
+     * @param subscribed true if subscribed, false if the subscription failed.
+     */
+    void onSubscriptionResult(DigitalTwinIncomingTopic topic, boolean subscribed) {
+        if(subscribed)
+            failedSubscriptions.remove(topic.getTopic());
+        else
+            failedSubscriptions.add(topic.getTopic());
+    }
+
+    /**
+     * Counts a message received on the connection.
+     */
+    void onMessageReceived() {
+        receivedMessageCount.increment();
+    }
+
+    /**
+     * Counts a message published on the connection.
+     */
+    void onMessagePublished() {
+        publishedMessageCount.increment();
+    }
+
+    /**
+     * Counts a publication of the connection whose outcome is not yet known.
+     */
+    void onPublishPending() {
+        pendingPublishCount.incrementAndGet();
+    }
+
+    /**
+     * Counts the outcome of a pending publication of the connection, which has been published, stored or failed.
+     */
+    void onPublishSettled() {
+        if(pendingPublishCount.decrementAndGet() == 0)
+            synchronized (pendingPublishMonitor) {
+                pendingPublishMonitor.notifyAll();
+            }
+    }
+
+    /**
+     * Waits for the outcome of the pending publications of the connection.
+     *
+     * @param timeoutMs The maximum time to wait in milliseconds.
+     * @return true if no publication is pending, false if the timeout elapsed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    boolean awaitPendingPublishes(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (pendingPublishMonitor) {
+            while(pendingPublishCount.get() > 0){
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if(remainingMs <= 0)
+                    return false;
+                pendingPublishMonitor.wait(remainingMs);
+            }
+        }
+        return true;
+    }
+}
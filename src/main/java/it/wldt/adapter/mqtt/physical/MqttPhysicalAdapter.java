@@ -1,6 +1,30 @@
 package it.wldt.adapter.mqtt.physical;
 
+import it.wldt.adapter.mqtt.physical.connection.InitialConnector;
+import it.wldt.adapter.mqtt.physical.connection.Mqtt3Transport;
+import it.wldt.adapter.mqtt.physical.connection.Mqtt5Transport;
+import it.wldt.adapter.mqtt.physical.connection.MqttOperationCallback;
+import it.wldt.adapter.mqtt.physical.connection.MqttProtocolVersion;
+import it.wldt.adapter.mqtt.physical.connection.MqttTransport;
+import it.wldt.adapter.mqtt.physical.connection.MqttTransportListener;
+import it.wldt.adapter.mqtt.physical.connection.SubscriptionBatcher;
+import it.wldt.adapter.mqtt.physical.egress.ActionOutbox;
+import it.wldt.adapter.mqtt.physical.egress.ActionPublishListener;
+import it.wldt.adapter.mqtt.physical.egress.ActionRoute;
+import it.wldt.adapter.mqtt.physical.egress.OutboxRecord;
+import it.wldt.adapter.mqtt.physical.egress.OutgoingWindow;
+import it.wldt.adapter.mqtt.physical.ingress.IngressMessage;
+import it.wldt.adapter.mqtt.physical.ingress.ManualAckController;
+import it.wldt.adapter.mqtt.physical.ingress.MqttIngressPipeline;
+import it.wldt.adapter.mqtt.physical.ingress.PropertyConflator;
+import it.wldt.adapter.mqtt.physical.ingress.ReportByExceptionFilter;
+import it.wldt.adapter.mqtt.physical.metrics.LatencyStage;
+import it.wldt.adapter.mqtt.physical.metrics.MetricsHttpServer;
+import it.wldt.adapter.mqtt.physical.metrics.MqttAdapterMetrics;
+import it.wldt.adapter.mqtt.physical.metrics.TopicMetrics;
+import it.wldt.adapter.mqtt.physical.metrics.TraceMetadata;
 import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.WldtEventEmitter;
 import it.wldt.adapter.mqtt.physical.topic.outgoing.DigitalTwinOutgoingTopic;
 import it.wldt.adapter.physical.ConfigurablePhysicalAdapter;
 import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
@@ -13,7 +37,23 @@ import org.eclipse.paho.client.mqttv3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of a physical adapter for managing physical assets using the MQTT protocol.
@@ -29,21 +69,73 @@ public class MqttPhysicalAdapter extends ConfigurablePhysicalAdapter<MqttPhysica
 
     private static final Logger logger = LoggerFactory.getLogger(MqttPhysicalAdapter.class);
 
-    /** The MQTT client used for communication with the broker. */
-    private final IMqttClient mqttClient;
+    /** Maximum time in milliseconds an action waits for the pending publications of its connection before being stored. */
+    private static final long OUTBOX_ORDERING_TIMEOUT_MS = 5000;
+
+    /** Delay in milliseconds before retrying a failed first connection, doubled at each failure as Paho does when reconnecting. */
+    private static final long INITIAL_CONNECT_RETRY_DELAY_MS = 1000;
+
+    /** Maximum delay in milliseconds between two retries of a failed first connection, the Paho maximum reconnect delay. */
+    private static final long MAX_CONNECT_RETRY_DELAY_MS = 128000;
+
+    /** The MQTT connections used for communication with the broker. */
+    private final List<MqttConnectionShard> connections;
+
+    /** The asynchronous ingress pipeline, null when messages are decoded on the MQTT client callback thread. */
+    private volatile MqttIngressPipeline ingressPipeline;
+
+    /** The emitter receiving the WldtEvents produced by the subscribe functions, filtering them when configured. */
+    private final WldtEventEmitter wldtEventEmitter;
+
+    /** The property conflators of the conflated incoming topics. */
+    private final Map<DigitalTwinIncomingTopic, PropertyConflator> propertyConflators = new HashMap<>();
+
+    /** The scheduler running the periodic tasks and the connection retries of the adapter, created on start. */
+    private ScheduledExecutorService scheduler;
+
+    /** The connectors establishing the first connection of each MQTT connection, retrying it on failure. */
+    private final List<InitialConnector> initialConnectors = new ArrayList<>();
+
+    /** The metrics registry of the adapter. */
+    private final MqttAdapterMetrics metrics;
+
+    /** The HTTP endpoint exposing the metrics, null when disabled or stopped. */
+    private MetricsHttpServer metricsHttpServer;
+
+    /** The outbox storing the actions while the broker is unreachable, null when disabled or stopped. */
+    private volatile ActionOutbox actionOutbox;
+
+    /** The executor replaying the actions stored in the outbox, null when the outbox is disabled or stopped. */
+    private volatile ExecutorService outboxReplayExecutor;
+
+    /** Whether a replay of the outbox is scheduled or running. */
+    private final AtomicBoolean outboxReplayScheduled = new AtomicBoolean(false);
+
+    /** The latency trace of the incoming message being handled by the current thread. */
+    private final ThreadLocal<IngressTrace> ingressTrace = ThreadLocal.withInitial(IngressTrace::new);
+
+    /** The emitter attaching the latency tracing metadata to the produced events before forwarding them. */
+    private final WldtEventEmitter tracingEmitter = this::emitTracedEvent;
 
     /**
      * Constructs an instance of MqttPhysicalAdapter.
      *
      * @param id            The identifier for the adapter.
      * @param configuration The configuration for the MQTT physical adapter.
-     * @throws MqttException If there is an issue creating the MQTT client.
+     * @throws MqttException If there is an issue creating the MQTT clients.
      */
     public MqttPhysicalAdapter(String id, MqttPhysicalAdapterConfiguration configuration) throws MqttException {
         super(id, configuration);
-        this.mqttClient = new MqttClient(getConfiguration().getBrokerConnectionString(),
-                getConfiguration().getClientId(),
-                getConfiguration().getPersistence());
+        this.metrics = new MqttAdapterMetrics(id);
+        this.connections = Collections.unmodifiableList(createConnections());
+        WldtEventEmitter publishEmitter = this::publishWldtEvent;
+        this.wldtEventEmitter = getConfiguration().isPropertyFilteringEnabled() ?
+                new ReportByExceptionFilter(publishEmitter, getConfiguration().getPropertyFilters(), getConfiguration().getDefaultPropertyFilter()) :
+                publishEmitter;
+        getConfiguration().getIncomingTopics().stream()
+                .filter(DigitalTwinIncomingTopic::isConflated)
+                .forEach(t -> propertyConflators.put(t, new PropertyConflator(this.wldtEventEmitter, t.isConflationOnReady() ? 0 : t.getConflationIntervalMs())));
+        registerMetricGauges();
     }
 
     /**
@@ -54,9 +146,60 @@ public class MqttPhysicalAdapter extends ConfigurablePhysicalAdapter<MqttPhysica
     @Override
     public void onIncomingPhysicalAction(PhysicalAssetActionWldtEvent<?> physicalActionEvent) {
         logger.info("MQTT Physical Adapter received action event: {}", physicalActionEvent);
-        getConfiguration()
-                .getOutgoingTopicByActionKey(physicalActionEvent.getActionKey())
-                .ifPresent(t -> publishOnTopic(t, t.applyPublishFunction(physicalActionEvent)));
+        long receivedNanos = System.nanoTime();
+        List<ActionRoute> routes = getConfiguration().getActionRouter().getRoutes(physicalActionEvent.getActionKey());
+        for(int i = 0; i < routes.size(); i++){
+            ActionRoute route = routes.get(i);
+            if(!route.matches(physicalActionEvent))
+                continue;
+            long encodeStartNanos = System.nanoTime();
+            DigitalTwinOutgoingTopic topic = route.getTopic();
+            String topicName = topic.resolveTopic(physicalActionEvent);
+            byte[] payload = topic.encodePayload(physicalActionEvent);
+            metrics.outgoingTopic(topic.getTopic()).recordLatency(LatencyStage.ENCODE, System.nanoTime() - encodeStartNanos);
+            publishOnTopic(route, topicName, payload, physicalActionEvent, receivedNanos);
+        }
+    }
+
+    /**
+     * Gets the number of messages discarded by the overload policies of the ingress pipeline, indexed by incoming topic.
+     *
+     * @return The map of discarded messages, empty if the ingress pipeline is not running.
+     */
+    public Map<String, Long> getIngressShedCounts() {
+        MqttIngressPipeline pipeline = this.ingressPipeline;
+        return pipeline != null ? pipeline.getShedCounts() : Collections.emptyMap();
+    }
+
+    /**
+     * Gets the number of received messages not yet acknowledged to the broker.
+     *
+     * @return The number of in-flight messages, 0 if manual acknowledgements are disabled.
+     */
+    public int getInFlightMessageCount() {
+        int count = 0;
+        for(MqttConnectionShard connection : connections)
+            count += connection.getInFlightMessageCount();
+        return count;
+    }
+
+    /**
+     * Gets the MQTT connections of the adapter, with their incoming topics and throughput counters.
+     *
+     * @return The list of connections.
+     */
+    public List<MqttConnectionShard> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Gets the metrics registry of the adapter, covering the ingress and egress of each topic,
+     * the event bus publication and the connections.
+     *
+     * @return The metrics registry.
+     */
+    public MqttAdapterMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -64,81 +207,833 @@ public class MqttPhysicalAdapter extends ConfigurablePhysicalAdapter<MqttPhysica
      */
     @Override
     public void onAdapterStart() {
+        startScheduledTasks();
+        startIngressPipeline();
+        startMetricsHttpServer();
+        openActionOutbox();
+        AtomicInteger pendingConnections = new AtomicInteger(connections.size());
+        for(MqttConnectionShard connection : connections){
+            if(getConfiguration().isOutgoingWindowEnabled())
+                connection.setOutgoingWindow(new OutgoingWindow(getConfiguration().getOutgoingInFlightWindow()));
+            if(getConfiguration().isManualAcksEnabled())
+                connection.setManualAckController(new ManualAckController(connection.getTransport()::messageArrivedComplete,
+                        getConfiguration().getMaxInFlightMessages()));
+            connectToMqttBroker(connection, () -> subscribeToIncomingTopics(connection, () -> {
+                if(pendingConnections.decrementAndGet() == 0)
+                    notifyAdapterBound();
+            }));
+        }
+    }
+
+    /**
+     * Notifies the binding of the adapter once all its connections are established.
+     */
+    private void notifyAdapterBound() {
         try {
-            connectToMqttBroker();
-            getConfiguration().getIncomingTopics().forEach(this::subscribeClientToDigitalTwinIncomingTopic);
-            logger.info("MQTT Physical Adapter - MQTT client subscribed to incoming topics");
+            logger.info("MQTT Physical Adapter - MQTT clients subscribed to incoming topics");
             notifyPhysicalAdapterBound(getConfiguration().getPhysicalAssetDescription());
         } catch (PhysicalAdapterException | EventBusException e) {
-            e.printStackTrace();
+            logger.error("MQTT Physical Adapter - Error notifying the adapter binding", e);
         }
     }
 
     /**
-     * Disconnects the MQTT client from the broker upon stopping the adapter.
+     * Disconnects the MQTT clients from the broker upon stopping the adapter.
      */
     @Override
     public void onAdapterStop() {
+        initialConnectors.forEach(InitialConnector::cancel);
+        initialConnectors.clear();
+        for(MqttConnectionShard connection : connections){
+            OutgoingWindow window = connection.getOutgoingWindow();
+            if(window != null)
+                window.close();
+            try {
+                connection.getTransport().disconnect();
+            } catch (MqttException e) {
+                logger.warn("MQTT Physical Adapter - Error disconnecting MQTT client - clientId: {}", connection.getClientId(), e);
+            }
+        }
+        stopIngressPipeline();
+        connections.forEach(c -> {
+            c.setManualAckController(null);
+            c.setOutgoingWindow(null);
+        });
+        stopScheduledTasks();
+        stopMetricsHttpServer();
+        closeActionOutbox();
+    }
+
+    /**
+     * Publishes the message of an action on the specified MQTT topic. When the outgoing window is enabled the publication
+     * is pipelined: the calling thread waits only for a free slot in the window of the connection, and the outcome is
+     * reported asynchronously. When the outbox is enabled, actions are stored instead while the connection is not
+     * available or older actions are still stored.
+     *
+     * @param route         The route of the action.
+     * @param topicName     The MQTT topic to publish on, resolved for the action.
+     * @param payload       The message payload.
+     * @param action        The action being published.
+     * @param receivedNanos The time at which the action has been received.
+     */
+    private void publishOnTopic(ActionRoute route, String topicName, byte[] payload, PhysicalAssetActionWldtEvent<?> action, long receivedNanos){
+        MqttConnectionShard connection = connections.get((topicName.hashCode() & 0x7fffffff) % connections.size());
+        OutgoingWindow window = connection.getOutgoingWindow();
+        ActionPublication publication = new ActionPublication(connection, route, topicName, payload, action, receivedNanos);
+        ActionOutbox outbox = this.actionOutbox;
+        if(outbox != null && (!connection.isConnected() || !outbox.isEmpty())){
+            // Queued behind the stored actions, and behind the pending publications stored if they fail, to preserve the order
+            awaitPendingPublishes(connection);
+            if(!publication.store())
+                publication.fail(new IOException("Action cannot be stored in the outbox"));
+            return;
+        }
         try {
-            mqttClient.disconnect();
+            if(window != null && !window.acquire()){
+                publication.onFailure(new MqttException(MqttException.REASON_CODE_CLIENT_DISCONNECTING));
+                return;
+            }
+            publication.start(window);
+            MqttMessage msg = new MqttMessage(payload);
+            msg.setQos(route.getQos());
+            msg.setRetained(route.isRetained());
+            publication.topicMetrics.onMessage(msg.getPayload().length);
+            if(window != null){
+                connection.getTransport().publish(topicName, msg, route.getMessageExpiryInterval(), publication);
+                return;
+            }
+            connection.getTransport().publish(topicName, msg, route.getMessageExpiryInterval(), null);
+            publication.onSuccess();
         } catch (MqttException e) {
-            e.printStackTrace();
+            publication.onFailure(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            publication.onFailure(e);
         }
     }
 
     /**
-     * Publishes a message on the specified MQTT topic.
+     * Waits for the outcome of the pending publications of a connection before an action is stored in the outbox,
+     * so that a publication failing because the connection is lost is stored before the actions issued after it.
      *
-     * @param topic   The MQTT topic to publish on.
-     * @param payload The message payload.
+     * @param connection The connection of the action.
      */
-    private void publishOnTopic(DigitalTwinOutgoingTopic topic, String payload){
+    private void awaitPendingPublishes(MqttConnectionShard connection) {
         try {
-            MqttMessage msg = new MqttMessage(payload.getBytes());
-            msg.setQos(topic.getQos());
-            msg.setRetained(topic.isRetained());
-            mqttClient.publish(topic.getTopic(), msg);
-            logger.info("Physical Adapter - MQTT client published message: {} on topic: {}", payload, topic.getTopic());
-        } catch (MqttException e) {
+            if(!connection.awaitPendingPublishes(OUTBOX_ORDERING_TIMEOUT_MS))
+                logger.warn("MQTT Physical Adapter - Publications still pending on connection {}, stored actions may be replayed out of order",
+                        connection.getIndex());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Subscribes the MQTT client of a connection to the DigitalTwinIncomingTopics assigned to it, through SUBSCRIBE
+     * packets batched according to the configuration. Received messages are delivered to the client callback and
+     * routed through the incoming topic index of the connection. The topics rejected by the broker are logged,
+     * counted and reported by the connection. In blocking mode, the method returns once all the subscriptions are completed.
+     *
+     * @param connection   The connection.
+     * @param onSubscribed The task run once all the subscriptions are completed, successfully or not, if any.
+     */
+    private void subscribeToIncomingTopics(MqttConnectionShard connection, Runnable onSubscribed) {
+        List<DigitalTwinIncomingTopic> topics = connection.getIncomingTopics();
+        String[] filters = new String[topics.size()];
+        int[] qos = new int[topics.size()];
+        int[] subscriptionIds = new int[topics.size()];
+        for(int i = 0; i < topics.size(); i++){
+            filters[i] = getConfiguration().getSubscriptionFilter(topics.get(i));
+            qos[i] = topics.get(i).getQos();
+            // The subscription identifier of an incoming topic is its position starting from 1
+            subscriptionIds[i] = i + 1;
+        }
+        boolean blocking = !getConfiguration().isNonBlockingFlag();
+        CountDownLatch completed = new CountDownLatch(1);
+        Set<Integer> failed = ConcurrentHashMap.newKeySet();
+        new SubscriptionBatcher(connection.getTransport(), getConfiguration().getSubscribeBatchSize(), getConfiguration().getMaxInFlightSubscribeBatches())
+                .subscribe(filters, qos, subscriptionIds, new SubscriptionBatcher.Listener() {
+                    @Override
+                    public void onSubscriptionFailed(int index, int reasonCode, Throwable cause) {
+                        failed.add(index);
+                        metrics.onSubscriptionFailed();
+                        connection.onSubscriptionResult(topics.get(index), false);
+                        logger.error("MQTT Physical Adapter - Failed to subscribe to topic {} - clientId: {} - reason code: {}",
+                                filters[index], connection.getClientId(), reasonCode, cause);
+                    }
+
+                    @Override
+                    public void onComplete(int failedCount) {
+                        for(int i = 0; i < topics.size(); i++)
+                            if(!failed.contains(i))
+                                connection.onSubscriptionResult(topics.get(i), true);
+                        logger.info("MQTT Physical Adapter - MQTT client subscribed to {} of {} incoming topics - clientId: {}",
+                                topics.size() - failedCount, topics.size(), connection.getClientId());
+                        completed.countDown();
+                        if(!blocking && onSubscribed != null)
+                            onSubscribed.run();
+                    }
+                });
+        if(!blocking || onSubscribed == null)
+            return;
+        try {
+            completed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        onSubscribed.run();
+    }
+
+    /**
+     * Routes a received message to the matching incoming topics, handing it over to the ingress pipeline,
+     * if enabled, or processing it directly.
+     *
+     * @param connection      The connection on which the message has been received.
+     * @param receivedTopic   The topic on which the message has been received.
+     * @param message         The received message.
+     * @param subscriptionIds The subscription identifiers carried by the message, empty if not available.
+     * @param arrivalNanos    The time at which the message has been received.
+     * @throws InterruptedException If interrupted while waiting for space in the ingress pipeline.
+     */
+    private void dispatchIncomingMessage(MqttConnectionShard connection, String receivedTopic, MqttMessage message, List<Integer> subscriptionIds, long arrivalNanos) throws InterruptedException {
+        List<DigitalTwinIncomingTopic> matchingTopics = connection.matchIncomingTopics(receivedTopic, subscriptionIds);
+        ManualAckController ackController = connection.getManualAckController();
+        Runnable completionCallback = ackController != null ? ackController.track(message, Math.max(matchingTopics.size(), 1)) : null;
+        if(matchingTopics.isEmpty()){
+            logger.debug("MQTT Physical Adapter - No incoming topic matching received topic: {}", receivedTopic);
+            metrics.onUnmatchedMessage();
+            if(completionCallback != null)
+                completionCallback.run();
+            return;
+        }
+        for(int i = 0; i < matchingTopics.size(); i++){
+            metrics.incomingTopic(matchingTopics.get(i).getTopic()).onMessage(message.getPayload().length);
+            IngressMessage ingressMessage = new IngressMessage(matchingTopics.get(i), receivedTopic, message, arrivalNanos);
+            ingressMessage.setCompletionCallback(completionCallback);
+            MqttIngressPipeline pipeline = this.ingressPipeline;
+            if(pipeline != null)
+                pipeline.submit(ingressMessage);
+            else {
+                try {
+                    handleIngressMessage(ingressMessage);
+                } finally {
+                    ingressMessage.complete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the subscribe function of the related DigitalTwinIncomingTopic to the received message
+     * and publishes the resulting events, tracing the latency of each stage from the message arrival.
+     *
+     * @param ingressMessage The received message.
+     */
+    private void handleIngressMessage(IngressMessage ingressMessage) {
+        DigitalTwinIncomingTopic incomingTopic = ingressMessage.getIncomingTopic();
+        TopicMetrics topicMetrics = metrics.incomingTopic(incomingTopic.getTopic());
+        PropertyConflator conflator = propertyConflators.isEmpty() ? null : propertyConflators.get(incomingTopic);
+        IngressTrace trace = ingressTrace.get();
+        long startNanos = System.nanoTime();
+        trace.begin(incomingTopic.getTopic(), topicMetrics, ingressMessage.getArrivalNanos(), startNanos,
+                conflator != null ? conflatingEmitter(conflator, ingressMessage) : this.wldtEventEmitter);
+        try {
+            topicMetrics.recordLatency(LatencyStage.QUEUE, startNanos - ingressMessage.getArrivalNanos());
+            incomingTopic.applySubscribeFunction(ingressMessage, getConfiguration().isLatencyTraceMetadataFlag() ? tracingEmitter : trace.emitter);
+            topicMetrics.recordLatency(LatencyStage.DECODE, System.nanoTime() - startNanos - trace.eventBusNanos);
+        } catch (EventBusException | RuntimeException e) {
+            topicMetrics.onFailure();
+            logger.error("MQTT Physical Adapter - Error handling message received on topic {}: {}", ingressMessage.getTopic(), e.getMessage(), e);
+        } finally {
+            trace.end();
+        }
+    }
+
+    /**
+     * Creates the emitter handing the events produced from a message over to the conflator of its topic. When the
+     * message is acknowledged manually, its acknowledgement is retained until its events are forwarded by the conflator.
+     *
+     * @param conflator      The conflator of the incoming topic.
+     * @param ingressMessage The message being handled.
+     * @return The emitter.
+     */
+    private static WldtEventEmitter conflatingEmitter(PropertyConflator conflator, IngressMessage ingressMessage) {
+        return event -> conflator.emit(event, ingressMessage.retainCompletion());
+    }
+
+    /**
+     * Attaches the latency tracing metadata of the incoming message being handled to an event and forwards it.
+     *
+     * @param wldtEvent The produced event.
+     */
+    private void emitTracedEvent(WldtEvent<?> wldtEvent) {
+        IngressTrace trace = ingressTrace.get();
+        wldtEvent.putMetadata(TraceMetadata.ARRIVAL_NANOS, trace.arrivalNanos);
+        wldtEvent.putMetadata(TraceMetadata.QUEUE_NANOS, trace.startNanos - trace.arrivalNanos);
+        wldtEvent.putMetadata(TraceMetadata.INCOMING_TOPIC, trace.topic);
+        trace.emitter.emit(wldtEvent);
+    }
+
+    /**
+     * Publishes a WldtEvent produced by a subscribe function on the event bus according to its type.
+     *
+     * @param wldtEvent The WldtEvent to publish.
+     */
+    private void publishWldtEvent(WldtEvent<?> wldtEvent) {
+        long startNanos = System.nanoTime();
+        try {
+            if(wldtEvent instanceof PhysicalAssetEventWldtEvent){
+                publishPhysicalAssetEventWldtEvent((PhysicalAssetEventWldtEvent<?>) wldtEvent);
+            }else if(wldtEvent instanceof PhysicalAssetPropertyWldtEvent){
+                publishPhysicalAssetPropertyWldtEvent((PhysicalAssetPropertyWldtEvent<?>) wldtEvent);
+            }
+            long publishedNanos = System.nanoTime();
+            metrics.onEventBusPublish(publishedNanos - startNanos);
+            traceEventDelivery(wldtEvent, startNanos, publishedNanos);
+        } catch (EventBusException e) {
+            metrics.onEventBusFailure();
             e.printStackTrace();
         }
     }
 
     /**
-     * Subscribes the MQTT client to the specified DigitalTwinIncomingTopic.
+     * Records the event bus and end-to-end latency of an event produced from an incoming message, either handled by
+     * the current thread or carrying the latency tracing metadata. Events forwarded later by the conflation
+     * stage without metadata cannot be related to their message and are not traced.
+     *
+     * @param wldtEvent      The published event.
+     * @param startNanos     The time at which the publication started.
+     * @param publishedNanos The time at which the publication completed.
+     */
+    private void traceEventDelivery(WldtEvent<?> wldtEvent, long startNanos, long publishedNanos) {
+        IngressTrace trace = ingressTrace.get();
+        if(trace.topicMetrics != null){
+            trace.eventBusNanos += publishedNanos - startNanos;
+            trace.topicMetrics.recordLatency(LatencyStage.EVENT_BUS, publishedNanos - startNanos);
+            trace.topicMetrics.recordLatency(LatencyStage.END_TO_END, publishedNanos - trace.arrivalNanos);
+            return;
+        }
+        long arrivalNanos = TraceMetadata.getArrivalNanos(wldtEvent);
+        Object topic = arrivalNanos >= 0 ? wldtEvent.getMetadata().get(TraceMetadata.INCOMING_TOPIC) : null;
+        if(topic == null)
+            return;
+        TopicMetrics topicMetrics = metrics.incomingTopic(topic.toString());
+        topicMetrics.recordLatency(LatencyStage.EVENT_BUS, publishedNanos - startNanos);
+        topicMetrics.recordLatency(LatencyStage.END_TO_END, publishedNanos - arrivalNanos);
+    }
+
+    /**
+     * Starts the scheduler and the periodic tasks of the adapter, if any.
+     */
+    private void startScheduledTasks() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, String.format("%s-scheduler", getId()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        propertyConflators.values().forEach(c -> c.start(scheduler));
+    }
+
+    /**
+     * Stops the periodic tasks of the adapter, forwarding the pending conflated values, and the scheduler, discarding
+     * the pending connection retries.
+     */
+    private void stopScheduledTasks() {
+        propertyConflators.values().forEach(PropertyConflator::stop);
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Registers the gauges reading the state of the ingress pipeline and of the connections in the metrics registry.
+     */
+    private void registerMetricGauges() {
+        metrics.registerGauge("ingress_queued_messages", "Messages waiting in the ingress pipeline.", () -> {
+            MqttIngressPipeline pipeline = this.ingressPipeline;
+            return pipeline != null ? pipeline.getQueuedMessageCount() : 0;
+        });
+        metrics.registerGauge("ingress_shed_messages", "Messages discarded by the overload policies since the pipeline start.", () -> {
+            MqttIngressPipeline pipeline = this.ingressPipeline;
+            return pipeline != null ? pipeline.getShedCount() : 0;
+        });
+        metrics.registerGauge("inflight_messages", "Received messages not yet acknowledged to the broker.", this::getInFlightMessageCount);
+        metrics.registerGauge("connected_clients", "MQTT connections currently established.",
+                () -> connections.stream().filter(MqttConnectionShard::isConnected).count());
+        if(getConfiguration().isActionOutboxEnabled()){
+            metrics.registerGauge("outbox_stored_actions", "Actions stored in the outbox waiting for the broker.", () -> {
+                ActionOutbox outbox = this.actionOutbox;
+                return outbox != null ? outbox.getPendingCount() : 0;
+            });
+            metrics.registerGauge("outbox_stored_bytes", "Bytes used by the actions stored in the outbox.", () -> {
+                ActionOutbox outbox = this.actionOutbox;
+                return outbox != null ? outbox.getPendingBytes() : 0;
+            });
+            metrics.registerGauge("outbox_expired_actions", "Stored actions discarded because expired since the outbox was opened.", () -> {
+                ActionOutbox outbox = this.actionOutbox;
+                return outbox != null ? outbox.getExpiredCount() : 0;
+            });
+        }
+    }
+
+    /**
+     * Starts the HTTP endpoint exposing the metrics, if enabled in the configuration.
+     */
+    private void startMetricsHttpServer() {
+        if(!getConfiguration().isMetricsHttpEndpointEnabled())
+            return;
+        metricsHttpServer = new MetricsHttpServer(metrics, getConfiguration().getMetricsHttpHost(), getConfiguration().getMetricsHttpPort());
+        try {
+            metricsHttpServer.start();
+            logger.info("MQTT Physical Adapter - Metrics exposed on port {}{}", metricsHttpServer.getPort(), MetricsHttpServer.METRICS_PATH);
+        } catch (IOException e) {
+            logger.error("MQTT Physical Adapter - Error starting metrics endpoint: {}", e.getMessage());
+            metricsHttpServer = null;
+        }
+    }
+
+    /**
+     * Opens the outbox storing the actions while the broker is unreachable, recovering the actions stored before a restart.
+     */
+    private void openActionOutbox() {
+        if(!getConfiguration().isActionOutboxEnabled())
+            return;
+        try {
+            actionOutbox = new ActionOutbox(getConfiguration().getActionOutboxDirectory(), getConfiguration().getActionOutboxSegmentSize(),
+                    getConfiguration().getActionOutboxMaxSizeBytes(), getConfiguration().getActionOutboxTtlMillis(),
+                    getConfiguration().getActionOutboxSyncIntervalMs());
+            actionOutbox.setExpiryListener(record -> {
+                logger.warn("MQTT Physical Adapter - Discarding expired stored action on topic {}", record.getTopic());
+                notifyStoredActionFailed(record, new TimeoutException("Action expired in the outbox"));
+            });
+            outboxReplayExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, String.format("%s-outbox-replay", getId()));
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("MQTT Physical Adapter - Action outbox opened with {} stored actions", actionOutbox.getPendingCount());
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("MQTT Physical Adapter - Error opening action outbox: {}", e.getMessage());
+            actionOutbox = null;
+        }
+    }
+
+    /**
+     * Stops the replay of the outbox and closes it, keeping the stored actions for the next start.
+     */
+    private void closeActionOutbox() {
+        ExecutorService executor = outboxReplayExecutor;
+        outboxReplayExecutor = null;
+        if(executor != null){
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ActionOutbox outbox = actionOutbox;
+        actionOutbox = null;
+        if(outbox != null)
+            outbox.close();
+    }
+
+    /**
+     * Schedules the replay of the actions stored in the outbox, unless already scheduled or the outbox is empty.
+     */
+    private void scheduleOutboxReplay() {
+        ActionOutbox outbox = this.actionOutbox;
+        ExecutorService executor = this.outboxReplayExecutor;
+        if(outbox == null || executor == null || outbox.isEmpty() || !outboxReplayScheduled.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(() -> replayOutbox(outbox));
+        } catch (RejectedExecutionException e) {
+            outboxReplayScheduled.set(false);
+        }
+    }
+
+    /**
+     * Publishes the actions stored in the outbox in order, acknowledging each one once published.
+     * The replay stops when a connection is not available and resumes when it is re-established.
      *
-     * @param topic The DigitalTwinIncomingTopic to subscribe to.
+     * @param outbox The outbox to replay.
      */
-    private void subscribeClientToDigitalTwinIncomingTopic(DigitalTwinIncomingTopic topic) {
+    private void replayOutbox(ActionOutbox outbox) {
+        boolean drained = false;
+        int replayed = 0;
         try {
-            mqttClient.subscribe(topic.getTopic(), topic.getQos(), (t, msg) ->{
-                List<? extends WldtEvent<?>> wldtEvents = topic.applySubscribeFunction(new String(msg.getPayload()));
-                wldtEvents.forEach(e -> {
+            while(!Thread.currentThread().isInterrupted()){
+                OutboxRecord record = outbox.peek();
+                if(record == null){
+                    drained = true;
+                    break;
+                }
+                MqttConnectionShard connection = connections.get((record.getTopic().hashCode() & 0x7fffffff) % connections.size());
+                if(!connection.isConnected())
+                    break;
+                MqttMessage msg = new MqttMessage(record.getPayload());
+                msg.setQos(record.getQos());
+                msg.setRetained(record.isRetained());
+                // The replay holds a slot of the window, so that it does not exceed the in-flight limit of the client
+                OutgoingWindow window = connection.getOutgoingWindow();
+                try {
+                    if(window != null && !window.acquire())
+                        break;
                     try {
-                        if(e instanceof PhysicalAssetEventWldtEvent){
-                            publishPhysicalAssetEventWldtEvent((PhysicalAssetEventWldtEvent<?>) e);
-                        }else if(e instanceof PhysicalAssetPropertyWldtEvent){
-                            publishPhysicalAssetPropertyWldtEvent((PhysicalAssetPropertyWldtEvent<?>) e);
-                        }
-                    } catch (EventBusException ex) {
-                        ex.printStackTrace();
+                        connection.getTransport().publish(record.getTopic(), msg, record.getMessageExpiryInterval(), null);
+                    } finally {
+                        if(window != null)
+                            window.release();
                     }
-                });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (MqttException e) {
+                    if(isConnectionFailure(e))
+                        break;
+                    logger.error("MQTT Physical Adapter - Discarding stored action on topic {}: {}", record.getTopic(), e.getMessage());
+                    outbox.acknowledge(record);
+                    notifyStoredActionFailed(record, e);
+                    continue;
+                }
+                connection.onMessagePublished();
+                replayed++;
+                outbox.acknowledge(record);
+                ActionPublishListener listener = getConfiguration().getActionPublishListener();
+                if(listener != null && record.getAttachment() instanceof PhysicalAssetActionWldtEvent)
+                    listener.onActionPublished((PhysicalAssetActionWldtEvent<?>) record.getAttachment(), record.getTopic());
+            }
+        } finally {
+            outboxReplayScheduled.set(false);
+        }
+        if(replayed > 0)
+            logger.info("MQTT Physical Adapter - Replayed {} stored actions, {} still stored", replayed, outbox.getPendingCount());
+        // Actions stored after the last read are replayed by a new run
+        if(drained)
+            scheduleOutboxReplay();
+    }
+
+    /**
+     * Notifies the configured ActionPublishListener of a stored action that will not be published. Actions recovered
+     * from a previous run carry no action event and are not notified.
+     *
+     * @param record    The record of the action.
+     * @param exception The cause of the failure.
+     */
+    private void notifyStoredActionFailed(OutboxRecord record, Throwable exception) {
+        ActionPublishListener listener = getConfiguration().getActionPublishListener();
+        if(listener != null && record.getAttachment() instanceof PhysicalAssetActionWldtEvent)
+            listener.onActionFailed((PhysicalAssetActionWldtEvent<?>) record.getAttachment(), record.getTopic(), exception);
+    }
+
+    /**
+     * Checks whether a publication failed because the connection to the broker is not available.
+     *
+     * @param exception The failure.
+     * @return true if the connection is not available, false otherwise.
+     */
+    private static boolean isConnectionFailure(Throwable exception) {
+        if(!(exception instanceof MqttException))
+            return false;
+        int reasonCode = ((MqttException) exception).getReasonCode();
+        return reasonCode == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED
+                || reasonCode == MqttException.REASON_CODE_CONNECTION_LOST
+                || reasonCode == MqttException.REASON_CODE_CLIENT_DISCONNECTING
+                || reasonCode == MqttException.REASON_CODE_CLIENT_CLOSED;
+    }
+
+    /**
+     * Stops the HTTP endpoint exposing the metrics, if running.
+     */
+    private void stopMetricsHttpServer() {
+        if(metricsHttpServer == null)
+            return;
+        metricsHttpServer.stop();
+        metricsHttpServer = null;
+    }
+
+    /**
+     * Creates and starts the asynchronous ingress pipeline if enabled in the configuration.
+     */
+    private void startIngressPipeline() {
+        if(!getConfiguration().isIngressPipelineEnabled())
+            return;
+        ingressPipeline = new MqttIngressPipeline(getId(),
+                getConfiguration().getIngressWorkerCount(),
+                getConfiguration().getIngressQueueCapacity(),
+                this::handleIngressMessage);
+        ingressPipeline.start();
+        logger.info("MQTT Physical Adapter - Ingress pipeline started with {} workers", ingressPipeline.getWorkerCount());
+    }
+
+    /**
+     * Stops the asynchronous ingress pipeline, if running.
+     */
+    private void stopIngressPipeline() {
+        if(ingressPipeline == null)
+            return;
+        ingressPipeline.stop();
+        ingressPipeline = null;
+    }
+
+    /**
+     * Connects the MQTT client of a connection to the MQTT broker using the specified connection options, running the
+     * given task once the connection is established. In blocking mode the first attempt is made on the calling thread.
+     * Since the MQTT clients do not reconnect automatically after a failed first connection, failed attempts are
+     * retried with an exponential backoff when the automatic reconnection is enabled, and only logged otherwise.
+     *
+     * @param connection  The connection.
+     * @param onConnected The task run after the connection.
+     */
+    private void connectToMqttBroker(MqttConnectionShard connection, Runnable onConnected){
+        long retryDelayMs = getConfiguration().isAutomaticReconnectFlag() ? INITIAL_CONNECT_RETRY_DELAY_MS : 0;
+        InitialConnector connector = new InitialConnector(connection.getTransport(), !getConfiguration().isNonBlockingFlag(),
+                scheduler, retryDelayMs, MAX_CONNECT_RETRY_DELAY_MS, new InitialConnector.Listener() {
+            @Override
+            public void onConnected() {
+                logger.info("MQTT Physical Adapter - MQTT client connected to broker - clientId: {}", connection.getClientId());
+                onConnected.run();
+            }
+
+            @Override
+            public void onAttemptFailed(int attempt, Throwable cause, long retryDelayMs) {
+                if(retryDelayMs >= 0)
+                    logger.warn("MQTT Physical Adapter - MQTT client connection failed - clientId: {}, attempt: {}, retrying in {} ms - {}",
+                            connection.getClientId(), attempt, retryDelayMs, cause.getMessage());
+                else
+                    logger.error("MQTT Physical Adapter - MQTT client connection failed - clientId: {}, attempt: {}",
+                            connection.getClientId(), attempt, cause);
+            }
+        });
+        initialConnectors.add(connector);
+        connector.start();
+    }
+
+    /**
+     * Creates the MQTT connections of the adapter, partitioning the incoming topics among them.
+     *
+     * @return The list of connections.
+     * @throws MqttException If there is an issue creating the MQTT clients.
+     */
+    private List<MqttConnectionShard> createConnections() throws MqttException {
+        int connectionCount = getConfiguration().getConnectionCount();
+        List<List<DigitalTwinIncomingTopic>> topics = new ArrayList<>(connectionCount);
+        for(int i = 0; i < connectionCount; i++)
+            topics.add(new ArrayList<>());
+        getConfiguration().getIncomingTopics().forEach(t -> topics.get(getConfiguration().getConnectionIndex(t)).add(t));
+        List<MqttConnectionShard> shards = new ArrayList<>(connectionCount);
+        for(int i = 0; i < connectionCount; i++){
+            MqttTransport transport = createTransport(i);
+            transport.setManualAcks(getConfiguration().isManualAcksEnabled());
+            MqttConnectionShard connection = new MqttConnectionShard(i, transport, topics.get(i),
+                    SubscriptionBatcher.sendsSubscriptionIds(getConfiguration().getSubscribeBatchSize()));
+            transport.setListener(new MqttTransportListener() {
+                @Override
+                public void connectComplete(boolean reconnect) {
+                    if(reconnect){
+                        metrics.onReconnect();
+                        logger.info("MQTT Physical Adapter - MQTT client reconnected - clientId: {}", connection.getClientId());
+                        subscribeToIncomingTopics(connection, null);
+                    }
+                    scheduleOutboxReplay();
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                    metrics.onConnectionLost();
+                    logger.warn("MQTT Physical Adapter - MQTT client {} connection lost: {}", connection.getClientId(), cause != null ? cause.getMessage() : null);
+                }
+
+                @Override
+                public void messageArrived(String topic, MqttMessage message, List<Integer> subscriptionIds) throws Exception {
+                    long arrivalNanos = System.nanoTime();
+                    connection.onMessageReceived();
+                    dispatchIncomingMessage(connection, topic, message, subscriptionIds, arrivalNanos);
+                }
             });
-        } catch (MqttException e) {
-            e.printStackTrace();
+            shards.add(connection);
         }
+        return shards;
     }
 
     /**
-     * Connects the MQTT client to the MQTT broker using the specified connection options.
+     * Creates the transport of a connection according to the configured protocol version.
+     *
+     * @param connectionIndex The index of the connection.
+     * @return The transport.
+     * @throws MqttException If there is an issue creating the MQTT client.
      */
-    private void connectToMqttBroker(){
-        try {
-            mqttClient.connect(getConfiguration().getConnectOptions());
-            logger.info("MQTT Physical Adapter - MQTT client connected to broker - clientId: {}", getConfiguration().getClientId());
-        } catch (MqttException e) {
-            e.printStackTrace();
+    private MqttTransport createTransport(int connectionIndex) throws MqttException {
+        if(getConfiguration().getProtocolVersion() == MqttProtocolVersion.MQTT_5)
+            return new Mqtt5Transport(getConfiguration().getBrokerConnectionString(),
+                    getConfiguration().getConnectionClientId(connectionIndex),
+                    getConfiguration().getConnectionOptions());
+        return new Mqtt3Transport(getConfiguration().getBrokerConnectionString(),
+                getConfiguration().getConnectionClientId(connectionIndex),
+                getConfiguration().getPersistence(connectionIndex),
+                getConfiguration().getConnectOptions());
+    }
+
+    /**
+     * Publication of the message of an action, releasing its slot in the outgoing window, recording its metrics
+     * and notifying the configured ActionPublishListener on completion.
+     */
+    private class ActionPublication implements MqttOperationCallback {
+
+        private final MqttConnectionShard connection;
+
+        private final ActionRoute route;
+
+        private final String topicName;
+
+        private final byte[] payload;
+
+        private final PhysicalAssetActionWldtEvent<?> action;
+
+        private final long receivedNanos;
+
+        private final TopicMetrics topicMetrics;
+
+        /** The window slot held by the publication, null if none. */
+        private OutgoingWindow window;
+
+        /** Whether the publication has been started. */
+        private boolean started;
+
+        /** Whether the publication is counted among the pending publications of its connection. */
+        private boolean pending;
+
+        /** The time at which the publication started. */
+        private long startNanos;
+
+        private ActionPublication(MqttConnectionShard connection, ActionRoute route, String topicName, byte[] payload,
+                                  PhysicalAssetActionWldtEvent<?> action, long receivedNanos) {
+            this.connection = connection;
+            this.route = route;
+            this.topicName = topicName;
+            this.payload = payload;
+            this.action = action;
+            this.receivedNanos = receivedNanos;
+            this.topicMetrics = metrics.outgoingTopic(route.getTopic().getTopic());
+        }
+
+        private void start(OutgoingWindow window) {
+            this.window = window;
+            this.started = true;
+            this.startNanos = System.nanoTime();
+            metrics.onPublishStarted();
+            if(actionOutbox != null){
+                this.pending = true;
+                connection.onPublishPending();
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            long completedNanos = System.nanoTime();
+            complete();
+            topicMetrics.recordLatency(LatencyStage.PUBLISH, completedNanos - startNanos);
+            topicMetrics.recordLatency(LatencyStage.END_TO_END, completedNanos - receivedNanos);
+            connection.onMessagePublished();
+            logger.info("Physical Adapter - MQTT client published message of {} bytes on topic: {}", payload.length, topicName);
+            ActionPublishListener listener = getConfiguration().getActionPublishListener();
+            if(listener != null)
+                listener.onActionPublished(action, topicName);
+        }
+
+        @Override
+        public void onFailure(Throwable exception) {
+            if(isConnectionFailure(exception) && store())
+                return;
+            fail(exception);
+        }
+
+        /**
+         * Stores the message in the outbox, to be replayed once the connection is re-established.
+         *
+         * @return true if stored, false if the outbox is disabled, full or not writable.
+         */
+        private boolean store() {
+            ActionOutbox outbox = actionOutbox;
+            if(outbox == null)
+                return false;
+            try {
+                // The action is kept with its record to notify the listener once replayed
+                Object attachment = getConfiguration().getActionPublishListener() != null ? action : null;
+                if(!outbox.append(topicName, payload, route.getQos(), route.isRetained(), route.getMessageExpiryInterval(), attachment))
+                    return false;
+            } catch (IOException e) {
+                logger.error("MQTT Physical Adapter - Error storing action in the outbox: {}", e.getMessage());
+                return false;
+            }
+            complete();
+            logger.info("MQTT Physical Adapter - Broker unreachable, action stored in the outbox for topic: {}", topicName);
+            scheduleOutboxReplay();
+            return true;
+        }
+
+        /**
+         * Reports the failure of the publication.
+         *
+         * @param exception The failure.
+         */
+        private void fail(Throwable exception) {
+            complete();
+            topicMetrics.onFailure();
+            logger.error("MQTT Physical Adapter - Failed to publish on topic {}: {}", topicName, exception != null ? exception.getMessage() : null, exception);
+            ActionPublishListener listener = getConfiguration().getActionPublishListener();
+            if(listener != null)
+                listener.onActionFailed(action, topicName, exception);
+        }
+
+        private void complete() {
+            if(started)
+                metrics.onPublishCompleted();
+            if(window != null)
+                window.release();
+            if(pending)
+                connection.onPublishSettled();
+        }
+    }
+
+    /**
+     * Latency trace of the incoming message being handled by a thread, reused across messages.
+     */
+    private static class IngressTrace {
+
+        /** The incoming topic of the message. */
+        private String topic;
+
+        /** The metrics of the incoming topic, null when no message is being handled. */
+        private TopicMetrics topicMetrics;
+
+        /** The arrival time of the message. */
+        private long arrivalNanos;
+
+        /** The time at which the handling of the message started. */
+        private long startNanos;
+
+        /** The time spent publishing the produced events on the event bus. */
+        private long eventBusNanos;
+
+        /** The emitter receiving the produced events. */
+        private WldtEventEmitter emitter;
+
+        private void begin(String topic, TopicMetrics topicMetrics, long arrivalNanos, long startNanos, WldtEventEmitter emitter) {
+            this.topic = topic;
+            this.topicMetrics = topicMetrics;
+            this.arrivalNanos = arrivalNanos;
+            this.startNanos = startNanos;
+            this.eventBusNanos = 0;
+            this.emitter = emitter;
+        }
+
+        private void end() {
+            this.topic = null;
+            this.topicMetrics = null;
+            this.emitter = null;
         }
     }
 }
@@ -4,14 +4,26 @@ import it.wldt.adapter.physical.PhysicalAssetAction;
 import it.wldt.adapter.physical.PhysicalAssetDescription;
 import it.wldt.adapter.physical.PhysicalAssetEvent;
 import it.wldt.adapter.physical.PhysicalAssetProperty;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
 import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.connection.MqttProtocolVersion;
+import it.wldt.adapter.mqtt.physical.egress.ActionOutbox;
+import it.wldt.adapter.mqtt.physical.egress.ActionPublishListener;
+import it.wldt.adapter.mqtt.physical.egress.ActionRoute;
+import it.wldt.adapter.mqtt.physical.egress.ActionRouter;
+import it.wldt.adapter.mqtt.physical.ingress.PropertyChangeFilter;
+import it.wldt.adapter.mqtt.physical.topic.TopicTemplate;
 import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
 import it.wldt.adapter.mqtt.physical.topic.outgoing.DigitalTwinOutgoingTopic;
 import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * Configuration class for the MqttPhysicalAdapter, providing settings for connecting to an MQTT broker,
@@ -26,6 +38,12 @@ import java.util.*;
  */
 public class MqttPhysicalAdapterConfiguration {
 
+    /** The highest receive maximum allowed by the MQTT 5 specification. */
+    protected static final int MAX_RECEIVE_MAXIMUM = 65535;
+
+    /** Minimum size of the segment files of the action outbox. */
+    private static final int MIN_ACTION_OUTBOX_SEGMENT_SIZE = 4096;
+
     /** The address of the MQTT broker. */
     private final String brokerAddress;
 
@@ -53,6 +71,78 @@ public class MqttPhysicalAdapterConfiguration {
     /** Flag indicating whether automatic reconnection to the MQTT broker is enabled. */
     private boolean automaticReconnectFlag = true;
 
+    /** The MQTT protocol version used to connect to the broker. */
+    private MqttProtocolVersion protocolVersion = MqttProtocolVersion.MQTT_3_1_1;
+
+    /** The maximum number of topic aliases accepted from the broker (MQTT 5). 0 means that incoming topic aliases are not accepted. */
+    private int topicAliasMaximum = 0;
+
+    /** The maximum number of unacknowledged QoS 1 and 2 messages the broker may send (MQTT 5). 0 means the broker default. */
+    private int receiveMaximum = 0;
+
+    /** Flag indicating whether the MQTT operations are performed without blocking the calling thread. */
+    private boolean nonBlockingFlag = false;
+
+    /** Flag indicating whether the latency tracing metadata is attached to the events produced from incoming messages. */
+    private boolean latencyTraceMetadataFlag = false;
+
+    /** The host the metrics HTTP endpoint is bound to, null when the endpoint is disabled. */
+    private String metricsHttpHost = null;
+
+    /** The port the metrics HTTP endpoint is bound to. 0 means an ephemeral port. */
+    private int metricsHttpPort = 0;
+
+    /** The number of ingress workers decoding incoming messages. 0 means decoding on the MQTT client callback thread. */
+    private int ingressWorkerCount = 0;
+
+    /** The capacity of the queue of each ingress worker. */
+    private int ingressQueueCapacity = 1024;
+
+    /** The maximum number of received messages not yet acknowledged. 0 means that manual acknowledgements are disabled. */
+    private int maxInFlightMessages = 0;
+
+    /**
+     * The maximum number of in-flight publications of each connection. 0 means that the outgoing window is disabled in
+     * blocking mode and sized as the default in-flight limit of the MQTT client in non-blocking mode.
+     */
+    private int outgoingInFlightWindow = 0;
+
+    /** The listener notified of the outcome of each action publication, null if not set. */
+    private ActionPublishListener actionPublishListener;
+
+    /** The directory of the outbox storing the actions while the broker is unreachable, null if the outbox is disabled. */
+    private Path actionOutboxDirectory;
+
+    /** The maximum number of bytes of the actions stored in the outbox. */
+    private long actionOutboxMaxSizeBytes = 0;
+
+    /** The time to live in milliseconds of the actions stored in the outbox, 0 for no limit. */
+    private long actionOutboxTtlMillis = 0;
+
+    /** The interval in milliseconds between two flushes of the outbox to the storage device, 0 to flush after each write. */
+    private long actionOutboxSyncIntervalMs = ActionOutbox.DEFAULT_SYNC_INTERVAL_MS;
+
+    /** The maximum number of topic filters of each SUBSCRIBE sent to bind the incoming topics. */
+    private int subscribeBatchSize = 1;
+
+    /** The maximum number of SUBSCRIBE packets of each connection waiting for their SUBACK. */
+    private int maxInFlightSubscribeBatches = 1;
+
+    /** The shared subscription group of the incoming topics, null if incoming topics are not shared. */
+    private String sharedSubscriptionGroup;
+
+    /** The number of MQTT connections opened by the adapter. */
+    private int connectionCount = 1;
+
+    /** The connection explicitly assigned to each incoming topic, indexed by topic. */
+    private final Map<String, Integer> incomingTopicConnections = new HashMap<>();
+
+    /** Report-by-exception filters applied to the incoming property values, indexed by property key. */
+    private final Map<String, PropertyChangeFilter> propertyFilters = new HashMap<>();
+
+    /** Report-by-exception filter applied to the properties without a specific filter, or null. */
+    private PropertyChangeFilter defaultPropertyFilter;
+
     /** The description of the physical asset, including actions, properties, and events. */
     private PhysicalAssetDescription physicalAssetDescription;
 
@@ -62,6 +152,15 @@ public class MqttPhysicalAdapterConfiguration {
     /** Map of outgoing topics on which the PhysicalAdapter must publish, indexed by action key. */
     private final Map<String, DigitalTwinOutgoingTopic> outgoingTopics = new HashMap<>();
 
+    /** Conditions restricting the actions published on the outgoing topics, indexed by action key. */
+    private final Map<String, Predicate<PhysicalAssetActionWldtEvent<?>>> outgoingTopicConditions = new HashMap<>();
+
+    /** Routes of the actions towards outgoing topics in addition to the one indexed by action key. */
+    private final List<ActionRoute> additionalActionRoutes = new ArrayList<>();
+
+    /** The router of the actions, compiled when the configuration is built. */
+    private ActionRouter actionRouter;
+
     /**
      * Constructs a new MqttPhysicalAdapterConfiguration with the specified broker address, broker port,
      * and client ID.
@@ -84,7 +183,7 @@ public class MqttPhysicalAdapterConfiguration {
      * @param brokerPort    The port of the MQTT broker.
      */
     protected MqttPhysicalAdapterConfiguration(String brokerAddress, Integer brokerPort){
-        this(brokerAddress, brokerPort, "wldt.mqtt.client."+new Random(System.currentTimeMillis()).nextInt());
+        this(brokerAddress, brokerPort, "wldt.mqtt.client."+new Random().nextInt());
     }
 
     /**
@@ -192,9 +291,119 @@ public class MqttPhysicalAdapterConfiguration {
             options.setUserName(username);
             options.setPassword(password.toCharArray());
         }
+        if(isOutgoingWindowEnabled())
+            options.setMaxInflight(getOutgoingInFlightWindow());
         return options;
     }
 
+    /**
+     * Gets the MQTT 5 connection options for connecting to the MQTT broker. The receive maximum defaults to the maximum
+     * number of in-flight messages when manual acknowledgements are enabled.
+     *
+     * @return The MQTT 5 connection options.
+     */
+    public MqttConnectionOptions getConnectionOptions(){
+        MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setAutomaticReconnect(automaticReconnectFlag);
+        options.setCleanStart(cleanSessionFlag);
+        options.setConnectionTimeout(connectionTimeout);
+        if(username != null && !username.isEmpty() && password != null && !password.isEmpty()){
+            options.setUserName(username);
+            options.setPassword(password.getBytes(StandardCharsets.UTF_8));
+        }
+        if(topicAliasMaximum > 0)
+            options.setTopicAliasMaximum(topicAliasMaximum);
+        if(receiveMaximum > 0)
+            options.setReceiveMaximum(receiveMaximum);
+        else if(isManualAcksEnabled())
+            options.setReceiveMaximum(Math.min(maxInFlightMessages, MAX_RECEIVE_MAXIMUM));
+        return options;
+    }
+
+    /**
+     * Gets the MQTT protocol version used to connect to the broker.
+     *
+     * @return The protocol version.
+     */
+    public MqttProtocolVersion getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Gets the maximum number of topic aliases accepted from the broker.
+     *
+     * @return The topic alias maximum, 0 if incoming topic aliases are not accepted.
+     */
+    public int getTopicAliasMaximum() {
+        return topicAliasMaximum;
+    }
+
+    /**
+     * Gets the maximum number of unacknowledged QoS 1 and 2 messages the broker may send.
+     *
+     * @return The receive maximum, 0 for the broker default.
+     */
+    public int getReceiveMaximum() {
+        return receiveMaximum;
+    }
+
+    /**
+     * Checks whether connect, subscribe and publish operations are performed without blocking the calling thread,
+     * reporting their outcome through callbacks.
+     *
+     * @return true if the non-blocking mode is enabled, false otherwise.
+     */
+    public boolean isNonBlockingFlag() {
+        return nonBlockingFlag;
+    }
+
+    /**
+     * Checks whether the automatic reconnection to the MQTT broker is enabled, including the retries of a failed
+     * first connection.
+     *
+     * @return true if the automatic reconnection is enabled, false otherwise.
+     */
+    public boolean isAutomaticReconnectFlag() {
+        return automaticReconnectFlag;
+    }
+
+    /**
+     * Checks whether the arrival time, queueing time and incoming topic of the originating message are attached
+     * as metadata to the events produced from incoming messages.
+     *
+     * @return true if the latency tracing metadata is attached, false otherwise.
+     */
+    public boolean isLatencyTraceMetadataFlag() {
+        return latencyTraceMetadataFlag;
+    }
+
+    /**
+     * Checks whether the metrics of the adapter are exposed through a local HTTP endpoint.
+     *
+     * @return true if the metrics endpoint is enabled, false otherwise.
+     */
+    public boolean isMetricsHttpEndpointEnabled() {
+        return metricsHttpHost != null;
+    }
+
+    /**
+     * Gets the host the metrics HTTP endpoint is bound to.
+     *
+     * @return The host, null if the endpoint is disabled.
+     */
+    public String getMetricsHttpHost() {
+        return metricsHttpHost;
+    }
+
+    /**
+     * Gets the port the metrics HTTP endpoint is bound to.
+     *
+     * @return The port, 0 for an ephemeral port.
+     */
+    public int getMetricsHttpPort() {
+        return metricsHttpPort;
+    }
+
     /**
      * Gets the list of incoming topics to which the PhysicalAdapter must subscribe.
      *
@@ -220,7 +429,295 @@ public class MqttPhysicalAdapterConfiguration {
      * @return An {@link Optional} containing the outgoing topic, or an empty {@link Optional} if not present.
      */
     public Optional<DigitalTwinOutgoingTopic> getOutgoingTopicByActionKey(String key){
-        return outgoingTopics.containsKey(key) ? Optional.of(outgoingTopics.get(key)) : Optional.empty();
+        return Optional.ofNullable(outgoingTopics.get(key));
+    }
+
+    /**
+     * Gets the condition restricting the actions published on the outgoing topic of an action key.
+     *
+     * @param key The action key.
+     * @return The condition, null if all the actions are published.
+     */
+    public Predicate<PhysicalAssetActionWldtEvent<?>> getOutgoingTopicCondition(String key){
+        return outgoingTopicConditions.get(key);
+    }
+
+    /**
+     * Gets the routes of the actions towards outgoing topics in addition to the one indexed by action key.
+     *
+     * @return The list of additional routes.
+     */
+    public List<ActionRoute> getAdditionalActionRoutes() {
+        return additionalActionRoutes;
+    }
+
+    /**
+     * Gets the router of the actions, compiled when the configuration is built.
+     *
+     * @return The action router.
+     */
+    public ActionRouter getActionRouter() {
+        return actionRouter;
+    }
+
+    /**
+     * Gets the number of ingress workers decoding incoming messages.
+     * A value of 0 means that messages are decoded directly on the MQTT client callback thread.
+     *
+     * @return The number of ingress workers.
+     */
+    public int getIngressWorkerCount() {
+        return ingressWorkerCount;
+    }
+
+    /**
+     * Gets the capacity of the queue of each ingress worker.
+     *
+     * @return The ingress queue capacity.
+     */
+    public int getIngressQueueCapacity() {
+        return ingressQueueCapacity;
+    }
+
+    /**
+     * Checks whether the asynchronous ingress pipeline is enabled.
+     *
+     * @return true if incoming messages are decoded by the ingress workers, false otherwise.
+     */
+    public boolean isIngressPipelineEnabled() {
+        return ingressWorkerCount > 0;
+    }
+
+    /**
+     * Gets the maximum number of received messages not yet acknowledged to the broker.
+     *
+     * @return The maximum number of in-flight messages.
+     */
+    public int getMaxInFlightMessages() {
+        return maxInFlightMessages;
+    }
+
+    /**
+     * Checks whether received messages are acknowledged only after their processing.
+     *
+     * @return true if manual acknowledgements are enabled, false otherwise.
+     */
+    public boolean isManualAcksEnabled() {
+        return maxInFlightMessages > 0;
+    }
+
+    /**
+     * Gets the maximum number of in-flight publications of each connection. In non-blocking mode the window is always
+     * enabled, by default with the in-flight limit of the MQTT client, which rejects the publications exceeding it.
+     *
+     * @return The outgoing window size, 0 if disabled.
+     */
+    public int getOutgoingInFlightWindow() {
+        if(outgoingInFlightWindow == 0 && nonBlockingFlag)
+            return MqttConnectOptions.MAX_INFLIGHT_DEFAULT;
+        return outgoingInFlightWindow;
+    }
+
+    /**
+     * Checks whether actions are published through a bounded window of in-flight publications, as they always are
+     * in non-blocking mode.
+     *
+     * @return true if the outgoing window is enabled, false otherwise.
+     */
+    public boolean isOutgoingWindowEnabled() {
+        return getOutgoingInFlightWindow() > 0;
+    }
+
+    /**
+     * Gets the maximum number of topic filters of each SUBSCRIBE sent to bind the incoming topics.
+     *
+     * @return The subscribe batch size.
+     */
+    public int getSubscribeBatchSize() {
+        return subscribeBatchSize;
+    }
+
+    /**
+     * Gets the maximum number of SUBSCRIBE packets of each connection waiting for their SUBACK.
+     *
+     * @return The maximum number of in-flight subscribe batches.
+     */
+    public int getMaxInFlightSubscribeBatches() {
+        return maxInFlightSubscribeBatches;
+    }
+
+    /**
+     * Gets the listener notified of the outcome of each action publication.
+     *
+     * @return The listener, null if not set.
+     */
+    public ActionPublishListener getActionPublishListener() {
+        return actionPublishListener;
+    }
+
+    /**
+     * Checks whether the actions that cannot be published are stored in a durable outbox and replayed on reconnection.
+     *
+     * @return true if the outbox is enabled, false otherwise.
+     */
+    public boolean isActionOutboxEnabled() {
+        return actionOutboxDirectory != null;
+    }
+
+    /**
+     * Gets the directory of the outbox storing the actions while the broker is unreachable.
+     *
+     * @return The outbox directory, null if the outbox is disabled.
+     */
+    public Path getActionOutboxDirectory() {
+        return actionOutboxDirectory;
+    }
+
+    /**
+     * Gets the maximum number of bytes of the actions stored in the outbox.
+     *
+     * @return The maximum outbox size in bytes.
+     */
+    public long getActionOutboxMaxSizeBytes() {
+        return actionOutboxMaxSizeBytes;
+    }
+
+    /**
+     * Gets the size of the segment files of the outbox, which bounds the size of a single stored action.
+     *
+     * @return The segment size in bytes.
+     */
+    public int getActionOutboxSegmentSize() {
+        return (int) Math.min(ActionOutbox.DEFAULT_SEGMENT_SIZE, Math.max(actionOutboxMaxSizeBytes, MIN_ACTION_OUTBOX_SEGMENT_SIZE));
+    }
+
+    /**
+     * Gets the time to live of the actions stored in the outbox.
+     *
+     * @return The time to live in milliseconds, 0 for no limit.
+     */
+    public long getActionOutboxTtlMillis() {
+        return actionOutboxTtlMillis;
+    }
+
+    /**
+     * Gets the interval between two flushes of the outbox to the storage device.
+     *
+     * @return The interval in milliseconds, 0 to flush after each write.
+     */
+    public long getActionOutboxSyncIntervalMs() {
+        return actionOutboxSyncIntervalMs;
+    }
+
+    /**
+     * Gets the shared subscription group of the incoming topics.
+     *
+     * @return The shared subscription group, null if incoming topics are not shared.
+     */
+    public String getSharedSubscriptionGroup() {
+        return sharedSubscriptionGroup;
+    }
+
+    /**
+     * Checks whether incoming topics are subscribed as shared subscriptions.
+     *
+     * @return true if shared subscriptions are enabled, false otherwise.
+     */
+    public boolean isSharedSubscriptionEnabled() {
+        return sharedSubscriptionGroup != null;
+    }
+
+    /**
+     * Gets the filter used to subscribe an incoming topic, prefixed by the shared subscription group if enabled.
+     *
+     * @param topic The incoming topic.
+     * @return The subscription filter.
+     */
+    public String getSubscriptionFilter(DigitalTwinIncomingTopic topic) {
+        return isSharedSubscriptionEnabled() ?
+                TopicTemplate.shared(sharedSubscriptionGroup, topic.getSubscriptionFilter()) :
+                topic.getSubscriptionFilter();
+    }
+
+    /**
+     * Gets the number of MQTT connections opened by the adapter.
+     *
+     * @return The number of connections.
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Gets the client id of a connection: the configured client id for a single connection,
+     * otherwise the configured client id followed by the connection index.
+     *
+     * @param connectionIndex The index of the connection.
+     * @return The client id of the connection.
+     */
+    public String getConnectionClientId(int connectionIndex) {
+        return connectionCount == 1 ? clientId : String.format("%s-%d", clientId, connectionIndex);
+    }
+
+    /**
+     * Gets the persistence of a connection. Additional connections use a dedicated in-memory persistence,
+     * since a persistence instance cannot be shared among clients.
+     *
+     * @param connectionIndex The index of the connection.
+     * @return The persistence of the connection.
+     */
+    public MqttClientPersistence getPersistence(int connectionIndex) {
+        return connectionIndex == 0 ? persistence : new MemoryPersistence();
+    }
+
+    /**
+     * Gets the connection through which an incoming topic is subscribed: the explicitly assigned one,
+     * otherwise the one selected through the hash of the topic.
+     *
+     * @param topic The incoming topic.
+     * @return The index of the connection.
+     */
+    public int getConnectionIndex(DigitalTwinIncomingTopic topic) {
+        Integer assigned = incomingTopicConnections.get(topic.getTopic());
+        if(assigned != null)
+            return assigned;
+        return (topic.getTopic().hashCode() & 0x7fffffff) % connectionCount;
+    }
+
+    /**
+     * Gets the connection explicitly assigned to each incoming topic.
+     *
+     * @return The map of assigned connections indexed by incoming topic.
+     */
+    public Map<String, Integer> getIncomingTopicConnections() {
+        return incomingTopicConnections;
+    }
+
+    /**
+     * Gets the report-by-exception filters applied to the incoming property values, indexed by property key.
+     *
+     * @return The map of property filters.
+     */
+    public Map<String, PropertyChangeFilter> getPropertyFilters() {
+        return propertyFilters;
+    }
+
+    /**
+     * Gets the report-by-exception filter applied to the properties without a specific filter.
+     *
+     * @return The default property filter, or null if not defined.
+     */
+    public PropertyChangeFilter getDefaultPropertyFilter() {
+        return defaultPropertyFilter;
+    }
+
+    /**
+     * Checks whether at least one report-by-exception filter has been defined.
+     *
+     * @return true if incoming property values are filtered, false otherwise.
+     */
+    public boolean isPropertyFilteringEnabled() {
+        return defaultPropertyFilter != null || !propertyFilters.isEmpty();
     }
 
     /**
@@ -251,6 +748,34 @@ public class MqttPhysicalAdapterConfiguration {
         this.outgoingTopics.put(actionKey,topic);
     }
 
+    /**
+     * Sets the condition restricting the actions published on the outgoing topic of an action key.
+     *
+     * @param actionKey The action key.
+     * @param condition The condition.
+     */
+    protected void setOutgoingTopicCondition(String actionKey, Predicate<PhysicalAssetActionWldtEvent<?>> condition){
+        this.outgoingTopicConditions.put(actionKey, condition);
+    }
+
+    /**
+     * Adds a route of an action towards an outgoing topic in addition to the one indexed by action key.
+     *
+     * @param route The route to add.
+     */
+    protected void addActionRoute(ActionRoute route){
+        this.additionalActionRoutes.add(route);
+    }
+
+    /**
+     * Sets the router of the actions.
+     *
+     * @param actionRouter The action router.
+     */
+    protected void setActionRouter(ActionRouter actionRouter){
+        this.actionRouter = actionRouter;
+    }
+
     /**
      * Sets the description of the physical asset, including actions, properties, and events.
      *
@@ -291,6 +816,62 @@ public class MqttPhysicalAdapterConfiguration {
         this.automaticReconnectFlag = automaticReconnect;
     }
 
+    /**
+     * Sets the non-blocking flag for the MQTT operations.
+     *
+     * @param nonBlocking The non-blocking flag.
+     */
+    protected void setNonBlockingFlag(boolean nonBlocking){
+        this.nonBlockingFlag = nonBlocking;
+    }
+
+    /**
+     * Sets the MQTT protocol version used to connect to the broker.
+     *
+     * @param protocolVersion The protocol version.
+     */
+    protected void setProtocolVersion(MqttProtocolVersion protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * Sets the maximum number of topic aliases accepted from the broker.
+     *
+     * @param topicAliasMaximum The topic alias maximum.
+     */
+    protected void setTopicAliasMaximum(int topicAliasMaximum) {
+        this.topicAliasMaximum = topicAliasMaximum;
+    }
+
+    /**
+     * Sets the maximum number of unacknowledged QoS 1 and 2 messages the broker may send.
+     *
+     * @param receiveMaximum The receive maximum.
+     */
+    protected void setReceiveMaximum(int receiveMaximum) {
+        this.receiveMaximum = receiveMaximum;
+    }
+
+    /**
+     * Sets whether the latency tracing metadata is attached to the events produced from incoming messages.
+     *
+     * @param latencyTraceMetadata The latency tracing metadata flag.
+     */
+    protected void setLatencyTraceMetadataFlag(boolean latencyTraceMetadata) {
+        this.latencyTraceMetadataFlag = latencyTraceMetadata;
+    }
+
+    /**
+     * Sets the address the metrics HTTP endpoint is bound to.
+     *
+     * @param host The host, null to disable the endpoint.
+     * @param port The port, 0 for an ephemeral port.
+     */
+    protected void setMetricsHttpEndpoint(String host, int port) {
+        this.metricsHttpHost = host;
+        this.metricsHttpPort = port;
+    }
+
     /**
      * Sets the MQTT client persistence mechanism.
      *
@@ -300,5 +881,122 @@ public class MqttPhysicalAdapterConfiguration {
         this.persistence = persistence;
     }
 
-}
+    /**
+     * Sets the number of ingress workers decoding incoming messages.
+     *
+     * @param ingressWorkerCount The number of ingress workers.
+     */
+    protected void setIngressWorkerCount(int ingressWorkerCount) {
+        this.ingressWorkerCount = ingressWorkerCount;
+    }
 
+    /**
+     * Sets the capacity of the queue of each ingress worker.
+     *
+     * @param ingressQueueCapacity The ingress queue capacity.
+     */
+    protected void setIngressQueueCapacity(int ingressQueueCapacity) {
+        this.ingressQueueCapacity = ingressQueueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of received messages not yet acknowledged to the broker, enabling manual acknowledgements.
+     *
+     * @param maxInFlightMessages The maximum number of in-flight messages.
+     */
+    protected void setMaxInFlightMessages(int maxInFlightMessages) {
+        this.maxInFlightMessages = maxInFlightMessages;
+    }
+
+    /**
+     * Sets the maximum number of in-flight publications of each connection.
+     *
+     * @param outgoingInFlightWindow The outgoing window size.
+     */
+    protected void setOutgoingInFlightWindow(int outgoingInFlightWindow) {
+        this.outgoingInFlightWindow = outgoingInFlightWindow;
+    }
+
+    /**
+     * Sets how the SUBSCRIBE packets binding the incoming topics are batched.
+     *
+     * @param subscribeBatchSize          The maximum number of topic filters of each SUBSCRIBE.
+     * @param maxInFlightSubscribeBatches The maximum number of SUBSCRIBE packets of each connection waiting for their SUBACK.
+     */
+    protected void setSubscribeBatching(int subscribeBatchSize, int maxInFlightSubscribeBatches) {
+        this.subscribeBatchSize = subscribeBatchSize;
+        this.maxInFlightSubscribeBatches = maxInFlightSubscribeBatches;
+    }
+
+    /**
+     * Sets the outbox storing the actions while the broker is unreachable.
+     *
+     * @param directory      The directory of the outbox segment files.
+     * @param maxSizeBytes   The maximum number of bytes of the stored actions.
+     * @param ttlMillis      The time to live of the stored actions in milliseconds, 0 for no limit.
+     * @param syncIntervalMs The interval in milliseconds between two flushes of the outbox, 0 to flush after each write.
+     */
+    protected void setActionOutbox(Path directory, long maxSizeBytes, long ttlMillis, long syncIntervalMs) {
+        this.actionOutboxDirectory = directory;
+        this.actionOutboxMaxSizeBytes = maxSizeBytes;
+        this.actionOutboxTtlMillis = ttlMillis;
+        this.actionOutboxSyncIntervalMs = syncIntervalMs;
+    }
+
+    /**
+     * Sets the listener notified of the outcome of each action publication.
+     *
+     * @param actionPublishListener The listener.
+     */
+    protected void setActionPublishListener(ActionPublishListener actionPublishListener) {
+        this.actionPublishListener = actionPublishListener;
+    }
+
+    /**
+     * Sets the shared subscription group of the incoming topics.
+     *
+     * @param sharedSubscriptionGroup The shared subscription group.
+     */
+    protected void setSharedSubscriptionGroup(String sharedSubscriptionGroup) {
+        this.sharedSubscriptionGroup = sharedSubscriptionGroup;
+    }
+
+    /**
+     * Sets the number of MQTT connections opened by the adapter.
+     *
+     * @param connectionCount The number of connections.
+     */
+    protected void setConnectionCount(int connectionCount) {
+        this.connectionCount = connectionCount;
+    }
+
+    /**
+     * Assigns an incoming topic to a connection.
+     *
+     * @param topic           The incoming topic.
+     * @param connectionIndex The index of the connection.
+     */
+    protected void assignIncomingTopicToConnection(String topic, int connectionIndex) {
+        this.incomingTopicConnections.put(topic, connectionIndex);
+    }
+
+    /**
+     * Adds a report-by-exception filter for the values of a property.
+     *
+     * @param propertyKey The key of the property.
+     * @param filter      The filter.
+     */
+    protected void addPropertyFilter(String propertyKey, PropertyChangeFilter filter) {
+        this.propertyFilters.put(propertyKey, filter);
+    }
+
+    /**
+     * Sets the report-by-exception filter applied to the properties without a specific filter.
+     *
+     * @param defaultPropertyFilter The default filter.
+     */
+    protected void setDefaultPropertyFilter(PropertyChangeFilter defaultPropertyFilter) {
+        this.defaultPropertyFilter = defaultPropertyFilter;
+    }
+
+}
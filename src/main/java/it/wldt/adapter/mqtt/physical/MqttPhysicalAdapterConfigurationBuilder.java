@@ -1,21 +1,36 @@
 package it.wldt.adapter.mqtt.physical;
 
+import com.github.mustachejava.MustacheException;
+import it.wldt.adapter.mqtt.physical.connection.MqttProtocolVersion;
+import it.wldt.adapter.mqtt.physical.egress.ActionOutbox;
+import it.wldt.adapter.mqtt.physical.egress.ActionPublishListener;
+import it.wldt.adapter.mqtt.physical.egress.ActionRoute;
+import it.wldt.adapter.mqtt.physical.egress.ActionRouter;
 import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.ingress.IngressOverloadPolicy;
+import it.wldt.adapter.mqtt.physical.ingress.PropertyChangeFilter;
 import it.wldt.adapter.mqtt.physical.topic.MqttQosLevel;
 import it.wldt.adapter.mqtt.physical.topic.MqttTopic;
+import it.wldt.adapter.mqtt.physical.topic.TopicTemplate;
 import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
 import it.wldt.adapter.mqtt.physical.topic.incoming.EventIncomingTopic;
 import it.wldt.adapter.mqtt.physical.topic.incoming.PropertyIncomingTopic;
 import it.wldt.adapter.mqtt.physical.topic.outgoing.ActionOutgoingTopic;
 import it.wldt.adapter.mqtt.physical.topic.outgoing.DigitalTwinOutgoingTopic;
+import it.wldt.adapter.mqtt.physical.topic.outgoing.MustacheOutgoingTopic;
 import it.wldt.adapter.physical.PhysicalAssetAction;
 import it.wldt.adapter.physical.PhysicalAssetEvent;
 import it.wldt.adapter.physical.PhysicalAssetProperty;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
 import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -76,7 +91,7 @@ public class MqttPhysicalAdapterConfigurationBuilder {
      * @throws MqttPhysicalAdapterConfigurationException If there is a configuration error.
      */
     public <T> MqttPhysicalAdapterConfigurationBuilder addPhysicalAssetPropertyAndTopic(String propertyKey, T initialValue, String topic, Function<String, T> topicFunction) throws MqttPhysicalAdapterConfigurationException {
-        checkTopicAndFunction(topic, topicFunction, this.configuration.getIncomingTopics().stream().map(MqttTopic::getTopic).collect(Collectors.toList()));
+        checkIncomingTopicAndFunction(topic, topicFunction);
         configuration.addIncomingTopic(new PropertyIncomingTopic<>(topic, propertyKey, topicFunction));
         return addPhysicalAssetProperty(propertyKey, initialValue);
     }
@@ -95,7 +110,7 @@ public class MqttPhysicalAdapterConfigurationBuilder {
      */
     public <T> MqttPhysicalAdapterConfigurationBuilder addPhysicalAssetActionAndTopic(String actionKey, String type, String contentType,
                                                    String topic, Function<T, String> topicFunction) throws MqttPhysicalAdapterConfigurationException {
-        checkTopicAndFunction(topic, topicFunction, this.configuration.getOutgoingTopics().values().stream().map(MqttTopic::getTopic).collect(Collectors.toList()));
+        checkTopicAndFunction(topic, topicFunction, getOutgoingTopicNames());
         configuration.addOutgoingTopic(actionKey, new ActionOutgoingTopic<>(topic, topicFunction));
         return addPhysicalAssetAction(actionKey, type, contentType);
     }
@@ -121,11 +136,56 @@ public class MqttPhysicalAdapterConfigurationBuilder {
                                                                                       MqttQosLevel qosLevel,
                                                                                       boolean isRetained,
                                                                                       Function<T, String> topicFunction) throws MqttPhysicalAdapterConfigurationException {
-        checkTopicAndFunction(topic, topicFunction, this.configuration.getOutgoingTopics().values().stream().map(MqttTopic::getTopic).collect(Collectors.toList()));
+        checkTopicAndFunction(topic, topicFunction, getOutgoingTopicNames());
         configuration.addOutgoingTopic(actionKey, new ActionOutgoingTopic<>(topic, qosLevel, isRetained, topicFunction));
         return addPhysicalAssetAction(actionKey, type, contentType);
     }
 
+    /**
+     * Adds a physical asset action whose MQTT topic and payload are rendered from Mustache templates using the action body,
+     * e.g. {@code devices/{{deviceId}}/cmd}. The templates are compiled when the configuration is built.
+     *
+     * @param actionKey       The key of the action.
+     * @param type            The type of the action.
+     * @param contentType     The content type of the action.
+     * @param topicTemplate   The template of the MQTT topic associated with the action.
+     * @param payloadTemplate The template of the MQTT message payload.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If there is a configuration error.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder addPhysicalAssetActionAndTemplate(String actionKey, String type, String contentType,
+                                                                                     String topicTemplate, String payloadTemplate) throws MqttPhysicalAdapterConfigurationException {
+        return addPhysicalAssetActionAndTemplate(actionKey, type, contentType, topicTemplate, MqttQosLevel.MQTT_QOS_0, false, payloadTemplate);
+    }
+
+    /**
+     * Adds a physical asset action whose MQTT topic and payload are rendered from Mustache templates using the action body,
+     * e.g. {@code devices/{{deviceId}}/cmd}. The templates are compiled when the configuration is built.
+     *
+     * @param actionKey       The key of the action.
+     * @param type            The type of the action.
+     * @param contentType     The content type of the action.
+     * @param topicTemplate   The template of the MQTT topic associated with the action.
+     * @param qosLevel        The Quality of Service (QoS) level for message delivery.
+     * @param isRetained      The retained flag.
+     * @param payloadTemplate The template of the MQTT message payload.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If there is a configuration error.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder addPhysicalAssetActionAndTemplate(String actionKey,
+                                                                                     String type,
+                                                                                     String contentType,
+                                                                                     String topicTemplate,
+                                                                                     MqttQosLevel qosLevel,
+                                                                                     boolean isRetained,
+                                                                                     String payloadTemplate) throws MqttPhysicalAdapterConfigurationException {
+        if(payloadTemplate == null) throw new MqttPhysicalAdapterConfigurationException("Payload template cannot be null");
+        MustacheOutgoingTopic topic = new MustacheOutgoingTopic(topicTemplate, qosLevel, isRetained, payloadTemplate);
+        checkTopicAndFunction(topicTemplate, topic.getPublishFunction(), getOutgoingTopicNames());
+        configuration.addOutgoingTopic(actionKey, topic);
+        return addPhysicalAssetAction(actionKey, type, contentType);
+    }
+
     /**
      * Adds a physical asset event and its corresponding MQTT topic to the configuration.
      *
@@ -138,7 +198,7 @@ public class MqttPhysicalAdapterConfigurationBuilder {
      * @throws MqttPhysicalAdapterConfigurationException If there is a configuration error.
      */
     public <T> MqttPhysicalAdapterConfigurationBuilder addPhysicalAssetEventAndTopic(String eventKey, String type, String topic, Function<String, T> topicFunction) throws MqttPhysicalAdapterConfigurationException {
-        checkTopicAndFunction(topic, topicFunction, this.configuration.getIncomingTopics().stream().map(MqttTopic::getTopic).collect(Collectors.toList()));
+        checkIncomingTopicAndFunction(topic, topicFunction);
         configuration.addIncomingTopic(new EventIncomingTopic<>(topic, eventKey, topicFunction));
         return addPhysicalAssetEvent(eventKey, type);
 
@@ -156,7 +216,7 @@ public class MqttPhysicalAdapterConfigurationBuilder {
     public MqttPhysicalAdapterConfigurationBuilder addIncomingTopic(DigitalTwinIncomingTopic topic, List<PhysicalAssetProperty<?>> properties, List<PhysicalAssetEvent> events) throws MqttPhysicalAdapterConfigurationException {
         if(topic == null) throw new MqttPhysicalAdapterConfigurationException("DigitalTwinIncomingTopic cannot be null");
         if(!isValid(properties) && !isValid(events)) throw new MqttPhysicalAdapterConfigurationException("Property and event list cannot be null or empty. For each DigitalTwinIncomingTopic, related properties and events must be specified");
-        checkTopicAndFunction(topic.getTopic(), topic.getSubscribeFunction(), this.configuration.getIncomingTopics().stream().map(MqttTopic::getTopic).collect(Collectors.toList()));
+        checkIncomingTopicAndFunction(topic.getTopic(), topic.getSubscribeFunction());
         this.properties.addAll(properties);
         this.events.addAll(events);
         configuration.addIncomingTopic(topic);
@@ -174,8 +234,8 @@ public class MqttPhysicalAdapterConfigurationBuilder {
      * @throws MqttPhysicalAdapterConfigurationException If there is a configuration error.
      */
     public MqttPhysicalAdapterConfigurationBuilder addOutgoingTopic(String actionKey,  String type, String contentType, DigitalTwinOutgoingTopic topic) throws MqttPhysicalAdapterConfigurationException {
-        if(topic == null || isValid(actionKey)) throw new MqttPhysicalAdapterConfigurationException("DigitalTwinOutgoingTopic cannot be null | Action key cannot be empty string or null");
-        checkTopicAndFunction(topic.getTopic(), topic.getPublishFunction(), this.configuration.getOutgoingTopics().values().stream().map(MqttTopic::getTopic).collect(Collectors.toList()));
+        if(topic == null || !isValid(actionKey)) throw new MqttPhysicalAdapterConfigurationException("DigitalTwinOutgoingTopic cannot be null | Action key cannot be empty string or null");
+        checkTopicAndFunction(topic.getTopic(), topic.getPublishFunction(), getOutgoingTopicNames());
         configuration.addOutgoingTopic(actionKey, topic);
         return addPhysicalAssetAction(actionKey, type, contentType);
     }
@@ -253,6 +313,19 @@ public class MqttPhysicalAdapterConfigurationBuilder {
         return this;
     }
 
+    /**
+     * Sets the non-blocking flag for the MQTT Physical Adapter configuration. When enabled connect, subscribe and publish
+     * operations return immediately and their outcome is reported through callbacks, so publishing an action does not
+     * block the WLDT event thread until the broker acknowledges it.
+     *
+     * @param nonBlocking The non-blocking flag.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setNonBlockingFlag(boolean nonBlocking){
+        this.configuration.setNonBlockingFlag(nonBlocking);
+        return this;
+    }
+
     /**
      * Sets the MQTT client persistence for the MQTT Physical Adapter configuration.
      *
@@ -266,6 +339,408 @@ public class MqttPhysicalAdapterConfigurationBuilder {
         return this;
     }
 
+    /**
+     * Enables the latest-value conflation for the properties produced by an incoming topic already added to the configuration:
+     * only the latest value of each property is kept and forwarded to the Digital Twin every interval.
+     *
+     * @param topic      The incoming MQTT topic, as defined in the configuration.
+     * @param intervalMs The conflation interval in milliseconds.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the interval is not a positive number or the topic is not defined.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setPropertyConflationInterval(String topic, long intervalMs) throws MqttPhysicalAdapterConfigurationException {
+        if(intervalMs <= 0) throw new MqttPhysicalAdapterConfigurationException("Conflation interval must be a positive number");
+        getIncomingTopic(topic).setConflationIntervalMs(intervalMs);
+        return this;
+    }
+
+    /**
+     * Enables the latest-value conflation for the properties produced by an incoming topic already added to the configuration,
+     * forwarding the latest value of each property as soon as the previous values have been published on the event bus.
+     *
+     * @param topic The incoming MQTT topic, as defined in the configuration.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the topic is not defined.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setPropertyConflationOnReady(String topic) throws MqttPhysicalAdapterConfigurationException {
+        getIncomingTopic(topic).setConflationOnReady(true);
+        return this;
+    }
+
+    /**
+     * Sets the policy applied by the ingress pipeline when the messages of an incoming topic already added to the
+     * configuration cannot be queued, e.g. {@code IngressOverloadPolicy.keepLatestPerKey().withMaxAge(1000)}.
+     * By default messages are never dropped and the MQTT client waits for free space.
+     *
+     * @param topic  The incoming MQTT topic, as defined in the configuration.
+     * @param policy The overload policy.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the policy is null or the topic is not defined.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setIncomingTopicOverloadPolicy(String topic, IngressOverloadPolicy policy) throws MqttPhysicalAdapterConfigurationException {
+        if(policy == null) throw new MqttPhysicalAdapterConfigurationException("IngressOverloadPolicy cannot be null");
+        getIncomingTopic(topic).setOverloadPolicy(policy);
+        return this;
+    }
+
+    /**
+     * Adds a report-by-exception filter for the values of a property: values equal to the last forwarded one,
+     * or numeric changes within the deadbands of the filter, are not forwarded to the Digital Twin.
+     *
+     * @param propertyKey The key of the property.
+     * @param filter      The filter, e.g. {@code PropertyChangeFilter.absoluteDeadband(0.5).withMaxSilence(60000)}.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the property key is empty or the filter is null.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder addPropertyFilter(String propertyKey, PropertyChangeFilter filter) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(propertyKey) || filter == null) throw new MqttPhysicalAdapterConfigurationException("Property key cannot be empty or null | PropertyChangeFilter cannot be null");
+        this.configuration.addPropertyFilter(propertyKey, filter);
+        return this;
+    }
+
+    /**
+     * Sets the report-by-exception filter applied to all the properties without a specific filter.
+     *
+     * @param filter The default filter.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the filter is null.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setDefaultPropertyFilter(PropertyChangeFilter filter) throws MqttPhysicalAdapterConfigurationException {
+        if(filter == null) throw new MqttPhysicalAdapterConfigurationException("PropertyChangeFilter cannot be null");
+        this.configuration.setDefaultPropertyFilter(filter);
+        return this;
+    }
+
+    /**
+     * Enables the asynchronous ingress pipeline, decoding incoming messages on the given number of workers
+     * instead of the MQTT client callback thread. Messages of the same topic are always processed in order.
+     *
+     * @param workerCount The number of ingress workers.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the worker count is not a positive number.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setIngressWorkerCount(int workerCount) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(workerCount)) throw new MqttPhysicalAdapterConfigurationException("Ingress worker count must be a positive number");
+        this.configuration.setIngressWorkerCount(workerCount);
+        return this;
+    }
+
+    /**
+     * Sets the capacity of the bounded queue of each ingress worker.
+     * When a queue is full the MQTT client callback thread waits for free space.
+     *
+     * @param queueCapacity The capacity of each ingress queue.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the queue capacity is not a positive number.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setIngressQueueCapacity(int queueCapacity) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(queueCapacity)) throw new MqttPhysicalAdapterConfigurationException("Ingress queue capacity must be a positive number");
+        this.configuration.setIngressQueueCapacity(queueCapacity);
+        return this;
+    }
+
+    /**
+     * Enables manual acknowledgements: QoS 1 and 2 messages are acknowledged to the broker only after their events
+     * have been published on the event bus. Messages of conflated topics are acknowledged when the conflator forwards
+     * their value or the value replacing it. When the given number of messages is waiting for acknowledgement the
+     * MQTT client stops reading, leaving the backlog on the broker. Acknowledgements are sent in the order the messages
+     * have been received, holding back the messages processed before the ones received earlier.
+     *
+     * @param maxInFlightMessages The maximum number of received messages not yet acknowledged.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the maximum number of in-flight messages is not a positive number.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setManualAcks(int maxInFlightMessages) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(maxInFlightMessages)) throw new MqttPhysicalAdapterConfigurationException("Max in-flight messages must be a positive number");
+        this.configuration.setMaxInFlightMessages(maxInFlightMessages);
+        return this;
+    }
+
+    /**
+     * Pipelines the publication of actions: each connection keeps up to the given number of publications in flight
+     * without waiting for their completion, and the thread delivering the actions waits only when the window is full.
+     * In non-blocking mode the window is always enabled, by default with the in-flight limit of the MQTT client (10).
+     *
+     * @param maxInFlightPublishes The maximum number of in-flight publications of each connection.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the value is not between 1 and 65535.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setOutgoingInFlightWindow(int maxInFlightPublishes) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(maxInFlightPublishes) || maxInFlightPublishes > MqttPhysicalAdapterConfiguration.MAX_RECEIVE_MAXIMUM)
+            throw new MqttPhysicalAdapterConfigurationException("Outgoing in-flight window must be between 1 and 65535");
+        this.configuration.setOutgoingInFlightWindow(maxInFlightPublishes);
+        return this;
+    }
+
+    /**
+     * Sets the listener notified of the completion or failure of the publication of each action.
+     *
+     * @param listener The listener.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the listener is null.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setActionPublishListener(ActionPublishListener listener) throws MqttPhysicalAdapterConfigurationException {
+        if(listener == null) throw new MqttPhysicalAdapterConfigurationException("Action publish listener cannot be null");
+        this.configuration.setActionPublishListener(listener);
+        return this;
+    }
+
+    /**
+     * Binds the incoming topics through SUBSCRIBE packets carrying up to the given number of topic filters each,
+     * keeping up to the given number of them in flight on each connection, instead of one SUBSCRIBE per topic.
+     * With MQTT 5 and a batch size above 1, no subscription identifier is sent, since an identifier applies to a whole
+     * SUBSCRIBE, and received messages are routed through the incoming topic index.
+     *
+     * @param batchSize          The maximum number of topic filters of each SUBSCRIBE.
+     * @param maxInFlightBatches The maximum number of SUBSCRIBE packets of each connection waiting for their SUBACK.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If a value is not between 1 and 65535.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setSubscribeBatching(int batchSize, int maxInFlightBatches) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(batchSize) || batchSize > MqttPhysicalAdapterConfiguration.MAX_RECEIVE_MAXIMUM
+                || !isValid(maxInFlightBatches) || maxInFlightBatches > MqttPhysicalAdapterConfiguration.MAX_RECEIVE_MAXIMUM)
+            throw new MqttPhysicalAdapterConfigurationException("Subscribe batch size and in-flight batches must be between 1 and 65535");
+        this.configuration.setSubscribeBatching(batchSize, maxInFlightBatches);
+        return this;
+    }
+
+    /**
+     * Stores the actions that cannot be published because the broker is unreachable in a durable outbox of
+     * memory-mapped segment files, replaying them in order once the connection is re-established.
+     * Actions received while the outbox is not empty are stored too, so that the order is preserved.
+     * The outbox is flushed to the storage device every {@value ActionOutbox#DEFAULT_SYNC_INTERVAL_MS} milliseconds.
+     *
+     * @param directory    The directory of the outbox segment files, created if missing.
+     * @param maxSizeBytes The maximum number of bytes of the stored actions, beyond which new actions fail.
+     * @param ttlMillis    The time to live of the stored actions in milliseconds, 0 for no limit.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the directory is null, the size is not positive or the time to live is negative.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setActionOutbox(Path directory, long maxSizeBytes, long ttlMillis) throws MqttPhysicalAdapterConfigurationException {
+        return setActionOutbox(directory, maxSizeBytes, ttlMillis, ActionOutbox.DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * Stores the actions that cannot be published because the broker is unreachable in a durable outbox of
+     * memory-mapped segment files, flushed to the storage device with the given interval. Stored actions survive a
+     * crash of the process; on a power loss, the writes of the last interval may be lost.
+     *
+     * @param directory      The directory of the outbox segment files, created if missing.
+     * @param maxSizeBytes   The maximum number of bytes of the stored actions, beyond which new actions fail.
+     * @param ttlMillis      The time to live of the stored actions in milliseconds, 0 for no limit.
+     * @param syncIntervalMs The interval in milliseconds between two flushes of the outbox, 0 to flush after each write.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the directory is null, the size is not positive or the time to live or the interval is negative.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setActionOutbox(Path directory, long maxSizeBytes, long ttlMillis, long syncIntervalMs) throws MqttPhysicalAdapterConfigurationException {
+        if(directory == null) throw new MqttPhysicalAdapterConfigurationException("Action outbox directory cannot be null");
+        if(maxSizeBytes <= 0 || ttlMillis < 0 || syncIntervalMs < 0)
+            throw new MqttPhysicalAdapterConfigurationException("Action outbox size must be positive, time to live and sync interval cannot be negative");
+        this.configuration.setActionOutbox(directory, maxSizeBytes, ttlMillis, syncIntervalMs);
+        return this;
+    }
+
+    /**
+     * Subscribes all the incoming topics as MQTT shared subscriptions ({@code $share/<group>/<topic>}):
+     * the broker distributes the matching messages among all the clients subscribed with the same group,
+     * allowing several adapter instances, each one with its own client id, to split the ingress load.
+     *
+     * @param group The shared subscription group.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the group is empty or contains topic separators or wildcards.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setSharedSubscriptionGroup(String group) throws MqttPhysicalAdapterConfigurationException {
+        if(!TopicTemplate.isValidSharedGroup(group))
+            throw new MqttPhysicalAdapterConfigurationException("Shared subscription group cannot be empty or contain '/', '+' or '#'");
+        this.configuration.setSharedSubscriptionGroup(group);
+        return this;
+    }
+
+    /**
+     * Sets the number of MQTT connections opened by the adapter. Each connection uses a client id derived from the
+     * configured one, the incoming topics are partitioned among the connections through the hash of the topic,
+     * unless explicitly assigned, and the outgoing topics are spread over the same connections.
+     *
+     * @param connectionCount The number of connections.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the number of connections is not a positive number.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setConnectionCount(int connectionCount) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(connectionCount)) throw new MqttPhysicalAdapterConfigurationException("Connection count must be a positive number");
+        this.configuration.setConnectionCount(connectionCount);
+        return this;
+    }
+
+    /**
+     * Assigns an incoming topic already added to the builder to a specific connection.
+     *
+     * @param topic           The incoming topic.
+     * @param connectionIndex The index of the connection, lower than the connection count.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the topic is not defined or the index is negative.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder assignIncomingTopicToConnection(String topic, int connectionIndex) throws MqttPhysicalAdapterConfigurationException {
+        if(connectionIndex < 0) throw new MqttPhysicalAdapterConfigurationException("Connection index cannot be negative");
+        this.configuration.assignIncomingTopicToConnection(getIncomingTopic(topic).getTopic(), connectionIndex);
+        return this;
+    }
+
+    /**
+     * Sets the MQTT protocol version used to connect to the broker (default MQTT 3.1.1).
+     *
+     * @param protocolVersion The protocol version.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the protocol version is null.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setProtocolVersion(MqttProtocolVersion protocolVersion) throws MqttPhysicalAdapterConfigurationException {
+        if(protocolVersion == null) throw new MqttPhysicalAdapterConfigurationException("Protocol version cannot be null");
+        this.configuration.setProtocolVersion(protocolVersion);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of topic aliases accepted from the broker. Requires MQTT 5.
+     *
+     * @param topicAliasMaximum The topic alias maximum.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the value is not between 1 and 65535.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setTopicAliasMaximum(int topicAliasMaximum) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(topicAliasMaximum) || topicAliasMaximum > MqttPhysicalAdapterConfiguration.MAX_RECEIVE_MAXIMUM)
+            throw new MqttPhysicalAdapterConfigurationException("Topic alias maximum must be between 1 and 65535");
+        this.configuration.setTopicAliasMaximum(topicAliasMaximum);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of unacknowledged QoS 1 and 2 messages the broker may send to each connection. Requires MQTT 5.
+     * When manual acknowledgements are enabled it defaults to the maximum number of in-flight messages.
+     *
+     * @param receiveMaximum The receive maximum.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the value is not between 1 and 65535.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setReceiveMaximum(int receiveMaximum) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(receiveMaximum) || receiveMaximum > MqttPhysicalAdapterConfiguration.MAX_RECEIVE_MAXIMUM)
+            throw new MqttPhysicalAdapterConfigurationException("Receive maximum must be between 1 and 65535");
+        this.configuration.setReceiveMaximum(receiveMaximum);
+        return this;
+    }
+
+    /**
+     * Attaches the latency tracing metadata defined in {@link it.wldt.adapter.mqtt.physical.metrics.TraceMetadata}
+     * to the events produced from incoming messages, so that consumers can measure the latency from the message arrival
+     * and the adapter can trace the events forwarded later by the conflation stage.
+     *
+     * @param latencyTraceMetadata Whether to attach the latency tracing metadata.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setLatencyTraceMetadataFlag(boolean latencyTraceMetadata) {
+        this.configuration.setLatencyTraceMetadataFlag(latencyTraceMetadata);
+        return this;
+    }
+
+    /**
+     * Exposes the metrics of the adapter in the Prometheus text format on the {@code /metrics} path of a local
+     * HTTP endpoint, started and stopped together with the adapter.
+     *
+     * @param host The host the endpoint is bound to, e.g. "127.0.0.1".
+     * @param port The port the endpoint is bound to, 0 for an ephemeral port.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the host is empty or the port is not between 0 and 65535.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setMetricsHttpEndpoint(String host, int port) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(host) || port < 0 || port > 65535)
+            throw new MqttPhysicalAdapterConfigurationException("Metrics endpoint host cannot be empty and port must be between 0 and 65535");
+        this.configuration.setMetricsHttpEndpoint(host, port);
+        return this;
+    }
+
+    /**
+     * Sets the lifetime of the messages published for an action already added to the builder: the broker discards
+     * them if not delivered within the given interval, so stale actions are not executed. Requires MQTT 5.
+     *
+     * @param actionKey             The action key.
+     * @param messageExpiryInterval The message expiry interval in seconds.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the action is not defined or the interval is not positive.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setOutgoingTopicMessageExpiry(String actionKey, long messageExpiryInterval) throws MqttPhysicalAdapterConfigurationException {
+        if(messageExpiryInterval <= 0) throw new MqttPhysicalAdapterConfigurationException("Message expiry interval must be a positive number");
+        DigitalTwinOutgoingTopic topic = this.configuration.getOutgoingTopicByActionKey(actionKey)
+                .orElseThrow(() -> new MqttPhysicalAdapterConfigurationException("Outgoing topic not defined for action: " + actionKey));
+        topic.setMessageExpiryInterval(messageExpiryInterval);
+        return this;
+    }
+
+    /**
+     * Sets the charset used to encode the String payloads published for an action already added to the builder.
+     * Default is UTF-8.
+     *
+     * @param actionKey The action key.
+     * @param charset   The payload charset.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the action is not defined or the charset is null.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder setOutgoingTopicCharset(String actionKey, Charset charset) throws MqttPhysicalAdapterConfigurationException {
+        if(charset == null) throw new MqttPhysicalAdapterConfigurationException("Charset cannot be null");
+        DigitalTwinOutgoingTopic topic = this.configuration.getOutgoingTopicByActionKey(actionKey)
+                .orElseThrow(() -> new MqttPhysicalAdapterConfigurationException("Outgoing topic not defined for action: " + actionKey));
+        topic.setCharset(charset);
+        return this;
+    }
+
+    /**
+     * Restricts the actions published on the outgoing topic of an action already added to the builder to the ones
+     * whose body satisfies a condition, e.g. the ones targeting a specific zone.
+     *
+     * @param <T>           The type of the action payload.
+     * @param actionKey     The action key.
+     * @param bodyCondition The condition on the action body.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the action is not defined or the condition is null.
+     */
+    public <T> MqttPhysicalAdapterConfigurationBuilder setOutgoingTopicCondition(String actionKey, Predicate<T> bodyCondition) throws MqttPhysicalAdapterConfigurationException {
+        if(bodyCondition == null) throw new MqttPhysicalAdapterConfigurationException("Condition cannot be null");
+        if(!this.configuration.getOutgoingTopicByActionKey(actionKey).isPresent())
+            throw new MqttPhysicalAdapterConfigurationException("Outgoing topic not defined for action: " + actionKey);
+        this.configuration.setOutgoingTopicCondition(actionKey, toActionCondition(bodyCondition));
+        return this;
+    }
+
+    /**
+     * Routes an action already added to the builder to an additional outgoing topic, so that each action is
+     * published on all its topics.
+     *
+     * @param actionKey The action key.
+     * @param topic     The additional outgoing topic.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the action is not defined or the topic is not valid.
+     */
+    public MqttPhysicalAdapterConfigurationBuilder addActionRoute(String actionKey, DigitalTwinOutgoingTopic topic) throws MqttPhysicalAdapterConfigurationException {
+        return addActionRoute(actionKey, topic, null);
+    }
+
+    /**
+     * Routes the actions of a key already added to the builder whose body satisfies a condition to an additional
+     * outgoing topic, e.g. to address the actuators of a specific zone.
+     *
+     * @param <T>           The type of the action payload.
+     * @param actionKey     The action key.
+     * @param topic         The additional outgoing topic.
+     * @param bodyCondition The condition on the action body, null to route all the actions.
+     * @return The updated MqttPhysicalAdapterConfigurationBuilder.
+     * @throws MqttPhysicalAdapterConfigurationException If the action is not defined or the topic is not valid.
+     */
+    public <T> MqttPhysicalAdapterConfigurationBuilder addActionRoute(String actionKey, DigitalTwinOutgoingTopic topic, Predicate<T> bodyCondition) throws MqttPhysicalAdapterConfigurationException {
+        if(topic == null) throw new MqttPhysicalAdapterConfigurationException("DigitalTwinOutgoingTopic cannot be null");
+        if(actions.stream().noneMatch(a -> a.getKey().equals(actionKey)))
+            throw new MqttPhysicalAdapterConfigurationException("Action not defined: " + actionKey);
+        checkTopicAndFunction(topic.getTopic(), topic.getPublishFunction(), getOutgoingTopicNames());
+        this.configuration.addActionRoute(new ActionRoute(actionKey, topic, bodyCondition == null ? null : toActionCondition(bodyCondition)));
+        return this;
+    }
+
     /**
      * Builds and returns the final MQTT Physical Adapter configuration.
      *
@@ -277,10 +752,38 @@ public class MqttPhysicalAdapterConfigurationBuilder {
             throw new MqttPhysicalAdapterConfigurationException("Physical Adapter must have at least one property or event or action");
         if(this.configuration.getIncomingTopics().isEmpty() && this.configuration.getOutgoingTopics().isEmpty())
             throw new MqttPhysicalAdapterConfigurationException("MQTT Physical Adapter must define at least one DigitalTwinIncomingTopic or DigitalTwinOutgoingTopic");
+        if(this.configuration.getIncomingTopicConnections().values().stream().anyMatch(i -> i >= this.configuration.getConnectionCount()))
+            throw new MqttPhysicalAdapterConfigurationException("Incoming topics must be assigned to a connection index lower than the connection count");
+        if(this.configuration.getConnectionCount() > 1 && !(this.configuration.getPersistence() instanceof MemoryPersistence))
+            throw new MqttPhysicalAdapterConfigurationException("Custom MQTT client persistence is supported only with a single connection");
+        if(this.configuration.getProtocolVersion() != MqttProtocolVersion.MQTT_5 && (this.configuration.getTopicAliasMaximum() > 0
+                || this.configuration.getReceiveMaximum() > 0
+                || getAllOutgoingTopics().stream().anyMatch(t -> t.getMessageExpiryInterval() > 0)))
+            throw new MqttPhysicalAdapterConfigurationException("Topic aliases, receive maximum and message expiry require MQTT 5");
+        if(this.configuration.getProtocolVersion() == MqttProtocolVersion.MQTT_5 && !(this.configuration.getPersistence() instanceof MemoryPersistence))
+            throw new MqttPhysicalAdapterConfigurationException("Custom MQTT client persistence is not supported with MQTT 5");
+        if(!this.configuration.isIngressPipelineEnabled() && this.configuration.getIncomingTopics().stream().anyMatch(t -> t.getOverloadPolicy() != IngressOverloadPolicy.neverDrop()))
+            throw new MqttPhysicalAdapterConfigurationException("Incoming topic overload policies require the ingress pipeline to be enabled");
+        compileOutgoingTemplates();
+        compileActionRouter();
         this.configuration.setPhysicalAssetDescription(actions, properties, events);
         return this.configuration;
     }
 
+    /**
+     * Gets an incoming topic already added to the configuration.
+     *
+     * @param topic The MQTT topic, as defined in the configuration.
+     * @return The incoming topic.
+     * @throws MqttPhysicalAdapterConfigurationException If the topic is not defined.
+     */
+    private DigitalTwinIncomingTopic getIncomingTopic(String topic) throws MqttPhysicalAdapterConfigurationException {
+        for(DigitalTwinIncomingTopic incomingTopic : this.configuration.getIncomingTopics())
+            if(incomingTopic.getTopic().equals(topic))
+                return incomingTopic;
+        throw new MqttPhysicalAdapterConfigurationException(String.format("Incoming topic %s not defined", topic));
+    }
+
     /**
      * Checks if the given MQTT topic and function are valid.
      *
@@ -299,6 +802,87 @@ public class MqttPhysicalAdapterConfigurationBuilder {
     }
 
 
+    /**
+     * Compiles the router of the actions from the outgoing topics indexed by action key and the additional routes.
+     */
+    private void compileActionRouter() {
+        List<ActionRoute> routes = new ArrayList<>();
+        this.configuration.getOutgoingTopics().forEach((actionKey, topic) ->
+                routes.add(new ActionRoute(actionKey, topic, this.configuration.getOutgoingTopicCondition(actionKey))));
+        routes.addAll(this.configuration.getAdditionalActionRoutes());
+        this.configuration.setActionRouter(new ActionRouter(routes));
+    }
+
+    /**
+     * Gets the outgoing topics indexed by action key and the ones of the additional routes.
+     *
+     * @return The list of outgoing topics.
+     */
+    private List<DigitalTwinOutgoingTopic> getAllOutgoingTopics() {
+        List<DigitalTwinOutgoingTopic> topics = new ArrayList<>(this.configuration.getOutgoingTopics().values());
+        this.configuration.getAdditionalActionRoutes().forEach(route -> topics.add(route.getTopic()));
+        return topics;
+    }
+
+    /**
+     * Gets the names of all the outgoing topics, used to detect duplicated topics.
+     *
+     * @return The list of outgoing topic names.
+     */
+    private List<String> getOutgoingTopicNames() {
+        return getAllOutgoingTopics().stream().map(MqttTopic::getTopic).collect(Collectors.toList());
+    }
+
+    /**
+     * Adapts a condition on the action body to a condition on the action.
+     *
+     * @param <T>           The type of the action payload.
+     * @param bodyCondition The condition on the action body.
+     * @return The condition on the action.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Predicate<PhysicalAssetActionWldtEvent<?>> toActionCondition(Predicate<T> bodyCondition) {
+        return action -> bodyCondition.test((T) action.getBody());
+    }
+
+    /**
+     * Compiles the templates of the MustacheOutgoingTopics of the configuration.
+     *
+     * @throws MqttPhysicalAdapterConfigurationException If a template is not valid.
+     */
+    private void compileOutgoingTemplates() throws MqttPhysicalAdapterConfigurationException {
+        for(DigitalTwinOutgoingTopic topic : getAllOutgoingTopics()){
+            if(!(topic instanceof MustacheOutgoingTopic))
+                continue;
+            try {
+                ((MustacheOutgoingTopic) topic).compile();
+            } catch (MustacheException e) {
+                throw new MqttPhysicalAdapterConfigurationException("Invalid template for outgoing topic " + topic.getTopic() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks if the given incoming MQTT topic, possibly a template, and function are valid.
+     * Two incoming topics are considered duplicated when they share the same subscription filter.
+     *
+     * @param <I>           The input type of the function.
+     * @param <O>           The output type of the function.
+     * @param topic         The MQTT topic or topic template.
+     * @param topicFunction The function associated with the topic.
+     * @throws MqttPhysicalAdapterConfigurationException If the topic or function is invalid, or if the topic is already defined.
+     */
+    private <I, O> void checkIncomingTopicAndFunction(String topic, Function<I, O> topicFunction) throws MqttPhysicalAdapterConfigurationException {
+        if(!isValid(topic) || topicFunction == null)
+            throw new MqttPhysicalAdapterConfigurationException("topic cannot be empty or null | topic function cannot be null");
+        try {
+            checkTopicAndFunction(new TopicTemplate(topic).getSubscriptionFilter(), topicFunction,
+                    this.configuration.getIncomingTopics().stream().map(DigitalTwinIncomingTopic::getSubscriptionFilter).collect(Collectors.toList()));
+        } catch (IllegalArgumentException e) {
+            throw new MqttPhysicalAdapterConfigurationException(e.getMessage());
+        }
+    }
+
     /**
      * Checks if the given list is valid (not null and not empty).
      *
@@ -0,0 +1,184 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Establishes the first connection of a MqttTransport, retrying with an exponential backoff until it succeeds or
+ * the connector is cancelled.
+ *
+ * The MQTT clients reconnect automatically a connection that has been established, but do not retry a first
+ * connection that failed: without retries, a client started while the broker is unreachable would never connect.
+ */
+public class InitialConnector {
+
+    /** The transport to connect. */
+    private final MqttTransport transport;
+
+    /** Whether the first connection attempt blocks the calling thread instead of completing asynchronously. */
+    private final boolean blocking;
+
+    /** The scheduler running the retries. */
+    private final ScheduledExecutorService scheduler;
+
+    /** The maximum delay in milliseconds between two attempts. */
+    private final long maxRetryDelayMs;
+
+    /** Whether failed attempts are retried. */
+    private final boolean retryEnabled;
+
+    /** The listener notified of the outcome of the attempts. */
+    private final Listener listener;
+
+    /** The delay in milliseconds before the next retry. */
+    private long retryDelayMs;
+
+    /** The number of attempts made. */
+    private int attempts = 0;
+
+    /** The scheduled retry, null if none. */
+    private ScheduledFuture<?> retry;
+
+    /** Whether the connector has been cancelled. */
+    private boolean cancelled = false;
+
+    /**
+     * Listener notified of the outcome of the connection attempts.
+     */
+    public interface Listener {
+
+        /**
+         * Called once the transport is connected.
+         */
+        void onConnected();
+
+        /**
+         * Called when a connection attempt fails.
+         *
+         * @param attempt      The number of the failed attempt, starting from 1.
+         * @param cause        The cause of the failure.
+         * @param retryDelayMs The delay in milliseconds before the next attempt, -1 if not retried.
+         */
+        void onAttemptFailed(int attempt, Throwable cause, long retryDelayMs);
+    }
+
+    /**
+     * Constructs an InitialConnector.
+     *
+     * @param transport           The transport to connect.
+     * @param blocking            Whether the first connection attempt blocks the calling thread.
+     * @param scheduler           The scheduler running the retries.
+     * @param initialRetryDelayMs The delay in milliseconds before the first retry, doubled at each failure; 0 disables the retries.
+     * @param maxRetryDelayMs     The maximum delay in milliseconds between two attempts.
+     * @param listener            The listener notified of the outcome of the attempts.
+     */
+    public InitialConnector(MqttTransport transport, boolean blocking, ScheduledExecutorService scheduler,
+                            long initialRetryDelayMs, long maxRetryDelayMs, Listener listener) {
+        this.transport = transport;
+        this.blocking = blocking;
+        this.scheduler = scheduler;
+        this.retryEnabled = initialRetryDelayMs > 0;
+        this.retryDelayMs = initialRetryDelayMs;
+        this.maxRetryDelayMs = Math.max(initialRetryDelayMs, maxRetryDelayMs);
+        this.listener = listener;
+    }
+
+    /**
+     * Makes the first connection attempt. In blocking mode the attempt completes on the calling thread, and so does
+     * the listener if it succeeds; retries never block, so that they do not hold the thread of the scheduler.
+     */
+    public void start() {
+        attempt(blocking);
+    }
+
+    /**
+     * Cancels the pending retry, if any, and prevents further attempts.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if(retry != null){
+            retry.cancel(false);
+            retry = null;
+        }
+    }
+
+    /**
+     * Checks whether the connector has been cancelled.
+     *
+     * @return true if cancelled, false otherwise.
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Gets the number of connection attempts made.
+     *
+     * @return The number of attempts.
+     */
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Makes a connection attempt, unless cancelled.
+     *
+     * @param blockingAttempt Whether the attempt blocks the calling thread.
+     */
+    private void attempt(boolean blockingAttempt) {
+        synchronized (this) {
+            if(cancelled)
+                return;
+            retry = null;
+            attempts++;
+        }
+        try {
+            if(blockingAttempt){
+                transport.connect(null);
+                listener.onConnected();
+                return;
+            }
+            transport.connect(new MqttOperationCallback() {
+                @Override
+                public void onSuccess() {
+                    if(!isCancelled())
+                        listener.onConnected();
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    onAttemptFailed(cause);
+                }
+            });
+        } catch (MqttException e) {
+            onAttemptFailed(e);
+        }
+    }
+
+    /**
+     * Schedules the next attempt after a failure, doubling the delay up to the maximum.
+     *
+     * @param cause The cause of the failure.
+     */
+    private void onAttemptFailed(Throwable cause) {
+        int attempt;
+        long delayMs;
+        synchronized (this) {
+            attempt = attempts;
+            delayMs = retryEnabled && !cancelled ? retryDelayMs : -1;
+            if(delayMs > 0){
+                retryDelayMs = Math.min(retryDelayMs * 2, maxRetryDelayMs);
+                try {
+                    retry = scheduler.schedule(() -> attempt(false), delayMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    delayMs = -1;
+                }
+            }
+        }
+        listener.onAttemptFailed(attempt, cause, delayMs);
+    }
+}
@@ -0,0 +1,651 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable MqttClientPersistence storing the in-flight messages of a MQTT 3 client in an append-only log of
+ * preallocated memory-mapped segment files, with an in-memory index of the live entries.
+ *
+ * Storing or removing a message appends a record to the mapped log, without any filesystem call, instead of
+ * creating or deleting a file as the Paho file persistence does. Segments are flushed to the storage device in
+ * batches by a background thread at the configured interval, or after each write if the interval is 0.
+ * The oldest segment is deleted once none of its entries is live, and its live entries are moved to the end
+ * of the log when the log grows beyond two segments, so the log size follows the number of in-flight messages.
+ */
+public class MappedLogPersistence implements MqttClientPersistence {
+
+    /** Default size of the segment files. */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /** Default interval in milliseconds between two flushes of the log. */
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 100;
+
+    /** Value identifying the segment files. */
+    private static final int MAGIC = 0x57504c47;
+
+    /** Size of the segment header: magic number and reserved word. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Size of the record header: body length and checksum. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** Type of the records storing an entry. */
+    private static final byte PUT = 1;
+
+    /** Type of the records removing an entry. */
+    private static final byte REMOVE = 2;
+
+    /** Prefix of the segment file names. */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /** Suffix of the segment file names. */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** Name of the file locking the persistence directory of a client. */
+    private static final String LOCK_FILE = ".lck";
+
+    /** The directory containing the persistence directories of the clients. */
+    private final Path directory;
+
+    /** The size of the new segment files. */
+    private final int segmentSize;
+
+    /** The interval in milliseconds between two flushes of the log, 0 to flush after each write. */
+    private final long syncIntervalMs;
+
+    /** The live entries, indexed by key. */
+    private final Map<String, Entry> index = new HashMap<>();
+
+    /** The segments of the log, oldest first. */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    /** The persistence directory of the client, null if not open. */
+    private Path clientDirectory;
+
+    /** The channel of the lock file, null if not open. */
+    private FileChannel lockChannel;
+
+    /** The lock on the persistence directory of the client, null if not open. */
+    private FileLock lock;
+
+    /** The thread flushing the log, null if not open or flushing after each write. */
+    private ScheduledExecutorService syncScheduler;
+
+    /** The sequence number of the next segment. */
+    private long nextSequence = 0;
+
+    /** Whether records have been written since the last flush. */
+    private boolean dirty = false;
+
+    /**
+     * Constructs a MappedLogPersistence with the default segment size and flush interval.
+     *
+     * @param directory The directory containing the persistence directories of the clients.
+     */
+    public MappedLogPersistence(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * Constructs a MappedLogPersistence.
+     *
+     * @param directory      The directory containing the persistence directories of the clients.
+     * @param segmentSize    The size of the preallocated segment files. Larger messages get a dedicated segment.
+     * @param syncIntervalMs The interval in milliseconds between two flushes of the log, 0 to flush after each write.
+     */
+    public MappedLogPersistence(Path directory, int segmentSize, long syncIntervalMs) {
+        if(directory == null || segmentSize <= HEADER_SIZE + RECORD_HEADER_SIZE || syncIntervalMs < 0)
+            throw new IllegalArgumentException("Invalid persistence directory, segment size or sync interval");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncIntervalMs = syncIntervalMs;
+    }
+
+    /**
+     * Opens the persistence of a client, recovering the entries stored in its log.
+     *
+     * @param clientId  The client id.
+     * @param serverURI The URI of the broker.
+     * @throws MqttPersistenceException If the log cannot be opened or is in use by another client.
+     */
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        if(clientDirectory != null)
+            throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+        Path path = directory.resolve(sanitize(clientId + "-" + serverURI));
+        try {
+            Files.createDirectories(path);
+            lockChannel = FileChannel.open(path.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if(lock == null)
+                throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+            clientDirectory = path;
+            recover();
+        } catch (IOException e) {
+            release();
+            throw new MqttPersistenceException(e);
+        } catch (MqttPersistenceException e) {
+            release();
+            throw e;
+        }
+        if(syncIntervalMs > 0){
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, String.format("%s-persistence-sync", clientId));
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Flushes the log and closes the persistence. The stored entries are recovered when it is opened again.
+     */
+    @Override
+    public synchronized void close() {
+        if(clientDirectory == null)
+            return;
+        if(syncScheduler != null){
+            syncScheduler.shutdownNow();
+            syncScheduler = null;
+        }
+        sync();
+        release();
+    }
+
+    /**
+     * Stores an entry, replacing the previous one with the same key.
+     *
+     * @param key         The key of the entry.
+     * @param persistable The data to store.
+     * @throws MqttPersistenceException If the persistence is not open or the log cannot be extended.
+     */
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int headerLength = persistable.getHeaderLength();
+        int payloadLength = persistable.getPayloadBytes() != null ? persistable.getPayloadLength() : 0;
+        int bodySize = 1 + 4 + keyBytes.length + 4 + headerLength + payloadLength;
+        Segment segment = reserve(RECORD_HEADER_SIZE + bodySize);
+        int position = segment.writePosition;
+        ByteBuffer body = segment.buffer.duplicate();
+        body.position(position + RECORD_HEADER_SIZE);
+        body.put(PUT).putInt(keyBytes.length).put(keyBytes).putInt(headerLength)
+                .put(persistable.getHeaderBytes(), persistable.getHeaderOffset(), headerLength);
+        if(payloadLength > 0)
+            body.put(persistable.getPayloadBytes(), persistable.getPayloadOffset(), payloadLength);
+        commit(segment, bodySize);
+        Entry previous = index.put(key, new Entry(segment, position));
+        if(previous != null)
+            previous.segment.liveCount--;
+        segment.liveCount++;
+        afterWrite();
+    }
+
+    /**
+     * Gets a stored entry.
+     *
+     * @param key The key of the entry.
+     * @return The stored data, null if not found.
+     * @throws MqttPersistenceException If the persistence is not open.
+     */
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkOpen();
+        Entry entry = index.get(key);
+        return entry != null ? read(entry) : null;
+    }
+
+    /**
+     * Removes a stored entry.
+     *
+     * @param key The key of the entry.
+     * @throws MqttPersistenceException If the persistence is not open or the log cannot be extended.
+     */
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkOpen();
+        Entry entry = index.remove(key);
+        if(entry == null)
+            return;
+        entry.segment.liveCount--;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int bodySize = 1 + 4 + keyBytes.length;
+        Segment segment = reserve(RECORD_HEADER_SIZE + bodySize);
+        ByteBuffer body = segment.buffer.duplicate();
+        body.position(segment.writePosition + RECORD_HEADER_SIZE);
+        body.put(REMOVE).putInt(keyBytes.length).put(keyBytes);
+        commit(segment, bodySize);
+        afterWrite();
+    }
+
+    /**
+     * Gets the keys of the stored entries.
+     *
+     * @return The enumeration of the keys.
+     * @throws MqttPersistenceException If the persistence is not open.
+     */
+    @Override
+    public synchronized Enumeration<String> keys() throws MqttPersistenceException {
+        checkOpen();
+        return Collections.enumeration(new ArrayList<>(index.keySet()));
+    }
+
+    /**
+     * Removes all the stored entries, deleting the log.
+     *
+     * @throws MqttPersistenceException If the persistence is not open or a segment cannot be deleted.
+     */
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkOpen();
+        index.clear();
+        try {
+            while(!segments.isEmpty())
+                Files.deleteIfExists(segments.pollFirst().path);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Checks whether an entry is stored.
+     *
+     * @param key The key of the entry.
+     * @return true if stored, false otherwise.
+     * @throws MqttPersistenceException If the persistence is not open.
+     */
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkOpen();
+        return index.containsKey(key);
+    }
+
+    /**
+     * Gets the number of segment files of the log.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Flushes the segments written since the last flush to the storage device.
+     */
+    public synchronized void sync() {
+        if(!dirty)
+            return;
+        for(Segment segment : segments)
+            if(segment.dirty){
+                segment.buffer.force();
+                segment.dirty = false;
+            }
+        dirty = false;
+    }
+
+    /**
+     * Reads the segments of the client directory, oldest first, rebuilding the index of the live entries.
+     *
+     * @throws IOException If a segment cannot be read or is not valid.
+     */
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(clientDirectory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        Collections.sort(paths);
+        for(Path path : paths){
+            String name = path.getFileName().toString();
+            nextSequence = Math.max(nextSequence, Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())) + 1);
+            if(Files.size(path) < HEADER_SIZE + RECORD_HEADER_SIZE){
+                Files.deleteIfExists(path);
+                continue;
+            }
+            Segment segment = map(path, 0);
+            if(segment.buffer.getInt(0) != MAGIC){
+                Files.deleteIfExists(path);
+                continue;
+            }
+            int position = HEADER_SIZE;
+            while(position + RECORD_HEADER_SIZE <= segment.buffer.capacity()){
+                int bodySize = segment.buffer.getInt(position);
+                if(bodySize < 5 || position + RECORD_HEADER_SIZE + bodySize > segment.buffer.capacity()
+                        || segment.buffer.getInt(position + 4) != checksum(segment.buffer, position + RECORD_HEADER_SIZE, bodySize))
+                    break;
+                ByteBuffer body = segment.buffer.duplicate();
+                body.position(position + RECORD_HEADER_SIZE);
+                byte type = body.get();
+                byte[] key = new byte[body.getInt()];
+                body.get(key);
+                Entry previous = type == PUT
+                        ? index.put(new String(key, StandardCharsets.UTF_8), new Entry(segment, position))
+                        : index.remove(new String(key, StandardCharsets.UTF_8));
+                if(previous != null)
+                    previous.segment.liveCount--;
+                if(type == PUT)
+                    segment.liveCount++;
+                position += RECORD_HEADER_SIZE + bodySize;
+            }
+            segment.writePosition = position;
+            segments.addLast(segment);
+        }
+        // Records after a partially written one are not trusted: new records go to a new segment
+        if(!segments.isEmpty())
+            segments.peekLast().writePosition = segments.peekLast().buffer.capacity();
+        releaseDeadSegments();
+    }
+
+    /**
+     * Gets a segment with room for a record, starting a new segment if the last one is full.
+     *
+     * @param recordSize The size of the record.
+     * @return The segment.
+     * @throws MqttPersistenceException If a new segment cannot be created.
+     */
+    private Segment reserve(int recordSize) throws MqttPersistenceException {
+        Segment tail = segments.peekLast();
+        if(tail != null && tail.writePosition + recordSize <= tail.buffer.capacity())
+            return tail;
+        try {
+            Segment segment = map(clientDirectory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX)),
+                    Math.max(segmentSize, HEADER_SIZE + recordSize));
+            segment.buffer.putInt(0, MAGIC);
+            segment.writePosition = HEADER_SIZE;
+            segments.addLast(segment);
+            if(tail != null){
+                tail.buffer.force();
+                tail.dirty = false;
+            }
+            releaseDeadSegments();
+            compactOldestSegment();
+            return segments.peekLast().writePosition + recordSize <= segments.peekLast().buffer.capacity() ? segments.peekLast() : reserve(recordSize);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    /**
+     * Writes the header of a record whose body has been written at the end of a segment.
+     *
+     * @param segment  The segment.
+     * @param bodySize The size of the record body.
+     */
+    private void commit(Segment segment, int bodySize) {
+        int position = segment.writePosition;
+        segment.buffer.putInt(position + 4, checksum(segment.buffer, position + RECORD_HEADER_SIZE, bodySize));
+        // The length is written last, so that a partially written record is ignored on recovery
+        segment.buffer.putInt(position, bodySize);
+        segment.writePosition += RECORD_HEADER_SIZE + bodySize;
+        segment.dirty = true;
+        dirty = true;
+    }
+
+    /**
+     * Flushes the log after a write if no flush interval is configured.
+     */
+    private void afterWrite() {
+        if(syncIntervalMs == 0)
+            sync();
+    }
+
+    /**
+     * Deletes the oldest segments without live entries. Only the oldest segment is ever deleted, so that the removal
+     * records of a deleted segment can no longer refer to entries stored in a remaining segment.
+     */
+    private void releaseDeadSegments() {
+        while(segments.size() > 1 && segments.peekFirst().liveCount == 0){
+            try {
+                Files.deleteIfExists(segments.pollFirst().path);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Moves the live entries of the oldest segment to the end of the log when the log has more than two segments,
+     * then deletes it.
+     *
+     * @throws MqttPersistenceException If an entry cannot be moved.
+     */
+    private void compactOldestSegment() throws MqttPersistenceException {
+        if(segments.size() <= 2)
+            return;
+        Segment oldest = segments.peekFirst();
+        List<String> keys = new ArrayList<>();
+        for(Map.Entry<String, Entry> entry : index.entrySet())
+            if(entry.getValue().segment == oldest)
+                keys.add(entry.getKey());
+        for(String key : keys)
+            put(key, read(index.get(key)));
+        releaseDeadSegments();
+    }
+
+    /**
+     * Reads a stored entry.
+     *
+     * @param entry The entry.
+     * @return The stored data.
+     */
+    private MqttPersistable read(Entry entry) {
+        ByteBuffer body = entry.segment.buffer.duplicate();
+        int bodySize = body.getInt(entry.position);
+        body.position(entry.position + RECORD_HEADER_SIZE + 1);
+        int keyLength = body.getInt();
+        body.position(body.position() + keyLength);
+        byte[] header = new byte[body.getInt()];
+        body.get(header);
+        byte[] payload = new byte[bodySize - 1 - 4 - keyLength - 4 - header.length];
+        body.get(payload);
+        return new StoredPersistable(header, payload);
+    }
+
+    /**
+     * Maps a segment file into memory.
+     *
+     * @param path The path of the file.
+     * @param size The size of a new file, 0 to map an existing file with its size.
+     * @return The segment.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private static Segment map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = size > 0 ? size : channel.size();
+            if(length < HEADER_SIZE || length > Integer.MAX_VALUE)
+                throw new IOException("Invalid persistence segment size: " + path);
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    /**
+     * Releases the lock of the client directory and the in-memory state.
+     */
+    private void release() {
+        try {
+            if(lock != null)
+                lock.release();
+            if(lockChannel != null)
+                lockChannel.close();
+        } catch (IOException ignored) {
+        }
+        lock = null;
+        lockChannel = null;
+        clientDirectory = null;
+        index.clear();
+        segments.clear();
+        dirty = false;
+    }
+
+    /**
+     * Checks that the persistence is open.
+     *
+     * @throws MqttPersistenceException If the persistence is not open.
+     */
+    private void checkOpen() throws MqttPersistenceException {
+        if(clientDirectory == null)
+            throw new MqttPersistenceException();
+    }
+
+    /**
+     * Computes the checksum of a record body.
+     *
+     * @param buffer   The segment buffer.
+     * @param position The position of the body.
+     * @param size     The size of the body.
+     * @return The checksum.
+     */
+    private static int checksum(ByteBuffer buffer, int position, int size) {
+        ByteBuffer body = buffer.duplicate();
+        body.position(position);
+        body.limit(position + size);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Replaces the characters that are not allowed in a directory name.
+     *
+     * @param name The name.
+     * @return The sanitized name.
+     */
+    private static String sanitize(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for(char c : name.toCharArray())
+            builder.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+        return builder.toString();
+    }
+
+    /**
+     * A segment file of the log mapped into memory.
+     */
+    private static final class Segment {
+
+        /** The path of the file. */
+        private final Path path;
+
+        /** The mapped content of the file. */
+        private final MappedByteBuffer buffer;
+
+        /** The position at which the next record is written. */
+        private int writePosition;
+
+        /** The number of live entries stored in the segment. */
+        private int liveCount;
+
+        /** Whether records have been written since the last flush. */
+        private boolean dirty;
+
+        /**
+         * Constructs a Segment.
+         *
+         * @param path   The path of the file.
+         * @param buffer The mapped content of the file.
+         */
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * The location of a live entry in the log.
+     */
+    private static final class Entry {
+
+        /** The segment storing the entry. */
+        private final Segment segment;
+
+        /** The position of the record in the segment. */
+        private final int position;
+
+        /**
+         * Constructs an Entry.
+         *
+         * @param segment  The segment storing the entry.
+         * @param position The position of the record in the segment.
+         */
+        private Entry(Segment segment, int position) {
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Data read from the log.
+     */
+    private static final class StoredPersistable implements MqttPersistable {
+
+        /** The header bytes. */
+        private final byte[] header;
+
+        /** The payload bytes. */
+        private final byte[] payload;
+
+        /**
+         * Constructs a StoredPersistable.
+         *
+         * @param header  The header bytes.
+         * @param payload The payload bytes.
+         */
+        private StoredPersistable(byte[] header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+}
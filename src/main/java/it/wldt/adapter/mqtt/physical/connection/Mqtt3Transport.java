@@ -0,0 +1,139 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.*;
+
+import java.util.Collections;
+
+/**
+ * MQTT 3.1.1 implementation of the MqttTransport based on the Paho mqttv3 asynchronous client.
+ */
+public class Mqtt3Transport implements MqttTransport {
+
+    /** The Paho client. */
+    private final MqttAsyncClient mqttClient;
+
+    /** The options used to connect to the broker. */
+    private final MqttConnectOptions connectOptions;
+
+    /**
+     * Constructs a Mqtt3Transport.
+     *
+     * @param serverUri      The URI of the broker.
+     * @param clientId       The client id.
+     * @param persistence    The persistence of the client.
+     * @param connectOptions The options used to connect to the broker.
+     * @throws MqttException If the client cannot be created.
+     */
+    public Mqtt3Transport(String serverUri, String clientId, MqttClientPersistence persistence, MqttConnectOptions connectOptions) throws MqttException {
+        this.mqttClient = new MqttAsyncClient(serverUri, clientId, persistence);
+        this.connectOptions = connectOptions;
+    }
+
+    @Override
+    public String getClientId() {
+        return mqttClient.getClientId();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mqttClient.isConnected();
+    }
+
+    @Override
+    public void setListener(MqttTransportListener listener) {
+        mqttClient.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                listener.connectComplete(reconnect);
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                listener.connectionLost(cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) throws Exception {
+                listener.messageArrived(topic, message, Collections.emptyList());
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+    }
+
+    @Override
+    public void setManualAcks(boolean manualAcks) {
+        mqttClient.setManualAcks(manualAcks);
+    }
+
+    @Override
+    public void connect(MqttOperationCallback callback) throws MqttException {
+        complete(mqttClient.connect(connectOptions, null, listener(callback)), callback);
+    }
+
+    @Override
+    public void subscribe(String[] filters, int[] qos, int subscriptionId, MqttSubscribeCallback callback) throws MqttException {
+        mqttClient.subscribe(filters, qos, null, new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                callback.onComplete(asyncActionToken.getGrantedQos());
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                callback.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    public void publish(String topic, MqttMessage message, long messageExpiryInterval, MqttOperationCallback callback) throws MqttException {
+        complete(mqttClient.publish(topic, message, null, listener(callback)), callback);
+    }
+
+    @Override
+    public void messageArrivedComplete(int messageId, int qos) throws MqttException {
+        mqttClient.messageArrivedComplete(messageId, qos);
+    }
+
+    @Override
+    public void disconnect() throws MqttException {
+        mqttClient.disconnect().waitForCompletion();
+    }
+
+    /**
+     * Waits for the completion of an operation when no callback is provided.
+     *
+     * @param token    The token of the operation.
+     * @param callback The callback of the operation.
+     * @throws MqttException If the operation fails.
+     */
+    private static void complete(IMqttToken token, MqttOperationCallback callback) throws MqttException {
+        if(callback == null)
+            token.waitForCompletion();
+    }
+
+    /**
+     * Adapts a MqttOperationCallback to a Paho action listener.
+     *
+     * @param callback The callback, possibly null.
+     * @return The listener, null if no callback is provided.
+     */
+    private static IMqttActionListener listener(MqttOperationCallback callback) {
+        if(callback == null)
+            return null;
+        return new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                callback.onFailure(exception);
+            }
+        };
+    }
+}
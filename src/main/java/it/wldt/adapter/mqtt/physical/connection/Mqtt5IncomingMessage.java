@@ -0,0 +1,37 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+/**
+ * Message received through an MQTT 5 connection, exposed as a mqttv3 MqttMessage to the subscribe functions
+ * together with its MQTT 5 properties.
+ */
+public class Mqtt5IncomingMessage extends MqttMessage {
+
+    /** The MQTT 5 properties of the message. */
+    private final MqttProperties properties;
+
+    /**
+     * Constructs a Mqtt5IncomingMessage from a message received by the Paho mqttv5 client.
+     *
+     * @param message The received message.
+     */
+    public Mqtt5IncomingMessage(org.eclipse.paho.mqttv5.common.MqttMessage message) {
+        super(message.getPayload());
+        setQos(message.getQos());
+        setRetained(message.isRetained());
+        setId(message.getId());
+        setDuplicate(message.isDuplicate());
+        this.properties = message.getProperties();
+    }
+
+    /**
+     * Gets the MQTT 5 properties of the message, e.g. content type, correlation data or user properties.
+     *
+     * @return The properties.
+     */
+    public MqttProperties getProperties() {
+        return properties;
+    }
+}
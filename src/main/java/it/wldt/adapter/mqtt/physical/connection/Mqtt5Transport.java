@@ -0,0 +1,213 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MQTT 5 implementation of the MqttTransport based on the Paho mqttv5 asynchronous client.
+ *
+ * Subscriptions carry their subscription identifier, so received messages report the subscriptions they match,
+ * and published messages carry their message expiry interval, if any. Outgoing topic aliases are assigned by the
+ * client to the published topics, in order of first use, up to the maximum announced by the broker.
+ */
+public class Mqtt5Transport implements MqttTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(Mqtt5Transport.class);
+
+    /** The Paho client. */
+    private final MqttAsyncClient mqttClient;
+
+    /** The options used to connect to the broker. */
+    private final MqttConnectionOptions connectionOptions;
+
+    /**
+     * Constructs a Mqtt5Transport.
+     *
+     * @param serverUri         The URI of the broker.
+     * @param clientId          The client id.
+     * @param connectionOptions The options used to connect to the broker.
+     * @throws MqttException If the client cannot be created.
+     */
+    public Mqtt5Transport(String serverUri, String clientId, MqttConnectionOptions connectionOptions) throws MqttException {
+        try {
+            this.mqttClient = new MqttAsyncClient(serverUri, clientId, new MemoryPersistence());
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw wrap(e);
+        }
+        this.connectionOptions = connectionOptions;
+    }
+
+    @Override
+    public String getClientId() {
+        return mqttClient.getClientId();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mqttClient.isConnected();
+    }
+
+    @Override
+    public void setListener(MqttTransportListener listener) {
+        mqttClient.setCallback(new MqttCallback() {
+            @Override
+            public void disconnected(MqttDisconnectResponse disconnectResponse) {
+                listener.connectionLost(disconnectResponse.getException());
+            }
+
+            @Override
+            public void mqttErrorOccurred(org.eclipse.paho.mqttv5.common.MqttException exception) {
+                // Protocol errors reported while the connection stays up, a lost connection is reported by disconnected()
+                logger.warn("MQTT 5 Transport - Error reported by client {}: {}", mqttClient.getClientId(), exception.getMessage());
+            }
+
+            @Override
+            public void messageArrived(String topic, org.eclipse.paho.mqttv5.common.MqttMessage message) throws Exception {
+                List<Integer> subscriptionIds = message.getProperties() != null ? message.getProperties().getSubscriptionIdentifiers() : null;
+                listener.messageArrived(topic, new Mqtt5IncomingMessage(message), subscriptionIds != null ? subscriptionIds : Collections.emptyList());
+            }
+
+            @Override
+            public void deliveryComplete(IMqttToken token) {
+            }
+
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                listener.connectComplete(reconnect);
+            }
+
+            @Override
+            public void authPacketArrived(int reasonCode, MqttProperties properties) {
+            }
+        });
+    }
+
+    @Override
+    public void setManualAcks(boolean manualAcks) {
+        mqttClient.setManualAcks(manualAcks);
+    }
+
+    @Override
+    public void connect(MqttOperationCallback callback) throws MqttException {
+        try {
+            complete(mqttClient.connect(connectionOptions, null, listener(callback)), callback);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void subscribe(String[] filters, int[] qos, int subscriptionId, MqttSubscribeCallback callback) throws MqttException {
+        MqttSubscription[] subscriptions = new MqttSubscription[filters.length];
+        for(int i = 0; i < filters.length; i++)
+            subscriptions[i] = new MqttSubscription(filters[i], qos[i]);
+        MqttProperties properties = new MqttProperties();
+        if(subscriptionId > 0)
+            properties.setSubscriptionIdentifier(subscriptionId);
+        try {
+            mqttClient.subscribe(subscriptions, null, new MqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    callback.onComplete(asyncActionToken.getReasonCodes());
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    callback.onFailure(exception);
+                }
+            }, properties);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void publish(String topic, MqttMessage message, long messageExpiryInterval, MqttOperationCallback callback) throws MqttException {
+        MqttProperties properties = new MqttProperties();
+        if(messageExpiryInterval > 0)
+            properties.setMessageExpiryInterval(messageExpiryInterval);
+        org.eclipse.paho.mqttv5.common.MqttMessage mqtt5Message =
+                new org.eclipse.paho.mqttv5.common.MqttMessage(message.getPayload(), message.getQos(), message.isRetained(), properties);
+        try {
+            complete(mqttClient.publish(topic, mqtt5Message, null, listener(callback)), callback);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void messageArrivedComplete(int messageId, int qos) throws MqttException {
+        try {
+            mqttClient.messageArrivedComplete(messageId, qos);
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void disconnect() throws MqttException {
+        try {
+            mqttClient.disconnect().waitForCompletion();
+        } catch (org.eclipse.paho.mqttv5.common.MqttException e) {
+            throw wrap(e);
+        }
+    }
+
+    /**
+     * Waits for the completion of an operation when no callback is provided.
+     *
+     * @param token    The token of the operation.
+     * @param callback The callback of the operation.
+     * @throws org.eclipse.paho.mqttv5.common.MqttException If the operation fails.
+     */
+    private static void complete(IMqttToken token, MqttOperationCallback callback) throws org.eclipse.paho.mqttv5.common.MqttException {
+        if(callback == null)
+            token.waitForCompletion();
+    }
+
+    /**
+     * Adapts a MqttOperationCallback to a Paho action listener.
+     *
+     * @param callback The callback, possibly null.
+     * @return The listener, null if no callback is provided.
+     */
+    private static MqttActionListener listener(MqttOperationCallback callback) {
+        if(callback == null)
+            return null;
+        return new MqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken asyncActionToken) {
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                callback.onFailure(exception);
+            }
+        };
+    }
+
+    /**
+     * Converts a mqttv5 exception into the mqttv3 exception used by the adapter.
+     *
+     * @param e The mqttv5 exception.
+     * @return The mqttv3 exception.
+     */
+    private static MqttException wrap(org.eclipse.paho.mqttv5.common.MqttException e) {
+        return new MqttException(e.getReasonCode(), e);
+    }
+}
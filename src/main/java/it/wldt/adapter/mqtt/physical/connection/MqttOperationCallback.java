@@ -0,0 +1,19 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+/**
+ * Callback notified of the outcome of a non-blocking MQTT operation.
+ */
+public interface MqttOperationCallback {
+
+    /**
+     * Called when the operation completes successfully.
+     */
+    void onSuccess();
+
+    /**
+     * Called when the operation fails.
+     *
+     * @param cause The cause of the failure.
+     */
+    void onFailure(Throwable cause);
+}
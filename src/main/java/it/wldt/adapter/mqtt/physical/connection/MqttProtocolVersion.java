@@ -0,0 +1,13 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+/**
+ * Enum representing the MQTT protocol versions supported by the adapter.
+ */
+public enum MqttProtocolVersion {
+
+    /** MQTT 3.1.1, based on the Paho mqttv3 client. */
+    MQTT_3_1_1,
+
+    /** MQTT 5, based on the Paho mqttv5 client. */
+    MQTT_5
+}
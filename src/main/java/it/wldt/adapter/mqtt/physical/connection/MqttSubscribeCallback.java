@@ -0,0 +1,22 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+/**
+ * Callback notified of the outcome of a SUBSCRIBE carrying several topic filters.
+ */
+public interface MqttSubscribeCallback {
+
+    /**
+     * Called when the broker acknowledges the SUBSCRIBE.
+     *
+     * @param reasonCodes The SUBACK reason code of each topic filter, in order: the granted QoS, or a value
+     *                    from 0x80 if the subscription has been rejected. Null if not reported by the client.
+     */
+    void onComplete(int[] reasonCodes);
+
+    /**
+     * Called when the SUBSCRIBE fails as a whole.
+     *
+     * @param cause The cause of the failure.
+     */
+    void onFailure(Throwable cause);
+}
@@ -0,0 +1,88 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Client connection to the MQTT broker, hiding the protocol version and the Paho client in use.
+ *
+ * Each operation is blocking when no callback is provided, otherwise it returns immediately
+ * and its outcome is reported to the callback.
+ */
+public interface MqttTransport {
+
+    /**
+     * Gets the client id of the connection.
+     *
+     * @return The client id.
+     */
+    String getClientId();
+
+    /**
+     * Checks whether the connection is established.
+     *
+     * @return true if connected, false otherwise.
+     */
+    boolean isConnected();
+
+    /**
+     * Sets the listener notified of the events of the connection.
+     *
+     * @param listener The listener.
+     */
+    void setListener(MqttTransportListener listener);
+
+    /**
+     * Enables or disables the manual acknowledgement of the received messages.
+     *
+     * @param manualAcks true to enable manual acknowledgements.
+     */
+    void setManualAcks(boolean manualAcks);
+
+    /**
+     * Connects to the broker.
+     *
+     * @param callback The callback notified of the outcome, null to block until completion.
+     * @throws MqttException If the connection cannot be started or fails in blocking mode.
+     */
+    void connect(MqttOperationCallback callback) throws MqttException;
+
+    /**
+     * Subscribes to several topic filters through a single SUBSCRIBE. The method returns immediately
+     * and the outcome of each filter is reported to the callback.
+     *
+     * @param filters        The topic filters.
+     * @param qos            The requested QoS of each topic filter.
+     * @param subscriptionId The identifier of the subscriptions, 0 for none. Ignored by protocol versions not supporting it.
+     * @param callback       The callback notified of the outcome.
+     * @throws MqttException If the subscription cannot be started.
+     */
+    void subscribe(String[] filters, int[] qos, int subscriptionId, MqttSubscribeCallback callback) throws MqttException;
+
+    /**
+     * Publishes a message.
+     *
+     * @param topic                 The topic.
+     * @param message               The message.
+     * @param messageExpiryInterval The lifetime of the message in seconds, 0 for no expiry. Ignored by protocol versions not supporting it.
+     * @param callback              The callback notified of the outcome, null to block until completion.
+     * @throws MqttException If the publication cannot be started or fails in blocking mode.
+     */
+    void publish(String topic, MqttMessage message, long messageExpiryInterval, MqttOperationCallback callback) throws MqttException;
+
+    /**
+     * Acknowledges a received message when manual acknowledgements are enabled.
+     *
+     * @param messageId The identifier of the message.
+     * @param qos       The QoS of the message.
+     * @throws MqttException If the acknowledgement cannot be sent.
+     */
+    void messageArrivedComplete(int messageId, int qos) throws MqttException;
+
+    /**
+     * Disconnects from the broker, blocking until completion.
+     *
+     * @throws MqttException If the disconnection fails.
+     */
+    void disconnect() throws MqttException;
+}
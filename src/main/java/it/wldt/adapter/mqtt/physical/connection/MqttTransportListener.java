@@ -0,0 +1,35 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.List;
+
+/**
+ * Listener notified of the events of a MqttTransport.
+ */
+public interface MqttTransportListener {
+
+    /**
+     * Called when the connection to the broker is established.
+     *
+     * @param reconnect true if the connection has been automatically re-established.
+     */
+    void connectComplete(boolean reconnect);
+
+    /**
+     * Called when the connection to the broker is lost.
+     *
+     * @param cause The cause of the disconnection, if known.
+     */
+    void connectionLost(Throwable cause);
+
+    /**
+     * Called when a message is received.
+     *
+     * @param topic           The topic on which the message has been received.
+     * @param message         The received message.
+     * @param subscriptionIds The identifiers of the subscriptions matched by the message, empty if not available.
+     * @throws Exception If the message cannot be handled.
+     */
+    void messageArrived(String topic, MqttMessage message, List<Integer> subscriptionIds) throws Exception;
+}
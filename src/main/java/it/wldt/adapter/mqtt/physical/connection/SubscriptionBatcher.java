@@ -0,0 +1,195 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscribes a MqttTransport to a list of topic filters through SUBSCRIBE packets carrying up to a given number of
+ * filters each, keeping up to a given number of them in flight, so binding many topics costs a few round-trips
+ * instead of one per topic.
+ *
+ * The outcome of each filter is taken from the SUBACK reason codes, and the filters rejected by the broker, or
+ * belonging to a SUBSCRIBE that failed as a whole, are reported to the listener one by one.
+ */
+public class SubscriptionBatcher {
+
+    /** Lowest SUBACK reason code reporting a failure. */
+    private static final int SUBACK_FAILURE = 0x80;
+
+    /** The transport to subscribe. */
+    private final MqttTransport transport;
+
+    /** The maximum number of topic filters of a SUBSCRIBE. */
+    private final int batchSize;
+
+    /** The maximum number of SUBSCRIBE packets waiting for their SUBACK. */
+    private final int maxInFlightBatches;
+
+    /**
+     * Listener notified of the outcome of the subscriptions.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the subscription to a topic filter fails.
+         *
+         * @param index      The index of the topic filter.
+         * @param reasonCode The SUBACK reason code, or the reason code of the failure if the SUBSCRIBE failed as a whole.
+         * @param cause      The cause of the failure, null if rejected by the broker.
+         */
+        void onSubscriptionFailed(int index, int reasonCode, Throwable cause);
+
+        /**
+         * Called once all the SUBSCRIBE packets are completed.
+         *
+         * @param failedCount The number of topic filters whose subscription failed.
+         */
+        void onComplete(int failedCount);
+    }
+
+    /**
+     * Constructs a SubscriptionBatcher.
+     *
+     * @param transport          The transport to subscribe.
+     * @param batchSize          The maximum number of topic filters of a SUBSCRIBE.
+     * @param maxInFlightBatches The maximum number of SUBSCRIBE packets waiting for their SUBACK.
+     */
+    public SubscriptionBatcher(MqttTransport transport, int batchSize, int maxInFlightBatches) {
+        if(batchSize < 1 || maxInFlightBatches < 1)
+            throw new IllegalArgumentException("Batch size and in-flight batches must be at least 1");
+        this.transport = transport;
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    /**
+     * Checks whether subscription identifiers are sent with the given batch size. They are sent only when every
+     * SUBSCRIBE carries a single filter, so that either all the subscriptions of a connection carry their identifier
+     * or none does, and the identifiers of a received message always report all the subscriptions it matches.
+     *
+     * @param batchSize The maximum number of topic filters of a SUBSCRIBE.
+     * @return true if subscription identifiers are sent, false otherwise.
+     */
+    public static boolean sendsSubscriptionIds(int batchSize) {
+        return batchSize == 1;
+    }
+
+    /**
+     * Subscribes to the given topic filters. The method returns once the first SUBSCRIBE packets are sent,
+     * and the outcome is reported to the listener.
+     *
+     * @param filters         The topic filters.
+     * @param qos             The requested QoS of each topic filter.
+     * @param subscriptionIds The subscription identifier of each topic filter, sent only if every filter has its own
+     *                        SUBSCRIBE, since an identifier applies to the whole packet.
+     *                        See {@link #sendsSubscriptionIds(int)}.
+     * @param listener        The listener notified of the outcome.
+     */
+    public void subscribe(String[] filters, int[] qos, int[] subscriptionIds, Listener listener) {
+        if(filters.length != qos.length || filters.length != subscriptionIds.length)
+            throw new IllegalArgumentException("Filters, QoS and subscription identifiers must have the same length");
+        int batchCount = (filters.length + batchSize - 1) / batchSize;
+        if(batchCount == 0){
+            listener.onComplete(0);
+            return;
+        }
+        Subscription subscription = new Subscription(filters, qos, subscriptionIds, batchCount, listener);
+        for(int i = 0; i < Math.min(maxInFlightBatches, batchCount); i++)
+            subscription.sendNext();
+    }
+
+    /**
+     * The state of a subscription to a list of topic filters.
+     */
+    private class Subscription {
+
+        private final String[] filters;
+
+        private final int[] qos;
+
+        private final int[] subscriptionIds;
+
+        private final int batchCount;
+
+        private final Listener listener;
+
+        /** The index of the next batch to send. */
+        private final AtomicInteger nextBatch = new AtomicInteger();
+
+        /** The number of batches not yet completed. */
+        private final AtomicInteger pendingBatches;
+
+        /** The number of topic filters whose subscription failed. */
+        private final AtomicInteger failedCount = new AtomicInteger();
+
+        private Subscription(String[] filters, int[] qos, int[] subscriptionIds, int batchCount, Listener listener) {
+            this.filters = filters;
+            this.qos = qos;
+            this.subscriptionIds = subscriptionIds;
+            this.batchCount = batchCount;
+            this.listener = listener;
+            this.pendingBatches = new AtomicInteger(batchCount);
+        }
+
+        /**
+         * Sends the next batch, if any. Batches failing synchronously are completed in the loop rather than
+         * recursively, so a disconnected transport does not grow the stack with the number of batches.
+         */
+        private void sendNext() {
+            while(true){
+                int batch = nextBatch.getAndIncrement();
+                if(batch >= batchCount)
+                    return;
+                int from = batch * batchSize;
+                int to = Math.min(from + batchSize, filters.length);
+                String[] batchFilters = new String[to - from];
+                int[] batchQos = new int[to - from];
+                System.arraycopy(filters, from, batchFilters, 0, batchFilters.length);
+                System.arraycopy(qos, from, batchQos, 0, batchQos.length);
+                try {
+                    transport.subscribe(batchFilters, batchQos, sendsSubscriptionIds(batchSize) ? subscriptionIds[from] : 0, new MqttSubscribeCallback() {
+                        @Override
+                        public void onComplete(int[] reasonCodes) {
+                            if(reasonCodes != null)
+                                for(int i = 0; i < to - from; i++){
+                                    int reasonCode = i < reasonCodes.length ? reasonCodes[i] : SUBACK_FAILURE;
+                                    if(reasonCode >= SUBACK_FAILURE)
+                                        fail(from + i, reasonCode, null);
+                                }
+                            completeBatch();
+                            sendNext();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable cause) {
+                            failBatch(from, to, cause);
+                            completeBatch();
+                            sendNext();
+                        }
+                    });
+                    return;
+                } catch (MqttException | RuntimeException e) {
+                    failBatch(from, to, e);
+                    completeBatch();
+                }
+            }
+        }
+
+        private void failBatch(int from, int to, Throwable cause) {
+            int reasonCode = cause instanceof MqttException ? ((MqttException) cause).getReasonCode() : MqttException.REASON_CODE_CLIENT_EXCEPTION;
+            for(int i = from; i < to; i++)
+                fail(i, reasonCode, cause);
+        }
+
+        private void fail(int index, int reasonCode, Throwable cause) {
+            failedCount.incrementAndGet();
+            listener.onSubscriptionFailed(index, reasonCode, cause);
+        }
+
+        private void completeBatch() {
+            if(pendingBatches.decrementAndGet() == 0)
+                listener.onComplete(failedCount.get());
+        }
+    }
+}
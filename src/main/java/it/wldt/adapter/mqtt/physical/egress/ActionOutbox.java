@@ -0,0 +1,603 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable store-and-forward queue of the messages of the actions that cannot be published while the broker is unreachable.
+ *
+ * Messages are appended to memory-mapped segment files of fixed size, so buffering them does not use heap memory,
+ * and survive a restart of the process. They are read back in order and acknowledged once published: each segment
+ * records the position of its first unacknowledged message, and is deleted as soon as all its messages are acknowledged.
+ * Messages older than the configured time to live, or whose MQTT message expiry has elapsed, are discarded instead
+ * of being returned, and reported to the expiry listener, if any.
+ *
+ * Appended records and acknowledgements are forced to the storage device every sync interval, or after each write
+ * if the interval is 0: a crash of the process loses nothing, a power loss loses at most the writes of the last
+ * interval, which may also cause acknowledged messages to be published again. Each record may carry an attachment,
+ * such as the action the message belongs to, that is kept in memory only and so is not recovered after a restart.
+ */
+public class ActionOutbox {
+
+    /** Default size of the segment files. */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /** Default interval in milliseconds between two flushes of the segments. */
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 100;
+
+    /** Value identifying the segment files. */
+    private static final int MAGIC = 0x57414f42;
+
+    /** Size of the segment header: magic number, reserved word and position of the first unacknowledged record. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Offset in the header of the position of the first unacknowledged record. */
+    private static final int ACK_POSITION_OFFSET = 8;
+
+    /** Size of the record header: body length and checksum. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** Size of the fixed part of the record body: storage time, message expiry, QoS, retained flag and topic length. */
+    private static final int RECORD_FIXED_BODY_SIZE = 22;
+
+    /** Prefix of the segment file names. */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /** Suffix of the segment file names. */
+    private static final String SEGMENT_SUFFIX = ".outbox";
+
+    /** The directory storing the segment files. */
+    private final Path directory;
+
+    /** The size of the new segment files. */
+    private final int segmentSize;
+
+    /** The maximum number of bytes of pending records. */
+    private final long maxSizeBytes;
+
+    /** The time to live of the records in milliseconds, 0 for no limit. */
+    private final long ttlMillis;
+
+    /** The interval in milliseconds between two flushes of the segments, 0 to flush after each write. */
+    private final long syncIntervalMs;
+
+    /** The attachments of the pending records appended since the outbox has been opened, indexed by record number. */
+    private final Map<Long, Object> attachments = new HashMap<>();
+
+    /** The thread flushing the segments, null if flushing after each write. */
+    private ScheduledExecutorService syncScheduler;
+
+    /** The listener notified of the records discarded because expired, possibly null. */
+    private volatile Consumer<OutboxRecord> expiryListener;
+
+    /** The segments holding pending records, oldest first. */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    /** The sequence number of the next segment. */
+    private long nextSequence = 0;
+
+    /** Number of bytes of the pending records. */
+    private long pendingBytes = 0;
+
+    /** Number of pending records. */
+    private int pendingCount = 0;
+
+    /** The number of the oldest pending record, counting the records read or appended since the outbox has been opened. */
+    private long headRecordNumber = 0;
+
+    /** Whether records or acknowledgements have been written since the last flush. */
+    private boolean dirty = false;
+
+    /** Number of records discarded because expired. */
+    private long expiredCount = 0;
+
+    /** Number of messages rejected because the outbox was full or the message too large. */
+    private long rejectedCount = 0;
+
+    /** Whether the outbox is closed. */
+    private boolean closed = false;
+
+    /**
+     * Opens an ActionOutbox with the default flush interval, recovering the records pending in the segment files
+     * of the directory.
+     *
+     * @param directory    The directory storing the segment files, created if missing.
+     * @param segmentSize  The size of the segment files, bounding the size of a single record.
+     * @param maxSizeBytes The maximum number of bytes of pending records.
+     * @param ttlMillis    The time to live of the records in milliseconds, 0 for no limit.
+     * @throws IOException If the directory or a segment file cannot be opened.
+     */
+    public ActionOutbox(Path directory, int segmentSize, long maxSizeBytes, long ttlMillis) throws IOException {
+        this(directory, segmentSize, maxSizeBytes, ttlMillis, DEFAULT_SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * Opens an ActionOutbox, recovering the records pending in the segment files of the directory.
+     *
+     * @param directory      The directory storing the segment files, created if missing.
+     * @param segmentSize    The size of the segment files, bounding the size of a single record.
+     * @param maxSizeBytes   The maximum number of bytes of pending records.
+     * @param ttlMillis      The time to live of the records in milliseconds, 0 for no limit.
+     * @param syncIntervalMs The interval in milliseconds between two flushes of the segments, 0 to flush after each write.
+     * @throws IOException If the directory or a segment file cannot be opened.
+     */
+    public ActionOutbox(Path directory, int segmentSize, long maxSizeBytes, long ttlMillis, long syncIntervalMs) throws IOException {
+        if(segmentSize <= HEADER_SIZE + RECORD_HEADER_SIZE + RECORD_FIXED_BODY_SIZE)
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        if(syncIntervalMs < 0)
+            throw new IllegalArgumentException("Invalid sync interval: " + syncIntervalMs);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSizeBytes = maxSizeBytes;
+        this.ttlMillis = ttlMillis;
+        this.syncIntervalMs = syncIntervalMs;
+        Files.createDirectories(directory);
+        recover();
+        if(syncIntervalMs > 0){
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "action-outbox-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sets the listener notified of the records discarded because expired. The listener is invoked by the thread
+     * reading the outbox, outside of its lock.
+     *
+     * @param expiryListener The listener, null to remove it.
+     */
+    public void setExpiryListener(Consumer<OutboxRecord> expiryListener) {
+        this.expiryListener = expiryListener;
+    }
+
+    /**
+     * Appends a message to the outbox.
+     *
+     * @param topic                 The topic the message is published on.
+     * @param payload               The message payload.
+     * @param qos                   The QoS level of the message.
+     * @param retained              The retained flag of the message.
+     * @param messageExpiryInterval The lifetime of the message in seconds, 0 for no expiry.
+     * @return true if the message has been stored, false if the outbox is full, closed or the message too large.
+     * @throws IOException If a new segment file cannot be created.
+     */
+    public boolean append(String topic, byte[] payload, int qos, boolean retained, long messageExpiryInterval) throws IOException {
+        return append(topic, payload, qos, retained, messageExpiryInterval, null);
+    }
+
+    /**
+     * Appends a message to the outbox, with an attachment returned along with its record until it leaves the outbox.
+     *
+     * @param topic                 The topic the message is published on.
+     * @param payload               The message payload.
+     * @param qos                   The QoS level of the message.
+     * @param retained              The retained flag of the message.
+     * @param messageExpiryInterval The lifetime of the message in seconds, 0 for no expiry.
+     * @param attachment            The attachment kept in memory with the record, possibly null.
+     * @return true if the message has been stored, false if the outbox is full, closed or the message too large.
+     * @throws IOException If a new segment file cannot be created.
+     */
+    public synchronized boolean append(String topic, byte[] payload, int qos, boolean retained, long messageExpiryInterval,
+                                       Object attachment) throws IOException {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int bodySize = RECORD_FIXED_BODY_SIZE + topicBytes.length + payload.length;
+        int recordSize = RECORD_HEADER_SIZE + bodySize;
+        if(closed || topicBytes.length > 0xffff || recordSize > segmentSize - HEADER_SIZE || pendingBytes + recordSize > maxSizeBytes){
+            rejectedCount++;
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if(tail == null || tail.writePosition + recordSize > tail.buffer.capacity())
+            tail = createSegment();
+        ByteBuffer body = tail.buffer.duplicate();
+        body.position(tail.writePosition + RECORD_HEADER_SIZE);
+        body.putLong(System.currentTimeMillis())
+                .putLong(messageExpiryInterval)
+                .put((byte) qos)
+                .put((byte) (retained ? 1 : 0))
+                .putInt(topicBytes.length)
+                .put(topicBytes)
+                .put(payload);
+        // The length is written last, so that a partially written record is ignored on recovery
+        tail.buffer.putInt(tail.writePosition + 4, checksum(tail.buffer, tail.writePosition + RECORD_HEADER_SIZE, bodySize));
+        tail.buffer.putInt(tail.writePosition, bodySize);
+        tail.writePosition += recordSize;
+        if(attachment != null)
+            attachments.put(headRecordNumber + pendingCount, attachment);
+        pendingBytes += recordSize;
+        pendingCount++;
+        markDirty(tail);
+        return true;
+    }
+
+    /**
+     * Gets the oldest pending record, discarding the expired ones. The record stays in the outbox until acknowledged.
+     *
+     * @return The oldest pending record, null if the outbox is empty.
+     */
+    public OutboxRecord peek() {
+        Consumer<OutboxRecord> listener = expiryListener;
+        if(listener == null)
+            return peek(null);
+        List<OutboxRecord> expired = new ArrayList<>(0);
+        OutboxRecord record = peek(expired);
+        for(OutboxRecord expiredRecord : expired)
+            listener.accept(expiredRecord);
+        return record;
+    }
+
+    /**
+     * Gets the oldest pending record, discarding the expired ones.
+     *
+     * @param expired The list collecting the discarded records, null if not needed.
+     * @return The oldest pending record, null if the outbox is empty.
+     */
+    private synchronized OutboxRecord peek(List<OutboxRecord> expired) {
+        while(!closed){
+            Segment head = segments.peekFirst();
+            if(head == null || head.ackPosition >= head.writePosition)
+                return null;
+            OutboxRecord record = read(head, head.ackPosition);
+            long ageMillis = System.currentTimeMillis() - record.getStoredAtMillis();
+            boolean expiredByTtl = ttlMillis > 0 && ageMillis > ttlMillis;
+            boolean expiredByInterval = record.getMessageExpiryInterval() > 0
+                    && record.getMessageExpiryInterval() <= TimeUnit.MILLISECONDS.toSeconds(ageMillis);
+            if(!expiredByTtl && !expiredByInterval){
+                if(record.getMessageExpiryInterval() > 0)
+                    return new OutboxRecord(head, record.position, record.size, record.getTopic(), record.getPayload(), record.getQos(),
+                            record.isRetained(), record.getMessageExpiryInterval() - TimeUnit.MILLISECONDS.toSeconds(ageMillis),
+                            record.getStoredAtMillis(), record.getAttachment());
+                return record;
+            }
+            expiredCount++;
+            advance(head, record.size);
+            if(expired != null)
+                expired.add(record);
+        }
+        return null;
+    }
+
+    /**
+     * Acknowledges the publication of a record returned by {@link #peek()}, removing it from the outbox.
+     * Acknowledging a record that is no longer the oldest pending one has no effect.
+     *
+     * @param record The published record.
+     */
+    public synchronized void acknowledge(OutboxRecord record) {
+        Segment head = segments.peekFirst();
+        if(!closed && head != null && record.segment == head && record.position == head.ackPosition)
+            advance(head, record.size);
+    }
+
+    /**
+     * Checks whether the outbox has no pending records.
+     *
+     * @return true if empty, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return pendingCount == 0;
+    }
+
+    /**
+     * Gets the number of pending records.
+     *
+     * @return The number of pending records.
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Gets the number of bytes used by the pending records.
+     *
+     * @return The pending bytes.
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Gets the number of records discarded because expired.
+     *
+     * @return The number of expired records.
+     */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Gets the number of messages rejected because the outbox was full or the message too large.
+     *
+     * @return The number of rejected messages.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Gets the number of segment files in use.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Gets the directory storing the segment files.
+     *
+     * @return The directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes the segments written since the last flush to the storage device.
+     */
+    public synchronized void sync() {
+        if(!dirty)
+            return;
+        for(Segment segment : segments)
+            if(segment.dirty){
+                segment.buffer.force();
+                segment.dirty = false;
+            }
+        dirty = false;
+    }
+
+    /**
+     * Flushes the segments to the storage device and closes the outbox. Pending records are recovered when the
+     * outbox is opened again on the same directory, without their attachments.
+     */
+    public synchronized void close() {
+        if(closed)
+            return;
+        if(syncScheduler != null){
+            syncScheduler.shutdownNow();
+            syncScheduler = null;
+        }
+        sync();
+        closed = true;
+        segments.clear();
+        attachments.clear();
+    }
+
+    /**
+     * Opens the segment files of the directory, oldest first, locating their pending records.
+     *
+     * @throws IOException If a segment file cannot be opened or is not valid.
+     */
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        Collections.sort(paths);
+        for(Path path : paths){
+            Segment segment = openSegment(path, 0);
+            nextSequence = Math.max(nextSequence, sequenceOf(path) + 1);
+            if(segment.buffer.getInt(0) == 0 && segment.buffer.getLong(ACK_POSITION_OFFSET) == 0){
+                // Created but never initialized
+                delete(segment);
+                continue;
+            }
+            if(segment.buffer.getInt(0) != MAGIC)
+                throw new IOException("Not an outbox segment: " + path);
+            segment.ackPosition = (int) segment.buffer.getLong(ACK_POSITION_OFFSET);
+            int position = HEADER_SIZE;
+            while(position + RECORD_HEADER_SIZE <= segment.buffer.capacity()){
+                int bodySize = segment.buffer.getInt(position);
+                if(bodySize < RECORD_FIXED_BODY_SIZE || position + RECORD_HEADER_SIZE + bodySize > segment.buffer.capacity()
+                        || segment.buffer.getInt(position + 4) != checksum(segment.buffer, position + RECORD_HEADER_SIZE, bodySize))
+                    break;
+                if(position >= segment.ackPosition){
+                    pendingBytes += RECORD_HEADER_SIZE + bodySize;
+                    pendingCount++;
+                }
+                position += RECORD_HEADER_SIZE + bodySize;
+            }
+            segment.writePosition = position;
+            if(segment.ackPosition < HEADER_SIZE || segment.ackPosition > segment.writePosition)
+                throw new IOException("Corrupted outbox segment: " + path);
+            if(segment.ackPosition == segment.writePosition)
+                delete(segment);
+            else
+                segments.addLast(segment);
+        }
+    }
+
+    /**
+     * Creates a new segment file at the end of the outbox.
+     *
+     * @return The new segment.
+     * @throws IOException If the file cannot be created.
+     */
+    private Segment createSegment() throws IOException {
+        Segment segment = openSegment(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX)), segmentSize);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putLong(ACK_POSITION_OFFSET, HEADER_SIZE);
+        segment.ackPosition = HEADER_SIZE;
+        segment.writePosition = HEADER_SIZE;
+        Segment previous = segments.peekLast();
+        if(previous != null && previous.dirty){
+            previous.buffer.force();
+            previous.dirty = false;
+        }
+        segments.addLast(segment);
+        markDirty(segment);
+        return segment;
+    }
+
+    /**
+     * Maps a segment file into memory.
+     *
+     * @param path The path of the file.
+     * @param size The size of a new file, 0 to map an existing file with its size.
+     * @return The segment.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private Segment openSegment(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long length = size > 0 ? size : channel.size();
+            if(length < HEADER_SIZE || length > Integer.MAX_VALUE)
+                throw new IOException("Invalid outbox segment size: " + path);
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    /**
+     * Reads the oldest pending record, at a position of the oldest segment.
+     *
+     * @param segment  The segment.
+     * @param position The position of the record.
+     * @return The record.
+     */
+    private OutboxRecord read(Segment segment, int position) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int bodySize = buffer.getInt(position);
+        buffer.position(position + RECORD_HEADER_SIZE);
+        long storedAtMillis = buffer.getLong();
+        long messageExpiryInterval = buffer.getLong();
+        int qos = buffer.get();
+        boolean retained = buffer.get() != 0;
+        byte[] topic = new byte[buffer.getInt()];
+        buffer.get(topic);
+        byte[] payload = new byte[bodySize - RECORD_FIXED_BODY_SIZE - topic.length];
+        buffer.get(payload);
+        return new OutboxRecord(segment, position, RECORD_HEADER_SIZE + bodySize, new String(topic, StandardCharsets.UTF_8), payload,
+                qos, retained, messageExpiryInterval, storedAtMillis, attachments.get(headRecordNumber));
+    }
+
+    /**
+     * Moves the first unacknowledged position of the oldest segment past a record, deleting the segment when
+     * all its records are acknowledged.
+     *
+     * @param head       The oldest segment.
+     * @param recordSize The size of the acknowledged record.
+     */
+    private void advance(Segment head, int recordSize) {
+        head.ackPosition += recordSize;
+        head.buffer.putLong(ACK_POSITION_OFFSET, head.ackPosition);
+        attachments.remove(headRecordNumber++);
+        pendingBytes -= recordSize;
+        pendingCount--;
+        if(head.ackPosition >= head.writePosition){
+            segments.pollFirst();
+            delete(head);
+        }
+        else
+            markDirty(head);
+    }
+
+    /**
+     * Marks a segment as written since the last flush, flushing it if no flush interval is configured.
+     *
+     * @param segment The written segment.
+     */
+    private void markDirty(Segment segment) {
+        segment.dirty = true;
+        dirty = true;
+        if(syncIntervalMs == 0)
+            sync();
+    }
+
+    /**
+     * Deletes the file of a fully acknowledged segment. If the file cannot be deleted, for instance because the
+     * platform does not allow deleting mapped files, it is left in place: its records are all acknowledged.
+     *
+     * @param segment The segment to delete.
+     */
+    private void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Computes the checksum of a record body.
+     *
+     * @param buffer   The segment buffer.
+     * @param position The position of the body.
+     * @param size     The size of the body.
+     * @return The checksum.
+     */
+    private static int checksum(ByteBuffer buffer, int position, int size) {
+        ByteBuffer body = buffer.duplicate();
+        body.position(position);
+        body.limit(position + size);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Gets the sequence number of a segment file.
+     *
+     * @param path The path of the file.
+     * @return The sequence number.
+     */
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A segment file mapped into memory.
+     */
+    static final class Segment {
+
+        /** The path of the file. */
+        private final Path path;
+
+        /** The mapped content of the file. */
+        private final MappedByteBuffer buffer;
+
+        /** The position of the first unacknowledged record. */
+        private int ackPosition;
+
+        /** The position at which the next record is written. */
+        private int writePosition;
+
+        /** Whether the segment has been written since the last flush. */
+        private boolean dirty;
+
+        /**
+         * Constructs a Segment.
+         *
+         * @param path   The path of the file.
+         * @param buffer The mapped content of the file.
+         */
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
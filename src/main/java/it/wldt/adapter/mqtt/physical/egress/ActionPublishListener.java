@@ -0,0 +1,29 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+
+/**
+ * Listener notified of the outcome of the publication of each action received by the adapter.
+ *
+ * Callbacks are invoked on the MQTT client thread completing the publication, or on the thread that received the action
+ * when the publication completes synchronously, and must not block.
+ */
+public interface ActionPublishListener {
+
+    /**
+     * Called when the message of an action has been delivered to the broker according to its QoS.
+     *
+     * @param action The action.
+     * @param topic  The topic on which the action has been published.
+     */
+    void onActionPublished(PhysicalAssetActionWldtEvent<?> action, String topic);
+
+    /**
+     * Called when the message of an action could not be published.
+     *
+     * @param action The action.
+     * @param topic  The topic on which the action should have been published.
+     * @param cause  The cause of the failure, if any.
+     */
+    void onActionFailed(PhysicalAssetActionWldtEvent<?> action, String topic, Throwable cause);
+}
@@ -0,0 +1,113 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import it.wldt.adapter.mqtt.physical.topic.outgoing.DigitalTwinOutgoingTopic;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+
+import java.util.function.Predicate;
+
+/**
+ * A route of an action towards one of its outgoing topics, optionally restricted by a condition on the action.
+ *
+ * The QoS level, retained flag and message expiry of the topic are resolved when the route is created, so
+ * publishing through the route does not go back to the topic settings.
+ */
+public class ActionRoute {
+
+    /** The key of the routed action. */
+    private final String actionKey;
+
+    /** The outgoing topic the action is published on. */
+    private final DigitalTwinOutgoingTopic topic;
+
+    /** The condition selecting the actions published on the route, null if all the actions are. */
+    private final Predicate<PhysicalAssetActionWldtEvent<?>> condition;
+
+    /** The QoS level of the published messages. */
+    private final int qos;
+
+    /** The retained flag of the published messages. */
+    private final boolean retained;
+
+    /** The lifetime in seconds of the published messages, 0 for no expiry. */
+    private final long messageExpiryInterval;
+
+    /**
+     * Constructs an ActionRoute.
+     *
+     * @param actionKey The key of the routed action.
+     * @param topic     The outgoing topic the action is published on.
+     * @param condition The condition selecting the actions published on the route, null to publish all of them.
+     */
+    public ActionRoute(String actionKey, DigitalTwinOutgoingTopic topic, Predicate<PhysicalAssetActionWldtEvent<?>> condition) {
+        this.actionKey = actionKey;
+        this.topic = topic;
+        this.condition = condition;
+        this.qos = topic.getQos();
+        this.retained = topic.isRetained();
+        this.messageExpiryInterval = topic.getMessageExpiryInterval();
+    }
+
+    /**
+     * Checks whether an action is published on the route.
+     *
+     * @param action The action.
+     * @return true if the route has no condition or the action satisfies it, false otherwise.
+     */
+    public boolean matches(PhysicalAssetActionWldtEvent<?> action) {
+        return condition == null || condition.test(action);
+    }
+
+    /**
+     * Gets the key of the routed action.
+     *
+     * @return The action key.
+     */
+    public String getActionKey() {
+        return actionKey;
+    }
+
+    /**
+     * Gets the outgoing topic the action is published on.
+     *
+     * @return The outgoing topic.
+     */
+    public DigitalTwinOutgoingTopic getTopic() {
+        return topic;
+    }
+
+    /**
+     * Checks whether the route is restricted by a condition.
+     *
+     * @return true if conditional, false otherwise.
+     */
+    public boolean isConditional() {
+        return condition != null;
+    }
+
+    /**
+     * Gets the QoS level of the published messages.
+     *
+     * @return The QoS level.
+     */
+    public int getQos() {
+        return qos;
+    }
+
+    /**
+     * Gets the retained flag of the published messages.
+     *
+     * @return The retained flag.
+     */
+    public boolean isRetained() {
+        return retained;
+    }
+
+    /**
+     * Gets the lifetime in seconds of the published messages.
+     *
+     * @return The message expiry interval, 0 if messages do not expire.
+     */
+    public long getMessageExpiryInterval() {
+        return messageExpiryInterval;
+    }
+}
@@ -0,0 +1,64 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import java.util.*;
+
+/**
+ * Immutable lookup of the routes of each action key, compiled from the configuration when it is built.
+ *
+ * An action can be routed to several outgoing topics, each one optionally restricted by a condition on the action,
+ * so a single action event can be fanned out to groups of actuators. Looking up the routes of an action costs a
+ * single hash lookup and does not allocate.
+ */
+public class ActionRouter {
+
+    /** The routes of each action key, in definition order. */
+    private final Map<String, List<ActionRoute>> routes;
+
+    /** The total number of routes. */
+    private final int routeCount;
+
+    /**
+     * Constructs an ActionRouter.
+     *
+     * @param routes The routes, in definition order.
+     */
+    public ActionRouter(List<ActionRoute> routes) {
+        Map<String, List<ActionRoute>> routesByKey = new LinkedHashMap<>();
+        for(ActionRoute route : routes)
+            routesByKey.computeIfAbsent(route.getActionKey(), k -> new ArrayList<>()).add(route);
+        Map<String, List<ActionRoute>> compiled = new HashMap<>((int) (routesByKey.size() / 0.75f) + 1);
+        for(Map.Entry<String, List<ActionRoute>> entry : routesByKey.entrySet())
+            compiled.put(entry.getKey(), Collections.unmodifiableList(Arrays.asList(entry.getValue().toArray(new ActionRoute[0]))));
+        this.routes = Collections.unmodifiableMap(compiled);
+        this.routeCount = routes.size();
+    }
+
+    /**
+     * Gets the routes of an action, including the conditional ones that may not match a specific action.
+     *
+     * @param actionKey The action key.
+     * @return The list of routes, empty if the action has none.
+     */
+    public List<ActionRoute> getRoutes(String actionKey) {
+        List<ActionRoute> actionRoutes = routes.get(actionKey);
+        return actionRoutes != null ? actionRoutes : Collections.emptyList();
+    }
+
+    /**
+     * Gets the keys of the routed actions.
+     *
+     * @return The set of action keys.
+     */
+    public Set<String> getActionKeys() {
+        return routes.keySet();
+    }
+
+    /**
+     * Gets the total number of routes.
+     *
+     * @return The number of routes.
+     */
+    public int getRouteCount() {
+        return routeCount;
+    }
+}
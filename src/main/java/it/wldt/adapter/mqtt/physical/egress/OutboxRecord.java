@@ -0,0 +1,128 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+/**
+ * A message stored in an {@link ActionOutbox}, waiting to be published.
+ */
+public class OutboxRecord {
+
+    /** The segment storing the record. */
+    final ActionOutbox.Segment segment;
+
+    /** The position of the record in its segment. */
+    final int position;
+
+    /** The size of the record in its segment, in bytes. */
+    final int size;
+
+    /** The topic the message is published on. */
+    private final String topic;
+
+    /** The message payload. */
+    private final byte[] payload;
+
+    /** The QoS level of the message. */
+    private final int qos;
+
+    /** The retained flag of the message. */
+    private final boolean retained;
+
+    /** The remaining lifetime of the message in seconds, 0 for no expiry. */
+    private final long messageExpiryInterval;
+
+    /** The time at which the message has been stored, in milliseconds since the epoch. */
+    private final long storedAtMillis;
+
+    /** The attachment of the record, null if none or if the record has been recovered after a restart. */
+    private final Object attachment;
+
+    /**
+     * Constructs an OutboxRecord.
+     *
+     * @param segment               The segment storing the record.
+     * @param position              The position of the record in its segment.
+     * @param size                  The size of the record in its segment.
+     * @param topic                 The topic the message is published on.
+     * @param payload               The message payload.
+     * @param qos                   The QoS level of the message.
+     * @param retained              The retained flag of the message.
+     * @param messageExpiryInterval The remaining lifetime of the message in seconds, 0 for no expiry.
+     * @param storedAtMillis        The time at which the message has been stored.
+     * @param attachment            The attachment of the record, possibly null.
+     */
+    OutboxRecord(ActionOutbox.Segment segment, int position, int size, String topic, byte[] payload, int qos, boolean retained,
+                 long messageExpiryInterval, long storedAtMillis, Object attachment) {
+        this.segment = segment;
+        this.position = position;
+        this.size = size;
+        this.topic = topic;
+        this.payload = payload;
+        this.qos = qos;
+        this.retained = retained;
+        this.messageExpiryInterval = messageExpiryInterval;
+        this.storedAtMillis = storedAtMillis;
+        this.attachment = attachment;
+    }
+
+    /**
+     * Gets the topic the message is published on.
+     *
+     * @return The topic name.
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Gets the message payload.
+     *
+     * @return The payload.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Gets the QoS level of the message.
+     *
+     * @return The QoS level.
+     */
+    public int getQos() {
+        return qos;
+    }
+
+    /**
+     * Gets the retained flag of the message.
+     *
+     * @return The retained flag.
+     */
+    public boolean isRetained() {
+        return retained;
+    }
+
+    /**
+     * Gets the remaining lifetime of the message, accounting for the time spent in the outbox.
+     *
+     * @return The message expiry interval in seconds, 0 if the message does not expire.
+     */
+    public long getMessageExpiryInterval() {
+        return messageExpiryInterval;
+    }
+
+    /**
+     * Gets the time at which the message has been stored.
+     *
+     * @return The storage time in milliseconds since the epoch.
+     */
+    public long getStoredAtMillis() {
+        return storedAtMillis;
+    }
+
+    /**
+     * Gets the attachment of the record.
+     *
+     * @return The attachment, null if none or if the record has been recovered after a restart.
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+}
@@ -0,0 +1,98 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of publications of a connection started and not yet completed by the broker.
+ *
+ * A publication acquires a slot before being sent and releases it on completion or failure: when all the slots are
+ * in use the publishing thread waits, applying backpressure to the actions instead of queuing them in the MQTT client.
+ * Closing the window wakes up the waiting threads, which give up the publication.
+ */
+public class OutgoingWindow {
+
+    /** The maximum number of in-flight publications. */
+    private final int capacity;
+
+    /** The number of in-flight publications. */
+    private int inFlight;
+
+    /** Whether the window has been closed. */
+    private boolean closed;
+
+    /** Number of publications that had to wait for a free slot. */
+    private final LongAdder backpressureCount = new LongAdder();
+
+    /**
+     * Constructs an OutgoingWindow.
+     *
+     * @param capacity The maximum number of in-flight publications.
+     */
+    public OutgoingWindow(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Outgoing window capacity must be a positive number");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Acquires a slot for a publication, waiting while the window is full.
+     *
+     * @return true if the slot has been acquired, false if the window has been closed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        if(inFlight >= capacity && !closed)
+            backpressureCount.increment();
+        while(inFlight >= capacity && !closed)
+            wait();
+        if(closed)
+            return false;
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Releases the slot of a completed or failed publication.
+     */
+    public synchronized void release() {
+        if(inFlight > 0){
+            inFlight--;
+            notify();
+        }
+    }
+
+    /**
+     * Closes the window, waking up the threads waiting for a slot.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Gets the maximum number of in-flight publications.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of publications started and not yet completed.
+     *
+     * @return The number of in-flight publications.
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of publications that had to wait for a free slot.
+     *
+     * @return The backpressure count.
+     */
+    public long getBackpressureCount() {
+        return backpressureCount.sum();
+    }
+}
@@ -0,0 +1,162 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.TopicTemplate;
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index used to route each received message to the DigitalTwinIncomingTopics whose subscription
+ * filter matches the received topic.
+ *
+ * Topics without wildcards are resolved through a hash map in constant time, while wildcard and templated topics
+ * are stored in a trie of topic levels, so the matching cost depends on the number of levels of the received topic
+ * and not on the number of configured topics.
+ */
+public class IncomingTopicIndex {
+
+    /** Exact topics indexed by topic, each one mapped to a precomputed singleton list. */
+    private final Map<String, List<DigitalTwinIncomingTopic>> exactTopics = new HashMap<>();
+
+    /** Root of the trie of wildcard subscription filters. */
+    private final Node wildcardRoot = new Node();
+
+    /** Flag indicating whether at least one wildcard filter has been indexed. */
+    private final boolean hasWildcards;
+
+    /**
+     * Builds the index of the given incoming topics.
+     *
+     * @param incomingTopics The incoming topics to be indexed.
+     */
+    public IncomingTopicIndex(List<DigitalTwinIncomingTopic> incomingTopics) {
+        boolean wildcards = false;
+        for(DigitalTwinIncomingTopic topic : incomingTopics){
+            if(topic.getTopicTemplate().isWildcard()){
+                insertWildcard(topic);
+                wildcards = true;
+            }
+            else
+                exactTopics.merge(topic.getSubscriptionFilter(), Collections.singletonList(topic), IncomingTopicIndex::concat);
+        }
+        this.hasWildcards = wildcards;
+    }
+
+    /**
+     * Gets the incoming topics matching the received topic.
+     *
+     * @param receivedTopic The topic on which the message has been received.
+     * @return The matching incoming topics, empty if no topic matches.
+     */
+    public List<DigitalTwinIncomingTopic> match(String receivedTopic) {
+        List<DigitalTwinIncomingTopic> exact = exactTopics.get(receivedTopic);
+        if(!hasWildcards)
+            return exact != null ? exact : Collections.emptyList();
+        List<DigitalTwinIncomingTopic> result = exact != null ? new ArrayList<>(exact) : new ArrayList<>(2);
+        matchWildcards(receivedTopic, result);
+        return result;
+    }
+
+    /**
+     * Gets the number of exact topics stored in the hash map.
+     *
+     * @return The number of exact topics.
+     */
+    public int getExactTopicCount() {
+        return exactTopics.size();
+    }
+
+    /**
+     * Inserts a wildcard topic in the trie according to the levels of its subscription filter.
+     *
+     * @param topic The incoming topic.
+     */
+    private void insertWildcard(DigitalTwinIncomingTopic topic) {
+        Node node = wildcardRoot;
+        for(String level : topic.getSubscriptionFilter().split(String.valueOf(TopicTemplate.LEVEL_SEPARATOR), -1)){
+            if(TopicTemplate.MULTI_LEVEL_WILDCARD.equals(level)){
+                node.multiLevelTopics.add(topic);
+                return;
+            }
+            if(TopicTemplate.SINGLE_LEVEL_WILDCARD.equals(level)){
+                if(node.singleLevelChild == null)
+                    node.singleLevelChild = new Node();
+                node = node.singleLevelChild;
+            }
+            else
+                node = node.children.computeIfAbsent(level, l -> new Node());
+        }
+        node.topics.add(topic);
+    }
+
+    /**
+     * Collects the wildcard topics matching the received topic.
+     *
+     * @param receivedTopic The received topic.
+     * @param result        The list receiving the matching topics.
+     */
+    private void matchWildcards(String receivedTopic, List<DigitalTwinIncomingTopic> result) {
+        String[] levels = receivedTopic.split(String.valueOf(TopicTemplate.LEVEL_SEPARATOR), -1);
+        boolean systemTopic = !receivedTopic.isEmpty() && receivedTopic.charAt(0) == '$';
+        matchNode(wildcardRoot, levels, 0, systemTopic, result);
+    }
+
+    /**
+     * Recursively walks the trie collecting the topics matching the remaining levels.
+     *
+     * @param node        The current node.
+     * @param levels      The levels of the received topic.
+     * @param index       The index of the current level.
+     * @param systemTopic Flag indicating whether the received topic starts with '$' and must not match first-level wildcards.
+     * @param result      The list receiving the matching topics.
+     */
+    private void matchNode(Node node, String[] levels, int index, boolean systemTopic, List<DigitalTwinIncomingTopic> result) {
+        boolean wildcardAllowed = !(systemTopic && index == 0);
+        if(wildcardAllowed)
+            result.addAll(node.multiLevelTopics);
+        if(index == levels.length){
+            result.addAll(node.topics);
+            return;
+        }
+        Node child = node.children.get(levels[index]);
+        if(child != null)
+            matchNode(child, levels, index + 1, systemTopic, result);
+        if(wildcardAllowed && node.singleLevelChild != null)
+            matchNode(node.singleLevelChild, levels, index + 1, systemTopic, result);
+    }
+
+    /**
+     * Concatenates two lists of topics sharing the same exact filter.
+     *
+     * @param first  The first list.
+     * @param second The second list.
+     * @return The concatenated list.
+     */
+    private static List<DigitalTwinIncomingTopic> concat(List<DigitalTwinIncomingTopic> first, List<DigitalTwinIncomingTopic> second) {
+        List<DigitalTwinIncomingTopic> result = new ArrayList<>(first);
+        result.addAll(second);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Node of the trie of wildcard subscription filters.
+     */
+    private static class Node {
+
+        /** Children indexed by literal level. */
+        private final Map<String, Node> children = new HashMap<>();
+
+        /** Child reached through the single-level wildcard. */
+        private Node singleLevelChild;
+
+        /** Topics whose filter ends at this node. */
+        private final List<DigitalTwinIncomingTopic> topics = new ArrayList<>(1);
+
+        /** Topics whose filter ends with the multi-level wildcard after this node. */
+        private final List<DigitalTwinIncomingTopic> multiLevelTopics = new ArrayList<>(1);
+    }
+}
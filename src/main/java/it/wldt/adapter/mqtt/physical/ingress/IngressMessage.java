@@ -0,0 +1,100 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.mqtt.physical.topic.incoming.MqttIncomingMessage;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents an MQTT message received by the adapter and waiting to be processed by the ingress stage,
+ * together with the DigitalTwinIncomingTopic responsible for its decoding.
+ */
+public class IngressMessage extends MqttIncomingMessage {
+
+    /** The DigitalTwinIncomingTopic responsible for the decoding of the message. */
+    private final DigitalTwinIncomingTopic incomingTopic;
+
+    /** The time at which the message has been received, in nanoseconds. */
+    private final long arrivalNanos;
+
+    /** The callback run when the processing of the message is completed, null if not required. */
+    private Runnable completionCallback;
+
+    /** The number of parts of the processing not yet completed: the handling of the message and the retained events. */
+    private final AtomicInteger pendingParts = new AtomicInteger(1);
+
+    /**
+     * Constructs an IngressMessage.
+     *
+     * @param incomingTopic The DigitalTwinIncomingTopic responsible for the decoding of the message.
+     * @param receivedTopic The topic on which the message has been received.
+     * @param message       The received MQTT message.
+     */
+    public IngressMessage(DigitalTwinIncomingTopic incomingTopic, String receivedTopic, MqttMessage message) {
+        this(incomingTopic, receivedTopic, message, System.nanoTime());
+    }
+
+    /**
+     * Constructs an IngressMessage received at the given time.
+     *
+     * @param incomingTopic The DigitalTwinIncomingTopic responsible for the decoding of the message.
+     * @param receivedTopic The topic on which the message has been received.
+     * @param message       The received MQTT message.
+     * @param arrivalNanos  The time at which the message has been received, as returned by {@link System#nanoTime()}.
+     */
+    public IngressMessage(DigitalTwinIncomingTopic incomingTopic, String receivedTopic, MqttMessage message, long arrivalNanos) {
+        super(receivedTopic, message, incomingTopic.getCharset(), incomingTopic.getTopicTemplate());
+        this.incomingTopic = incomingTopic;
+        this.arrivalNanos = arrivalNanos;
+    }
+
+    /**
+     * Gets the DigitalTwinIncomingTopic responsible for the decoding of the message.
+     *
+     * @return The DigitalTwinIncomingTopic.
+     */
+    public DigitalTwinIncomingTopic getIncomingTopic() {
+        return incomingTopic;
+    }
+
+    /**
+     * Gets the time at which the message has been received, as returned by {@link System#nanoTime()}.
+     *
+     * @return The arrival time in nanoseconds.
+     */
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    /**
+     * Sets the callback run when the processing of the message is completed or the message is discarded.
+     *
+     * @param completionCallback The completion callback.
+     */
+    public void setCompletionCallback(Runnable completionCallback) {
+        this.completionCallback = completionCallback;
+    }
+
+    /**
+     * Retains the completion of the message until an event produced from it, and held by a later stage,
+     * is forwarded or discarded.
+     *
+     * @return The callback to run once, when the retained event is forwarded or discarded. Null if no completion callback is set.
+     */
+    public Runnable retainCompletion() {
+        if(completionCallback == null)
+            return null;
+        pendingParts.incrementAndGet();
+        return this::complete;
+    }
+
+    /**
+     * Marks the processing of the message, or of one of its retained events, as completed, running the completion
+     * callback once all of them are completed.
+     */
+    public void complete() {
+        if(completionCallback != null && pendingParts.decrementAndGet() == 0)
+            completionCallback.run();
+    }
+}
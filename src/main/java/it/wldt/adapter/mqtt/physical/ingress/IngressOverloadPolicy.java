@@ -0,0 +1,171 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable description of how the ingress pipeline behaves when the messages of an incoming topic cannot be queued
+ * because the worker queue is full or the topic reached its maximum queue depth.
+ *
+ * Available policies are:
+ * <ul>
+ *     <li>{@link #neverDrop()}: the MQTT client waits for free space (default, suited for critical event topics);</li>
+ *     <li>{@link #dropNewest()}: the incoming message is discarded;</li>
+ *     <li>{@link #dropOldest()}: the oldest queued message of the same topic is discarded;</li>
+ *     <li>{@link #keepLatestPerKey()}: the queued message with the same received topic is replaced by the incoming one;</li>
+ *     <li>{@link #sample(int)}: only one message every N is queued, replacing the oldest queued message of the same topic,
+ *     the others are discarded.</li>
+ * </ul>
+ * Each policy can additionally bound the number of queued messages of the topic, over all the workers, and the time a
+ * message may wait in the queue.
+ */
+public class IngressOverloadPolicy {
+
+    /**
+     * Behaviour applied when a message cannot be queued.
+     */
+    public enum Type {
+        NEVER_DROP,
+        DROP_NEWEST,
+        DROP_OLDEST,
+        KEEP_LATEST_PER_KEY,
+        SAMPLE
+    }
+
+    /** The default policy: messages are never dropped. */
+    private static final IngressOverloadPolicy NEVER_DROP = new IngressOverloadPolicy(Type.NEVER_DROP, 1, 0, 0);
+
+    /** The behaviour applied when a message cannot be queued. */
+    private final Type type;
+
+    /** For the sample policy, one message every sampleRate is queued. */
+    private final int sampleRate;
+
+    /** The maximum number of queued messages of the topic. 0 means bounded only by the worker queue capacity. */
+    private final int maxQueueDepth;
+
+    /** The maximum time in nanoseconds a message may wait in the queue. 0 means no limit. */
+    private final long maxAgeNanos;
+
+    /**
+     * Constructs an IngressOverloadPolicy.
+     *
+     * @param type          The behaviour applied when a message cannot be queued.
+     * @param sampleRate    For the sample policy, one message every sampleRate is queued.
+     * @param maxQueueDepth The maximum number of queued messages of the topic.
+     * @param maxAgeNanos   The maximum time in nanoseconds a message may wait in the queue.
+     */
+    private IngressOverloadPolicy(Type type, int sampleRate, int maxQueueDepth, long maxAgeNanos) {
+        if(sampleRate <= 0 || maxQueueDepth < 0 || maxAgeNanos < 0)
+            throw new IllegalArgumentException("Sample rate must be positive and max queue depth and age cannot be negative");
+        this.type = type;
+        this.sampleRate = sampleRate;
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * Creates a policy never discarding messages: the MQTT client waits for free space in the queue.
+     *
+     * @return The policy.
+     */
+    public static IngressOverloadPolicy neverDrop() {
+        return NEVER_DROP;
+    }
+
+    /**
+     * Creates a policy discarding the incoming message when it cannot be queued.
+     *
+     * @return The policy.
+     */
+    public static IngressOverloadPolicy dropNewest() {
+        return new IngressOverloadPolicy(Type.DROP_NEWEST, 1, 0, 0);
+    }
+
+    /**
+     * Creates a policy discarding the oldest queued message of the same topic when the incoming one cannot be queued.
+     *
+     * @return The policy.
+     */
+    public static IngressOverloadPolicy dropOldest() {
+        return new IngressOverloadPolicy(Type.DROP_OLDEST, 1, 0, 0);
+    }
+
+    /**
+     * Creates a policy replacing the queued message with the same received topic with the incoming one
+     * when it cannot be queued. If no such message is queued the MQTT client waits for free space.
+     *
+     * @return The policy.
+     */
+    public static IngressOverloadPolicy keepLatestPerKey() {
+        return new IngressOverloadPolicy(Type.KEEP_LATEST_PER_KEY, 1, 0, 0);
+    }
+
+    /**
+     * Creates a policy queuing only one message every sampleRate when the messages cannot be queued,
+     * discarding the others. The queued message takes the place of the oldest queued message of the same topic
+     * in the worker queue, and is discarded as well if there is none.
+     *
+     * @param sampleRate One message every sampleRate is queued.
+     * @return The policy.
+     */
+    public static IngressOverloadPolicy sample(int sampleRate) {
+        return new IngressOverloadPolicy(Type.SAMPLE, sampleRate, 0, 0);
+    }
+
+    /**
+     * Creates a copy of this policy limiting the number of queued messages of the topic, counted over the queues
+     * of all the ingress workers.
+     *
+     * @param maxQueueDepth The maximum number of queued messages of the topic.
+     * @return The new policy.
+     */
+    public IngressOverloadPolicy withMaxQueueDepth(int maxQueueDepth) {
+        return new IngressOverloadPolicy(type, sampleRate, maxQueueDepth, maxAgeNanos);
+    }
+
+    /**
+     * Creates a copy of this policy discarding the messages that waited in the queue longer than the given time.
+     *
+     * @param maxAgeMs The maximum time in milliseconds a message may wait in the queue.
+     * @return The new policy.
+     */
+    public IngressOverloadPolicy withMaxAge(long maxAgeMs) {
+        return new IngressOverloadPolicy(type, sampleRate, maxQueueDepth, TimeUnit.MILLISECONDS.toNanos(maxAgeMs));
+    }
+
+    /**
+     * Gets the behaviour applied when a message cannot be queued.
+     *
+     * @return The policy type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the sample rate of the sample policy.
+     *
+     * @return The sample rate.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the maximum number of queued messages of the topic.
+     *
+     * @return The maximum queue depth, 0 if bounded only by the worker queue capacity.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Gets the maximum time in nanoseconds a message may wait in the queue.
+     *
+     * @return The maximum age, 0 if not limited.
+     */
+    public long getMaxAgeNanos() {
+        return maxAgeNanos;
+    }
+}
@@ -0,0 +1,310 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bounded queue of an ingress worker applying the {@link IngressOverloadPolicy} of each incoming topic
+ * when a message cannot be queued, and discarding the messages exceeding the maximum age of their policy.
+ *
+ * The maximum queue depth of an incoming topic is checked against a {@link TopicDepth} shared by the queues of all
+ * the workers, since the messages of a wildcard or templated incoming topic are spread over several of them.
+ */
+class IngressQueue {
+
+    /** The queued messages in arrival order. */
+    private final ArrayDeque<IngressMessage> messages;
+
+    /** The capacity of the queue. */
+    private final int capacity;
+
+    /** The state of each incoming topic, bounded by the number of configured incoming topics. */
+    private final Map<DigitalTwinIncomingTopic, TopicState> topicStates = new IdentityHashMap<>();
+
+    /** Provides the queue depth of each incoming topic, shared with the other queues of the pipeline. */
+    private final Function<DigitalTwinIncomingTopic, TopicDepth> topicDepths;
+
+    /** The listener notified of each discarded message. */
+    private final Consumer<IngressMessage> shedListener;
+
+    /** Notified when a message is removed while other threads wait for the depth of its topic to decrease. */
+    private final Runnable depthReleasedListener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Constructs an IngressQueue whose topic depths are not shared with other queues.
+     *
+     * @param capacity     The capacity of the queue.
+     * @param shedListener The listener notified of each discarded message.
+     */
+    IngressQueue(int capacity, Consumer<IngressMessage> shedListener) {
+        this(capacity, shedListener, ownTopicDepths(), () -> {});
+    }
+
+    /**
+     * Constructs an IngressQueue.
+     *
+     * @param capacity              The capacity of the queue.
+     * @param shedListener          The listener notified of each discarded message.
+     * @param topicDepths           Provides the queue depth of each incoming topic, shared with the other queues.
+     * @param depthReleasedListener Notified, outside the lock of the queue, when a message is removed while other
+     *                              threads wait for the depth of its topic to decrease.
+     */
+    IngressQueue(int capacity, Consumer<IngressMessage> shedListener, Function<DigitalTwinIncomingTopic, TopicDepth> topicDepths,
+                 Runnable depthReleasedListener) {
+        this.capacity = capacity;
+        this.messages = new ArrayDeque<>(capacity);
+        this.shedListener = shedListener;
+        this.topicDepths = topicDepths;
+        this.depthReleasedListener = depthReleasedListener;
+    }
+
+    /**
+     * Queues a message applying the overload policy of its topic when it cannot be queued.
+     *
+     * @param message The message.
+     * @return true if the message has been queued, false if it has been discarded.
+     * @throws InterruptedException If interrupted while waiting for free space.
+     */
+    boolean put(IngressMessage message) throws InterruptedException {
+        IngressOverloadPolicy policy = message.getIncomingTopic().getOverloadPolicy();
+        IngressMessage shed = null;
+        lock.lockInterruptibly();
+        try {
+            TopicState state = topicState(message.getIncomingTopic());
+            if(isFull(state, policy)){
+                switch (policy.getType()) {
+                    case DROP_NEWEST:
+                        shed = message;
+                        break;
+                    case DROP_OLDEST:
+                        shed = removeFirst(message.getIncomingTopic(), null);
+                        if(shed == null)
+                            shed = message;
+                        break;
+                    case KEEP_LATEST_PER_KEY:
+                        shed = removeFirst(message.getIncomingTopic(), message.getTopic());
+                        break;
+                    case SAMPLE:
+                        // The sampled message takes the place of the oldest one of its topic, as with DROP_OLDEST
+                        if(++state.sampleCounter % policy.getSampleRate() != 0)
+                            shed = message;
+                        else if((shed = removeFirst(message.getIncomingTopic(), null)) == null)
+                            shed = message;
+                        break;
+                    default:
+                        break;
+                }
+                if(shed == message)
+                    return false;
+                if(shed == null)
+                    awaitNotFull(state, policy);
+            }
+            messages.addLast(message);
+            state.depth.queued.incrementAndGet();
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+            if(shed != null)
+                shedListener.accept(shed);
+        }
+    }
+
+    /**
+     * Takes the oldest queued message, discarding the ones exceeding the maximum age of their policy.
+     *
+     * @param timeout The maximum time to wait for a message.
+     * @param unit    The unit of the timeout.
+     * @return The message, or null if the timeout expired.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    IngressMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        while(true){
+            IngressMessage message;
+            boolean depthReleased;
+            lock.lockInterruptibly();
+            try {
+                while(messages.isEmpty()){
+                    if(nanos <= 0)
+                        return null;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                message = messages.pollFirst();
+                depthReleased = onRemoved(message);
+            } finally {
+                lock.unlock();
+            }
+            if(depthReleased)
+                depthReleasedListener.run();
+            long maxAge = message.getIncomingTopic().getOverloadPolicy().getMaxAgeNanos();
+            if(maxAge > 0 && System.nanoTime() - message.getArrivalNanos() > maxAge)
+                shedListener.accept(message);
+            else
+                return message;
+        }
+    }
+
+    /**
+     * Discards all the queued messages.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            messages.forEach(message -> topicState(message.getIncomingTopic()).depth.queued.decrementAndGet());
+            messages.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the threads waiting for free space, so that they check again the depth of their topic after a message
+     * has been removed from another queue.
+     */
+    void signalNotFull() {
+        lock.lock();
+        try {
+            if(lock.hasWaiters(notFull))
+                notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of queued messages.
+     *
+     * @return The number of queued messages.
+     */
+    int size() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the message of a topic can be queued. The waiting thread is registered on the shared depth of the
+     * topic before checking it, so that a queue removing a message of the topic either is seen as not full here or
+     * sees the waiter and wakes it up.
+     *
+     * @param state  The state of the topic.
+     * @param policy The overload policy of the topic.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitNotFull(TopicState state, IngressOverloadPolicy policy) throws InterruptedException {
+        state.depth.waiters.incrementAndGet();
+        try {
+            while(isFull(state, policy))
+                notFull.await();
+        } finally {
+            state.depth.waiters.decrementAndGet();
+        }
+    }
+
+    private boolean isFull(TopicState state, IngressOverloadPolicy policy) {
+        return messages.size() >= capacity || (policy.getMaxQueueDepth() > 0 && state.depth.queued.get() >= policy.getMaxQueueDepth());
+    }
+
+    private TopicState topicState(DigitalTwinIncomingTopic topic) {
+        TopicState state = topicStates.get(topic);
+        if(state == null){
+            state = new TopicState(topicDepths.apply(topic));
+            topicStates.put(topic, state);
+        }
+        return state;
+    }
+
+    /**
+     * Removes the oldest queued message of the given incoming topic and, if not null, received topic.
+     *
+     * @param topic         The incoming topic.
+     * @param receivedTopic The received topic, or null to match any received topic.
+     * @return The removed message, or null if not found.
+     */
+    private IngressMessage removeFirst(DigitalTwinIncomingTopic topic, String receivedTopic) {
+        Iterator<IngressMessage> iterator = messages.iterator();
+        while(iterator.hasNext()){
+            IngressMessage queued = iterator.next();
+            if(queued.getIncomingTopic() == topic && (receivedTopic == null || receivedTopic.equals(queued.getTopic()))){
+                iterator.remove();
+                onRemoved(queued);
+                return queued;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Updates the depth of the topic of a removed message and wakes up the threads waiting for free space.
+     *
+     * @param message The removed message.
+     * @return true if threads wait for the depth of the topic to decrease.
+     */
+    private boolean onRemoved(IngressMessage message) {
+        TopicDepth depth = topicState(message.getIncomingTopic()).depth;
+        depth.queued.decrementAndGet();
+        if(lock.hasWaiters(notFull))
+            notFull.signalAll();
+        return depth.waiters.get() > 0;
+    }
+
+    /**
+     * Creates the provider of the topic depths of a queue not sharing them with other queues.
+     *
+     * @return The provider.
+     */
+    private static Function<DigitalTwinIncomingTopic, TopicDepth> ownTopicDepths() {
+        Map<DigitalTwinIncomingTopic, TopicDepth> depths = new ConcurrentHashMap<>();
+        return topic -> depths.computeIfAbsent(topic, t -> new TopicDepth());
+    }
+
+    /**
+     * Number of queued messages of an incoming topic, shared by the queues of the workers.
+     */
+    static class TopicDepth {
+
+        /** Number of queued messages of the topic. */
+        private final AtomicInteger queued = new AtomicInteger();
+
+        /** Number of threads waiting for free space for a message of the topic. */
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+
+    /**
+     * Queue state of an incoming topic.
+     */
+    private static class TopicState {
+
+        /** Queue depth of the topic, shared with the other queues. */
+        private final TopicDepth depth;
+
+        /** Number of messages of the topic evaluated by the sample policy. */
+        private long sampleCounter;
+
+        private TopicState(TopicDepth depth) {
+            this.depth = depth;
+        }
+    }
+}
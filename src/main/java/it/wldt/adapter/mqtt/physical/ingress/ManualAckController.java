@@ -0,0 +1,190 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controls the manual acknowledgement of the QoS 1 and 2 messages received by the adapter.
+ *
+ * A message is acknowledged to the broker only once all the IngressMessages created from it have been processed,
+ * i.e. their events have been published on the event bus, also when forwarded later by a conflator,
+ * or discarded by an overload policy. The number of unacknowledged messages is bounded: when the limit is reached the
+ * MQTT client callback thread waits, so the backlog is retained by the broker instead of the adapter.
+ *
+ * Acknowledgements are sent in the order the messages have been received, as required by the MQTT specification
+ * (3.1.1 section 4.6): a message processed before the ones received earlier, by another ingress worker or because
+ * they wait in a conflator, is held back and acknowledged right after them. One controller is used for each connection.
+ */
+public class ManualAckController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManualAckController.class);
+
+    /** Completion callback of the messages not requiring an acknowledgement. */
+    private static final Runnable NO_ACK = () -> {};
+
+    /**
+     * Sends the acknowledgement of a received message to the broker.
+     */
+    @FunctionalInterface
+    public interface AckSender {
+
+        /**
+         * Acknowledges a received message.
+         *
+         * @param messageId The identifier of the message.
+         * @param qos       The QoS of the message.
+         * @throws MqttException If the acknowledgement cannot be sent.
+         */
+        void acknowledge(int messageId, int qos) throws MqttException;
+    }
+
+    /** The sender of the acknowledgements. */
+    private final AckSender ackSender;
+
+    /** The permits bounding the number of unacknowledged messages. */
+    private final Semaphore inFlightPermits;
+
+    /** The maximum number of unacknowledged messages. */
+    private final int maxInFlightMessages;
+
+    /** Number of acknowledged messages. */
+    private final LongAdder ackedCount = new LongAdder();
+
+    /** The tracked messages not yet acknowledged, in arrival order. */
+    private final ArrayDeque<TrackedMessage> tracked = new ArrayDeque<>();
+
+    /** Whether a thread is sending the acknowledgements of the completed messages at the head of the queue. */
+    private boolean releasing = false;
+
+    /**
+     * Constructs a ManualAckController.
+     *
+     * @param ackSender           The sender of the acknowledgements.
+     * @param maxInFlightMessages The maximum number of unacknowledged messages.
+     */
+    public ManualAckController(AckSender ackSender, int maxInFlightMessages) {
+        if(maxInFlightMessages <= 0)
+            throw new IllegalArgumentException("Max in-flight messages must be a positive number");
+        this.ackSender = ackSender;
+        this.maxInFlightMessages = maxInFlightMessages;
+        this.inFlightPermits = new Semaphore(maxInFlightMessages);
+    }
+
+    /**
+     * Tracks a received message, waiting if the maximum number of unacknowledged messages has been reached.
+     * The returned callback must be run once for each of the given parts: the message is acknowledged when
+     * all the parts are completed and all the messages tracked before it have been acknowledged. Messages must be
+     * tracked in the order they have been received.
+     *
+     * @param message The received message.
+     * @param parts   The number of parts in which the message is processed.
+     * @return The completion callback of each part.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Runnable track(MqttMessage message, int parts) throws InterruptedException {
+        if(message.getQos() == 0)
+            return NO_ACK;
+        inFlightPermits.acquire();
+        final TrackedMessage trackedMessage = new TrackedMessage(message.getId(), message.getQos());
+        synchronized (tracked) {
+            tracked.addLast(trackedMessage);
+        }
+        final AtomicInteger pending = new AtomicInteger(parts);
+        return () -> {
+            if(pending.decrementAndGet() == 0)
+                complete(trackedMessage);
+        };
+    }
+
+    /**
+     * Gets the number of messages received and not yet acknowledged.
+     *
+     * @return The number of in-flight messages.
+     */
+    public int getInFlightCount() {
+        return maxInFlightMessages - inFlightPermits.availablePermits();
+    }
+
+    /**
+     * Gets the number of acknowledged messages.
+     *
+     * @return The number of acknowledged messages.
+     */
+    public long getAckedCount() {
+        return ackedCount.sum();
+    }
+
+    /**
+     * Marks a message as processed and acknowledges the processed messages at the head of the arrival order.
+     * A single thread at a time sends the acknowledgements, outside the lock, so that they keep the arrival order
+     * without blocking the threads completing other messages.
+     *
+     * @param message The processed message.
+     */
+    private void complete(TrackedMessage message) {
+        synchronized (tracked) {
+            message.completed = true;
+            if(releasing)
+                return;
+            releasing = true;
+        }
+        List<TrackedMessage> releasable = new ArrayList<>();
+        while(true){
+            synchronized (tracked) {
+                while(!tracked.isEmpty() && tracked.peekFirst().completed)
+                    releasable.add(tracked.pollFirst());
+                if(releasable.isEmpty()){
+                    releasing = false;
+                    return;
+                }
+            }
+            for(TrackedMessage released : releasable)
+                acknowledge(released.messageId, released.qos);
+            releasable.clear();
+        }
+    }
+
+    /**
+     * Sends the acknowledgement of a message and releases its permit.
+     *
+     * @param messageId The identifier of the message.
+     * @param qos       The QoS of the message.
+     */
+    private void acknowledge(int messageId, int qos) {
+        try {
+            ackSender.acknowledge(messageId, qos);
+            ackedCount.increment();
+        } catch (MqttException e) {
+            logger.warn("MQTT Physical Adapter - Error acknowledging message {}: {}", messageId, e.getMessage());
+        } finally {
+            inFlightPermits.release();
+        }
+    }
+
+    /**
+     * A received message waiting for its acknowledgement.
+     */
+    private static class TrackedMessage {
+
+        private final int messageId;
+
+        private final int qos;
+
+        /** Whether all the parts of the message have been processed, guarded by the tracked queue. */
+        private boolean completed;
+
+        private TrackedMessage(int messageId, int qos) {
+            this.messageId = messageId;
+            this.qos = qos;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous ingress stage of the MqttPhysicalAdapter.
+ *
+ * Incoming messages are moved off the MQTT client callback thread and distributed over a fixed pool of
+ * workers, each one with its own bounded queue. The worker is selected through the hash of the received topic,
+ * so messages of the same topic are always processed in arrival order while different topics are decoded in parallel.
+ * When a message cannot be queued the {@link IngressOverloadPolicy} of its incoming topic is applied: by default
+ * the submitting thread is blocked, propagating the backpressure to the MQTT client, while the other policies discard
+ * messages. Discarded messages are counted for each incoming topic. The maximum queue depth of an incoming topic
+ * bounds its queued messages over all the workers.
+ */
+public class MqttIngressPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttIngressPipeline.class);
+
+    /** Maximum time waited for each worker to complete when the pipeline is stopped. */
+    private static final long STOP_TIMEOUT_MS = 5000;
+
+    /** The identifier used to name the worker threads. */
+    private final String name;
+
+    /** The bounded queues, one for each worker. */
+    private final IngressQueue[] queues;
+
+    /** The worker threads. */
+    private final Thread[] workers;
+
+    /** The handler applied by the workers on each message. */
+    private final Consumer<IngressMessage> messageHandler;
+
+    /** Number of queued messages of each incoming topic, shared by the queues of the workers. */
+    private final Map<DigitalTwinIncomingTopic, IngressQueue.TopicDepth> topicDepths = new ConcurrentHashMap<>();
+
+    /** Number of discarded messages, indexed by incoming topic. */
+    private final Map<String, LongAdder> shedCounters = new ConcurrentHashMap<>();
+
+    /** Total number of discarded messages. */
+    private final LongAdder shedCount = new LongAdder();
+
+    /** Flag indicating whether the pipeline is running. */
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a MqttIngressPipeline.
+     *
+     * @param name           The identifier used to name the worker threads.
+     * @param workerCount    The number of workers.
+     * @param queueCapacity  The capacity of the queue of each worker.
+     * @param messageHandler The handler applied by the workers on each message.
+     */
+    public MqttIngressPipeline(String name, int workerCount, int queueCapacity, Consumer<IngressMessage> messageHandler) {
+        if(workerCount <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("Worker count and queue capacity must be positive numbers");
+        this.name = name;
+        this.messageHandler = messageHandler;
+        this.queues = new IngressQueue[workerCount];
+        this.workers = new Thread[workerCount];
+        for(int i = 0; i < workerCount; i++)
+            this.queues[i] = new IngressQueue(queueCapacity, this::onMessageShed,
+                    topic -> topicDepths.computeIfAbsent(topic, t -> new IngressQueue.TopicDepth()), this::signalQueues);
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public synchronized void start() {
+        if(running)
+            return;
+        running = true;
+        for(int i = 0; i < workers.length; i++){
+            final IngressQueue queue = queues[i];
+            workers[i] = new Thread(() -> runWorker(queue), String.format("%s-ingress-%d", name, i));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Stops the worker threads. Messages still queued are discarded.
+     */
+    public synchronized void stop() {
+        if(!running)
+            return;
+        running = false;
+        for(Thread worker : workers)
+            worker.interrupt();
+        for(Thread worker : workers){
+            try {
+                worker.join(STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for(IngressQueue queue : queues)
+            queue.clear();
+        signalQueues();
+    }
+
+    /**
+     * Submits a message to the worker responsible for its topic. When the message cannot be queued the overload
+     * policy of its incoming topic is applied, blocking the caller or discarding messages.
+     *
+     * @param message The message to be processed.
+     * @return true if the message has been queued, false if it has been discarded.
+     * @throws InterruptedException If the caller is interrupted while waiting for space in the queue.
+     */
+    public boolean submit(IngressMessage message) throws InterruptedException {
+        if(!running){
+            logger.warn("MQTT Ingress Pipeline {} not running, message on topic {} discarded", name, message.getTopic());
+            message.complete();
+            return false;
+        }
+        return queues[workerIndex(message.getTopic())].put(message);
+    }
+
+    /**
+     * Gets the number of workers of the pipeline.
+     *
+     * @return The number of workers.
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Gets the number of messages currently waiting to be processed.
+     *
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessageCount() {
+        int count = 0;
+        for(IngressQueue queue : queues)
+            count += queue.size();
+        return count;
+    }
+
+    /**
+     * Gets the total number of messages discarded by the overload policies.
+     *
+     * @return The number of discarded messages.
+     */
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    /**
+     * Gets the number of messages of an incoming topic discarded by its overload policy.
+     *
+     * @param topic The incoming topic, as defined in the configuration.
+     * @return The number of discarded messages.
+     */
+    public long getShedCount(String topic) {
+        LongAdder counter = shedCounters.get(topic);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Gets the number of discarded messages of each incoming topic with at least one discarded message.
+     *
+     * @return The map of discarded messages indexed by incoming topic.
+     */
+    public Map<String, Long> getShedCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        shedCounters.forEach((topic, counter) -> counts.put(topic, counter.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Completes and counts a message discarded by an overload policy.
+     *
+     * @param message The discarded message.
+     */
+    private void onMessageShed(IngressMessage message) {
+        message.complete();
+        shedCount.increment();
+        shedCounters.computeIfAbsent(message.getIncomingTopic().getTopic(), t -> new LongAdder()).increment();
+        logger.debug("MQTT Ingress Pipeline {} - Message on topic {} discarded by overload policy {}", name, message.getTopic(),
+                message.getIncomingTopic().getOverloadPolicy().getType());
+    }
+
+    /**
+     * Wakes up the threads waiting for free space in any queue after a message has been removed while they wait for
+     * the depth of its topic to decrease.
+     */
+    private void signalQueues() {
+        for(IngressQueue queue : queues)
+            queue.signalNotFull();
+    }
+
+    /**
+     * Selects the worker responsible for the given topic.
+     *
+     * @param topic The received topic.
+     * @return The index of the worker.
+     */
+    private int workerIndex(String topic) {
+        int h = topic.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % queues.length;
+    }
+
+    /**
+     * Worker loop: takes messages from the queue and applies the handler until the pipeline is stopped.
+     *
+     * @param queue The queue of the worker.
+     */
+    private void runWorker(IngressQueue queue) {
+        while(running){
+            try {
+                IngressMessage message = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(message == null)
+                    continue;
+                try {
+                    messageHandler.accept(message);
+                } finally {
+                    message.complete();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("MQTT Ingress Pipeline {} - Error processing incoming message: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+}
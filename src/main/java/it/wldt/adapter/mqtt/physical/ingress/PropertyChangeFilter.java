@@ -0,0 +1,145 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+/**
+ * Immutable description of a report-by-exception filter applied to the values of a property.
+ *
+ * A value equal to the last forwarded one is always suppressed. For numeric values, changes smaller than the
+ * absolute deadband or smaller than the relative deadband (a fraction of the last forwarded value) are suppressed too.
+ * When a max-silence interval is set, a value is forwarded anyway if nothing has been forwarded for longer than the interval.
+ */
+public class PropertyChangeFilter {
+
+    /** The absolute deadband for numeric values. 0 means disabled. */
+    private final double absoluteDeadband;
+
+    /** The relative deadband for numeric values, as a fraction of the last forwarded value. 0 means disabled. */
+    private final double relativeDeadband;
+
+    /** The max-silence interval in milliseconds. 0 means disabled. */
+    private final long maxSilenceMs;
+
+    /**
+     * Constructs a PropertyChangeFilter.
+     *
+     * @param absoluteDeadband The absolute deadband for numeric values.
+     * @param relativeDeadband The relative deadband for numeric values.
+     * @param maxSilenceMs     The max-silence interval in milliseconds.
+     */
+    private PropertyChangeFilter(double absoluteDeadband, double relativeDeadband, long maxSilenceMs) {
+        if(absoluteDeadband < 0 || relativeDeadband < 0 || maxSilenceMs < 0)
+            throw new IllegalArgumentException("Deadbands and max-silence interval cannot be negative");
+        this.absoluteDeadband = absoluteDeadband;
+        this.relativeDeadband = relativeDeadband;
+        this.maxSilenceMs = maxSilenceMs;
+    }
+
+    /**
+     * Creates a filter suppressing values equal to the last forwarded one.
+     *
+     * @return The filter.
+     */
+    public static PropertyChangeFilter onChange() {
+        return new PropertyChangeFilter(0, 0, 0);
+    }
+
+    /**
+     * Creates a filter suppressing numeric changes smaller than the given absolute deadband.
+     *
+     * @param deadband The absolute deadband.
+     * @return The filter.
+     */
+    public static PropertyChangeFilter absoluteDeadband(double deadband) {
+        return new PropertyChangeFilter(deadband, 0, 0);
+    }
+
+    /**
+     * Creates a filter suppressing numeric changes smaller than the given fraction of the last forwarded value.
+     *
+     * @param deadband The relative deadband, e.g. 0.05 for 5%.
+     * @return The filter.
+     */
+    public static PropertyChangeFilter relativeDeadband(double deadband) {
+        return new PropertyChangeFilter(0, deadband, 0);
+    }
+
+    /**
+     * Creates a copy of this filter forcing a value to be forwarded when nothing has been forwarded for longer than the interval.
+     *
+     * @param maxSilenceMs The max-silence interval in milliseconds.
+     * @return The new filter.
+     */
+    public PropertyChangeFilter withMaxSilence(long maxSilenceMs) {
+        return new PropertyChangeFilter(absoluteDeadband, relativeDeadband, maxSilenceMs);
+    }
+
+    /**
+     * Gets the absolute deadband for numeric values.
+     *
+     * @return The absolute deadband, 0 if disabled.
+     */
+    public double getAbsoluteDeadband() {
+        return absoluteDeadband;
+    }
+
+    /**
+     * Gets the relative deadband for numeric values.
+     *
+     * @return The relative deadband, 0 if disabled.
+     */
+    public double getRelativeDeadband() {
+        return relativeDeadband;
+    }
+
+    /**
+     * Gets the max-silence interval in milliseconds.
+     *
+     * @return The max-silence interval, 0 if disabled.
+     */
+    public long getMaxSilenceMs() {
+        return maxSilenceMs;
+    }
+
+    /**
+     * Checks whether a numeric change between the last forwarded value and the new one must be suppressed.
+     *
+     * @param last    The last forwarded value.
+     * @param current The new value.
+     * @return true if the change must be suppressed, false otherwise.
+     */
+    boolean isWithinDeadband(double last, double current) {
+        if(Double.compare(last, current) == 0)
+            return true;
+        return isDeltaWithinDeadband(last, Math.abs(current - last));
+    }
+
+    /**
+     * Checks whether a change between two integral values must be suppressed. The values are compared exactly, and
+     * their difference is computed exactly unless it overflows, so that values beyond the precision of a double
+     * (e.g. counters and nanosecond timestamps) are not considered equal.
+     *
+     * @param last    The last forwarded value.
+     * @param current The new value.
+     * @return true if the change must be suppressed, false otherwise.
+     */
+    boolean isWithinDeadband(long last, long current) {
+        if(last == current)
+            return true;
+        long difference = current - last;
+        boolean overflow = ((current ^ last) & (current ^ difference)) < 0;
+        double delta = overflow ? Math.abs((double) current - (double) last) : Math.abs((double) difference);
+        return isDeltaWithinDeadband(last, delta);
+    }
+
+    /**
+     * Checks whether a non-zero change from the last forwarded value is smaller than the deadbands.
+     *
+     * @param last  The last forwarded value.
+     * @param delta The absolute value of the change.
+     * @return true if the change must be suppressed, false otherwise.
+     */
+    private boolean isDeltaWithinDeadband(double last, double delta) {
+        if(absoluteDeadband > 0 && delta < absoluteDeadband)
+            return true;
+        return relativeDeadband > 0 && delta < relativeDeadband * Math.abs(last);
+    }
+}
@@ -0,0 +1,193 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.WldtEventEmitter;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Emitter keeping only the latest value of each property produced by a conflated incoming topic.
+ *
+ * Property events are stored by property key, replacing any value not yet forwarded, and are flushed to the
+ * downstream emitter at a fixed interval, or as soon as the downstream emitter is ready when no interval is set:
+ * a drain task forwarding the pending values is then run after each new value, unless one is already pending,
+ * so values flow without delay while the downstream keeps up and only the latest ones are forwarded when it
+ * falls behind. All other events are forwarded immediately.
+ * Memory is bounded by the number of distinct property keys of the topic.
+ *
+ * A completion callback can be attached to each event, for instance to acknowledge the MQTT message it has been
+ * produced from: it is run once the event has been forwarded, or once the value replacing it has been forwarded.
+ */
+public class PropertyConflator implements WldtEventEmitter {
+
+    /** The emitter receiving the forwarded events. */
+    private final WldtEventEmitter downstream;
+
+    /** The flush interval in milliseconds, 0 to flush when the downstream emitter is ready. */
+    private final long intervalMs;
+
+    /** The latest property event not yet forwarded, indexed by property key. */
+    private final Map<String, PendingValue> latestValues = new ConcurrentHashMap<>();
+
+    /** The scheduled flush task. */
+    private ScheduledFuture<?> flushTask;
+
+    /** The executor running the drain tasks, null if not started or flushing at a fixed interval. */
+    private volatile ScheduledExecutorService drainExecutor;
+
+    /** Whether a drain task is scheduled and has not started yet. */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    /**
+     * Constructs a PropertyConflator.
+     *
+     * @param downstream The emitter receiving the forwarded events.
+     * @param intervalMs The flush interval in milliseconds, 0 to flush as soon as the downstream emitter is ready.
+     */
+    public PropertyConflator(WldtEventEmitter downstream, long intervalMs) {
+        this.downstream = downstream;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void emit(WldtEvent<?> event) {
+        emit(event, null);
+    }
+
+    /**
+     * Stores a property event, or forwards any other event, running the completion callback once it is forwarded.
+     *
+     * @param event      The event.
+     * @param completion The callback run once the event, or the value replacing it, has been forwarded. Null if not required.
+     */
+    public void emit(WldtEvent<?> event, Runnable completion) {
+        if(event instanceof PhysicalAssetPropertyWldtEvent){
+            PhysicalAssetPropertyWldtEvent<?> propertyEvent = (PhysicalAssetPropertyWldtEvent<?>) event;
+            latestValues.compute(propertyEvent.getPhysicalPropertyId(), (key, pending) -> new PendingValue(propertyEvent, pending, completion));
+            if(drainExecutor != null)
+                scheduleDrain();
+            return;
+        }
+        try {
+            downstream.emit(event);
+        } finally {
+            if(completion != null)
+                completion.run();
+        }
+    }
+
+    /**
+     * Forwards the latest value of each property received since the previous flush.
+     */
+    public void flush() {
+        for(String key : latestValues.keySet()){
+            PendingValue pending = latestValues.remove(key);
+            if(pending != null)
+                pending.forward();
+        }
+    }
+
+    /**
+     * Schedules the periodic flush, or the drain tasks when no interval is set, on the given executor.
+     *
+     * @param scheduler The executor running the flush or drain tasks.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        if(intervalMs == 0){
+            drainExecutor = scheduler;
+            if(!latestValues.isEmpty())
+                scheduleDrain();
+        }
+        else if(flushTask == null)
+            flushTask = scheduler.scheduleAtFixedRate(this::flush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the periodic flush or the drain tasks and forwards the pending values.
+     */
+    public synchronized void stop() {
+        drainExecutor = null;
+        if(flushTask != null){
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        flush();
+    }
+
+    /**
+     * Runs a drain task on the drain executor unless one is already scheduled and not started yet.
+     */
+    private void scheduleDrain() {
+        ScheduledExecutorService executor = this.drainExecutor;
+        if(executor == null || !drainScheduled.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(() -> {
+                // Values stored from now on schedule a new drain task
+                drainScheduled.set(false);
+                flush();
+            });
+        } catch (RejectedExecutionException e) {
+            // Stopping: the pending values are forwarded by stop()
+            drainScheduled.set(false);
+        }
+    }
+
+    /**
+     * Gets the number of property values waiting to be forwarded.
+     *
+     * @return The number of pending values.
+     */
+    public int getPendingCount() {
+        return latestValues.size();
+    }
+
+    /**
+     * Gets the flush interval in milliseconds.
+     *
+     * @return The flush interval, 0 if values are flushed when the downstream emitter is ready.
+     */
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * The latest value of a property, together with the completion callbacks of the values it replaces.
+     */
+    private class PendingValue {
+
+        private final PhysicalAssetPropertyWldtEvent<?> event;
+
+        /** The completion callbacks of the value and of the values it replaces, null if none. */
+        private final List<Runnable> completions;
+
+        private PendingValue(PhysicalAssetPropertyWldtEvent<?> event, PendingValue replaced, Runnable completion) {
+            this.event = event;
+            List<Runnable> callbacks = replaced != null ? replaced.completions : null;
+            if(completion != null){
+                if(callbacks == null)
+                    callbacks = new ArrayList<>(1);
+                callbacks.add(completion);
+            }
+            this.completions = callbacks;
+        }
+
+        private void forward() {
+            try {
+                downstream.emit(event);
+            } finally {
+                if(completions != null)
+                    completions.forEach(Runnable::run);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.WldtEventEmitter;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Emitter forwarding a property event only when its value differs from the last forwarded one according to
+ * the {@link PropertyChangeFilter} configured for the property key. All other events are forwarded unchanged.
+ *
+ * The last numeric value of each property is stored as a primitive double, so filtering numeric values adds no boxing.
+ */
+public class ReportByExceptionFilter implements WldtEventEmitter {
+
+    /** The emitter receiving the forwarded events. */
+    private final WldtEventEmitter downstream;
+
+    /** The filters indexed by property key. */
+    private final Map<String, PropertyChangeFilter> filters;
+
+    /** The filter applied to the properties without a specific one, or null. */
+    private final PropertyChangeFilter defaultFilter;
+
+    /** The state of the last forwarded value of each filtered property. */
+    private final Map<String, PropertyState> states = new ConcurrentHashMap<>();
+
+    /** Number of suppressed property events. */
+    private final LongAdder suppressedCount = new LongAdder();
+
+    /**
+     * Constructs a ReportByExceptionFilter.
+     *
+     * @param downstream    The emitter receiving the forwarded events.
+     * @param filters       The filters indexed by property key.
+     * @param defaultFilter The filter applied to the properties without a specific one, or null.
+     */
+    public ReportByExceptionFilter(WldtEventEmitter downstream, Map<String, PropertyChangeFilter> filters, PropertyChangeFilter defaultFilter) {
+        this.downstream = downstream;
+        this.filters = filters;
+        this.defaultFilter = defaultFilter;
+    }
+
+    @Override
+    public void emit(WldtEvent<?> event) {
+        if(event instanceof PhysicalAssetPropertyWldtEvent){
+            String key = ((PhysicalAssetPropertyWldtEvent<?>) event).getPhysicalPropertyId();
+            PropertyChangeFilter filter = filters.getOrDefault(key, defaultFilter);
+            if(filter != null && !states.computeIfAbsent(key, k -> new PropertyState()).shouldForward(filter, event.getBody())){
+                suppressedCount.increment();
+                return;
+            }
+        }
+        downstream.emit(event);
+    }
+
+    /**
+     * Gets the number of suppressed property events.
+     *
+     * @return The number of suppressed events.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * State of the last forwarded value of a property.
+     */
+    private static class PropertyState {
+
+        /** Flag indicating whether a value has been forwarded. */
+        private boolean initialized = false;
+
+        /** Flag indicating whether the last forwarded value is numeric. */
+        private boolean numeric = false;
+
+        /** Flag indicating whether the last forwarded value is an integral number, recorded exactly in lastLong. */
+        private boolean integral = false;
+
+        /** The last forwarded numeric value. */
+        private double lastNumber;
+
+        /** The last forwarded integral value. */
+        private long lastLong;
+
+        /** The last forwarded non-numeric value. */
+        private Object lastValue;
+
+        /** The time of the last forward, in nanoseconds. */
+        private long lastForwardNanos;
+
+        /**
+         * Checks whether the given value must be forwarded and, if so, records it as the last forwarded value.
+         *
+         * @param filter The filter to apply.
+         * @param value  The new value.
+         * @return true if the value must be forwarded, false otherwise.
+         */
+        private synchronized boolean shouldForward(PropertyChangeFilter filter, Object value) {
+            long now = System.nanoTime();
+            boolean isNumber = value instanceof Number;
+            boolean isIntegral = isIntegral(value);
+            double number = isNumber ? ((Number) value).doubleValue() : 0;
+            long longNumber = isIntegral ? ((Number) value).longValue() : 0;
+            if(initialized && !isSilenceExpired(filter, now)){
+                // Integral values are compared exactly, since a double cannot represent all the longs above 2^53
+                if(isIntegral && integral && filter.isWithinDeadband(lastLong, longNumber))
+                    return false;
+                if(isNumber && numeric && !(isIntegral && integral) && filter.isWithinDeadband(lastNumber, number))
+                    return false;
+                if(!isNumber && !numeric && Objects.equals(lastValue, value))
+                    return false;
+            }
+            initialized = true;
+            numeric = isNumber;
+            integral = isIntegral;
+            lastNumber = number;
+            lastLong = longNumber;
+            lastValue = isNumber ? null : value;
+            lastForwardNanos = now;
+            return true;
+        }
+
+        /**
+         * Checks whether a value is an integral number that a long represents exactly.
+         *
+         * @param value The value.
+         * @return true if the value is a Long, Integer, Short or Byte, false otherwise.
+         */
+        private static boolean isIntegral(Object value) {
+            return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+        }
+
+        /**
+         * Checks whether the max-silence interval of the filter has expired since the last forward.
+         *
+         * @param filter The filter to apply.
+         * @param now    The current time in nanoseconds.
+         * @return true if the interval has expired, false otherwise.
+         */
+        private boolean isSilenceExpired(PropertyChangeFilter filter, long now) {
+            return filter.getMaxSilenceMs() > 0 && now - lastForwardNanos >= filter.getMaxSilenceMs() * 1_000_000L;
+        }
+    }
+}
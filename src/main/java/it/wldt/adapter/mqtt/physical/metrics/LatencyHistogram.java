@@ -0,0 +1,133 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with fixed buckets from 10 microseconds to 10 seconds.
+ *
+ * Recording a duration costs a bounded bucket lookup, two counter increments and a maximum update that only
+ * writes when the maximum grows, so the histogram can be updated on the message processing path.
+ */
+public class LatencyHistogram {
+
+    /** Upper bounds of the buckets in nanoseconds. Durations above the last bound are counted in the overflow bucket. */
+    private static final long[] BUCKET_BOUNDS_NANOS = {
+            TimeUnit.MICROSECONDS.toNanos(10), TimeUnit.MICROSECONDS.toNanos(25), TimeUnit.MICROSECONDS.toNanos(50),
+            TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MICROSECONDS.toNanos(250), TimeUnit.MICROSECONDS.toNanos(500),
+            TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MICROSECONDS.toNanos(2500), TimeUnit.MILLISECONDS.toNanos(5),
+            TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(25), TimeUnit.MILLISECONDS.toNanos(50),
+            TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(250), TimeUnit.MILLISECONDS.toNanos(500),
+            TimeUnit.SECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(2500), TimeUnit.SECONDS.toNanos(5),
+            TimeUnit.SECONDS.toNanos(10)
+    };
+
+    /** Number of recorded durations for each bucket, the last one being the overflow bucket. */
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+
+    /** Sum of the recorded durations in nanoseconds. */
+    private final LongAdder sumNanos = new LongAdder();
+
+    /** Longest recorded duration in nanoseconds, reported for the percentiles falling in the overflow bucket. */
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs an empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        for(int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        if(nanos < 0)
+            nanos = 0;
+        int index = 0;
+        while(index < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[index])
+            index++;
+        buckets[index].increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        long count = 0;
+        for(LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    /**
+     * Gets the sum of the recorded durations.
+     *
+     * @return The sum in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Gets the longest recorded duration.
+     *
+     * @return The maximum in nanoseconds, 0 if empty.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Gets the upper bounds of the buckets, excluding the overflow bucket.
+     *
+     * @return The bucket bounds in nanoseconds.
+     */
+    public static long[] getBucketBoundsNanos() {
+        return BUCKET_BOUNDS_NANOS.clone();
+    }
+
+    /**
+     * Gets the number of recorded durations of each bucket, the last one being the overflow bucket.
+     *
+     * @return The bucket counts.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for(int i = 0; i < buckets.length; i++)
+            counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    /**
+     * Estimates a percentile of the recorded durations as the upper bound of the bucket containing it, or as the
+     * longest recorded duration when it falls in the overflow bucket.
+     *
+     * @param percentile The percentile, between 0 and 1.
+     * @return The estimated duration in nanoseconds, 0 if empty.
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for(long count : counts)
+            total += count;
+        if(total == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile * total);
+        long cumulative = 0;
+        for(int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++){
+            cumulative += counts[i];
+            if(cumulative >= rank)
+                return BUCKET_BOUNDS_NANOS[i];
+        }
+        return Math.max(getMaxNanos(), BUCKET_BOUNDS_NANOS[BUCKET_BOUNDS_NANOS.length - 1]);
+    }
+}
@@ -0,0 +1,45 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+/**
+ * Stages of the message processing whose latency is traced for each incoming and outgoing topic.
+ *
+ * Incoming messages are stamped on arrival and traced through {@link #QUEUE}, {@link #DECODE} and
+ * {@link #EVENT_BUS} up to the delivery of each produced event ({@link #END_TO_END}). Actions are traced
+ * through {@link #ENCODE} and {@link #PUBLISH} up to the completion of the publication ({@link #END_TO_END}).
+ */
+public enum LatencyStage {
+
+    /** Time spent by an incoming message in the ingress pipeline queue before being decoded. */
+    QUEUE("queue"),
+
+    /** Time spent applying the subscribe function and filtering its events, excluding the event bus publication. */
+    DECODE("decode"),
+
+    /** Time spent publishing an event on the event bus. */
+    EVENT_BUS("event_bus"),
+
+    /** Time spent applying the publish function of an action. */
+    ENCODE("encode"),
+
+    /** Time from the start of a publication to its completion. */
+    PUBLISH("publish"),
+
+    /** Time from the arrival of an incoming message to the delivery of an event, or from the reception of an action to its publication. */
+    END_TO_END("end_to_end");
+
+    /** The name of the stage, exported as label. */
+    private final String label;
+
+    LatencyStage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the name of the stage exported as label.
+     *
+     * @return The label.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
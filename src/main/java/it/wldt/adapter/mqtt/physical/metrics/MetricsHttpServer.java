@@ -0,0 +1,94 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal HTTP endpoint exposing the metrics of an adapter in the Prometheus text format on the {@code /metrics} path,
+ * based on the HTTP server included in the JDK.
+ */
+public class MetricsHttpServer {
+
+    /** The path of the metrics endpoint. */
+    public static final String METRICS_PATH = "/metrics";
+
+    /** The content type of the Prometheus text exposition format. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** The exported metrics. */
+    private final MqttAdapterMetrics metrics;
+
+    /** The address the server is bound to. */
+    private final InetSocketAddress address;
+
+    /** The HTTP server, null when stopped. */
+    private HttpServer server;
+
+    /** The executor serving the requests, null when stopped. */
+    private ExecutorService executor;
+
+    /**
+     * Constructs a MetricsHttpServer.
+     *
+     * @param metrics The exported metrics.
+     * @param host    The host the server is bound to.
+     * @param port    The port the server is bound to, 0 for an ephemeral port.
+     */
+    public MetricsHttpServer(MqttAdapterMetrics metrics, String host, int port) {
+        this.metrics = metrics;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @throws IOException If the server cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if(server != null)
+            return;
+        server = HttpServer.create(address, 0);
+        server.createContext(METRICS_PATH, exchange -> {
+            byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mqtt-adapter-metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public synchronized void stop() {
+        if(server == null)
+            return;
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * Gets the port the server is bound to.
+     *
+     * @return The port, -1 if the server is not running.
+     */
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+}
@@ -0,0 +1,366 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics registry of a MqttPhysicalAdapter, covering the ingress and egress of each topic, the event bus
+ * publication, the connections and the in-flight operations.
+ *
+ * Metrics are readable through the Java API and can be exported in the Prometheus text exposition format.
+ * Counters are lock-free and topics are registered on first use, so the registry can be updated on the
+ * message processing path without external dependencies.
+ */
+public class MqttAdapterMetrics {
+
+    /** Prefix of the exported metric names. */
+    private static final String PREFIX = "wldt_mqtt_";
+
+    /** The latency stages traced for the incoming topics. */
+    private static final LatencyStage[] INCOMING_STAGES = {LatencyStage.QUEUE, LatencyStage.DECODE, LatencyStage.EVENT_BUS, LatencyStage.END_TO_END};
+
+    /** The latency stages traced for the outgoing topics. */
+    private static final LatencyStage[] OUTGOING_STAGES = {LatencyStage.ENCODE, LatencyStage.PUBLISH, LatencyStage.END_TO_END};
+
+    /** Nanoseconds in a second, used to export durations in seconds. */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /** The identifier of the adapter, exported as label. */
+    private final String adapterId;
+
+    /** The metrics of each incoming topic, indexed by topic. */
+    private final ConcurrentMap<String, TopicMetrics> incomingTopics = new ConcurrentHashMap<>();
+
+    /** The metrics of each outgoing topic, indexed by topic. */
+    private final ConcurrentMap<String, TopicMetrics> outgoingTopics = new ConcurrentHashMap<>();
+
+    /** Time spent publishing WldtEvents on the event bus. */
+    private final LatencyHistogram eventBusPublishTime = new LatencyHistogram();
+
+    /** Number of WldtEvents that could not be published on the event bus. */
+    private final LongAdder eventBusFailures = new LongAdder();
+
+    /** Number of received messages not matching any incoming topic. */
+    private final LongAdder unmatchedMessages = new LongAdder();
+
+    /** Number of automatic reconnections. */
+    private final LongAdder reconnects = new LongAdder();
+
+    /** Number of lost connections. */
+    private final LongAdder connectionLosses = new LongAdder();
+
+    /** Number of subscriptions to incoming topics that failed. */
+    private final LongAdder subscriptionFailures = new LongAdder();
+
+    /** Number of publications started and not yet completed. */
+    private final AtomicInteger inFlightPublishes = new AtomicInteger();
+
+    /** Additional gauges, indexed by metric name. */
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a MqttAdapterMetrics.
+     *
+     * @param adapterId The identifier of the adapter.
+     */
+    public MqttAdapterMetrics(String adapterId) {
+        this.adapterId = adapterId;
+    }
+
+    /**
+     * Gets the metrics of an incoming topic, registering it on first use.
+     *
+     * @param topic The incoming topic, as defined in the configuration.
+     * @return The topic metrics.
+     */
+    public TopicMetrics incomingTopic(String topic) {
+        TopicMetrics metrics = incomingTopics.get(topic);
+        return metrics != null ? metrics : incomingTopics.computeIfAbsent(topic, t -> new TopicMetrics());
+    }
+
+    /**
+     * Gets the metrics of an outgoing topic, registering it on first use.
+     *
+     * @param topic The outgoing topic.
+     * @return The topic metrics.
+     */
+    public TopicMetrics outgoingTopic(String topic) {
+        TopicMetrics metrics = outgoingTopics.get(topic);
+        return metrics != null ? metrics : outgoingTopics.computeIfAbsent(topic, t -> new TopicMetrics());
+    }
+
+    /**
+     * Gets the metrics of the incoming topics.
+     *
+     * @return The map of metrics indexed by incoming topic.
+     */
+    public Map<String, TopicMetrics> getIncomingTopicMetrics() {
+        return Collections.unmodifiableMap(incomingTopics);
+    }
+
+    /**
+     * Gets the metrics of the outgoing topics.
+     *
+     * @return The map of metrics indexed by outgoing topic.
+     */
+    public Map<String, TopicMetrics> getOutgoingTopicMetrics() {
+        return Collections.unmodifiableMap(outgoingTopics);
+    }
+
+    /**
+     * Records the time spent publishing a WldtEvent on the event bus.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void onEventBusPublish(long nanos) {
+        eventBusPublishTime.record(nanos);
+    }
+
+    /**
+     * Counts a WldtEvent that could not be published on the event bus.
+     */
+    public void onEventBusFailure() {
+        eventBusFailures.increment();
+    }
+
+    /**
+     * Counts a received message not matching any incoming topic.
+     */
+    public void onUnmatchedMessage() {
+        unmatchedMessages.increment();
+    }
+
+    /**
+     * Counts an automatic reconnection.
+     */
+    public void onReconnect() {
+        reconnects.increment();
+    }
+
+    /**
+     * Counts a lost connection.
+     */
+    public void onConnectionLost() {
+        connectionLosses.increment();
+    }
+
+    /**
+     * Counts a failed subscription to an incoming topic.
+     */
+    public void onSubscriptionFailed() {
+        subscriptionFailures.increment();
+    }
+
+    /**
+     * Counts a started publication.
+     */
+    public void onPublishStarted() {
+        inFlightPublishes.incrementAndGet();
+    }
+
+    /**
+     * Counts a completed publication, successful or not.
+     */
+    public void onPublishCompleted() {
+        inFlightPublishes.decrementAndGet();
+    }
+
+    /**
+     * Registers a gauge read when the metrics are exported.
+     *
+     * @param name  The metric name, without prefix.
+     * @param help  The description of the metric.
+     * @param value The supplier of the value.
+     */
+    public void registerGauge(String name, String help, Supplier<? extends Number> value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * Gets the time spent publishing WldtEvents on the event bus.
+     *
+     * @return The histogram.
+     */
+    public LatencyHistogram getEventBusPublishTime() {
+        return eventBusPublishTime;
+    }
+
+    /**
+     * Gets the number of WldtEvents that could not be published on the event bus.
+     *
+     * @return The failure count.
+     */
+    public long getEventBusFailureCount() {
+        return eventBusFailures.sum();
+    }
+
+    /**
+     * Gets the number of received messages not matching any incoming topic.
+     *
+     * @return The unmatched message count.
+     */
+    public long getUnmatchedMessageCount() {
+        return unmatchedMessages.sum();
+    }
+
+    /**
+     * Gets the number of automatic reconnections.
+     *
+     * @return The reconnect count.
+     */
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Gets the number of lost connections.
+     *
+     * @return The connection loss count.
+     */
+    public long getConnectionLossCount() {
+        return connectionLosses.sum();
+    }
+
+    /**
+     * Gets the number of subscriptions to incoming topics that failed.
+     *
+     * @return The subscription failure count.
+     */
+    public long getSubscriptionFailureCount() {
+        return subscriptionFailures.sum();
+    }
+
+    /**
+     * Gets the number of publications started and not yet completed.
+     *
+     * @return The in-flight publish count.
+     */
+    public int getInFlightPublishCount() {
+        return inFlightPublishes.get();
+    }
+
+    /**
+     * Exports the metrics in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @return The metrics text.
+     */
+    public String toPrometheusText() {
+        StringBuilder sb = new StringBuilder(4096);
+        String adapterLabel = "adapter=\"" + escape(adapterId) + "\"";
+
+        writeTopicCounters(sb, "incoming_messages_total", "Messages received on each incoming topic.", adapterLabel, incomingTopics, TopicMetrics::getMessageCount);
+        writeTopicCounters(sb, "incoming_bytes_total", "Payload bytes received on each incoming topic.", adapterLabel, incomingTopics, TopicMetrics::getPayloadBytes);
+        writeTopicCounters(sb, "decode_failures_total", "Messages whose subscribe function failed.", adapterLabel, incomingTopics, TopicMetrics::getFailureCount);
+        writeTopicHistograms(sb, "incoming_latency_seconds", "Latency of each processing stage of the incoming messages.", adapterLabel, incomingTopics, INCOMING_STAGES);
+        writeTopicCounters(sb, "outgoing_messages_total", "Messages published on each outgoing topic.", adapterLabel, outgoingTopics, TopicMetrics::getMessageCount);
+        writeTopicCounters(sb, "outgoing_bytes_total", "Payload bytes published on each outgoing topic.", adapterLabel, outgoingTopics, TopicMetrics::getPayloadBytes);
+        writeTopicCounters(sb, "publish_failures_total", "Publications that failed on each outgoing topic.", adapterLabel, outgoingTopics, TopicMetrics::getFailureCount);
+        writeTopicHistograms(sb, "outgoing_latency_seconds", "Latency of each processing stage of the actions.", adapterLabel, outgoingTopics, OUTGOING_STAGES);
+
+        writeHeader(sb, "event_bus_publish_seconds", "Time spent publishing events on the event bus.", "histogram");
+        writeHistogram(sb, "event_bus_publish_seconds", adapterLabel, eventBusPublishTime);
+        writeSingle(sb, "event_bus_failures_total", "Events that could not be published on the event bus.", "counter", adapterLabel, eventBusFailures.sum());
+        writeSingle(sb, "unmatched_messages_total", "Received messages not matching any incoming topic.", "counter", adapterLabel, unmatchedMessages.sum());
+        writeSingle(sb, "reconnects_total", "Automatic reconnections to the broker.", "counter", adapterLabel, reconnects.sum());
+        writeSingle(sb, "connection_losses_total", "Connections to the broker lost.", "counter", adapterLabel, connectionLosses.sum());
+        writeSingle(sb, "subscription_failures_total", "Subscriptions to incoming topics that failed.", "counter", adapterLabel, subscriptionFailures.sum());
+        writeSingle(sb, "inflight_publishes", "Publications started and not yet completed.", "gauge", adapterLabel, inFlightPublishes.get());
+
+        Map<String, Gauge> sortedGauges = new LinkedHashMap<>();
+        gauges.keySet().stream().sorted().forEach(name -> sortedGauges.put(name, gauges.get(name)));
+        sortedGauges.forEach((name, gauge) -> {
+            Number value = gauge.value.get();
+            writeSingle(sb, name, gauge.help, "gauge", adapterLabel, value != null ? value.doubleValue() : Double.NaN);
+        });
+        return sb.toString();
+    }
+
+    private void writeTopicCounters(StringBuilder sb, String name, String help, String adapterLabel,
+                                    Map<String, TopicMetrics> topics, ToLongFunction<TopicMetrics> value) {
+        writeHeader(sb, name, help, "counter");
+        topics.forEach((topic, metrics) -> writeSample(sb, name, labels(adapterLabel, topic), value.applyAsLong(metrics)));
+    }
+
+    private void writeTopicHistograms(StringBuilder sb, String name, String help, String adapterLabel,
+                                      Map<String, TopicMetrics> topics, LatencyStage[] stages) {
+        writeHeader(sb, name, help, "histogram");
+        topics.forEach((topic, metrics) -> {
+            for(LatencyStage stage : stages)
+                writeHistogram(sb, name, labels(adapterLabel, topic) + ",stage=\"" + stage.getLabel() + "\"", metrics.getLatency(stage));
+        });
+    }
+
+    private void writeHistogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+        long[] bounds = LatencyHistogram.getBucketBoundsNanos();
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for(int i = 0; i < bounds.length; i++){
+            cumulative += counts[i];
+            writeSample(sb, name + "_bucket", labels + ",le=\"" + BigDecimal.valueOf(bounds[i], 9).stripTrailingZeros().toPlainString() + "\"", cumulative);
+        }
+        cumulative += counts[bounds.length];
+        writeSample(sb, name + "_bucket", labels + ",le=\"+Inf\"", cumulative);
+        writeSample(sb, name + "_sum", labels, histogram.getSumNanos() / NANOS_PER_SECOND);
+        writeSample(sb, name + "_count", labels, cumulative);
+    }
+
+    private void writeSingle(StringBuilder sb, String name, String help, String type, String labels, double value) {
+        writeHeader(sb, name, help, type);
+        writeSample(sb, name, labels, value);
+    }
+
+    private static void writeHeader(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeSample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(PREFIX).append(name).append('{').append(labels).append("} ");
+        if(value == Math.rint(value) && !Double.isInfinite(value))
+            sb.append((long) value);
+        else
+            sb.append(value);
+        sb.append('\n');
+    }
+
+    private static String labels(String adapterLabel, String topic) {
+        return adapterLabel + ",topic=\"" + escape(topic) + "\"";
+    }
+
+    /**
+     * Escapes a label value according to the Prometheus text format.
+     *
+     * @param value The label value.
+     * @return The escaped value.
+     */
+    private static String escape(String value) {
+        if(value.indexOf('\\') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+            return value;
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Gauge registered in the metrics registry.
+     */
+    private static class Gauge {
+
+        /** The description of the metric. */
+        private final String help;
+
+        /** The supplier of the value. */
+        private final Supplier<? extends Number> value;
+
+        private Gauge(String help, Supplier<? extends Number> value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
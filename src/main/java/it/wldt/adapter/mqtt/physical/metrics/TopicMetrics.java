@@ -0,0 +1,97 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and per-stage latency histograms of an incoming or outgoing topic.
+ *
+ * Incoming topics record the {@link LatencyStage#QUEUE}, {@link LatencyStage#DECODE}, {@link LatencyStage#EVENT_BUS}
+ * and {@link LatencyStage#END_TO_END} stages, outgoing topics the {@link LatencyStage#ENCODE}, {@link LatencyStage#PUBLISH}
+ * and {@link LatencyStage#END_TO_END} stages.
+ */
+public class TopicMetrics {
+
+    /** Number of messages. */
+    private final LongAdder messageCount = new LongAdder();
+
+    /** Number of payload bytes. */
+    private final LongAdder payloadBytes = new LongAdder();
+
+    /** Number of messages that could not be decoded or published. */
+    private final LongAdder failureCount = new LongAdder();
+
+    /** Latency histograms of the messages, indexed by stage ordinal. */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[LatencyStage.values().length];
+
+    /**
+     * Constructs an empty TopicMetrics.
+     */
+    public TopicMetrics() {
+        for(int i = 0; i < latencies.length; i++)
+            latencies[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Counts a message.
+     *
+     * @param payloadLength The length of the payload in bytes.
+     */
+    public void onMessage(int payloadLength) {
+        messageCount.increment();
+        payloadBytes.add(payloadLength);
+    }
+
+    /**
+     * Counts a message that could not be decoded or published.
+     */
+    public void onFailure() {
+        failureCount.increment();
+    }
+
+    /**
+     * Gets the number of messages.
+     *
+     * @return The message count.
+     */
+    public long getMessageCount() {
+        return messageCount.sum();
+    }
+
+    /**
+     * Gets the number of payload bytes.
+     *
+     * @return The payload bytes.
+     */
+    public long getPayloadBytes() {
+        return payloadBytes.sum();
+    }
+
+    /**
+     * Gets the number of messages that could not be decoded or published.
+     *
+     * @return The failure count.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param stage The stage.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void recordLatency(LatencyStage stage, long nanos) {
+        latencies[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Gets the latency histogram of a stage.
+     *
+     * @param stage The stage.
+     * @return The histogram.
+     */
+    public LatencyHistogram getLatency(LatencyStage stage) {
+        return latencies[stage.ordinal()];
+    }
+}
@@ -0,0 +1,33 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import it.wldt.core.event.WldtEvent;
+
+/**
+ * Keys of the latency tracing metadata attached to the WldtEvents produced from incoming messages, when enabled
+ * in the configuration. Timestamps are {@link System#nanoTime()} values, comparable only within the same JVM.
+ */
+public final class TraceMetadata {
+
+    /** Metadata key of the arrival time of the incoming message. */
+    public static final String ARRIVAL_NANOS = "mqtt.trace.arrivalNanos";
+
+    /** Metadata key of the time spent by the incoming message in the ingress pipeline queue. */
+    public static final String QUEUE_NANOS = "mqtt.trace.queueNanos";
+
+    /** Metadata key of the incoming topic, as defined in the configuration, that produced the event. */
+    public static final String INCOMING_TOPIC = "mqtt.trace.incomingTopic";
+
+    private TraceMetadata() {
+    }
+
+    /**
+     * Gets the arrival time of the incoming message that produced an event.
+     *
+     * @param event The event.
+     * @return The arrival time in nanoseconds, -1 if the event carries no tracing metadata.
+     */
+    public static long getArrivalNanos(WldtEvent<?> event) {
+        Object value = event.getMetadata() != null ? event.getMetadata().get(ARRIVAL_NANOS) : null;
+        return value instanceof Long ? (Long) value : -1;
+    }
+}
@@ -0,0 +1,255 @@
+package it.wldt.adapter.mqtt.physical.topic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents an MQTT topic template such as {@code plant/{line}/{deviceId}/temperature}.
+ *
+ * Each {@code {name}} level is a path variable matching exactly one topic level and is subscribed through the
+ * single-level wildcard {@code +}. Plain {@code +} and a trailing {@code #} wildcard are also allowed.
+ * A single subscription on the resulting filter replaces one subscription for each concrete topic,
+ * and the values of the variables can be extracted from each received topic.
+ */
+public class TopicTemplate {
+
+    /** MQTT topic level separator. */
+    public static final char LEVEL_SEPARATOR = '/';
+
+    /** MQTT single-level wildcard. */
+    public static final String SINGLE_LEVEL_WILDCARD = "+";
+
+    /** MQTT multi-level wildcard. */
+    public static final String MULTI_LEVEL_WILDCARD = "#";
+
+    /** Prefix of the MQTT shared subscription filters. */
+    public static final String SHARED_SUBSCRIPTION_PREFIX = "$share";
+
+    /** The original template string. */
+    private final String template;
+
+    /** The MQTT subscription filter derived from the template. */
+    private final String subscriptionFilter;
+
+    /** The template levels: literal values or null for wildcard levels. */
+    private final String[] levels;
+
+    /** For each level, the name of the related variable or null. */
+    private final String[] variableNames;
+
+    /** The names of the variables in order of appearance. */
+    private final List<String> variables;
+
+    /** Flag indicating whether the template ends with the multi-level wildcard. */
+    private final boolean multiLevel;
+
+    /**
+     * Constructs a TopicTemplate parsing the given template string.
+     *
+     * @param template The topic template.
+     * @throws IllegalArgumentException If the template is not valid.
+     */
+    public TopicTemplate(String template) {
+        if(template == null || template.isEmpty())
+            throw new IllegalArgumentException("Topic template cannot be null or empty");
+        this.template = template;
+        String[] parts = template.split(String.valueOf(LEVEL_SEPARATOR), -1);
+        boolean endsWithMultiLevel = MULTI_LEVEL_WILDCARD.equals(parts[parts.length - 1]);
+        int levelCount = endsWithMultiLevel ? parts.length - 1 : parts.length;
+        this.levels = new String[levelCount];
+        this.variableNames = new String[levelCount];
+        this.multiLevel = endsWithMultiLevel;
+        List<String> names = new ArrayList<>();
+        Set<String> uniqueNames = new HashSet<>();
+        StringBuilder filter = new StringBuilder(template.length());
+        for(int i = 0; i < levelCount; i++){
+            String part = parts[i];
+            if(part.startsWith("{") && part.endsWith("}") && part.length() > 2){
+                String name = part.substring(1, part.length() - 1);
+                if(!uniqueNames.add(name))
+                    throw new IllegalArgumentException(String.format("Variable %s defined more than once in topic template %s", name, template));
+                names.add(name);
+                this.variableNames[i] = name;
+                filter.append(SINGLE_LEVEL_WILDCARD);
+            }
+            else if(SINGLE_LEVEL_WILDCARD.equals(part))
+                filter.append(SINGLE_LEVEL_WILDCARD);
+            else if(part.contains("{") || part.contains("}") || part.contains(SINGLE_LEVEL_WILDCARD) || part.contains(MULTI_LEVEL_WILDCARD))
+                throw new IllegalArgumentException(String.format("Invalid level %s in topic template %s", part, template));
+            else{
+                this.levels[i] = part;
+                filter.append(part);
+            }
+            filter.append(LEVEL_SEPARATOR);
+        }
+        if(endsWithMultiLevel)
+            filter.append(MULTI_LEVEL_WILDCARD);
+        else
+            filter.setLength(filter.length() - 1);
+        this.subscriptionFilter = filter.toString();
+        this.variables = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Gets the original template string.
+     *
+     * @return The topic template.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Gets the MQTT subscription filter derived from the template, with variables replaced by {@code +}.
+     *
+     * @return The subscription filter.
+     */
+    public String getSubscriptionFilter() {
+        return subscriptionFilter;
+    }
+
+    /**
+     * Gets the names of the variables defined in the template.
+     *
+     * @return The variable names in order of appearance.
+     */
+    public List<String> getVariableNames() {
+        return variables;
+    }
+
+    /**
+     * Checks whether the template defines at least one variable.
+     *
+     * @return true if the template has variables, false otherwise.
+     */
+    public boolean hasVariables() {
+        return !variables.isEmpty();
+    }
+
+    /**
+     * Checks whether the template contains any wildcard level.
+     *
+     * @return true if the subscription filter contains wildcards, false otherwise.
+     */
+    public boolean isWildcard() {
+        return multiLevel || subscriptionFilter.contains(SINGLE_LEVEL_WILDCARD);
+    }
+
+    /**
+     * Checks whether the given topic matches the template.
+     *
+     * @param topic The topic to check.
+     * @return true if the topic matches, false otherwise.
+     */
+    public boolean matches(String topic) {
+        return walk(topic, null);
+    }
+
+    /**
+     * Extracts the values of the template variables from the given topic.
+     *
+     * @param topic The received topic.
+     * @return The map of variable names and values, or null if the topic does not match the template.
+     */
+    public Map<String, String> extractVariables(String topic) {
+        Map<String, String> values = new LinkedHashMap<>(variables.size() * 2);
+        return walk(topic, values) ? values : null;
+    }
+
+    /**
+     * Walks the levels of the topic comparing them with the template, optionally collecting the variable values.
+     *
+     * @param topic  The topic to check.
+     * @param values The map receiving the variable values, or null.
+     * @return true if the topic matches, false otherwise.
+     */
+    private boolean walk(String topic, Map<String, String> values) {
+        if(topic == null)
+            return false;
+        if(!topic.isEmpty() && topic.charAt(0) == '$' && (levels.length == 0 || levels[0] == null))
+            return false;
+        int start = 0;
+        int length = topic.length();
+        for(int i = 0; i < levels.length; i++){
+            if(start > length)
+                return false;
+            int end = topic.indexOf(LEVEL_SEPARATOR, start);
+            if(end < 0)
+                end = length;
+            if(levels[i] != null){
+                if(end - start != levels[i].length() || !topic.regionMatches(start, levels[i], 0, end - start))
+                    return false;
+            }
+            else if(values != null && variableNames[i] != null)
+                values.put(variableNames[i], topic.substring(start, end));
+            start = end + 1;
+        }
+        if(multiLevel)
+            return true;
+        return start == length + 1;
+    }
+
+    /**
+     * Builds the shared subscription filter of the given group, i.e. {@code $share/<group>/<filter>}.
+     * The messages matching a shared subscription are distributed by the broker among the clients of the group.
+     *
+     * @param group  The shared subscription group.
+     * @param filter The subscription filter.
+     * @return The shared subscription filter.
+     */
+    public static String shared(String group, String filter) {
+        return SHARED_SUBSCRIPTION_PREFIX + LEVEL_SEPARATOR + group + LEVEL_SEPARATOR + filter;
+    }
+
+    /**
+     * Checks whether the given string is a valid shared subscription group name, i.e. a non empty topic level
+     * without wildcards.
+     *
+     * @param group The group name.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValidSharedGroup(String group) {
+        return group != null && !group.isEmpty() && group.indexOf(LEVEL_SEPARATOR) < 0
+                && !group.contains(SINGLE_LEVEL_WILDCARD) && !group.contains(MULTI_LEVEL_WILDCARD);
+    }
+
+    /**
+     * Replaces each {@code {name}} placeholder of the given pattern with the related value.
+     *
+     * @param pattern The pattern, e.g. a property key such as {@code {deviceId}.temperature}.
+     * @param values  The variable values.
+     * @return The resolved string.
+     */
+    public static String resolve(String pattern, Map<String, String> values) {
+        if(pattern == null || pattern.indexOf('{') < 0 || values == null || values.isEmpty())
+            return pattern;
+        StringBuilder sb = new StringBuilder(pattern.length() + 16);
+        int index = 0;
+        while(index < pattern.length()){
+            int open = pattern.indexOf('{', index);
+            int close = open < 0 ? -1 : pattern.indexOf('}', open);
+            if(open < 0 || close < 0){
+                sb.append(pattern, index, pattern.length());
+                break;
+            }
+            String value = values.get(pattern.substring(open + 1, close));
+            sb.append(pattern, index, open);
+            if(value != null)
+                sb.append(value);
+            else
+                sb.append(pattern, open, close + 1);
+            index = close + 1;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
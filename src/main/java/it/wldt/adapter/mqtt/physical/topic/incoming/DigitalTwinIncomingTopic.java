@@ -1,25 +1,65 @@
 package it.wldt.adapter.mqtt.physical.topic.incoming;
 
+import it.wldt.adapter.mqtt.physical.ingress.IngressOverloadPolicy;
 import it.wldt.adapter.mqtt.physical.topic.MqttTopic;
+import it.wldt.adapter.mqtt.physical.topic.TopicTemplate;
 import it.wldt.core.event.WldtEvent;
+import it.wldt.exception.EventBusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents an MQTT topic for incoming messages in the context of a Digital Twin.
  * This class extends the generic MqttTopic class and includes a function to handle
- * the subscription process and transform the MQTT payload into a list of WldtEvent objects.
+ * the subscription process and transform the MQTT payload into WldtEvent objects.
+ *
+ * The topic can be defined either with a String based {@link MqttSubscribeFunction}, returning a list of events,
+ * or with a byte oriented {@link MqttBinarySubscribeFunction}, pushing the events into a {@link WldtEventEmitter}.
+ * String based functions are internally adapted on top of the binary one. Binary topics are created through
+ * {@link #binary(String, MqttBinarySubscribeFunction)} or by the subclasses, so that the public constructor taking
+ * a {@link MqttSubscribeFunction} stays unambiguous.
+ *
+ * The topic can be a template such as {@code plant/{line}/{deviceId}/temperature}: the adapter subscribes once
+ * to the related wildcard filter and the values of the variables are available through
+ * {@link MqttIncomingMessage#getTopicVariables()}.
  *
  * @author Marco Picone, Ph.D. - picone.m@gmail.com, Marta Spadoni University of Bologna
  */
 public class DigitalTwinIncomingTopic extends MqttTopic {
 
+    private static final Logger logger = LoggerFactory.getLogger(DigitalTwinIncomingTopic.class);
+
     /**
      * The function responsible for handling the subscription process and transforming
      * the MQTT payload into a list of WldtEvent objects.
      */
     private final MqttSubscribeFunction mqttSubscribeFunction;
 
+    /**
+     * The function responsible for transforming the raw MQTT message into WldtEvent objects.
+     */
+    private final MqttBinarySubscribeFunction binarySubscribeFunction;
+
+    /** The template parsed from the topic string. */
+    private final TopicTemplate topicTemplate;
+
+    /** The charset used to decode the message payload as a String. Default is UTF-8. */
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /** The interval in milliseconds at which the latest value of each property is forwarded. 0 disables conflation. */
+    private long conflationIntervalMs = 0;
+
+    /** Whether the latest value of each property is forwarded as soon as the previous one has been published. */
+    private boolean conflationOnReady = false;
+
+    /** The policy applied by the ingress pipeline when the messages of the topic cannot be queued. */
+    private IngressOverloadPolicy overloadPolicy = IngressOverloadPolicy.neverDrop();
+
     /**
      * Constructs a DigitalTwinIncomingTopic with the specified topic and MQTT subscription function.
      *
@@ -28,12 +68,44 @@ public class DigitalTwinIncomingTopic extends MqttTopic {
      */
     public DigitalTwinIncomingTopic(String topic, MqttSubscribeFunction mqttSubscribeFunction) {
         super(topic);
+        this.topicTemplate = new TopicTemplate(topic);
         this.mqttSubscribeFunction = mqttSubscribeFunction;
+        this.binarySubscribeFunction = mqttSubscribeFunction == null ? null : (message, emitter) -> {
+            List<WldtEvent<?>> events = mqttSubscribeFunction.apply(message.getPayloadAsString());
+            if(events != null)
+                for(WldtEvent<?> event : events)
+                    emitter.emit(event);
+        };
+    }
+
+    /**
+     * Constructs a DigitalTwinIncomingTopic with the specified topic and binary MQTT subscription function.
+     *
+     * @param topic                   The MQTT topic associated with incoming messages.
+     * @param binarySubscribeFunction The function to apply to the raw incoming messages.
+     */
+    protected DigitalTwinIncomingTopic(String topic, MqttBinarySubscribeFunction binarySubscribeFunction) {
+        super(topic);
+        this.topicTemplate = new TopicTemplate(topic);
+        this.binarySubscribeFunction = binarySubscribeFunction;
+        this.mqttSubscribeFunction = binarySubscribeFunction == null ? null : topicMessagePayload -> applySubscribeFunction(getTopic(), topicMessagePayload);
+    }
+
+    /**
+     * Creates a DigitalTwinIncomingTopic with the specified topic and binary MQTT subscription function.
+     *
+     * @param topic                   The MQTT topic associated with incoming messages.
+     * @param binarySubscribeFunction The function to apply to the raw incoming messages.
+     * @return The DigitalTwinIncomingTopic.
+     */
+    public static DigitalTwinIncomingTopic binary(String topic, MqttBinarySubscribeFunction binarySubscribeFunction) {
+        return new DigitalTwinIncomingTopic(topic, binarySubscribeFunction);
     }
 
     /**
      * Applies the subscription function to the provided MQTT message payload.
-     * Transforms the payload into a list of WldtEvent objects.
+     * Transforms the payload into a list of WldtEvent objects. A binary function receives the topic itself as the
+     * received topic: for wildcard topics use {@link #applySubscribeFunction(String, String)}.
      *
      * @param topicMessagePayload The MQTT message payload to be processed.
      * @return A list of WldtEvent objects resulting from the subscription function.
@@ -42,6 +114,37 @@ public class DigitalTwinIncomingTopic extends MqttTopic {
         return mqttSubscribeFunction.apply(topicMessagePayload);
     }
 
+    /**
+     * Applies the subscription function to the provided MQTT message payload received on the given topic.
+     * Transforms the payload into a list of WldtEvent objects.
+     *
+     * @param receivedTopic       The topic on which the message has been received.
+     * @param topicMessagePayload The MQTT message payload to be processed.
+     * @return A list of WldtEvent objects resulting from the subscription function.
+     */
+    public List<WldtEvent<?>> applySubscribeFunction(String receivedTopic, String topicMessagePayload){
+        List<WldtEvent<?>> events = new ArrayList<>();
+        try {
+            // The payload is encoded again only if the function reads the raw bytes
+            binarySubscribeFunction.apply(new MqttIncomingMessage(receivedTopic, topicMessagePayload, this.charset, this.topicTemplate), events::add);
+        } catch (EventBusException e) {
+            logger.error("Error applying the subscribe function of topic {} to a message received on {}: {}", getTopic(), receivedTopic, e.getMessage());
+        }
+        return events;
+    }
+
+    /**
+     * Applies the subscription function to the provided raw MQTT message,
+     * pushing the resulting WldtEvent objects into the emitter.
+     *
+     * @param message The incoming MQTT message to be processed.
+     * @param emitter The emitter receiving the resulting WldtEvent objects.
+     * @throws EventBusException If a WldtEvent cannot be created.
+     */
+    public void applySubscribeFunction(MqttIncomingMessage message, WldtEventEmitter emitter) throws EventBusException {
+        binarySubscribeFunction.apply(message, emitter);
+    }
+
     /**
      * Retrieves the MQTT subscription function associated with this DigitalTwinIncomingTopic.
      *
@@ -50,4 +153,117 @@ public class DigitalTwinIncomingTopic extends MqttTopic {
     public MqttSubscribeFunction getSubscribeFunction() {
         return mqttSubscribeFunction;
     }
+
+    /**
+     * Retrieves the binary MQTT subscription function associated with this DigitalTwinIncomingTopic.
+     *
+     * @return The binary MQTT subscription function.
+     */
+    public MqttBinarySubscribeFunction getBinarySubscribeFunction() {
+        return binarySubscribeFunction;
+    }
+
+    /**
+     * Gets the template parsed from the topic string.
+     *
+     * @return The topic template.
+     */
+    public TopicTemplate getTopicTemplate() {
+        return topicTemplate;
+    }
+
+    /**
+     * Gets the MQTT filter used to subscribe to the topic, with template variables replaced by wildcards.
+     *
+     * @return The subscription filter.
+     */
+    public String getSubscriptionFilter() {
+        return topicTemplate.getSubscriptionFilter();
+    }
+
+    /**
+     * Gets the charset used to decode the message payload as a String.
+     *
+     * @return The payload charset.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset used to decode the message payload as a String.
+     *
+     * @param charset The payload charset.
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Gets the interval in milliseconds at which the latest value of each property produced by the topic is forwarded.
+     *
+     * @return The conflation interval, 0 if conflation is disabled.
+     */
+    public long getConflationIntervalMs() {
+        return conflationIntervalMs;
+    }
+
+    /**
+     * Enables the latest-value conflation of the properties produced by the topic: only the latest value of each
+     * property key is kept and forwarded to the Digital Twin every interval. Events are never conflated.
+     *
+     * @param conflationIntervalMs The conflation interval in milliseconds, 0 to disable conflation.
+     */
+    public void setConflationIntervalMs(long conflationIntervalMs) {
+        this.conflationIntervalMs = conflationIntervalMs;
+    }
+
+    /**
+     * Checks whether the latest value of each property is forwarded as soon as the previous values have been published
+     * on the event bus, rather than every interval.
+     *
+     * @return true if values are forwarded when the event bus is ready, false otherwise.
+     */
+    public boolean isConflationOnReady() {
+        return conflationOnReady;
+    }
+
+    /**
+     * Enables the latest-value conflation of the properties produced by the topic, forwarding the latest value of each
+     * property key as soon as the previous values have been published on the event bus: values are forwarded without
+     * delay while the event bus keeps up, and only the latest ones when it falls behind. Events are never conflated.
+     *
+     * @param conflationOnReady true to forward values when the event bus is ready, false to use the conflation interval, if any.
+     */
+    public void setConflationOnReady(boolean conflationOnReady) {
+        this.conflationOnReady = conflationOnReady;
+    }
+
+    /**
+     * Checks whether the latest-value conflation of the properties is enabled.
+     *
+     * @return true if conflation is enabled, false otherwise.
+     */
+    public boolean isConflated() {
+        return conflationOnReady || conflationIntervalMs > 0;
+    }
+
+    /**
+     * Gets the policy applied by the ingress pipeline when the messages of the topic cannot be queued.
+     *
+     * @return The overload policy.
+     */
+    public IngressOverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    /**
+     * Sets the policy applied by the ingress pipeline when the messages of the topic cannot be queued.
+     * The policy is applied only when the asynchronous ingress pipeline is enabled.
+     *
+     * @param overloadPolicy The overload policy.
+     */
+    public void setOverloadPolicy(IngressOverloadPolicy overloadPolicy) {
+        this.overloadPolicy = overloadPolicy;
+    }
 }
@@ -1,9 +1,7 @@
 package it.wldt.adapter.mqtt.physical.topic.incoming;
 
 import it.wldt.adapter.physical.event.PhysicalAssetEventWldtEvent;
-import it.wldt.exception.EventBusException;
 
-import java.util.Collections;
 import java.util.function.Function;
 
 /**
@@ -21,17 +19,25 @@ public class EventIncomingTopic<T> extends DigitalTwinIncomingTopic {
      * to produce the event body from the MQTT message payload.
      *
      * @param topic              The MQTT topic associated with incoming events.
-     * @param eventKey           The key associated with the incoming event.
+     * @param eventKey           The key associated with the incoming event, optionally with {@code {name}} topic variable placeholders.
      * @param eventBodyProducer  A function to produce the event body from the MQTT message payload.
      */
     public EventIncomingTopic(String topic, String eventKey, Function<String, T>eventBodyProducer) {
-        super(topic, topicMsgPayload -> {
-            try {
-                return Collections.singletonList(new PhysicalAssetEventWldtEvent<>(eventKey, eventBodyProducer.apply(topicMsgPayload)));
-            } catch (EventBusException e) {
-                e.printStackTrace();
-            }
-            return null;
-        } );
+        super(topic, eventFunction(eventKey, eventBodyProducer));
+    }
+
+    /**
+     * Creates the binary subscribe function of the topic. When the key contains {@code {name}} placeholders
+     * they are resolved with the variables of the received topic.
+     *
+     * @param eventKey The key of the event, optionally with topic variable placeholders.
+     * @param eventBodyProducer A function to convert the MQTT message payload into the event value.
+     * @param <T> The type of the event value.
+     * @return The binary subscribe function.
+     */
+    private static <T> MqttBinarySubscribeFunction eventFunction(String eventKey, Function<String, T> eventBodyProducer) {
+        if(eventKey == null || eventKey.indexOf('{') < 0)
+            return (message, emitter) -> emitter.emit(new PhysicalAssetEventWldtEvent<>(eventKey, eventBodyProducer.apply(message.getPayloadAsString())));
+        return (message, emitter) -> emitter.emit(new PhysicalAssetEventWldtEvent<>(message.resolveTopicVariables(eventKey), eventBodyProducer.apply(message.getPayloadAsString())));
     }
 }
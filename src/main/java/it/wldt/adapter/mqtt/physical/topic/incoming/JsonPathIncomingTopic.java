@@ -0,0 +1,410 @@
+package it.wldt.adapter.mqtt.physical.topic.incoming;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import it.wldt.adapter.physical.event.PhysicalAssetEventWldtEvent;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.exception.EventBusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents an MQTT topic with JSON payloads whose fields are declaratively mapped to Digital Twin properties
+ * and events through JSON paths, e.g. {@code $.data.temp} mapped to the {@code temperature} property.
+ *
+ * The paths are compiled when the topic is built into a tree of expected fields and array indexes, and each
+ * payload is read in a single pass with a streaming parser: fields not included in any path are skipped
+ * without building objects and parsing stops as soon as all the mapped values have been read.
+ *
+ * Supported paths use dot notation for object fields and brackets for array indexes (e.g. {@code $.values[0].v}).
+ * Supported target types are String, Integer, Long, Double, Float, Boolean and JsonElement.
+ */
+public class JsonPathIncomingTopic extends DigitalTwinIncomingTopic {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonPathIncomingTopic.class);
+
+    /**
+     * Constructs a JsonPathIncomingTopic with the compiled path tree.
+     *
+     * @param topic The MQTT topic associated with incoming messages.
+     * @param root  The root of the compiled path tree.
+     */
+    private JsonPathIncomingTopic(String topic, PathNode root) {
+        super(topic, extractor(root));
+    }
+
+    /**
+     * Creates a builder of a JsonPathIncomingTopic.
+     *
+     * @param topic The MQTT topic, or topic template, associated with incoming messages.
+     * @return The builder.
+     */
+    public static Builder builder(String topic) {
+        return new Builder(topic);
+    }
+
+    /**
+     * Creates the binary subscribe function reading the payload with a streaming parser.
+     *
+     * @param root The root of the compiled path tree.
+     * @return The binary subscribe function.
+     */
+    private static MqttBinarySubscribeFunction extractor(PathNode root) {
+        return (message, emitter) -> {
+            try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(message.getPayload()), message.getCharset()))) {
+                readValue(reader, root, new int[]{root.mappingCount}, message, emitter);
+            } catch (IOException | IllegalStateException | JsonParseException | NumberFormatException e) {
+                logger.warn("JSON Path Incoming Topic - Error parsing payload received on topic {}: {}", message.getTopic(), e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Reads the next value of the reader according to the given node of the path tree.
+     *
+     * @param reader    The JSON reader.
+     * @param node      The node of the path tree related to the value.
+     * @param remaining Single element array holding the number of mapped values still to be read.
+     * @param message   The incoming message.
+     * @param emitter   The emitter receiving the produced events.
+     * @throws IOException       If the payload cannot be read.
+     * @throws EventBusException If an event cannot be created.
+     */
+    private static void readValue(JsonReader reader, PathNode node, int[] remaining, MqttIncomingMessage message, WldtEventEmitter emitter) throws IOException, EventBusException {
+        if(node.mappings != null){
+            Object value = node.mappings[0].read(reader);
+            remaining[0] -= node.mappings.length;
+            if(value != null)
+                for(PathMapping mapping : node.mappings)
+                    mapping.emit(value, message, emitter);
+            return;
+        }
+        JsonToken token = reader.peek();
+        if(token == JsonToken.BEGIN_OBJECT && node.fields != null){
+            reader.beginObject();
+            while(remaining[0] > 0 && reader.hasNext()){
+                PathNode child = node.fields.get(reader.nextName());
+                if(child != null)
+                    readValue(reader, child, remaining, message, emitter);
+                else
+                    reader.skipValue();
+            }
+            if(remaining[0] > 0)
+                reader.endObject();
+        }
+        else if(token == JsonToken.BEGIN_ARRAY && node.indexes != null){
+            reader.beginArray();
+            int index = 0;
+            while(remaining[0] > 0 && reader.hasNext()){
+                PathNode child = index < node.indexes.length ? node.indexes[index] : null;
+                if(child != null)
+                    readValue(reader, child, remaining, message, emitter);
+                else
+                    reader.skipValue();
+                index++;
+            }
+            if(remaining[0] > 0)
+                reader.endArray();
+        }
+        else{
+            reader.skipValue();
+            remaining[0] -= node.countMappings();
+        }
+    }
+
+    /**
+     * Builder compiling the JSON path mappings into a JsonPathIncomingTopic.
+     */
+    public static class Builder {
+
+        /** The MQTT topic associated with incoming messages. */
+        private final String topic;
+
+        /** The root of the path tree. */
+        private final PathNode root = new PathNode();
+
+        /**
+         * Constructs a Builder.
+         *
+         * @param topic The MQTT topic associated with incoming messages.
+         */
+        private Builder(String topic) {
+            this.topic = topic;
+        }
+
+        /**
+         * Maps the value at the given JSON path to a property.
+         *
+         * @param jsonPath    The JSON path, e.g. {@code $.data.temp}.
+         * @param propertyKey The key of the property, optionally with {@code {name}} topic variable placeholders.
+         * @param type        The type of the property value.
+         * @return The builder.
+         * @throws IllegalArgumentException If the path or the type are not supported.
+         */
+        public Builder property(String jsonPath, String propertyKey, Class<?> type) {
+            return addMapping(jsonPath, new PathMapping(propertyKey, type, false));
+        }
+
+        /**
+         * Maps the value at the given JSON path to the body of an event.
+         *
+         * @param jsonPath The JSON path, e.g. {@code $.alarm.message}.
+         * @param eventKey The key of the event, optionally with {@code {name}} topic variable placeholders.
+         * @param type     The type of the event body.
+         * @return The builder.
+         * @throws IllegalArgumentException If the path or the type are not supported.
+         */
+        public Builder event(String jsonPath, String eventKey, Class<?> type) {
+            return addMapping(jsonPath, new PathMapping(eventKey, type, true));
+        }
+
+        /**
+         * Builds the JsonPathIncomingTopic with the compiled path tree.
+         *
+         * @return The JsonPathIncomingTopic.
+         * @throws IllegalStateException If no path has been mapped.
+         */
+        public JsonPathIncomingTopic build() {
+            if(root.countMappings() == 0)
+                throw new IllegalStateException("At least one JSON path must be mapped");
+            root.compile();
+            return new JsonPathIncomingTopic(topic, root);
+        }
+
+        /**
+         * Adds a mapping to the node of the path tree related to the given JSON path.
+         *
+         * @param jsonPath The JSON path.
+         * @param mapping  The mapping.
+         * @return The builder.
+         */
+        private Builder addMapping(String jsonPath, PathMapping mapping) {
+            PathNode node = root;
+            for(Object segment : parsePath(jsonPath))
+                node = segment instanceof String ? node.field((String) segment) : node.index((Integer) segment);
+            if(node.hasChildren())
+                throw new IllegalArgumentException(String.format("JSON path %s is the parent of another mapped path", jsonPath));
+            node.addMapping(mapping);
+            return this;
+        }
+
+        /**
+         * Parses a JSON path into its segments: field names and array indexes.
+         *
+         * @param jsonPath The JSON path.
+         * @return The list of segments.
+         */
+        private static List<Object> parsePath(String jsonPath) {
+            if(jsonPath == null || !jsonPath.startsWith("$"))
+                throw new IllegalArgumentException(String.format("Invalid JSON path %s: it must start with $", jsonPath));
+            List<Object> segments = new ArrayList<>();
+            int i = 1;
+            while(i < jsonPath.length()){
+                char c = jsonPath.charAt(i);
+                if(c == '.'){
+                    int end = i + 1;
+                    while(end < jsonPath.length() && jsonPath.charAt(end) != '.' && jsonPath.charAt(end) != '[')
+                        end++;
+                    if(end == i + 1)
+                        throw new IllegalArgumentException(String.format("Invalid JSON path %s: empty field name", jsonPath));
+                    segments.add(jsonPath.substring(i + 1, end));
+                    i = end;
+                }
+                else if(c == '['){
+                    int end = jsonPath.indexOf(']', i);
+                    if(end < 0)
+                        throw new IllegalArgumentException(String.format("Invalid JSON path %s: unclosed bracket", jsonPath));
+                    String content = jsonPath.substring(i + 1, end).trim();
+                    if(content.length() >= 2 && (content.charAt(0) == '\'' || content.charAt(0) == '"'))
+                        segments.add(content.substring(1, content.length() - 1));
+                    else{
+                        try {
+                            segments.add(Integer.parseInt(content));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException(String.format("Invalid JSON path %s: unsupported index %s", jsonPath, content));
+                        }
+                    }
+                    i = end + 1;
+                }
+                else
+                    throw new IllegalArgumentException(String.format("Invalid JSON path %s at position %d", jsonPath, i));
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * Node of the compiled path tree.
+     */
+    private static class PathNode {
+
+        /** Children indexed by field name, null when no field is expected. */
+        private Map<String, PathNode> fields;
+
+        /** Children indexed by array index, built from the index map when the tree is compiled. */
+        private PathNode[] indexes;
+
+        /** Children indexed by array index while building the tree. */
+        private Map<Integer, PathNode> indexMap;
+
+        /** Mappings while building the tree. */
+        private List<PathMapping> mappingList;
+
+        /** Compiled mappings of the value of the node, null when the node is not mapped. */
+        private PathMapping[] mappings;
+
+        /** Number of mappings of the subtree, computed when the tree is compiled. */
+        private int mappingCount;
+
+        private PathNode field(String name) {
+            if(mappingList != null)
+                throw new IllegalArgumentException(String.format("Field %s is the child of a mapped path", name));
+            if(fields == null)
+                fields = new HashMap<>();
+            return fields.computeIfAbsent(name, n -> new PathNode());
+        }
+
+        private PathNode index(int index) {
+            if(index < 0)
+                throw new IllegalArgumentException("Array index cannot be negative");
+            if(mappingList != null)
+                throw new IllegalArgumentException(String.format("Index %d is the child of a mapped path", index));
+            if(indexMap == null)
+                indexMap = new HashMap<>();
+            return indexMap.computeIfAbsent(index, i -> new PathNode());
+        }
+
+        private boolean hasChildren() {
+            return fields != null || indexMap != null;
+        }
+
+        private void addMapping(PathMapping mapping) {
+            if(mappingList == null)
+                mappingList = new ArrayList<>();
+            mappingList.add(mapping);
+        }
+
+        private int countMappings() {
+            return mappingCount > 0 ? mappingCount : countSubtree();
+        }
+
+        private int countSubtree() {
+            int count = mappingList != null ? mappingList.size() : 0;
+            if(fields != null)
+                for(PathNode child : fields.values())
+                    count += child.countSubtree();
+            if(indexMap != null)
+                for(PathNode child : indexMap.values())
+                    count += child.countSubtree();
+            return count;
+        }
+
+        /**
+         * Compiles the subtree into its immutable lookup structure.
+         */
+        private void compile() {
+            if(mappingList != null){
+                mappings = mappingList.toArray(new PathMapping[0]);
+                // A value read once is shared by all the mappings of the same path
+                if(mappings.length > 1 && Arrays.stream(mappings).map(m -> m.type).distinct().count() > 1)
+                    throw new IllegalArgumentException("Mappings of the same JSON path must have the same type");
+            }
+            if(fields != null)
+                fields.values().forEach(PathNode::compile);
+            if(indexMap != null){
+                int max = indexMap.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+                indexes = new PathNode[max + 1];
+                indexMap.forEach((i, child) -> {
+                    child.compile();
+                    indexes[i] = child;
+                });
+            }
+            mappingCount = countSubtree();
+        }
+    }
+
+    /**
+     * Mapping of a JSON value to a property or an event.
+     */
+    private static class PathMapping {
+
+        /** The property or event key. */
+        private final String key;
+
+        /** Flag indicating whether the key contains topic variable placeholders. */
+        private final boolean templatedKey;
+
+        /** The target type of the value. */
+        private final Class<?> type;
+
+        /** Flag indicating whether the value is the body of an event instead of a property value. */
+        private final boolean event;
+
+        private PathMapping(String key, Class<?> type, boolean event) {
+            if(key == null || key.isEmpty())
+                throw new IllegalArgumentException("Property or event key cannot be empty or null");
+            if(type != String.class && type != Integer.class && type != Long.class && type != Double.class
+                    && type != Float.class && type != Boolean.class && type != JsonElement.class)
+                throw new IllegalArgumentException(String.format("Unsupported JSON path target type %s", type));
+            this.key = key;
+            this.templatedKey = key.indexOf('{') >= 0;
+            this.type = type;
+            this.event = event;
+        }
+
+        /**
+         * Reads the current value of the reader converting it to the target type.
+         *
+         * @param reader The JSON reader positioned on the value.
+         * @return The converted value, or null if the JSON value is null.
+         * @throws IOException If the value cannot be read.
+         */
+        private Object read(JsonReader reader) throws IOException {
+            if(reader.peek() == JsonToken.NULL){
+                reader.nextNull();
+                return null;
+            }
+            if(type == String.class)
+                return reader.nextString();
+            if(type == Double.class)
+                return reader.nextDouble();
+            if(type == Integer.class)
+                return reader.nextInt();
+            if(type == Long.class)
+                return reader.nextLong();
+            if(type == Float.class)
+                return (float) reader.nextDouble();
+            if(type == Boolean.class)
+                return reader.nextBoolean();
+            return JsonParser.parseReader(reader);
+        }
+
+        /**
+         * Emits the property or event produced from the value.
+         *
+         * @param value   The converted value.
+         * @param message The incoming message.
+         * @param emitter The emitter receiving the produced events.
+         * @throws EventBusException If the event cannot be created.
+         */
+        private void emit(Object value, MqttIncomingMessage message, WldtEventEmitter emitter) throws EventBusException {
+            String resolvedKey = templatedKey ? message.resolveTopicVariables(key) : key;
+            if(event)
+                emitter.emit(new PhysicalAssetEventWldtEvent<>(resolvedKey, value));
+            else
+                emitter.emit(new PhysicalAssetPropertyWldtEvent<>(resolvedKey, value));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package it.wldt.adapter.mqtt.physical.topic.incoming;
+
+import it.wldt.exception.EventBusException;
+
+/**
+ * Represents a function that accepts a message published on topic, with its raw payload and topic metadata,
+ * and pushes the resulting WldtEvents into an emitter.
+ *
+ * Compared to {@link MqttSubscribeFunction} the payload is not converted into a String and no list is allocated
+ * to collect the produced events.
+ */
+@FunctionalInterface
+public interface MqttBinarySubscribeFunction {
+
+    /**
+     * Applies the function to an incoming MQTT message.
+     *
+     * @param message The incoming MQTT message.
+     * @param emitter The emitter receiving the produced WldtEvents.
+     * @throws EventBusException If a WldtEvent cannot be created.
+     */
+    void apply(MqttIncomingMessage message, WldtEventEmitter emitter) throws EventBusException;
+}
@@ -0,0 +1,202 @@
+package it.wldt.adapter.mqtt.physical.topic.incoming;
+
+import it.wldt.adapter.mqtt.physical.topic.TopicTemplate;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Represents a message received on an MQTT topic, exposing the raw payload together with the related topic metadata.
+ * The payload is not copied: the byte array returned by {@link #getPayload()} is the one received by the MQTT client
+ * and must not be modified.
+ */
+public class MqttIncomingMessage {
+
+    /** The topic on which the message has been received. */
+    private final String topic;
+
+    /** The received MQTT message, lazily created when built from a decoded payload. */
+    private MqttMessage message;
+
+    /** The payload decoded as a String, null until decoded. */
+    private String payloadString;
+
+    /** The charset used to decode the payload as a String. */
+    private final Charset charset;
+
+    /** The template of the subscribed topic, used to extract the topic variables. */
+    private final TopicTemplate topicTemplate;
+
+    /** The topic variables, lazily extracted from the received topic. */
+    private Map<String, String> topicVariables;
+
+    /**
+     * Constructs an MqttIncomingMessage.
+     *
+     * @param topic   The topic on which the message has been received.
+     * @param message The received MQTT message.
+     * @param charset The charset used to decode the payload as a String.
+     */
+    public MqttIncomingMessage(String topic, MqttMessage message, Charset charset) {
+        this(topic, message, charset, null);
+    }
+
+    /**
+     * Constructs an MqttIncomingMessage received on a templated topic.
+     *
+     * @param topic         The topic on which the message has been received.
+     * @param message       The received MQTT message.
+     * @param charset       The charset used to decode the payload as a String.
+     * @param topicTemplate The template of the subscribed topic.
+     */
+    public MqttIncomingMessage(String topic, MqttMessage message, Charset charset, TopicTemplate topicTemplate) {
+        this.topic = topic;
+        this.message = message;
+        this.charset = charset;
+        this.topicTemplate = topicTemplate;
+    }
+
+    /**
+     * Constructs an MqttIncomingMessage from an already decoded payload, encoded only if the raw payload is requested.
+     *
+     * @param topic         The topic on which the message has been received.
+     * @param payload       The decoded message payload.
+     * @param charset       The charset of the payload.
+     * @param topicTemplate The template of the subscribed topic.
+     */
+    MqttIncomingMessage(String topic, String payload, Charset charset, TopicTemplate topicTemplate) {
+        this(topic, (MqttMessage) null, charset, topicTemplate);
+        this.payloadString = payload;
+    }
+
+    /**
+     * Gets the topic on which the message has been received.
+     *
+     * @return The received topic.
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Gets the values of the variables of the subscribed topic template extracted from the received topic,
+     * e.g. {@code deviceId} for the template {@code plant/{line}/{deviceId}/temperature}.
+     *
+     * @return The map of variable names and values, empty if the topic has no variables.
+     */
+    public Map<String, String> getTopicVariables() {
+        if(topicVariables == null){
+            Map<String, String> values = (topicTemplate == null || !topicTemplate.hasVariables()) ? null : topicTemplate.extractVariables(topic);
+            topicVariables = values == null ? Collections.emptyMap() : Collections.unmodifiableMap(values);
+        }
+        return topicVariables;
+    }
+
+    /**
+     * Gets the value of a variable of the subscribed topic template extracted from the received topic.
+     *
+     * @param name The name of the variable.
+     * @return The value of the variable, or null if not defined.
+     */
+    public String getTopicVariable(String name) {
+        return getTopicVariables().get(name);
+    }
+
+    /**
+     * Replaces each {@code {name}} placeholder of the given pattern with the value of the related topic variable.
+     *
+     * @param pattern The pattern, e.g. a property key such as {@code {deviceId}.temperature}.
+     * @return The resolved string.
+     */
+    public String resolveTopicVariables(String pattern) {
+        return TopicTemplate.resolve(pattern, getTopicVariables());
+    }
+
+    /**
+     * Gets the raw payload of the message, without copying it.
+     *
+     * @return The message payload.
+     */
+    public byte[] getPayload() {
+        return getMqttMessage().getPayload();
+    }
+
+    /**
+     * Gets a read-only ByteBuffer view of the payload of the message.
+     *
+     * @return The message payload as a ByteBuffer.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return ByteBuffer.wrap(getMqttMessage().getPayload()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the length in bytes of the payload of the message.
+     *
+     * @return The payload length.
+     */
+    public int getPayloadLength() {
+        return getMqttMessage().getPayload().length;
+    }
+
+    /**
+     * Decodes the payload of the message as a String using the charset of the related topic.
+     *
+     * @return The message payload as a String.
+     */
+    public String getPayloadAsString() {
+        if(payloadString == null)
+            payloadString = new String(getMqttMessage().getPayload(), charset);
+        return payloadString;
+    }
+
+    /**
+     * Gets the charset used to decode the payload as a String.
+     *
+     * @return The charset.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the Quality of Service (QoS) level of the message.
+     *
+     * @return The QoS level.
+     */
+    public int getQos() {
+        return getMqttMessage().getQos();
+    }
+
+    /**
+     * Checks whether the message has been retained by the broker.
+     *
+     * @return true if the message is retained, false otherwise.
+     */
+    public boolean isRetained() {
+        return getMqttMessage().isRetained();
+    }
+
+    /**
+     * Checks whether the message might be a duplicate of one already received.
+     *
+     * @return true if the message might be a duplicate, false otherwise.
+     */
+    public boolean isDuplicate() {
+        return getMqttMessage().isDuplicate();
+    }
+
+    /**
+     * Gets the underlying MQTT message.
+     *
+     * @return The MQTT message.
+     */
+    public MqttMessage getMqttMessage() {
+        if(message == null)
+            message = new MqttMessage(payloadString.getBytes(charset));
+        return message;
+    }
+}
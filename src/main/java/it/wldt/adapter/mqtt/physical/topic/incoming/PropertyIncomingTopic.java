@@ -1,9 +1,7 @@
 package it.wldt.adapter.mqtt.physical.topic.incoming;
 
 import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
-import it.wldt.exception.EventBusException;
 
-import java.util.Collections;
 import java.util.function.Function;
 
 /**
@@ -21,17 +19,25 @@ public class PropertyIncomingTopic<T> extends DigitalTwinIncomingTopic {
      * and a function to convert the MQTT message payload into the property value.
      *
      * @param topic              The MQTT topic associated with incoming property updates.
-     * @param propertyKey       The key of the property.
+     * @param propertyKey       The key of the property, optionally with {@code {name}} topic variable placeholders.
      * @param propertyValueProducer  A function to convert the MQTT message payload into the property value.
      */
     public PropertyIncomingTopic(String topic, String propertyKey, Function<String, T> propertyValueProducer) {
-        super(topic, topicMsgPayload -> {
-            try {
-                return Collections.singletonList(new PhysicalAssetPropertyWldtEvent<>(propertyKey, propertyValueProducer.apply(topicMsgPayload)));
-            } catch (EventBusException e) {
-                e.printStackTrace();
-            }
-            return null;
-        });
+        super(topic, propertyFunction(propertyKey, propertyValueProducer));
+    }
+
+    /**
+     * Creates the binary subscribe function of the topic. When the key contains {@code {name}} placeholders
+     * they are resolved with the variables of the received topic.
+     *
+     * @param propertyKey The key of the property, optionally with topic variable placeholders.
+     * @param propertyValueProducer A function to convert the MQTT message payload into the property value.
+     * @param <T> The type of the property value.
+     * @return The binary subscribe function.
+     */
+    private static <T> MqttBinarySubscribeFunction propertyFunction(String propertyKey, Function<String, T> propertyValueProducer) {
+        if(propertyKey == null || propertyKey.indexOf('{') < 0)
+            return (message, emitter) -> emitter.emit(new PhysicalAssetPropertyWldtEvent<>(propertyKey, propertyValueProducer.apply(message.getPayloadAsString())));
+        return (message, emitter) -> emitter.emit(new PhysicalAssetPropertyWldtEvent<>(message.resolveTopicVariables(propertyKey), propertyValueProducer.apply(message.getPayloadAsString())));
     }
 }
@@ -0,0 +1,18 @@
+package it.wldt.adapter.mqtt.physical.topic.incoming;
+
+import it.wldt.core.event.WldtEvent;
+
+/**
+ * Represents the sink into which a {@link MqttBinarySubscribeFunction} pushes the WldtEvents produced
+ * from an incoming MQTT message.
+ */
+@FunctionalInterface
+public interface WldtEventEmitter {
+
+    /**
+     * Emits a WldtEvent produced from an incoming MQTT message.
+     *
+     * @param event The WldtEvent to emit.
+     */
+    void emit(WldtEvent<?> event);
+}
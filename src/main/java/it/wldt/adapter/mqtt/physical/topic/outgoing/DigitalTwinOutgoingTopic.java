@@ -4,11 +4,22 @@ import it.wldt.adapter.mqtt.physical.topic.MqttQosLevel;
 import it.wldt.adapter.mqtt.physical.topic.MqttTopic;
 import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Represents an MQTT topic for outgoing messages in the context of a Digital Twin.
  * This class extends MqttTopic and provides functionality for handling outgoing messages
  * with a specific publish function.
  *
+ * The topic can be defined either with a String based {@link MqttPublishFunction}, whose result is encoded with the
+ * charset of the topic, or with a byte oriented {@link MqttBinaryPublishFunction}, writing the payload into a
+ * {@link MqttPayloadBuffer} reused by each publishing thread. Binary topics are created through
+ * {@link #binary(String, MqttBinaryPublishFunction)} or by the subclasses, so that the public constructors taking
+ * a {@link MqttPublishFunction} stay unambiguous.
+ *
  * @author Marco Picone, Ph.D. - picone.m@gmail.com, Marta Spadoni University of Bologna
  */
 public class DigitalTwinOutgoingTopic extends MqttTopic {
@@ -18,6 +29,26 @@ public class DigitalTwinOutgoingTopic extends MqttTopic {
      */
     private final MqttPublishFunction publishFunction;
 
+    /**
+     * The function used for writing the payload of the published messages, null for String based topics
+     */
+    private final MqttBinaryPublishFunction binaryPublishFunction;
+
+    /** Payload buffers reused across the publications of each thread. */
+    private static final ThreadLocal<MqttPayloadBuffer> PAYLOAD_BUFFERS = ThreadLocal.withInitial(MqttPayloadBuffer::new);
+
+    /** Capacity above which a payload buffer is discarded after use, so that an occasional large payload is not retained. */
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 64 * 1024;
+
+    /** The charset used to encode the String payloads. Default is UTF-8. */
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /**
+     * The lifetime in seconds of the published messages, after which the broker discards them if not yet delivered.
+     * 0 means no expiry. Supported only by MQTT 5 connections.
+     */
+    private long messageExpiryInterval = 0;
+
     /**
      * Constructs a DigitalTwinOutgoingTopic with the specified MQTT topic and a publish function.
      *
@@ -27,6 +58,7 @@ public class DigitalTwinOutgoingTopic extends MqttTopic {
     public DigitalTwinOutgoingTopic(String topic, MqttPublishFunction publishFunction) {
         super(topic);
         this.publishFunction = publishFunction;
+        this.binaryPublishFunction = null;
     }
 
     /**
@@ -40,6 +72,55 @@ public class DigitalTwinOutgoingTopic extends MqttTopic {
     public DigitalTwinOutgoingTopic(String topic, MqttQosLevel mqttQosLevel, boolean isRetained, MqttPublishFunction publishFunction) {
         super(topic, mqttQosLevel, isRetained);
         this.publishFunction = publishFunction;
+        this.binaryPublishFunction = null;
+    }
+
+    /**
+     * Constructs a DigitalTwinOutgoingTopic with the specified MQTT topic and a binary publish function.
+     *
+     * @param topic                 The MQTT topic associated with outgoing messages.
+     * @param binaryPublishFunction The function writing the MQTT message payload for the outgoing event.
+     */
+    protected DigitalTwinOutgoingTopic(String topic, MqttBinaryPublishFunction binaryPublishFunction) {
+        this(topic, MqttQosLevel.MQTT_QOS_0, false, binaryPublishFunction);
+    }
+
+    /**
+     * Constructs a DigitalTwinOutgoingTopic with the specified MQTT topic and a binary publish function.
+     *
+     * @param topic                 The MQTT topic associated with outgoing messages.
+     * @param mqttQosLevel          The Quality of Service (QoS) level associated with the topic.
+     * @param isRetained            The retained flag.
+     * @param binaryPublishFunction The function writing the MQTT message payload for the outgoing event.
+     */
+    protected DigitalTwinOutgoingTopic(String topic, MqttQosLevel mqttQosLevel, boolean isRetained, MqttBinaryPublishFunction binaryPublishFunction) {
+        super(topic, mqttQosLevel, isRetained);
+        this.binaryPublishFunction = binaryPublishFunction;
+        this.publishFunction = binaryPublishFunction == null ? null : actionWldtEvent -> new String(encodePayload(actionWldtEvent), this.charset);
+    }
+
+    /**
+     * Creates a DigitalTwinOutgoingTopic with the specified MQTT topic and a binary publish function.
+     *
+     * @param topic                 The MQTT topic associated with outgoing messages.
+     * @param binaryPublishFunction The function writing the MQTT message payload for the outgoing event.
+     * @return The DigitalTwinOutgoingTopic.
+     */
+    public static DigitalTwinOutgoingTopic binary(String topic, MqttBinaryPublishFunction binaryPublishFunction) {
+        return new DigitalTwinOutgoingTopic(topic, binaryPublishFunction);
+    }
+
+    /**
+     * Creates a DigitalTwinOutgoingTopic with the specified MQTT topic and a binary publish function.
+     *
+     * @param topic                 The MQTT topic associated with outgoing messages.
+     * @param mqttQosLevel          The Quality of Service (QoS) level associated with the topic.
+     * @param isRetained            The retained flag.
+     * @param binaryPublishFunction The function writing the MQTT message payload for the outgoing event.
+     * @return The DigitalTwinOutgoingTopic.
+     */
+    public static DigitalTwinOutgoingTopic binary(String topic, MqttQosLevel mqttQosLevel, boolean isRetained, MqttBinaryPublishFunction binaryPublishFunction) {
+        return new DigitalTwinOutgoingTopic(topic, mqttQosLevel, isRetained, binaryPublishFunction);
     }
 
     /**
@@ -53,6 +134,59 @@ public class DigitalTwinOutgoingTopic extends MqttTopic {
         return this.publishFunction.apply(actionWldtEvent);
     }
 
+    /**
+     * Gets the MQTT topic on which the message generated for the provided PhysicalAssetActionWldtEvent is published.
+     *
+     * @param actionWldtEvent The event containing the action payload.
+     * @return The topic name, by default the topic of this DigitalTwinOutgoingTopic.
+     */
+    public String resolveTopic(PhysicalAssetActionWldtEvent<?> actionWldtEvent){
+        return getTopic();
+    }
+
+    /**
+     * Generates the MQTT message payload for the provided PhysicalAssetActionWldtEvent: binary publish functions write
+     * into the payload buffer of the calling thread, String results are encoded with the charset of the topic.
+     *
+     * @param actionWldtEvent The event containing the action payload.
+     * @return The MQTT message payload, owned by the caller.
+     * @throws UncheckedIOException If the binary publish function fails to write the payload.
+     */
+    public byte[] encodePayload(PhysicalAssetActionWldtEvent<?> actionWldtEvent){
+        if(binaryPublishFunction == null)
+            return applyPublishFunction(actionWldtEvent).getBytes(this.charset);
+        MqttPayloadBuffer buffer = PAYLOAD_BUFFERS.get();
+        buffer.reset();
+        try {
+            binaryPublishFunction.apply(actionWldtEvent, buffer);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if(buffer.capacity() > MAX_RETAINED_BUFFER_CAPACITY)
+                PAYLOAD_BUFFERS.remove();
+        }
+    }
+
+    /**
+     * Gets the lifetime in seconds of the published messages.
+     *
+     * @return The message expiry interval, 0 if messages do not expire.
+     */
+    public long getMessageExpiryInterval() {
+        return messageExpiryInterval;
+    }
+
+    /**
+     * Sets the lifetime in seconds of the published messages, after which the broker discards them if not yet delivered,
+     * so that stale actions are not executed by the physical asset. Supported only by MQTT 5 connections.
+     *
+     * @param messageExpiryInterval The message expiry interval, 0 for no expiry.
+     */
+    public void setMessageExpiryInterval(long messageExpiryInterval) {
+        this.messageExpiryInterval = messageExpiryInterval;
+    }
+
     /**
      * Gets the publish function associated with this DigitalTwinOutgoingTopic.
      *
@@ -61,5 +195,32 @@ public class DigitalTwinOutgoingTopic extends MqttTopic {
     public MqttPublishFunction getPublishFunction() {
         return publishFunction;
     }
+
+    /**
+     * Gets the binary publish function associated with this DigitalTwinOutgoingTopic.
+     *
+     * @return The binary publish function, null for String based topics.
+     */
+    public MqttBinaryPublishFunction getBinaryPublishFunction() {
+        return binaryPublishFunction;
+    }
+
+    /**
+     * Gets the charset used to encode the String payloads.
+     *
+     * @return The payload charset.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset used to encode the String payloads.
+     *
+     * @param charset The payload charset.
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
 }
 
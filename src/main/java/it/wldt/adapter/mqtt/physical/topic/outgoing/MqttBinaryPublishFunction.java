@@ -0,0 +1,25 @@
+package it.wldt.adapter.mqtt.physical.topic.outgoing;
+
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+
+import java.io.IOException;
+
+/**
+ * Represents a function writing the payload of the MQTT message published for an action directly into a byte sink.
+ *
+ * Compared to {@link MqttPublishFunction} no intermediate String is created and the payload can be any binary
+ * protocol understood by the physical asset. The buffer is reused across publications, so the function must not
+ * retain it after returning.
+ */
+@FunctionalInterface
+public interface MqttBinaryPublishFunction {
+
+    /**
+     * Applies the function to an outgoing action.
+     *
+     * @param actionWldtEvent The event containing the action payload.
+     * @param buffer          The empty buffer receiving the MQTT message payload.
+     * @throws IOException If the payload cannot be written.
+     */
+    void apply(PhysicalAssetActionWldtEvent<?> actionWldtEvent, MqttPayloadBuffer buffer) throws IOException;
+}
@@ -0,0 +1,128 @@
+package it.wldt.adapter.mqtt.physical.topic.outgoing;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Growable byte sink into which a {@link MqttBinaryPublishFunction} writes the payload of an outgoing message.
+ *
+ * Buffers are reused across publications by the same thread, so writing a payload does not allocate once the buffer
+ * has grown to the usual payload size. Being an OutputStream, the buffer can be wrapped by any stream based encoder.
+ * Not thread safe.
+ */
+public class MqttPayloadBuffer extends OutputStream {
+
+    /** The initial capacity of the buffer. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** The written bytes. */
+    private byte[] bytes;
+
+    /** The number of written bytes. */
+    private int size = 0;
+
+    /**
+     * Constructs an empty MqttPayloadBuffer.
+     */
+    public MqttPayloadBuffer() {
+        this.bytes = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param b The byte to write, as the low-order 8 bits of the int.
+     */
+    @Override
+    public void write(int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    /**
+     * Writes a portion of an array of bytes.
+     *
+     * @param source The source array.
+     * @param offset The offset of the first byte to write.
+     * @param length The number of bytes to write.
+     */
+    @Override
+    public void write(byte[] source, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > source.length)
+            throw new IndexOutOfBoundsException();
+        ensureCapacity(size + length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes the remaining bytes of a ByteBuffer, advancing its position.
+     *
+     * @param source The source buffer.
+     */
+    public void write(ByteBuffer source) {
+        int length = source.remaining();
+        ensureCapacity(size + length);
+        source.get(bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a String encoded with the given charset.
+     *
+     * @param value   The String to write.
+     * @param charset The charset used to encode the String.
+     */
+    public void write(String value, Charset charset) {
+        byte[] encoded = value.getBytes(charset);
+        write(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Gets the number of written bytes.
+     *
+     * @return The payload size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the current capacity of the buffer.
+     *
+     * @return The capacity in bytes.
+     */
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /**
+     * Discards the written bytes, keeping the allocated capacity.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Copies the written bytes into a new array sized to the payload.
+     *
+     * @return The payload.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Grows the buffer to hold at least the given number of bytes.
+     *
+     * @param required The required capacity.
+     */
+    private void ensureCapacity(int required) {
+        if(required < 0)
+            throw new OutOfMemoryError("Payload too large");
+        if(required > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+    }
+}
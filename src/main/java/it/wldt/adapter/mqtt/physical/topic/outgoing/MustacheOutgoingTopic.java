@@ -0,0 +1,188 @@
+package it.wldt.adapter.mqtt.physical.topic.outgoing;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheException;
+import com.github.mustachejava.MustacheFactory;
+import it.wldt.adapter.mqtt.physical.topic.MqttQosLevel;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Represents an MQTT topic for outgoing actions whose payload and topic name are rendered from Mustache templates,
+ * such as {@code devices/{{deviceId}}/cmd}, using the action body as context. Map bodies are looked up by key and
+ * other objects through their fields and getters; the action key is available as {@code {{actionKey}}}.
+ *
+ * Templates are compiled once when the configuration is built and rendered into writers reused by each
+ * publishing thread, so a single action can target any number of devices. Values are inserted verbatim,
+ * without HTML escaping.
+ */
+public class MustacheOutgoingTopic extends DigitalTwinOutgoingTopic {
+
+    /** Factory compiling the templates, inserting values without escaping. */
+    private static final MustacheFactory MUSTACHE_FACTORY = new DefaultMustacheFactory() {
+        @Override
+        public void encode(String value, Writer writer) {
+            try {
+                writer.write(value);
+            } catch (IOException e) {
+                throw new MustacheException("Failed to write template value", e);
+            }
+        }
+    };
+
+    /** The key under which the action key is available to the templates. */
+    public static final String ACTION_KEY_VARIABLE = "actionKey";
+
+    /** The template of the message payload. */
+    private final String payloadTemplate;
+
+    /** The compiled template of the topic name, null if the topic is static or the templates are not compiled. */
+    private Mustache topicMustache;
+
+    /** The compiled template of the message payload, null if not compiled. */
+    private Mustache payloadMustache;
+
+    /** Writers reused across the renderings of the topic names of each thread. */
+    private final ThreadLocal<StringWriter> topicWriters = ThreadLocal.withInitial(StringWriter::new);
+
+    /** Writers reused across the renderings of the payloads of each thread. */
+    private final ThreadLocal<StringWriter> payloadWriters = ThreadLocal.withInitial(StringWriter::new);
+
+    /**
+     * Constructs a MustacheOutgoingTopic with the specified topic and payload templates.
+     *
+     * @param topicTemplate   The template of the MQTT topic name.
+     * @param payloadTemplate The template of the MQTT message payload.
+     */
+    public MustacheOutgoingTopic(String topicTemplate, String payloadTemplate) {
+        this(topicTemplate, MqttQosLevel.MQTT_QOS_0, false, payloadTemplate);
+    }
+
+    /**
+     * Constructs a MustacheOutgoingTopic with the specified topic and payload templates.
+     *
+     * @param topicTemplate   The template of the MQTT topic name.
+     * @param mqttQosLevel    The Quality of Service (QoS) level associated with the topic.
+     * @param isRetained      The retained flag.
+     * @param payloadTemplate The template of the MQTT message payload.
+     */
+    public MustacheOutgoingTopic(String topicTemplate, MqttQosLevel mqttQosLevel, boolean isRetained, String payloadTemplate) {
+        super(topicTemplate, mqttQosLevel, isRetained, (MqttPublishFunction) null);
+        this.payloadTemplate = payloadTemplate;
+    }
+
+    /**
+     * Compiles the topic and payload templates. Called once when the configuration is built.
+     *
+     * @throws MustacheException If a template is not valid.
+     */
+    public synchronized void compile() {
+        if(payloadMustache != null)
+            return;
+        if(isTopicTemplated())
+            topicMustache = MUSTACHE_FACTORY.compile(new StringReader(getTopic()), getTopic() + "#topic");
+        payloadMustache = MUSTACHE_FACTORY.compile(new StringReader(payloadTemplate), getTopic() + "#payload");
+    }
+
+    /**
+     * Checks whether the templates have been compiled.
+     *
+     * @return true if compiled, false otherwise.
+     */
+    public boolean isCompiled() {
+        return payloadMustache != null;
+    }
+
+    /**
+     * Checks whether the topic name contains template variables.
+     *
+     * @return true if the topic name is rendered for each action, false if static.
+     */
+    public boolean isTopicTemplated() {
+        return getTopic().contains("{{");
+    }
+
+    /**
+     * Gets the template of the message payload.
+     *
+     * @return The payload template.
+     */
+    public String getPayloadTemplate() {
+        return payloadTemplate;
+    }
+
+    /**
+     * Renders the MQTT message payload from the action body.
+     *
+     * @param actionWldtEvent The event containing the action payload.
+     * @return The rendered payload.
+     * @throws IllegalStateException If the templates have not been compiled.
+     */
+    @Override
+    public String applyPublishFunction(PhysicalAssetActionWldtEvent<?> actionWldtEvent) {
+        return render(payloadMustache, payloadWriters.get(), actionWldtEvent);
+    }
+
+    /**
+     * Gets the publish function rendering the payload template.
+     *
+     * @return The publish function.
+     */
+    @Override
+    public MqttPublishFunction getPublishFunction() {
+        return this::applyPublishFunction;
+    }
+
+    /**
+     * Renders the MQTT topic name from the action body.
+     *
+     * @param actionWldtEvent The event containing the action payload.
+     * @return The rendered topic name.
+     * @throws IllegalStateException If the templates have not been compiled.
+     * @throws IllegalArgumentException If the rendered topic name is empty or contains wildcards.
+     */
+    @Override
+    public String resolveTopic(PhysicalAssetActionWldtEvent<?> actionWldtEvent) {
+        if(topicMustache == null){
+            checkCompiled();
+            return getTopic();
+        }
+        String topic = render(topicMustache, topicWriters.get(), actionWldtEvent);
+        if(topic.isEmpty() || topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0)
+            throw new IllegalArgumentException("Invalid topic rendered for action " + actionWldtEvent.getActionKey() + ": " + topic);
+        return topic;
+    }
+
+    /**
+     * Renders a compiled template into a reused writer.
+     *
+     * @param mustache        The compiled template.
+     * @param writer          The writer of the calling thread.
+     * @param actionWldtEvent The event containing the action payload.
+     * @return The rendered text.
+     */
+    private String render(Mustache mustache, StringWriter writer, PhysicalAssetActionWldtEvent<?> actionWldtEvent) {
+        checkCompiled();
+        Map<String, String> actionScope = Collections.singletonMap(ACTION_KEY_VARIABLE, actionWldtEvent.getActionKey());
+        writer.getBuffer().setLength(0);
+        mustache.execute(writer, new Object[]{actionScope, actionWldtEvent.getBody()});
+        return writer.toString();
+    }
+
+    /**
+     * Checks that the templates have been compiled.
+     *
+     * @throws IllegalStateException If the templates have not been compiled.
+     */
+    private void checkCompiled() {
+        if(payloadMustache == null)
+            throw new IllegalStateException("Templates of outgoing topic " + getTopic() + " are not compiled");
+    }
+}
@@ -0,0 +1,105 @@
+package it.wldt.adapter.mqtt.physical;
+
+import it.wldt.adapter.mqtt.physical.connection.MqttProtocolVersion;
+import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.ingress.IncomingTopicIndex;
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.physical.PhysicalAssetProperty;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class MqttPhysicalAdapterConfigurationBuilderTest {
+
+    private static MqttPhysicalAdapterConfigurationBuilder builder() throws MqttPhysicalAdapterConfigurationException {
+        return MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .addPhysicalAssetPropertyAndTopic("temperature", 0.0, "plant/{deviceId}/temperature", Double::parseDouble);
+    }
+
+    @Test
+    public void incomingTopicsAreSubscribedAsSharedSubscriptions() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration configuration = builder().setSharedSubscriptionGroup("twins").build();
+        DigitalTwinIncomingTopic topic = configuration.getIncomingTopics().get(0);
+
+        assertTrue(configuration.isSharedSubscriptionEnabled());
+        assertEquals("$share/twins/plant/+/temperature", configuration.getSubscriptionFilter(topic));
+
+        // Messages delivered through the shared subscription carry the original topic
+        IncomingTopicIndex index = new IncomingTopicIndex(configuration.getIncomingTopics());
+        assertEquals(1, index.match("plant/dev-1/temperature").size());
+    }
+
+    @Test
+    public void incomingTopicsAreNotSharedByDefault() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration configuration = builder().build();
+
+        assertFalse(configuration.isSharedSubscriptionEnabled());
+        assertEquals("plant/+/temperature", configuration.getSubscriptionFilter(configuration.getIncomingTopics().get(0)));
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void invalidSharedGroupsAreRejected() throws MqttPhysicalAdapterConfigurationException {
+        builder().setSharedSubscriptionGroup("plant/twins");
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void incomingTopicsWithoutFunctionAreRejected() throws MqttPhysicalAdapterConfigurationException {
+        // The String function constructor stays unambiguous for callers outside the topic package
+        builder().addIncomingTopic(new DigitalTwinIncomingTopic("sensor/state", null),
+                Collections.singletonList(new PhysicalAssetProperty<>("state", "")), Collections.emptyList());
+    }
+
+    @Test
+    public void defaultClientIdsAreDistinct() throws MqttPhysicalAdapterConfigurationException {
+        assertNotEquals(builder().build().getClientId(), builder().build().getClientId());
+    }
+
+    @Test
+    public void connectionsUseDerivedClientIds() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration single = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883, "client")
+                .addPhysicalAssetPropertyAndTopic("temperature", 0.0, "sensor/temperature", Double::parseDouble)
+                .build();
+        MqttPhysicalAdapterConfiguration sharded = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883, "client")
+                .addPhysicalAssetPropertyAndTopic("temperature", 0.0, "sensor/temperature", Double::parseDouble)
+                .setConnectionCount(2)
+                .build();
+
+        assertEquals("client", single.getConnectionClientId(0));
+        assertEquals("client-0", sharded.getConnectionClientId(0));
+        assertEquals("client-1", sharded.getConnectionClientId(1));
+    }
+
+    @Test
+    public void incomingTopicsCanBeAssignedToAConnection() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration configuration = builder()
+                .setConnectionCount(4)
+                .assignIncomingTopicToConnection("plant/{deviceId}/temperature", 3)
+                .build();
+
+        assertEquals(3, configuration.getConnectionIndex(configuration.getIncomingTopics().get(0)));
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void assignmentsBeyondTheConnectionCountAreRejected() throws MqttPhysicalAdapterConfigurationException {
+        builder().setConnectionCount(2).assignIncomingTopicToConnection("plant/{deviceId}/temperature", 2).build();
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void mqtt5OptionsRequireMqtt5() throws MqttPhysicalAdapterConfigurationException {
+        builder().setTopicAliasMaximum(10).build();
+    }
+
+    @Test
+    public void receiveMaximumFollowsTheInFlightLimit() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration configuration = builder()
+                .setProtocolVersion(MqttProtocolVersion.MQTT_5)
+                .setManualAcks(64)
+                .setTopicAliasMaximum(16)
+                .build();
+
+        assertEquals(64, (int) configuration.getConnectionOptions().getReceiveMaximum());
+        assertEquals(16, (int) configuration.getConnectionOptions().getTopicAliasMaximum());
+    }
+}
@@ -0,0 +1,90 @@
+package it.wldt.adapter.mqtt.physical;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.FluentConfig;
+import it.wldt.adapter.mqtt.physical.egress.ActionPublishListener;
+import it.wldt.adapter.mqtt.physical.topic.MqttQosLevel;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MqttPhysicalAdapterPublishTest {
+
+    private Server broker;
+
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)){
+            port = socket.getLocalPort();
+        }
+        broker = new Server();
+        broker.startServer(new FluentConfig()
+                .host("127.0.0.1")
+                .port(port)
+                .allowAnonymous()
+                .disablePersistence()
+                .disableTelemetry()
+                .dataPath(Files.createTempDirectory("moquette"))
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        broker.stopServer();
+    }
+
+    @Test
+    public void nonBlockingBurstOfActionsIsPublishedWithoutExceedingTheClientInFlightLimit() throws Exception {
+        int actions = 100;
+        CountDownLatch completed = new CountDownLatch(actions);
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", port, "burst-client")
+                .setNonBlockingFlag(true)
+                .<String>addPhysicalAssetActionAndTopic("switch", "switch.action", "text/plain", "actuator/switch",
+                        MqttQosLevel.MQTT_QOS_1, false, body -> body)
+                .setActionPublishListener(new ActionPublishListener() {
+                    @Override
+                    public void onActionPublished(PhysicalAssetActionWldtEvent<?> action, String topic) {
+                        completed.countDown();
+                    }
+
+                    @Override
+                    public void onActionFailed(PhysicalAssetActionWldtEvent<?> action, String topic, Throwable cause) {
+                        failures.add(cause);
+                        completed.countDown();
+                    }
+                })
+                .build();
+        MqttPhysicalAdapter adapter = new MqttPhysicalAdapter("adapter", configuration);
+        MqttConnectionShard connection = adapter.getConnections().get(0);
+        adapter.onAdapterStart();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(!connection.isConnected() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertTrue(connection.isConnected());
+
+            for(int i = 0; i < actions; i++)
+                adapter.onIncomingPhysicalAction(new PhysicalAssetActionWldtEvent<>("switch", "on-" + i));
+
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            assertEquals(Collections.emptyList(), failures);
+        } finally {
+            adapter.onAdapterStop();
+        }
+    }
+}
@@ -1,7 +1,69 @@
 package it.wldt.adapter.mqtt.physical;
 
+import it.wldt.adapter.mqtt.physical.connection.MqttProtocolVersion;
+import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class MqttPhysicalAdapterTest {
 
-}
\ No newline at end of file
+    @Test
+    public void incomingTopicsArePartitionedAmongConnections() throws MqttPhysicalAdapterConfigurationException, MqttException {
+        MqttPhysicalAdapterConfigurationBuilder builder = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883, "client")
+                .setConnectionCount(3);
+        for(int i = 0; i < 12; i++)
+            builder.addPhysicalAssetPropertyAndTopic("p" + i, 0, "sensor/" + i, Integer::parseInt);
+        MqttPhysicalAdapter adapter = new MqttPhysicalAdapter("adapter", builder.build());
+
+        assertEquals(3, adapter.getConnections().size());
+        int topics = 0;
+        for(MqttConnectionShard connection : adapter.getConnections()){
+            assertEquals("client-" + connection.getIndex(), connection.getClientId());
+            assertFalse(connection.isConnected());
+            topics += connection.getIncomingTopics().size();
+        }
+        assertEquals(12, topics);
+    }
+
+    @Test
+    public void subscriptionIdentifiersSelectTheIncomingTopics() throws MqttPhysicalAdapterConfigurationException, MqttException {
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883, "client")
+                .setProtocolVersion(MqttProtocolVersion.MQTT_5)
+                .addPhysicalAssetPropertyAndTopic("all", 0, "sensor/+", Integer::parseInt)
+                .addPhysicalAssetPropertyAndTopic("one", 0, "sensor/1", Integer::parseInt)
+                .build();
+        MqttConnectionShard connection = new MqttPhysicalAdapter("adapter", configuration).getConnections().get(0);
+
+        assertEquals(Collections.singletonList(configuration.getIncomingTopics().get(1)),
+                connection.matchIncomingTopics("sensor/1", Collections.singletonList(2)));
+        assertEquals(configuration.getIncomingTopics(),
+                connection.matchIncomingTopics("sensor/1", Arrays.asList(1, 2)));
+        // Without identifiers the topic index is used
+        assertEquals(2, connection.matchIncomingTopics("sensor/1", Collections.emptyList()).size());
+    }
+
+    @Test
+    public void batchedSubscriptionsAreMatchedThroughTheTopicIndex() throws MqttPhysicalAdapterConfigurationException, MqttException {
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883, "client")
+                .setProtocolVersion(MqttProtocolVersion.MQTT_5)
+                .setSubscribeBatching(2, 1)
+                .addPhysicalAssetPropertyAndTopic("all", 0, "sensor/+", Integer::parseInt)
+                .addPhysicalAssetPropertyAndTopic("other", 0, "other/1", Integer::parseInt)
+                .addPhysicalAssetPropertyAndTopic("one", 0, "sensor/1", Integer::parseInt)
+                .build();
+        MqttConnectionShard connection = new MqttPhysicalAdapter("adapter", configuration).getConnections().get(0);
+
+        // An identifier reported by the broker does not cover the matching subscriptions sent without one
+        List<DigitalTwinIncomingTopic> matching = connection.matchIncomingTopics("sensor/1", Collections.singletonList(3));
+        assertEquals(2, matching.size());
+        assertTrue(matching.contains(configuration.getIncomingTopics().get(0)));
+        assertTrue(matching.contains(configuration.getIncomingTopics().get(2)));
+    }
+}
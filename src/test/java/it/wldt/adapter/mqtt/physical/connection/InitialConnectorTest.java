@@ -0,0 +1,198 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InitialConnectorTest {
+
+    private static class FailingTransport implements MqttTransport {
+
+        private final int failures;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private final List<Boolean> blockingAttempts = Collections.synchronizedList(new ArrayList<>());
+
+        private FailingTransport(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public String getClientId() {
+            return "client";
+        }
+
+        @Override
+        public boolean isConnected() {
+            return attempts.get() > failures;
+        }
+
+        @Override
+        public void setListener(MqttTransportListener listener) {
+        }
+
+        @Override
+        public void setManualAcks(boolean manualAcks) {
+        }
+
+        @Override
+        public void connect(MqttOperationCallback callback) throws MqttException {
+            blockingAttempts.add(callback == null);
+            boolean failed = attempts.incrementAndGet() <= failures;
+            if(callback == null){
+                if(failed)
+                    throw new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR);
+                return;
+            }
+            if(failed)
+                callback.onFailure(new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR));
+            else
+                callback.onSuccess();
+        }
+
+        @Override
+        public void subscribe(String[] filters, int[] qos, int subscriptionId, MqttSubscribeCallback callback) {
+        }
+
+        @Override
+        public void publish(String topic, MqttMessage message, long messageExpiryInterval, MqttOperationCallback callback) {
+        }
+
+        @Override
+        public void messageArrivedComplete(int messageId, int qos) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+
+    private static class RecordingListener implements InitialConnector.Listener {
+
+        private final CountDownLatch connected = new CountDownLatch(1);
+
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private final List<Long> retryDelays = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onConnected() {
+            connections.incrementAndGet();
+            connected.countDown();
+        }
+
+        @Override
+        public void onAttemptFailed(int attempt, Throwable cause, long retryDelayMs) {
+            assertEquals(retryDelays.size() + 1, attempt);
+            assertTrue(cause instanceof MqttException);
+            retryDelays.add(retryDelayMs);
+        }
+    }
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void successfulConnectionNotifiesTheListenerOnce() throws InterruptedException {
+        FailingTransport transport = new FailingTransport(0);
+        RecordingListener listener = new RecordingListener();
+        InitialConnector connector = new InitialConnector(transport, false, scheduler, 10, 100, listener);
+
+        connector.start();
+
+        assertTrue(listener.connected.await(1, TimeUnit.SECONDS));
+        assertEquals(1, listener.connections.get());
+        assertEquals(1, connector.getAttempts());
+        assertTrue(listener.retryDelays.isEmpty());
+    }
+
+    @Test
+    public void failedAttemptsAreRetriedWithBackoffUntilConnected() throws InterruptedException {
+        FailingTransport transport = new FailingTransport(4);
+        RecordingListener listener = new RecordingListener();
+        InitialConnector connector = new InitialConnector(transport, false, scheduler, 10, 40, listener);
+
+        connector.start();
+
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.connections.get());
+        assertEquals(5, connector.getAttempts());
+        assertEquals(Arrays.asList(10L, 20L, 40L, 40L), listener.retryDelays);
+    }
+
+    @Test
+    public void blockingModeBlocksOnlyTheFirstAttempt() throws InterruptedException {
+        FailingTransport transport = new FailingTransport(2);
+        RecordingListener listener = new RecordingListener();
+        InitialConnector connector = new InitialConnector(transport, true, scheduler, 10, 100, listener);
+
+        connector.start();
+
+        assertEquals(1, listener.connected.getCount());
+        assertTrue(listener.connected.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(true, false, false), transport.blockingAttempts);
+    }
+
+    @Test
+    public void blockingModeNotifiesASuccessfulFirstAttemptOnTheCallingThread() {
+        FailingTransport transport = new FailingTransport(0);
+        RecordingListener listener = new RecordingListener();
+        InitialConnector connector = new InitialConnector(transport, true, scheduler, 10, 100, listener);
+
+        connector.start();
+
+        assertEquals(1, listener.connections.get());
+    }
+
+    @Test
+    public void failedAttemptIsNotRetriedWhenRetriesAreDisabled() throws InterruptedException {
+        FailingTransport transport = new FailingTransport(1);
+        RecordingListener listener = new RecordingListener();
+        InitialConnector connector = new InitialConnector(transport, false, scheduler, 0, 100, listener);
+
+        connector.start();
+        Thread.sleep(100);
+
+        assertEquals(1, connector.getAttempts());
+        assertEquals(0, listener.connections.get());
+        assertEquals(Collections.singletonList(-1L), listener.retryDelays);
+    }
+
+    @Test
+    public void cancelStopsTheRetries() throws InterruptedException {
+        FailingTransport transport = new FailingTransport(1);
+        RecordingListener listener = new RecordingListener();
+        InitialConnector connector = new InitialConnector(transport, false, scheduler, 100, 100, listener);
+
+        connector.start();
+        connector.cancel();
+        Thread.sleep(300);
+
+        assertEquals(1, connector.getAttempts());
+        assertEquals(0, listener.connections.get());
+    }
+}
@@ -0,0 +1,138 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MappedLogPersistenceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MqttPersistable data(String key, String header, String payload) {
+        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+        byte[] payloadBytes = payload != null ? payload.getBytes(StandardCharsets.UTF_8) : null;
+        return new MqttPersistentData(key, headerBytes, 0, headerBytes.length, payloadBytes, 0, payloadBytes != null ? payloadBytes.length : 0);
+    }
+
+    private static String header(MqttPersistable persistable) throws MqttPersistenceException {
+        return new String(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength(), StandardCharsets.UTF_8);
+    }
+
+    private static String payload(MqttPersistable persistable) throws MqttPersistenceException {
+        return new String(persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void entriesAreStoredReplacedAndRemoved() throws MqttPersistenceException {
+        MappedLogPersistence persistence = new MappedLogPersistence(folder.getRoot().toPath(), 4096, 0);
+        persistence.open("client", "tcp://127.0.0.1:1883");
+
+        persistence.put("s-1", data("s-1", "h1", "p1"));
+        persistence.put("s-2", data("s-2", "h2", null));
+        persistence.put("s-1", data("s-1", "h1'", "p1'"));
+
+        assertTrue(persistence.containsKey("s-1"));
+        assertEquals("h1'", header(persistence.get("s-1")));
+        assertEquals("p1'", payload(persistence.get("s-1")));
+        assertEquals("h2", header(persistence.get("s-2")));
+        assertEquals(0, persistence.get("s-2").getPayloadLength());
+        assertEquals(new HashSet<>(Arrays.asList("s-1", "s-2")), new HashSet<>(Collections.list(persistence.keys())));
+
+        persistence.remove("s-1");
+        persistence.remove("missing");
+        assertFalse(persistence.containsKey("s-1"));
+        assertNull(persistence.get("s-1"));
+
+        persistence.clear();
+        assertFalse(persistence.keys().hasMoreElements());
+        persistence.close();
+    }
+
+    @Test
+    public void entriesAreRecoveredWhenReopened() throws MqttPersistenceException {
+        MappedLogPersistence persistence = new MappedLogPersistence(folder.getRoot().toPath(), 4096, 50);
+        persistence.open("client", "tcp://127.0.0.1:1883");
+        persistence.put("s-1", data("s-1", "h1", "p1"));
+        persistence.put("s-2", data("s-2", "h2", "p2"));
+        persistence.put("s-3", data("s-3", "h3", "p3"));
+        persistence.remove("s-2");
+        persistence.close();
+
+        MappedLogPersistence reopened = new MappedLogPersistence(folder.getRoot().toPath(), 4096, 50);
+        reopened.open("client", "tcp://127.0.0.1:1883");
+        Set<String> keys = new HashSet<>(Collections.list(reopened.keys()));
+        assertEquals(new HashSet<>(Arrays.asList("s-1", "s-3")), keys);
+        assertEquals("p3", payload(reopened.get("s-3")));
+
+        // New records are appended after the recovered ones
+        reopened.put("s-4", data("s-4", "h4", "p4"));
+        reopened.close();
+        reopened.open("client", "tcp://127.0.0.1:1883");
+        assertEquals("p4", payload(reopened.get("s-4")));
+        assertEquals("p1", payload(reopened.get("s-1")));
+        reopened.close();
+    }
+
+    @Test
+    public void openClientDirectoryIsLocked() throws MqttPersistenceException {
+        MappedLogPersistence persistence = new MappedLogPersistence(folder.getRoot().toPath());
+        persistence.open("client", "tcp://127.0.0.1:1883");
+        try {
+            new MappedLogPersistence(folder.getRoot().toPath()).open("client", "tcp://127.0.0.1:1883");
+            fail("The client directory is in use");
+        } catch (MqttPersistenceException e) {
+            assertEquals(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE, e.getReasonCode());
+        }
+        // Other clients use their own directory
+        MappedLogPersistence other = new MappedLogPersistence(folder.getRoot().toPath());
+        other.open("other", "tcp://127.0.0.1:1883");
+        other.close();
+        persistence.close();
+    }
+
+    @Test
+    public void segmentsWithoutLiveEntriesAreReleased() throws MqttPersistenceException {
+        MappedLogPersistence persistence = new MappedLogPersistence(folder.getRoot().toPath(), 256, 0);
+        persistence.open("client", "tcp://127.0.0.1:1883");
+        StringBuilder payload = new StringBuilder();
+        for(int i = 0; i < 64; i++)
+            payload.append('x');
+        // A long-lived entry is moved forward instead of keeping the log growing
+        persistence.put("retained", data("retained", "h", "r"));
+        for(int i = 0; i < 200; i++){
+            persistence.put("s-" + i, data("s-" + i, "h", payload.toString()));
+            persistence.remove("s-" + i);
+        }
+        assertTrue(persistence.getSegmentCount() <= 3);
+        assertEquals("r", payload(persistence.get("retained")));
+        persistence.close();
+
+        persistence.open("client", "tcp://127.0.0.1:1883");
+        assertEquals(Collections.singletonList("retained"), Collections.list(persistence.keys()));
+        persistence.close();
+    }
+
+    @Test
+    public void largeEntriesGetTheirOwnSegment() throws MqttPersistenceException {
+        MappedLogPersistence persistence = new MappedLogPersistence(folder.getRoot().toPath(), 256, 0);
+        persistence.open("client", "tcp://127.0.0.1:1883");
+        StringBuilder payload = new StringBuilder();
+        for(int i = 0; i < 1000; i++)
+            payload.append('y');
+        persistence.put("large", data("large", "h", payload.toString()));
+        assertEquals(payload.toString(), payload(persistence.get("large")));
+        persistence.close();
+    }
+}
@@ -0,0 +1,29 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Mqtt5IncomingMessageTest {
+
+    @Test
+    public void messageIsExposedAsMqttv3Message() {
+        byte[] payload = "23.5".getBytes();
+        MqttProperties properties = new MqttProperties();
+        properties.setContentType("text/plain");
+        MqttMessage message = new MqttMessage(payload, 1, true, properties);
+        message.setId(42);
+        message.setDuplicate(true);
+
+        Mqtt5IncomingMessage incoming = new Mqtt5IncomingMessage(message);
+
+        assertArrayEquals(payload, incoming.getPayload());
+        assertEquals(1, incoming.getQos());
+        assertTrue(incoming.isRetained());
+        assertTrue(incoming.isDuplicate());
+        assertEquals(42, incoming.getId());
+        assertEquals("text/plain", incoming.getProperties().getContentType());
+    }
+}
@@ -0,0 +1,192 @@
+package it.wldt.adapter.mqtt.physical.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SubscriptionBatcherTest {
+
+    private static class Batch {
+
+        private final String[] filters;
+
+        private final int subscriptionId;
+
+        private final MqttSubscribeCallback callback;
+
+        private Batch(String[] filters, int subscriptionId, MqttSubscribeCallback callback) {
+            this.filters = filters;
+            this.subscriptionId = subscriptionId;
+            this.callback = callback;
+        }
+    }
+
+    private static class RecordingTransport implements MqttTransport {
+
+        private final List<Batch> batches = new ArrayList<>();
+
+        private boolean connected = true;
+
+        @Override
+        public String getClientId() {
+            return "client";
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void setListener(MqttTransportListener listener) {
+        }
+
+        @Override
+        public void setManualAcks(boolean manualAcks) {
+        }
+
+        @Override
+        public void connect(MqttOperationCallback callback) {
+        }
+
+        @Override
+        public void subscribe(String[] filters, int[] qos, int subscriptionId, MqttSubscribeCallback callback) throws MqttException {
+            if(!connected)
+                throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+            batches.add(new Batch(filters, subscriptionId, callback));
+        }
+
+        @Override
+        public void publish(String topic, MqttMessage message, long messageExpiryInterval, MqttOperationCallback callback) {
+        }
+
+        @Override
+        public void messageArrivedComplete(int messageId, int qos) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+
+    private static class RecordingListener implements SubscriptionBatcher.Listener {
+
+        private final List<Integer> failedIndexes = Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicInteger completions = new AtomicInteger();
+
+        private volatile int failedCount = -1;
+
+        @Override
+        public void onSubscriptionFailed(int index, int reasonCode, Throwable cause) {
+            failedIndexes.add(index);
+        }
+
+        @Override
+        public void onComplete(int failedCount) {
+            this.failedCount = failedCount;
+            completions.incrementAndGet();
+        }
+    }
+
+    private static String[] filters(int count) {
+        String[] filters = new String[count];
+        for(int i = 0; i < count; i++)
+            filters[i] = "sensor/" + i;
+        return filters;
+    }
+
+    private static int[] ids(int count) {
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i++)
+            ids[i] = i + 1;
+        return ids;
+    }
+
+    @Test
+    public void filtersAreSentInBatchesWithABoundedWindow() {
+        RecordingTransport transport = new RecordingTransport();
+        RecordingListener listener = new RecordingListener();
+        new SubscriptionBatcher(transport, 4, 2).subscribe(filters(10), new int[10], ids(10), listener);
+
+        // Only the first two batches are in flight
+        assertEquals(2, transport.batches.size());
+        assertArrayEquals(new String[]{"sensor/0", "sensor/1", "sensor/2", "sensor/3"}, transport.batches.get(0).filters);
+        assertEquals(0, transport.batches.get(0).subscriptionId);
+
+        transport.batches.get(0).callback.onComplete(new int[]{0, 0, 0, 0});
+        assertEquals(3, transport.batches.size());
+        assertArrayEquals(new String[]{"sensor/8", "sensor/9"}, transport.batches.get(2).filters);
+        assertEquals(0, listener.completions.get());
+
+        transport.batches.get(2).callback.onComplete(new int[]{1, 1});
+        transport.batches.get(1).callback.onComplete(new int[]{0, 0, 0, 0});
+        assertEquals(1, listener.completions.get());
+        assertEquals(0, listener.failedCount);
+    }
+
+    @Test
+    public void rejectedFiltersAreReportedOneByOne() {
+        RecordingTransport transport = new RecordingTransport();
+        RecordingListener listener = new RecordingListener();
+        new SubscriptionBatcher(transport, 3, 1).subscribe(filters(6), new int[6], ids(6), listener);
+
+        transport.batches.get(0).callback.onComplete(new int[]{0, 0x80, 1});
+        transport.batches.get(1).callback.onFailure(new MqttException(MqttException.REASON_CODE_CONNECTION_LOST));
+
+        assertEquals(Arrays.asList(1, 3, 4, 5), listener.failedIndexes);
+        assertEquals(4, listener.failedCount);
+        assertEquals(1, listener.completions.get());
+    }
+
+    @Test
+    public void singleFilterBatchesCarryTheirSubscriptionIdentifier() {
+        RecordingTransport transport = new RecordingTransport();
+        RecordingListener listener = new RecordingListener();
+        new SubscriptionBatcher(transport, 1, 3).subscribe(filters(3), new int[3], ids(3), listener);
+
+        assertEquals(3, transport.batches.size());
+        for(int i = 0; i < 3; i++)
+            assertEquals(i + 1, transport.batches.get(i).subscriptionId);
+    }
+
+    @Test
+    public void batchedFiltersNeverCarrySubscriptionIdentifiers() {
+        RecordingTransport transport = new RecordingTransport();
+        new SubscriptionBatcher(transport, 2, 2).subscribe(filters(3), new int[3], ids(3), new RecordingListener());
+
+        // The last batch carries a single filter, but no identifier, like the other batches of the connection
+        assertEquals(2, transport.batches.size());
+        assertEquals(1, transport.batches.get(1).filters.length);
+        assertEquals(0, transport.batches.get(0).subscriptionId);
+        assertEquals(0, transport.batches.get(1).subscriptionId);
+    }
+
+    @Test
+    public void disconnectedTransportFailsAllFilters() {
+        RecordingTransport transport = new RecordingTransport();
+        transport.connected = false;
+        RecordingListener listener = new RecordingListener();
+        new SubscriptionBatcher(transport, 1, 1).subscribe(filters(5000), new int[5000], ids(5000), listener);
+
+        assertEquals(5000, listener.failedIndexes.size());
+        assertEquals(5000, listener.failedCount);
+        assertEquals(1, listener.completions.get());
+    }
+
+    @Test
+    public void emptyListCompletesImmediately() {
+        RecordingListener listener = new RecordingListener();
+        new SubscriptionBatcher(new RecordingTransport(), 10, 1).subscribe(new String[0], new int[0], new int[0], listener);
+        assertEquals(1, listener.completions.get());
+        assertEquals(0, listener.failedCount);
+    }
+}
@@ -0,0 +1,184 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ActionOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void recordsAreReturnedInOrderUntilAcknowledged() throws IOException {
+        ActionOutbox outbox = new ActionOutbox(folder.getRoot().toPath(), 4096, 1 << 20, 0);
+        assertTrue(outbox.isEmpty());
+        assertNull(outbox.peek());
+
+        assertTrue(outbox.append("devices/1/cmd", bytes("on"), 1, true, 0));
+        assertTrue(outbox.append("devices/2/cmd", bytes("off"), 0, false, 0));
+        assertEquals(2, outbox.getPendingCount());
+
+        OutboxRecord first = outbox.peek();
+        assertEquals("devices/1/cmd", first.getTopic());
+        assertArrayEquals(bytes("on"), first.getPayload());
+        assertEquals(1, first.getQos());
+        assertTrue(first.isRetained());
+        // Not acknowledged, returned again
+        assertEquals("devices/1/cmd", outbox.peek().getTopic());
+
+        outbox.acknowledge(first);
+        outbox.acknowledge(first);
+        OutboxRecord second = outbox.peek();
+        assertEquals("devices/2/cmd", second.getTopic());
+        assertFalse(second.isRetained());
+        outbox.acknowledge(second);
+
+        assertTrue(outbox.isEmpty());
+        assertEquals(0, outbox.getPendingBytes());
+        assertNull(outbox.peek());
+        assertEquals(0, segmentFiles(folder.getRoot().toPath()));
+    }
+
+    @Test
+    public void pendingRecordsSurviveReopening() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ActionOutbox outbox = new ActionOutbox(directory, 4096, 1 << 20, 0);
+        for(int i = 0; i < 3; i++)
+            outbox.append("devices/" + i + "/cmd", bytes("value-" + i), 1, false, 0);
+        outbox.acknowledge(outbox.peek());
+        outbox.close();
+        assertFalse(outbox.append("devices/9/cmd", bytes("closed"), 1, false, 0));
+
+        ActionOutbox reopened = new ActionOutbox(directory, 4096, 1 << 20, 0);
+        assertEquals(2, reopened.getPendingCount());
+        assertEquals("devices/1/cmd", reopened.peek().getTopic());
+        reopened.acknowledge(reopened.peek());
+        reopened.append("devices/3/cmd", bytes("value-3"), 1, false, 0);
+        assertEquals("devices/2/cmd", reopened.peek().getTopic());
+        reopened.acknowledge(reopened.peek());
+        assertEquals("devices/3/cmd", reopened.peek().getTopic());
+    }
+
+    @Test
+    public void partiallyWrittenRecordsAreIgnoredOnRecovery() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ActionOutbox outbox = new ActionOutbox(directory, 4096, 1 << 20, 0);
+        outbox.append("devices/1/cmd", bytes("on"), 1, false, 0);
+        outbox.append("devices/2/cmd", bytes("off"), 1, false, 0);
+        outbox.close();
+
+        // Corrupt the payload of the second record
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow(IllegalStateException::new);
+        }
+        long secondRecordEnd = 16 + 2 * (8 + 22 + "devices/1/cmd".length()) + 2 + 3;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(secondRecordEnd - 1);
+            file.write('X');
+        }
+
+        ActionOutbox reopened = new ActionOutbox(directory, 4096, 1 << 20, 0);
+        assertEquals(1, reopened.getPendingCount());
+        reopened.acknowledge(reopened.peek());
+        assertNull(reopened.peek());
+    }
+
+    @Test
+    public void acknowledgedSegmentsAreDeleted() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ActionOutbox outbox = new ActionOutbox(directory, 300, 1 << 20, 0);
+        byte[] payload = new byte[100];
+        for(int i = 0; i < 6; i++)
+            assertTrue(outbox.append("t/" + i, payload, 1, false, 0));
+        assertEquals(3, outbox.getSegmentCount());
+        assertEquals(3, segmentFiles(directory));
+
+        for(int i = 0; i < 3; i++){
+            OutboxRecord record = outbox.peek();
+            assertEquals("t/" + i, record.getTopic());
+            outbox.acknowledge(record);
+        }
+        assertEquals(2, outbox.getSegmentCount());
+        assertEquals(2, segmentFiles(directory));
+    }
+
+    @Test
+    public void appendsBeyondTheMaximumSizeAreRejected() throws IOException {
+        ActionOutbox outbox = new ActionOutbox(folder.getRoot().toPath(), 4096, 250, 0);
+        byte[] payload = new byte[80];
+        assertTrue(outbox.append("t/1", payload, 1, false, 0));
+        assertTrue(outbox.append("t/2", payload, 1, false, 0));
+        assertFalse(outbox.append("t/3", payload, 1, false, 0));
+        assertFalse(outbox.append("t/4", new byte[5000], 1, false, 0));
+        assertEquals(2, outbox.getRejectedCount());
+        assertEquals(2, outbox.getPendingCount());
+    }
+
+    @Test
+    public void expiredRecordsAreDiscarded() throws IOException, InterruptedException {
+        ActionOutbox outbox = new ActionOutbox(folder.getRoot().toPath(), 4096, 1 << 20, 50);
+        outbox.append("t/old", bytes("old"), 1, false, 0);
+        Thread.sleep(100);
+        outbox.append("t/new", bytes("new"), 1, false, 30);
+
+        OutboxRecord record = outbox.peek();
+        assertEquals("t/new", record.getTopic());
+        assertTrue(record.getMessageExpiryInterval() > 0 && record.getMessageExpiryInterval() <= 30);
+        assertEquals(1, outbox.getExpiredCount());
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void attachmentsFollowTheirRecordsAndExpiredRecordsAreReported() throws IOException, InterruptedException {
+        Path directory = folder.getRoot().toPath();
+        ActionOutbox outbox = new ActionOutbox(directory, 4096, 1 << 20, 50, 0);
+        List<OutboxRecord> expired = new ArrayList<>();
+        outbox.setExpiryListener(expired::add);
+        outbox.append("t/old", bytes("old"), 1, false, 0, "old-action");
+        Thread.sleep(100);
+        outbox.append("t/new", bytes("new"), 1, false, 0, "new-action");
+        outbox.append("t/plain", bytes("plain"), 1, false, 0);
+
+        OutboxRecord record = outbox.peek();
+        assertEquals("new-action", record.getAttachment());
+        assertEquals(1, expired.size());
+        assertEquals("t/old", expired.get(0).getTopic());
+        assertEquals("old-action", expired.get(0).getAttachment());
+        outbox.acknowledge(record);
+        assertNull(outbox.peek().getAttachment());
+        outbox.close();
+
+        // Attachments are kept in memory only
+        ActionOutbox reopened = new ActionOutbox(directory, 4096, 1 << 20, 0, 0);
+        reopened.append("t/next", bytes("next"), 1, false, 0, "next-action");
+        OutboxRecord recovered = reopened.peek();
+        assertEquals("t/plain", recovered.getTopic());
+        assertNull(recovered.getAttachment());
+        reopened.acknowledge(recovered);
+        assertEquals("next-action", reopened.peek().getAttachment());
+        reopened.close();
+    }
+}
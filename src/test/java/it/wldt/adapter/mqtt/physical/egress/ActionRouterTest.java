@@ -0,0 +1,71 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfiguration;
+import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.topic.MqttQosLevel;
+import it.wldt.adapter.mqtt.physical.topic.outgoing.ActionOutgoingTopic;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+import it.wldt.exception.EventBusException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ActionRouterTest {
+
+    private static List<String> publishedTopics(ActionRouter router, PhysicalAssetActionWldtEvent<?> action) {
+        return router.getRoutes(action.getActionKey()).stream()
+                .filter(route -> route.matches(action))
+                .map(route -> route.getTopic().resolveTopic(action))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void actionsAreFannedOutToTheMatchingRoutes() throws MqttPhysicalAdapterConfigurationException, EventBusException {
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .<String>addPhysicalAssetActionAndTopic("lights", "lights.switch", "text/plain", "zone/a/lights", body -> body)
+                .<String>setOutgoingTopicCondition("lights", body -> body.startsWith("a:"))
+                .<String>addActionRoute("lights", new ActionOutgoingTopic<String>("zone/b/lights", body -> body), body -> body.startsWith("b:"))
+                .addActionRoute("lights", new ActionOutgoingTopic<String>("audit/lights", MqttQosLevel.MQTT_QOS_1, true, body -> body))
+                .build();
+        ActionRouter router = configuration.getActionRouter();
+
+        assertEquals(3, router.getRouteCount());
+        assertEquals(3, router.getRoutes("lights").size());
+        assertTrue(router.getRoutes("unknown").isEmpty());
+
+        assertEquals(Arrays.asList("zone/a/lights", "audit/lights"),
+                publishedTopics(router, new PhysicalAssetActionWldtEvent<>("lights", "a:on")));
+        assertEquals(Arrays.asList("zone/b/lights", "audit/lights"),
+                publishedTopics(router, new PhysicalAssetActionWldtEvent<>("lights", "b:off")));
+
+        ActionRoute audit = router.getRoutes("lights").get(2);
+        assertFalse(audit.isConditional());
+        assertEquals(1, audit.getQos());
+        assertTrue(audit.isRetained());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void routesAreImmutable() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .<String>addPhysicalAssetActionAndTopic("lights", "lights.switch", "text/plain", "zone/a/lights", body -> body)
+                .build();
+        configuration.getActionRouter().getRoutes("lights").clear();
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void routesRequireADefinedAction() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .addActionRoute("lights", new ActionOutgoingTopic<String>("zone/b/lights", body -> body));
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void routesCannotDuplicateTopics() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .<String>addPhysicalAssetActionAndTopic("lights", "lights.switch", "text/plain", "zone/a/lights", body -> body)
+                .addActionRoute("lights", new ActionOutgoingTopic<String>("zone/a/lights", body -> body));
+    }
+}
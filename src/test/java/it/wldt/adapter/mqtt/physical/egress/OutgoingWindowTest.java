@@ -0,0 +1,68 @@
+package it.wldt.adapter.mqtt.physical.egress;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class OutgoingWindowTest {
+
+    @Test
+    public void blocksWhenFullUntilASlotIsReleased() throws InterruptedException {
+        OutgoingWindow window = new OutgoingWindow(2);
+        assertTrue(window.acquire());
+        assertTrue(window.acquire());
+        assertEquals(2, window.getInFlightCount());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            try {
+                if(window.acquire())
+                    acquired.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        publisher.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        window.release();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(2, window.getInFlightCount());
+        assertEquals(1, window.getBackpressureCount());
+        publisher.join();
+    }
+
+    @Test
+    public void closingWakesUpTheWaitingPublishers() throws InterruptedException {
+        OutgoingWindow window = new OutgoingWindow(1);
+        assertTrue(window.acquire());
+
+        AtomicBoolean result = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            try {
+                result.set(window.acquire());
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        publisher.start();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        window.close();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertFalse(result.get());
+        assertFalse(window.acquire());
+    }
+
+    @Test
+    public void releaseNeverGoesBelowZero() {
+        OutgoingWindow window = new OutgoingWindow(1);
+        window.release();
+        assertEquals(0, window.getInFlightCount());
+        assertEquals(1, window.getCapacity());
+    }
+}
@@ -0,0 +1,50 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IncomingTopicIndexTest {
+
+    private static DigitalTwinIncomingTopic topic(String topic) {
+        return DigitalTwinIncomingTopic.binary(topic, (message, emitter) -> {});
+    }
+
+    @Test
+    public void exactTopicsAreResolvedWithoutWildcardWalk() {
+        DigitalTwinIncomingTopic state = topic("sensor/state");
+        IncomingTopicIndex index = new IncomingTopicIndex(Arrays.asList(state, topic("sensor/intensity")));
+
+        assertEquals(2, index.getExactTopicCount());
+        assertEquals(Arrays.asList(state), index.match("sensor/state"));
+        assertTrue(index.match("sensor/other").isEmpty());
+    }
+
+    @Test
+    public void wildcardAndTemplatedTopicsAreMatchedByLevel() {
+        DigitalTwinIncomingTopic exact = topic("plant/l1/d1/temperature");
+        DigitalTwinIncomingTopic templated = topic("plant/{line}/{deviceId}/temperature");
+        DigitalTwinIncomingTopic multiLevel = topic("plant/l1/#");
+        DigitalTwinIncomingTopic other = topic("plant/+/+/humidity");
+        IncomingTopicIndex index = new IncomingTopicIndex(Arrays.asList(exact, templated, multiLevel, other));
+
+        List<DigitalTwinIncomingTopic> matches = index.match("plant/l1/d1/temperature");
+        assertEquals(3, matches.size());
+        assertTrue(matches.containsAll(Arrays.asList(exact, templated, multiLevel)));
+
+        assertEquals(Arrays.asList(templated), index.match("plant/l2/d9/temperature"));
+        assertEquals(Arrays.asList(multiLevel), index.match("plant/l1"));
+        assertTrue(index.match("plant/l2/d9").isEmpty());
+    }
+
+    @Test
+    public void systemTopicsDoNotMatchFirstLevelWildcards() {
+        IncomingTopicIndex index = new IncomingTopicIndex(Arrays.asList(topic("#"), topic("+/status")));
+        assertTrue(index.match("$SYS/status").isEmpty());
+        assertEquals(2, index.match("dev/status").size());
+    }
+}
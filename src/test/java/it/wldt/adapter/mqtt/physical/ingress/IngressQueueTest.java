@@ -0,0 +1,156 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IngressQueueTest {
+
+    private final List<IngressMessage> shed = new ArrayList<>();
+
+    private static DigitalTwinIncomingTopic topic(String topic, IngressOverloadPolicy policy) {
+        DigitalTwinIncomingTopic incomingTopic = DigitalTwinIncomingTopic.binary(topic, (message, emitter) -> {});
+        incomingTopic.setOverloadPolicy(policy);
+        return incomingTopic;
+    }
+
+    private static IngressMessage message(DigitalTwinIncomingTopic topic, String receivedTopic, String payload) {
+        return new IngressMessage(topic, receivedTopic, new MqttMessage(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private List<String> drain(IngressQueue queue) throws InterruptedException {
+        List<String> payloads = new ArrayList<>();
+        IngressMessage m;
+        while((m = queue.poll(0, TimeUnit.MILLISECONDS)) != null)
+            payloads.add(m.getPayloadAsString());
+        return payloads;
+    }
+
+    @Test
+    public void dropNewestDiscardsIncomingMessages() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(2, shed::add);
+        DigitalTwinIncomingTopic topic = topic("t", IngressOverloadPolicy.dropNewest());
+
+        assertTrue(queue.put(message(topic, "t", "1")));
+        assertTrue(queue.put(message(topic, "t", "2")));
+        assertFalse(queue.put(message(topic, "t", "3")));
+
+        assertEquals(1, shed.size());
+        assertEquals("[1, 2]", drain(queue).toString());
+    }
+
+    @Test
+    public void dropOldestOnlyEvictsMessagesOfTheSameTopic() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(3, shed::add);
+        DigitalTwinIncomingTopic critical = topic("critical", IngressOverloadPolicy.neverDrop());
+        DigitalTwinIncomingTopic telemetry = topic("telemetry", IngressOverloadPolicy.dropOldest());
+
+        queue.put(message(critical, "critical", "c1"));
+        queue.put(message(telemetry, "telemetry", "t1"));
+        queue.put(message(telemetry, "telemetry", "t2"));
+        queue.put(message(telemetry, "telemetry", "t3"));
+
+        assertEquals("[c1, t2, t3]", drain(queue).toString());
+        assertEquals(1, shed.size());
+    }
+
+    @Test
+    public void keepLatestReplacesQueuedMessageWithTheSameKey() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(2, shed::add);
+        DigitalTwinIncomingTopic topic = topic("dev/+", IngressOverloadPolicy.keepLatestPerKey());
+
+        queue.put(message(topic, "dev/a", "a1"));
+        queue.put(message(topic, "dev/b", "b1"));
+        queue.put(message(topic, "dev/a", "a2"));
+
+        assertEquals("[b1, a2]", drain(queue).toString());
+        assertEquals(1, shed.size());
+    }
+
+    @Test
+    public void sampleQueuesOneOverloadedMessageEveryNInPlaceOfTheOldest() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(100, shed::add);
+        DigitalTwinIncomingTopic topic = topic("t", IngressOverloadPolicy.sample(4).withMaxQueueDepth(1));
+
+        assertTrue(queue.put(message(topic, "t", "first")));
+        for(int i = 1; i < 4; i++)
+            assertFalse(queue.put(message(topic, "t", String.valueOf(i))));
+        assertEquals(3, shed.size());
+
+        // The sampled message replaces the queued one without waiting for free space
+        assertTrue(queue.put(message(topic, "t", "4")));
+
+        assertEquals("[4]", drain(queue).toString());
+        assertEquals(4, shed.size());
+        assertEquals("first", shed.get(3).getPayloadAsString());
+    }
+
+    @Test
+    public void sampledMessageIsDiscardedWhenNoMessageOfItsTopicIsQueued() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(1, shed::add);
+        DigitalTwinIncomingTopic critical = topic("critical", IngressOverloadPolicy.neverDrop());
+        DigitalTwinIncomingTopic telemetry = topic("telemetry", IngressOverloadPolicy.sample(1));
+
+        assertTrue(queue.put(message(critical, "critical", "c1")));
+        assertFalse(queue.put(message(telemetry, "telemetry", "t1")));
+
+        assertEquals("[c1]", drain(queue).toString());
+        assertEquals(1, shed.size());
+    }
+
+    @Test
+    public void maxQueueDepthIsSharedByTheQueues() throws Exception {
+        Map<DigitalTwinIncomingTopic, IngressQueue.TopicDepth> depths = new ConcurrentHashMap<>();
+        IngressQueue[] queues = new IngressQueue[2];
+        Runnable signalQueues = () -> {
+            for(IngressQueue q : queues)
+                q.signalNotFull();
+        };
+        for(int i = 0; i < queues.length; i++)
+            queues[i] = new IngressQueue(10, shed::add, t -> depths.computeIfAbsent(t, k -> new IngressQueue.TopicDepth()), signalQueues);
+        DigitalTwinIncomingTopic topic = topic("dev/+", IngressOverloadPolicy.neverDrop().withMaxQueueDepth(1));
+
+        assertTrue(queues[0].put(message(topic, "dev/a", "a1")));
+
+        // The depth of the topic is reached through the other queue, which wakes up the waiting thread once it is taken
+        CountDownLatch queued = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                if(queues[1].put(message(topic, "dev/b", "b1")))
+                    queued.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+        assertFalse(queued.await(100, TimeUnit.MILLISECONDS));
+
+        assertEquals("[a1]", drain(queues[0]).toString());
+        assertTrue(queued.await(1, TimeUnit.SECONDS));
+        producer.join();
+        assertEquals("[b1]", drain(queues[1]).toString());
+        assertTrue(shed.isEmpty());
+    }
+
+    @Test
+    public void expiredMessagesAreDiscardedWhenTaken() throws InterruptedException {
+        IngressQueue queue = new IngressQueue(10, shed::add);
+        DigitalTwinIncomingTopic topic = topic("t", IngressOverloadPolicy.neverDrop().withMaxAge(10));
+
+        queue.put(message(topic, "t", "old"));
+        Thread.sleep(20);
+        queue.put(message(topic, "t", "new"));
+
+        assertEquals("[new]", drain(queue).toString());
+        assertEquals(1, shed.size());
+    }
+}
@@ -0,0 +1,113 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ManualAckControllerTest {
+
+    private final List<Integer> acked = new ArrayList<>();
+
+    private static MqttMessage message(int id, int qos) {
+        MqttMessage message = new MqttMessage(new byte[0]);
+        message.setId(id);
+        message.setQos(qos);
+        return message;
+    }
+
+    @Test
+    public void acknowledgesWhenAllPartsAreCompleted() throws InterruptedException {
+        ManualAckController controller = new ManualAckController((id, qos) -> acked.add(id), 10);
+
+        Runnable completion = controller.track(message(7, 1), 2);
+        completion.run();
+        assertTrue(acked.isEmpty());
+        assertEquals(1, controller.getInFlightCount());
+
+        completion.run();
+        assertEquals(1, acked.size());
+        assertEquals(7, (int) acked.get(0));
+        assertEquals(0, controller.getInFlightCount());
+        assertEquals(1, controller.getAckedCount());
+    }
+
+    @Test
+    public void qosZeroMessagesAreNotTracked() throws InterruptedException {
+        ManualAckController controller = new ManualAckController((id, qos) -> acked.add(id), 1);
+
+        controller.track(message(1, 0), 1).run();
+        controller.track(message(2, 0), 1).run();
+
+        assertTrue(acked.isEmpty());
+        assertEquals(0, controller.getInFlightCount());
+    }
+
+    @Test
+    public void blocksWhenMaxInFlightIsReached() throws InterruptedException {
+        ManualAckController controller = new ManualAckController((id, qos) -> {}, 1);
+        Runnable first = controller.track(message(1, 1), 1);
+
+        CountDownLatch tracked = new CountDownLatch(1);
+        Thread receiver = new Thread(() -> {
+            try {
+                controller.track(message(2, 1), 1);
+                tracked.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        receiver.start();
+
+        assertFalse(tracked.await(100, TimeUnit.MILLISECONDS));
+        first.run();
+        assertTrue(tracked.await(1, TimeUnit.SECONDS));
+        receiver.join();
+    }
+
+    @Test
+    public void acknowledgesInArrivalOrder() throws InterruptedException {
+        ManualAckController controller = new ManualAckController((id, qos) -> acked.add(id), 10);
+        Runnable first = controller.track(message(1, 1), 1);
+        Runnable second = controller.track(message(2, 2), 1);
+        Runnable third = controller.track(message(3, 1), 1);
+
+        third.run();
+        second.run();
+        assertTrue(acked.isEmpty());
+        assertEquals(3, controller.getInFlightCount());
+
+        first.run();
+        assertEquals(Arrays.asList(1, 2, 3), acked);
+        assertEquals(0, controller.getInFlightCount());
+    }
+
+    @Test
+    public void acknowledgesInArrivalOrderWhenCompletedConcurrently() throws InterruptedException {
+        int messages = 2000;
+        List<Integer> concurrentAcks = Collections.synchronizedList(new ArrayList<>());
+        ManualAckController controller = new ManualAckController((id, qos) -> concurrentAcks.add(id), messages);
+        List<Runnable> completions = new ArrayList<>();
+        for(int i = 1; i <= messages; i++)
+            completions.add(controller.track(message(i, 1), 1));
+        Collections.shuffle(completions, new Random(42));
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        completions.forEach(workers::execute);
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(messages, concurrentAcks.size());
+        for(int i = 0; i < messages; i++)
+            assertEquals(i + 1, (int) concurrentAcks.get(i));
+    }
+}
@@ -0,0 +1,88 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MqttIngressPipelineTest {
+
+    @Test
+    public void messagesOfTheSameTopicAreProcessedInOrder() throws InterruptedException {
+        int topicCount = 8;
+        int messagesPerTopic = 500;
+        CountDownLatch latch = new CountDownLatch(topicCount * messagesPerTopic);
+        Map<String, List<Integer>> received = Collections.synchronizedMap(new HashMap<>());
+
+        MqttIngressPipeline pipeline = new MqttIngressPipeline("test", 4, 16, m -> {
+            received.computeIfAbsent(m.getTopic(), k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt(m.getPayloadAsString()));
+            latch.countDown();
+        });
+        pipeline.start();
+
+        DigitalTwinIncomingTopic incomingTopic = DigitalTwinIncomingTopic.binary("sensor/+", (message, emitter) -> {});
+
+        for(int i = 0; i < messagesPerTopic; i++)
+            for(int t = 0; t < topicCount; t++)
+                pipeline.submit(new IngressMessage(incomingTopic, "sensor/" + t, new MqttMessage(String.valueOf(i).getBytes(StandardCharsets.UTF_8))));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertEquals(topicCount, received.size());
+        received.values().forEach(values -> {
+            assertEquals(messagesPerTopic, values.size());
+            for(int i = 0; i < messagesPerTopic; i++)
+                assertEquals(i, values.get(i).intValue());
+        });
+    }
+
+    @Test
+    public void maxQueueDepthBoundsTheTopicOverAllTheWorkers() throws InterruptedException {
+        int workerCount = 4;
+        int maxQueueDepth = 3;
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+        MqttIngressPipeline pipeline = new MqttIngressPipeline("test", workerCount, 16, m -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processed.incrementAndGet();
+        });
+        pipeline.start();
+
+        DigitalTwinIncomingTopic incomingTopic = DigitalTwinIncomingTopic.binary("sensor/+", (message, emitter) -> {});
+        incomingTopic.setOverloadPolicy(IngressOverloadPolicy.dropNewest().withMaxQueueDepth(maxQueueDepth));
+
+        // The received topics are spread over the workers, each one blocked on its first message
+        int accepted = 0;
+        for(int i = 0; i < 40; i++){
+            if(pipeline.submit(new IngressMessage(incomingTopic, "sensor/" + (i % 8), new MqttMessage(new byte[0]))))
+                accepted++;
+            assertTrue(pipeline.getQueuedMessageCount() <= maxQueueDepth);
+        }
+        assertTrue(accepted <= maxQueueDepth + workerCount);
+        assertEquals(40 - accepted, pipeline.getShedCount());
+
+        gate.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(processed.get() < accepted && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        pipeline.stop();
+        assertEquals(accepted, processed.get());
+    }
+}
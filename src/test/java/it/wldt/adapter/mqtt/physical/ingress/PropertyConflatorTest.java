@@ -0,0 +1,134 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.mqtt.physical.topic.incoming.DigitalTwinIncomingTopic;
+import it.wldt.adapter.physical.event.PhysicalAssetEventWldtEvent;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+import it.wldt.exception.EventBusException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PropertyConflatorTest {
+
+    @Test
+    public void onlyTheLatestValueOfEachPropertyIsForwarded() throws EventBusException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        PropertyConflator conflator = new PropertyConflator(forwarded::add, 100);
+
+        for(int i = 0; i < 1000; i++){
+            conflator.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", i));
+            conflator.emit(new PhysicalAssetPropertyWldtEvent<>("humidity", -i));
+        }
+        assertTrue(forwarded.isEmpty());
+        assertEquals(2, conflator.getPendingCount());
+
+        conflator.flush();
+
+        assertEquals(2, forwarded.size());
+        assertTrue(forwarded.stream().anyMatch(e -> e.getBody().equals(999)));
+        assertTrue(forwarded.stream().anyMatch(e -> e.getBody().equals(-999)));
+        assertEquals(0, conflator.getPendingCount());
+    }
+
+    @Test
+    public void eventsAreNeverConflated() throws EventBusException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        PropertyConflator conflator = new PropertyConflator(forwarded::add, 100);
+
+        conflator.emit(new PhysicalAssetEventWldtEvent<>("overheating", "1"));
+        conflator.emit(new PhysicalAssetEventWldtEvent<>("overheating", "2"));
+
+        assertEquals(2, forwarded.size());
+    }
+
+    @Test
+    public void completionsRunWhenTheValueOrItsReplacementIsForwarded() throws EventBusException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        PropertyConflator conflator = new PropertyConflator(forwarded::add, 100);
+        AtomicInteger completed = new AtomicInteger();
+
+        conflator.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 1), completed::incrementAndGet);
+        conflator.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 2), completed::incrementAndGet);
+        assertEquals(0, completed.get());
+
+        // Events that are not conflated complete as soon as they are forwarded
+        conflator.emit(new PhysicalAssetEventWldtEvent<>("overheating", "1"), completed::incrementAndGet);
+        assertEquals(1, completed.get());
+
+        conflator.flush();
+        assertEquals(3, completed.get());
+        assertEquals(2, forwarded.size());
+    }
+
+    @Test
+    public void messageIsAcknowledgedOnlyOnceItsRetainedEventsAreForwarded() throws EventBusException, InterruptedException {
+        List<Integer> acked = new ArrayList<>();
+        ManualAckController controller = new ManualAckController((id, qos) -> acked.add(id), 10);
+        PropertyConflator conflator = new PropertyConflator(e -> {}, 100);
+        MqttMessage mqttMessage = new MqttMessage(new byte[0]);
+        mqttMessage.setId(5);
+        mqttMessage.setQos(1);
+        IngressMessage message = new IngressMessage(DigitalTwinIncomingTopic.binary("sensor/state", (m, emitter) -> {}), "sensor/state", mqttMessage);
+        message.setCompletionCallback(controller.track(mqttMessage, 1));
+
+        conflator.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 1), message.retainCompletion());
+        conflator.emit(new PhysicalAssetPropertyWldtEvent<>("humidity", 1), message.retainCompletion());
+        message.complete();
+        assertTrue(acked.isEmpty());
+        assertEquals(1, controller.getInFlightCount());
+
+        conflator.flush();
+        assertEquals(1, acked.size());
+        assertEquals(0, controller.getInFlightCount());
+    }
+
+    @Test
+    public void valuesAreForwardedWhenTheDownstreamIsReady() throws EventBusException, InterruptedException {
+        List<WldtEvent<?>> forwarded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstForwarded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PropertyConflator conflator = new PropertyConflator(e -> {
+            forwarded.add(e);
+            firstForwarded.countDown();
+            try {
+                // The downstream is busy with the first value
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            conflator.start(scheduler);
+            conflator.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 0));
+            assertTrue(firstForwarded.await(5, TimeUnit.SECONDS));
+
+            // Values received while the downstream is busy are conflated
+            for(int i = 1; i <= 100; i++)
+                conflator.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", i));
+            assertEquals(1, conflator.getPendingCount());
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while(forwarded.size() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            assertEquals(2, forwarded.size());
+            assertEquals(100, forwarded.get(1).getBody());
+            conflator.stop();
+            assertEquals(2, forwarded.size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
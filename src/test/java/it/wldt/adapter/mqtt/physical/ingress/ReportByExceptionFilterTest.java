@@ -0,0 +1,86 @@
+package it.wldt.adapter.mqtt.physical.ingress;
+
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+import it.wldt.exception.EventBusException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReportByExceptionFilterTest {
+
+    @Test
+    public void unchangedValuesAreSuppressed() throws EventBusException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(forwarded::add, Collections.emptyMap(), PropertyChangeFilter.onChange());
+
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("state", "ON"));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("state", "ON"));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("state", "OFF"));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("count", 1));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("count", 1));
+
+        assertEquals(3, forwarded.size());
+        assertEquals(2, filter.getSuppressedCount());
+    }
+
+    @Test
+    public void numericChangesWithinDeadbandsAreSuppressed() throws EventBusException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        Map<String, PropertyChangeFilter> filters = new HashMap<>();
+        filters.put("temperature", PropertyChangeFilter.absoluteDeadband(0.5));
+        filters.put("pressure", PropertyChangeFilter.relativeDeadband(0.1));
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(forwarded::add, filters, null);
+
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 20.0));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 20.4));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 20.6));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("pressure", 1000));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("pressure", 1050));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("pressure", 1200));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("humidity", 10));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("humidity", 10));
+
+        assertEquals(6, forwarded.size());
+        assertEquals(2, filter.getSuppressedCount());
+    }
+
+    @Test
+    public void maxSilenceForcesRefresh() throws EventBusException, InterruptedException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(forwarded::add, Collections.emptyMap(), PropertyChangeFilter.onChange().withMaxSilence(20));
+
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 20.0));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 20.0));
+        Thread.sleep(30);
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("temperature", 20.0));
+
+        assertEquals(2, forwarded.size());
+    }
+
+    @Test
+    public void integralValuesBeyondDoublePrecisionAreComparedExactly() throws EventBusException {
+        List<WldtEvent<?>> forwarded = new ArrayList<>();
+        Map<String, PropertyChangeFilter> filters = new HashMap<>();
+        filters.put("deadband", PropertyChangeFilter.absoluteDeadband(0.5));
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(forwarded::add, filters, PropertyChangeFilter.onChange());
+        long large = 1L << 53;
+
+        // Adjacent longs above 2^53 are the same double
+        assertEquals((double) large, (double) (large + 1), 0);
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("counter", large));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("counter", large + 1));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("counter", large + 1));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("deadband", large));
+        filter.emit(new PhysicalAssetPropertyWldtEvent<>("deadband", large + 1));
+
+        assertEquals(4, forwarded.size());
+        assertEquals(1, filter.getSuppressedCount());
+    }
+}
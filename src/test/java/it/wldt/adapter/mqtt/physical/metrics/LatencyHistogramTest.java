@@ -0,0 +1,52 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void recordsDurationsInTheirBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(5));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.SECONDS.toNanos(30));
+
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(LatencyHistogram.getBucketBoundsNanos().length + 1, counts.length);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[8]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(4, histogram.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(15) + TimeUnit.MILLISECONDS.toNanos(3) + TimeUnit.SECONDS.toNanos(30), histogram.getSumNanos());
+    }
+
+    @Test
+    public void estimatesPercentilesFromBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.99));
+        for(int i = 0; i < 99; i++)
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(80));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.getPercentileNanos(0.5));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.getPercentileNanos(0.99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), histogram.getPercentileNanos(1.0));
+    }
+
+    @Test
+    public void percentilesInTheOverflowBucketReportTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(80));
+        histogram.record(TimeUnit.SECONDS.toNanos(12));
+        histogram.record(TimeUnit.SECONDS.toNanos(30));
+
+        assertEquals(TimeUnit.SECONDS.toNanos(30), histogram.getMaxNanos());
+        assertEquals(TimeUnit.SECONDS.toNanos(30), histogram.getPercentileNanos(0.99));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.getPercentileNanos(0.3));
+    }
+}
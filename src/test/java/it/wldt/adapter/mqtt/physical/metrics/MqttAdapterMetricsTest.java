@@ -0,0 +1,84 @@
+package it.wldt.adapter.mqtt.physical.metrics;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MqttAdapterMetricsTest {
+
+    @Test
+    public void exportsTopicCountersAndHistograms() {
+        MqttAdapterMetrics metrics = new MqttAdapterMetrics("mqtt-pa");
+        TopicMetrics incoming = metrics.incomingTopic("sensor/+/temperature");
+        incoming.onMessage(12);
+        incoming.onMessage(8);
+        incoming.recordLatency(LatencyStage.DECODE, TimeUnit.MICROSECONDS.toNanos(20));
+        incoming.onFailure();
+        metrics.outgoingTopic("actuator/switch").onMessage(4);
+        metrics.outgoingTopic("actuator/switch").recordLatency(LatencyStage.END_TO_END, TimeUnit.SECONDS.toNanos(20));
+        metrics.onReconnect();
+
+        assertSame(incoming, metrics.incomingTopic("sensor/+/temperature"));
+        String text = metrics.toPrometheusText();
+        assertTrue(text.contains("# TYPE wldt_mqtt_incoming_messages_total counter\n"));
+        assertTrue(text.contains("wldt_mqtt_incoming_messages_total{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\"} 2\n"));
+        assertTrue(text.contains("wldt_mqtt_incoming_bytes_total{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\"} 20\n"));
+        assertTrue(text.contains("wldt_mqtt_decode_failures_total{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\"} 1\n"));
+        assertTrue(text.contains("wldt_mqtt_incoming_latency_seconds_bucket{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\",stage=\"decode\",le=\"0.00001\"} 0\n"));
+        assertTrue(text.contains("wldt_mqtt_incoming_latency_seconds_bucket{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\",stage=\"decode\",le=\"0.000025\"} 1\n"));
+        assertTrue(text.contains("wldt_mqtt_incoming_latency_seconds_bucket{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\",stage=\"decode\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("wldt_mqtt_incoming_latency_seconds_count{adapter=\"mqtt-pa\",topic=\"sensor/+/temperature\",stage=\"decode\"} 1\n"));
+        assertTrue(text.contains("wldt_mqtt_outgoing_messages_total{adapter=\"mqtt-pa\",topic=\"actuator/switch\"} 1\n"));
+        assertTrue(text.contains("wldt_mqtt_outgoing_latency_seconds_bucket{adapter=\"mqtt-pa\",topic=\"actuator/switch\",stage=\"end_to_end\",le=\"10\"} 0\n"));
+        assertTrue(text.contains("wldt_mqtt_outgoing_latency_seconds_sum{adapter=\"mqtt-pa\",topic=\"actuator/switch\",stage=\"end_to_end\"} 20\n"));
+        assertFalse(text.contains("topic=\"actuator/switch\",stage=\"queue\""));
+        assertTrue(text.contains("wldt_mqtt_reconnects_total{adapter=\"mqtt-pa\"} 1\n"));
+    }
+
+    @Test
+    public void exportsGaugesAndEscapesLabels() {
+        MqttAdapterMetrics metrics = new MqttAdapterMetrics("pa\"1");
+        metrics.onPublishStarted();
+        metrics.onPublishStarted();
+        metrics.onPublishCompleted();
+        metrics.registerGauge("ingress_queued_messages", "Queued messages.", () -> 5);
+
+        String text = metrics.toPrometheusText();
+        assertEquals(1, metrics.getInFlightPublishCount());
+        assertTrue(text.contains("wldt_mqtt_inflight_publishes{adapter=\"pa\\\"1\"} 1\n"));
+        assertTrue(text.contains("# TYPE wldt_mqtt_ingress_queued_messages gauge\n"));
+        assertTrue(text.contains("wldt_mqtt_ingress_queued_messages{adapter=\"pa\\\"1\"} 5\n"));
+    }
+
+    @Test
+    public void servesMetricsOverHttp() throws IOException {
+        MqttAdapterMetrics metrics = new MqttAdapterMetrics("mqtt-pa");
+        metrics.onUnmatchedMessage();
+        MetricsHttpServer server = new MetricsHttpServer(metrics, "127.0.0.1", 0);
+        server.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + MetricsHttpServer.METRICS_PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream is = connection.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while((read = is.read(buffer)) != -1)
+                    body.write(buffer, 0, read);
+            }
+            assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8).contains("wldt_mqtt_unmatched_messages_total{adapter=\"mqtt-pa\"} 1\n"));
+        } finally {
+            server.stop();
+        }
+        assertEquals(-1, server.getPort());
+    }
+}
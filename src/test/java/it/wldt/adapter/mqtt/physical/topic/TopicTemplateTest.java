@@ -0,0 +1,66 @@
+package it.wldt.adapter.mqtt.physical.topic;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TopicTemplateTest {
+
+    @Test
+    public void templateIsSubscribedWithWildcards() {
+        TopicTemplate template = new TopicTemplate("plant/{line}/{deviceId}/temperature");
+        assertEquals("plant/+/+/temperature", template.getSubscriptionFilter());
+        assertTrue(template.hasVariables());
+        assertTrue(template.isWildcard());
+    }
+
+    @Test
+    public void variablesAreExtractedFromMatchingTopics() {
+        TopicTemplate template = new TopicTemplate("plant/{line}/{deviceId}/temperature");
+        Map<String, String> variables = template.extractVariables("plant/l1/dev-42/temperature");
+        assertEquals("l1", variables.get("line"));
+        assertEquals("dev-42", variables.get("deviceId"));
+        assertEquals("dev-42.temperature", TopicTemplate.resolve("{deviceId}.temperature", variables));
+    }
+
+    @Test
+    public void nonMatchingTopicsAreRejected() {
+        TopicTemplate template = new TopicTemplate("plant/{line}/{deviceId}/temperature");
+        assertNull(template.extractVariables("plant/l1/dev-42/humidity"));
+        assertFalse(template.matches("plant/l1/temperature"));
+        assertFalse(template.matches("plant/l1/dev-42/temperature/raw"));
+    }
+
+    @Test
+    public void multiLevelWildcardMatchesAnyRemainingLevel() {
+        TopicTemplate template = new TopicTemplate("fleet/{deviceId}/#");
+        assertEquals("fleet/+/#", template.getSubscriptionFilter());
+        assertTrue(template.matches("fleet/d1"));
+        assertTrue(template.matches("fleet/d1/a/b"));
+        assertFalse(new TopicTemplate("+/status").matches("$SYS/status"));
+    }
+
+    @Test
+    public void literalTopicsAreNotWildcards() {
+        TopicTemplate template = new TopicTemplate("sensor/state");
+        assertEquals("sensor/state", template.getSubscriptionFilter());
+        assertFalse(template.isWildcard());
+        assertTrue(template.matches("sensor/state"));
+    }
+
+    @Test
+    public void sharedFiltersArePrefixedWithTheGroup() {
+        assertEquals("$share/group/sensor/+", TopicTemplate.shared("group", "sensor/+"));
+        assertTrue(TopicTemplate.isValidSharedGroup("group"));
+        assertFalse(TopicTemplate.isValidSharedGroup("a/b"));
+        assertFalse(TopicTemplate.isValidSharedGroup("+"));
+        assertFalse(TopicTemplate.isValidSharedGroup(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevelsAreRejected() {
+        new TopicTemplate("sensor/dev{id}/state");
+    }
+}
@@ -0,0 +1,75 @@
+package it.wldt.adapter.mqtt.physical.topic.incoming;
+
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+import it.wldt.exception.EventBusException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DigitalTwinIncomingTopicTest {
+
+    @Test
+    public void propertyTopicEmitsDecodedValue() throws EventBusException {
+        PropertyIncomingTopic<Integer> topic = new PropertyIncomingTopic<>("sensor/intensity", "intensity", Integer::parseInt);
+        List<WldtEvent<?>> events = new ArrayList<>();
+
+        topic.applySubscribeFunction(incomingMessage(topic, "42"), events::add);
+
+        assertEquals(1, events.size());
+        PhysicalAssetPropertyWldtEvent<?> event = (PhysicalAssetPropertyWldtEvent<?>) events.get(0);
+        assertEquals("intensity", event.getPhysicalPropertyId());
+        assertEquals(42, event.getBody());
+    }
+
+    @Test
+    public void stringFunctionIsAdaptedOnTopOfBinaryFunction() throws EventBusException {
+        DigitalTwinIncomingTopic topic = new DigitalTwinIncomingTopic("sensor/state",
+                payload -> {
+                    try {
+                        return Collections.singletonList(new PhysicalAssetPropertyWldtEvent<>("state", payload));
+                    } catch (EventBusException e) {
+                        return null;
+                    }
+                });
+        List<WldtEvent<?>> events = new ArrayList<>();
+
+        topic.applySubscribeFunction(incomingMessage(topic, "température"), events::add);
+
+        assertEquals(1, events.size());
+        assertEquals("température", events.get(0).getBody());
+    }
+
+    @Test
+    public void binaryFunctionIsExposedAsStringFunction() {
+        DigitalTwinIncomingTopic topic = DigitalTwinIncomingTopic.binary("sensor/raw",
+                (message, emitter) -> emitter.emit(new PhysicalAssetPropertyWldtEvent<>("length", message.getPayloadLength())));
+
+        List<WldtEvent<?>> events = topic.applySubscribeFunction("abcd");
+
+        assertEquals(1, events.size());
+        assertEquals(4, events.get(0).getBody());
+    }
+
+    @Test
+    public void binaryFunctionReceivesTheReceivedTopicThroughTheStringPath() {
+        DigitalTwinIncomingTopic topic = DigitalTwinIncomingTopic.binary("plant/{deviceId}/level",
+                (message, emitter) -> emitter.emit(new PhysicalAssetPropertyWldtEvent<>(message.getTopicVariable("deviceId"), message.getPayloadAsString())));
+
+        List<WldtEvent<?>> events = topic.applySubscribeFunction("plant/tank-1/level", "full");
+
+        assertEquals(1, events.size());
+        assertEquals("tank-1", ((PhysicalAssetPropertyWldtEvent<?>) events.get(0)).getPhysicalPropertyId());
+        assertEquals("full", events.get(0).getBody());
+    }
+
+    private static MqttIncomingMessage incomingMessage(DigitalTwinIncomingTopic topic, String payload) {
+        return new MqttIncomingMessage(topic.getTopic(), new MqttMessage(payload.getBytes(StandardCharsets.UTF_8)), topic.getCharset());
+    }
+}
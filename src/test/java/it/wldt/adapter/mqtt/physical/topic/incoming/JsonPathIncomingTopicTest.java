@@ -0,0 +1,95 @@
+package it.wldt.adapter.mqtt.physical.topic.incoming;
+
+import it.wldt.adapter.physical.event.PhysicalAssetEventWldtEvent;
+import it.wldt.adapter.physical.event.PhysicalAssetPropertyWldtEvent;
+import it.wldt.core.event.WldtEvent;
+import it.wldt.exception.EventBusException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JsonPathIncomingTopicTest {
+
+    private static final String PAYLOAD = "{\"ts\":1700000000,\"meta\":{\"tags\":[\"a\",\"b\"],\"nested\":{\"x\":1}}," +
+            "\"data\":{\"temp\":21.5,\"hum\":40,\"on\":true},\"values\":[{\"v\":1},{\"v\":2}],\"alarm\":\"overheating\"}";
+
+    private static Map<String, Object> apply(DigitalTwinIncomingTopic topic, String receivedTopic, String payload) throws EventBusException {
+        List<WldtEvent<?>> events = new ArrayList<>();
+        topic.applySubscribeFunction(new MqttIncomingMessage(receivedTopic, new MqttMessage(payload.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, topic.getTopicTemplate()), events::add);
+        Map<String, Object> result = new HashMap<>();
+        for(WldtEvent<?> e : events){
+            if(e instanceof PhysicalAssetPropertyWldtEvent)
+                result.put(((PhysicalAssetPropertyWldtEvent<?>) e).getPhysicalPropertyId(), e.getBody());
+            else
+                result.put("event:" + ((PhysicalAssetEventWldtEvent<?>) e).getPhysicalEventKey(), e.getBody());
+        }
+        return result;
+    }
+
+    @Test
+    public void mappedPathsAreExtractedWithTargetTypes() throws EventBusException {
+        JsonPathIncomingTopic topic = JsonPathIncomingTopic.builder("sensor/state")
+                .property("$.data.temp", "temperature", Double.class)
+                .property("$.data.hum", "humidity", Integer.class)
+                .property("$.data.on", "on", Boolean.class)
+                .property("$.values[1].v", "second", Long.class)
+                .event("$.alarm", "alarm", String.class)
+                .build();
+
+        Map<String, Object> result = apply(topic, "sensor/state", PAYLOAD);
+
+        assertEquals(5, result.size());
+        assertEquals(21.5, result.get("temperature"));
+        assertEquals(40, result.get("humidity"));
+        assertEquals(true, result.get("on"));
+        assertEquals(2L, result.get("second"));
+        assertEquals("overheating", result.get("event:alarm"));
+    }
+
+    @Test
+    public void missingAndNullValuesProduceNoEvents() throws EventBusException {
+        JsonPathIncomingTopic topic = JsonPathIncomingTopic.builder("sensor/state")
+                .property("$.data.temp", "temperature", Double.class)
+                .property("$.data.missing", "missing", String.class)
+                .build();
+
+        Map<String, Object> result = apply(topic, "sensor/state", "{\"data\":{\"temp\":null,\"other\":[1,2,3]}}");
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void keysCanUseTopicVariables() throws EventBusException {
+        JsonPathIncomingTopic topic = JsonPathIncomingTopic.builder("plant/{deviceId}/state")
+                .property("$.data.temp", "{deviceId}.temperature", Double.class)
+                .build();
+
+        Map<String, Object> result = apply(topic, "plant/d7/state", PAYLOAD);
+
+        assertEquals(21.5, result.get("d7.temperature"));
+    }
+
+    @Test
+    public void malformedPayloadsAreDiscarded() throws EventBusException {
+        JsonPathIncomingTopic topic = JsonPathIncomingTopic.builder("sensor/state")
+                .property("$.data.temp", "temperature", Double.class)
+                .build();
+
+        assertTrue(apply(topic, "sensor/state", "{\"data\":{\"temp\":\"abc\"}}").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parentAndChildPathsCannotBothBeMapped() {
+        JsonPathIncomingTopic.builder("sensor/state")
+                .property("$.data.temp", "temperature", Double.class)
+                .property("$.data", "data", String.class);
+    }
+}
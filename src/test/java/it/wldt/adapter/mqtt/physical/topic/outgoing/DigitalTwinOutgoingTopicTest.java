@@ -0,0 +1,72 @@
+package it.wldt.adapter.mqtt.physical.topic.outgoing;
+
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfiguration;
+import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.mqtt.physical.topic.MqttQosLevel;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+import it.wldt.exception.EventBusException;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class DigitalTwinOutgoingTopicTest {
+
+    @Test
+    public void stringPayloadIsEncodedWithTheTopicCharset() throws EventBusException {
+        DigitalTwinOutgoingTopic topic = new ActionOutgoingTopic<String>("actuator/label", body -> body);
+        PhysicalAssetActionWldtEvent<String> action = new PhysicalAssetActionWldtEvent<>("label", "caffè");
+
+        assertArrayEquals("caffè".getBytes(StandardCharsets.UTF_8), topic.encodePayload(action));
+        topic.setCharset(StandardCharsets.ISO_8859_1);
+        assertArrayEquals("caffè".getBytes(StandardCharsets.ISO_8859_1), topic.encodePayload(action));
+    }
+
+    @Test
+    public void binaryPayloadIsWrittenIntoTheBuffer() throws EventBusException {
+        DigitalTwinOutgoingTopic topic = new DigitalTwinOutgoingTopic("motor/speed", MqttQosLevel.MQTT_QOS_1, false,
+                (action, buffer) -> new DataOutputStream(buffer).writeInt((Integer) action.getBody()));
+        PhysicalAssetActionWldtEvent<Integer> action = new PhysicalAssetActionWldtEvent<>("set-speed", 1500);
+
+        byte[] first = topic.encodePayload(action);
+        assertEquals(1500, ByteBuffer.wrap(first).getInt());
+        // The buffer is reused, the returned payloads are not
+        byte[] second = topic.encodePayload(new PhysicalAssetActionWldtEvent<>("set-speed", 7));
+        assertEquals(1500, ByteBuffer.wrap(first).getInt());
+        assertEquals(7, ByteBuffer.wrap(second).getInt());
+        assertEquals(1, (int) topic.getQos());
+    }
+
+    @Test
+    public void payloadBufferGrowsAndResets() {
+        MqttPayloadBuffer buffer = new MqttPayloadBuffer();
+        byte[] large = new byte[1000];
+        large[999] = 9;
+        buffer.write(large, 0, large.length);
+        buffer.write(ByteBuffer.wrap(new byte[]{1, 2}));
+        assertEquals(1002, buffer.size());
+        assertEquals(9, buffer.toByteArray()[999]);
+
+        buffer.reset();
+        buffer.write("ok", StandardCharsets.US_ASCII);
+        assertArrayEquals(new byte[]{'o', 'k'}, buffer.toByteArray());
+        assertTrue(buffer.capacity() >= 1002);
+    }
+
+    @Test
+    public void binaryOutgoingTopicCanBeAddedToTheBuilder() throws MqttPhysicalAdapterConfigurationException {
+        MqttPhysicalAdapterConfiguration configuration = MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .addOutgoingTopic("set-speed", "motor.speed", "application/octet-stream",
+                        DigitalTwinOutgoingTopic.binary("motor/speed", (action, buffer) -> buffer.write(1)))
+                .setOutgoingTopicCharset("set-speed", StandardCharsets.UTF_16)
+                .build();
+
+        DigitalTwinOutgoingTopic topic = configuration.getOutgoingTopicByActionKey("set-speed").orElse(null);
+        assertNotNull(topic);
+        assertNotNull(topic.getBinaryPublishFunction());
+        assertEquals(StandardCharsets.UTF_16, topic.getCharset());
+    }
+}
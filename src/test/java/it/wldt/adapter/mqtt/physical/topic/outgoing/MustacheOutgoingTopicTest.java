@@ -0,0 +1,87 @@
+package it.wldt.adapter.mqtt.physical.topic.outgoing;
+
+import it.wldt.adapter.mqtt.physical.MqttPhysicalAdapterConfiguration;
+import it.wldt.adapter.mqtt.physical.exception.MqttPhysicalAdapterConfigurationException;
+import it.wldt.adapter.physical.event.PhysicalAssetActionWldtEvent;
+import it.wldt.exception.EventBusException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MustacheOutgoingTopicTest {
+
+    public static class Command {
+
+        private final String deviceId;
+
+        private final int level;
+
+        public Command(String deviceId, int level) {
+            this.deviceId = deviceId;
+            this.level = level;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+    }
+
+    private static MqttPhysicalAdapterConfiguration configuration(String topicTemplate, String payloadTemplate) throws MqttPhysicalAdapterConfigurationException {
+        return MqttPhysicalAdapterConfiguration.builder("127.0.0.1", 1883)
+                .addPhysicalAssetActionAndTemplate("set-level", "device.level", "application/json", topicTemplate, payloadTemplate)
+                .build();
+    }
+
+    @Test
+    public void topicAndPayloadAreRenderedFromTheActionBody() throws MqttPhysicalAdapterConfigurationException, EventBusException {
+        DigitalTwinOutgoingTopic topic = configuration("devices/{{deviceId}}/cmd", "{\"level\":{{level}},\"action\":\"{{actionKey}}\"}")
+                .getOutgoingTopicByActionKey("set-level").orElse(null);
+        assertNotNull(topic);
+
+        PhysicalAssetActionWldtEvent<Command> first = new PhysicalAssetActionWldtEvent<>("set-level", new Command("d-1", 3));
+        PhysicalAssetActionWldtEvent<Command> second = new PhysicalAssetActionWldtEvent<>("set-level", new Command("d/2", 7));
+        assertEquals("devices/d-1/cmd", topic.resolveTopic(first));
+        assertEquals("{\"level\":3,\"action\":\"set-level\"}", new String(topic.encodePayload(first), StandardCharsets.UTF_8));
+        assertEquals("devices/d/2/cmd", topic.resolveTopic(second));
+        assertEquals("{\"level\":7,\"action\":\"set-level\"}", topic.applyPublishFunction(second));
+    }
+
+    @Test
+    public void mapBodiesAndStaticTopicsAreSupported() throws MqttPhysicalAdapterConfigurationException, EventBusException {
+        DigitalTwinOutgoingTopic topic = configuration("devices/all/cmd", "<{{mode}}>")
+                .getOutgoingTopicByActionKey("set-level").orElse(null);
+        Map<String, Object> body = new HashMap<>();
+        body.put("mode", "a&b");
+
+        PhysicalAssetActionWldtEvent<Map<String, Object>> action = new PhysicalAssetActionWldtEvent<>("set-level", body);
+        assertEquals("devices/all/cmd", topic.resolveTopic(action));
+        // Values are not HTML escaped
+        assertEquals("<a&b>", topic.applyPublishFunction(action));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void renderedTopicsCannotContainWildcards() throws MqttPhysicalAdapterConfigurationException, EventBusException {
+        DigitalTwinOutgoingTopic topic = configuration("devices/{{deviceId}}/cmd", "{{level}}")
+                .getOutgoingTopicByActionKey("set-level").orElse(null);
+        topic.resolveTopic(new PhysicalAssetActionWldtEvent<>("set-level", new Command("#", 1)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void templatesMustBeCompiledBeforeRendering() throws EventBusException {
+        new MustacheOutgoingTopic("devices/{{deviceId}}/cmd", "{{level}}")
+                .applyPublishFunction(new PhysicalAssetActionWldtEvent<>("set-level", new Command("d-1", 1)));
+    }
+
+    @Test(expected = MqttPhysicalAdapterConfigurationException.class)
+    public void invalidTemplatesFailTheBuild() throws MqttPhysicalAdapterConfigurationException {
+        configuration("devices/{{deviceId}}/cmd", "{{#level}}");
+    }
+}